@@ -26,10 +26,20 @@ import java.security.Principal;
 import java.security.cert.CRLException;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.mozilla.jss.netscape.security.extensions.CertInfo;
 import org.mozilla.jss.netscape.security.util.BigInt;
@@ -110,6 +120,12 @@ public class CAService implements ICAService, IService {
     public static final String CHALLENGE_PHRASE = "challengePhrase";
     public static final String SERIALNO_ARRAY = "serialNoArray";
 
+    /**
+     * Number of threads used to update certificate records when
+     * revoking several certificates at once (default: number of CPUs).
+     */
+    public static final String PROP_REVOCATION_THREADS = "revocation.threads";
+
     // CCA->CLA connector
     protected static IConnector mCLAConnector = null;
 
@@ -119,6 +135,7 @@ public class CAService implements ICAService, IService {
     private IConfigStore mConfig = null;
     private boolean mArchivalRequired = true;
     private Hashtable<String, ICRLIssuingPoint> mCRLIssuingPoints = new Hashtable<String, ICRLIssuingPoint>();
+    private ExecutorService mRevocationExecutor;
 
     public CAService(ICertificateAuthority ca) {
         mCA = ca;
@@ -964,6 +981,140 @@ public class CAService implements ICAService, IService {
 
     public void revokeCert(RevokedCertImpl crlentry, String requestId)
             throws EBaseException {
+
+        CertRecord certRec = markAsRevoked(crlentry);
+        BigInteger serialno = crlentry.getSerialNumber();
+
+        // inform all CRLIssuingPoints about revoked certificate
+        Enumeration<ICRLIssuingPoint> eIPs = mCRLIssuingPoints.elements();
+
+        while (eIPs.hasMoreElements()) {
+            ICRLIssuingPoint ip = eIPs.nextElement();
+
+            if (ip != null && isInCRL(ip, certRec))
+                ip.addRevokedCert(serialno, crlentry, requestId);
+        }
+    }
+
+    /**
+     * Revokes a batch of certificates. The certificate records are
+     * updated concurrently, and each CRL issuing point is informed
+     * about the whole batch at once instead of once per certificate.
+     *
+     * @param crlentries revocation information for each certificate
+     * @param requestId revocation request id
+     * @return error messages for the certificates that could not be
+     *         revoked, indexed like crlentries, or null if all
+     *         certificates were revoked
+     * @exception EBaseException if a certificate record could not be
+     *            updated; the CRL issuing points are still informed about
+     *            the certificates that were revoked
+     */
+    public String[] revokeCerts(final RevokedCertImpl[] crlentries, String requestId)
+            throws EBaseException {
+
+        final CertRecord[] certRecs = new CertRecord[crlentries.length];
+        final Exception[] exceptions = new Exception[crlentries.length];
+
+        if (crlentries.length == 1) {
+            try {
+                certRecs[0] = markAsRevoked(crlentries[0]);
+            } catch (EBaseException e) {
+                exceptions[0] = e;
+            }
+
+        } else {
+            // the worker threads record the caller as the revoker
+            final Hashtable<Object, Object> context = new Hashtable<Object, Object>(SessionContext.getContext());
+
+            ExecutorService executor = getRevocationExecutor();
+            List<Future<?>> futures = new ArrayList<Future<?>>(crlentries.length);
+
+            for (int i = 0; i < crlentries.length; i++) {
+                final int index = i;
+                futures.add(executor.submit(new Runnable() {
+                    public void run() {
+                        SessionContext.getContext().putAll(context);
+                        try {
+                            certRecs[index] = markAsRevoked(crlentries[index]);
+                        } catch (Exception e) {
+                            exceptions[index] = e;
+                        } finally {
+                            SessionContext.releaseContext();
+                        }
+                    }
+                }));
+            }
+
+            try {
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new EBaseException("Revocation interrupted", e);
+            } catch (ExecutionException e) {
+                // the task does not throw exceptions
+                throw new EBaseException("Unable to revoke certificates: " + e.getMessage(), e);
+            }
+        }
+
+        String[] errors = null;
+        EBaseException failure = null;
+
+        for (int i = 0; i < crlentries.length; i++) {
+            Exception e = exceptions[i];
+            if (e == null) {
+                continue;
+            }
+
+            if (e instanceof ECAException) {
+                if (errors == null) {
+                    errors = new String[crlentries.length];
+                }
+                errors[i] = e.toString();
+
+            } else if (failure == null) {
+                failure = e instanceof EBaseException ? (EBaseException) e : new EBaseException(e);
+            }
+        }
+
+        // inform all CRLIssuingPoints about revoked certificates
+        Enumeration<ICRLIssuingPoint> eIPs = mCRLIssuingPoints.elements();
+
+        while (eIPs.hasMoreElements()) {
+            ICRLIssuingPoint ip = eIPs.nextElement();
+            if (ip == null)
+                continue;
+
+            Map<BigInteger, RevokedCertImpl> revokedCerts = new LinkedHashMap<BigInteger, RevokedCertImpl>();
+
+            for (int i = 0; i < crlentries.length; i++) {
+                if (certRecs[i] != null && isInCRL(ip, certRecs[i])) {
+                    revokedCerts.put(crlentries[i].getSerialNumber(), crlentries[i]);
+                }
+            }
+
+            if (!revokedCerts.isEmpty()) {
+                ip.addRevokedCerts(revokedCerts, requestId);
+            }
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+
+        return errors;
+    }
+
+    /**
+     * Checks the revocation information and marks the certificate
+     * record as revoked.
+     *
+     * @return the certificate record
+     */
+    private CertRecord markAsRevoked(RevokedCertImpl crlentry)
+            throws EBaseException {
         BigInteger serialno = crlentry.getSerialNumber();
         Date revdate = crlentry.getRevocationDate();
         CRLExtensions crlentryexts = crlentry.getExtensions();
@@ -1050,41 +1201,64 @@ public class CAService implements ICAService, IService {
             logger.debug("CAService.revokeCert: cert now revoked");
             mCA.log(ILogger.LL_INFO, CMS.getLogMessage("CMSCORE_CA_CERT_REVOKED",
                     serialno.toString(16)));
-            // inform all CRLIssuingPoints about revoked certificate
-            Enumeration<ICRLIssuingPoint> eIPs = mCRLIssuingPoints.elements();
+        } catch (EBaseException e) {
+            logger.error("CAService.revokeCert: " + e, e);
+            String message = CMS.getLogMessage("CMSCORE_CA_ERROR_REVOCATION", serialno.toString(), e.toString());
+            mCA.log(ILogger.LL_FAILURE, message);
+            throw e;
+        }
 
-            while (eIPs.hasMoreElements()) {
-                ICRLIssuingPoint ip = eIPs.nextElement();
+        return certRec;
+    }
+
+    /**
+     * Checks whether a revoked certificate belongs in the CRL
+     * of an issuing point.
+     */
+    private boolean isInCRL(ICRLIssuingPoint ip, CertRecord certRec) {
 
-                if (ip != null) {
-                    boolean b = true;
+        boolean b = true;
 
-                    if (ip.isCACertsOnly()) {
-                        X509CertImpl cert = certRec.getCertificate();
+        if (ip.isCACertsOnly()) {
+            X509CertImpl cert = certRec.getCertificate();
 
-                        if (cert != null)
-                            b = cert.getBasicConstraintsIsCA();
-                    }
-                    if (ip.isProfileCertsOnly()) {
-                        MetaInfo metaInfo = certRec.getMetaInfo();
-                        if (metaInfo != null) {
-                            String profileId = (String) metaInfo.get("profileId");
-                            if (profileId != null) {
-                                b = ip.checkCurrentProfile(profileId);
-                            }
-                        }
-                    }
-                    if (b)
-                        ip.addRevokedCert(serialno, crlentry, requestId);
+            if (cert != null)
+                b = cert.getBasicConstraintsIsCA();
+        }
+        if (ip.isProfileCertsOnly()) {
+            MetaInfo metaInfo = certRec.getMetaInfo();
+            if (metaInfo != null) {
+                String profileId = (String) metaInfo.get("profileId");
+                if (profileId != null) {
+                    b = ip.checkCurrentProfile(profileId);
                 }
             }
-        } catch (EBaseException e) {
-            logger.error("CAService.revokeCert: " + e, e);
-            String message = CMS.getLogMessage("CMSCORE_CA_ERROR_REVOCATION", serialno.toString(), e.toString());
-            mCA.log(ILogger.LL_FAILURE, message);
-            throw e;
         }
-        return;
+
+        return b;
+    }
+
+    private synchronized ExecutorService getRevocationExecutor() throws EBaseException {
+
+        if (mRevocationExecutor == null) {
+            int threads = mCA.getConfigStore().getInteger(PROP_REVOCATION_THREADS, 0);
+            if (threads <= 0) {
+                threads = Runtime.getRuntime().availableProcessors();
+            }
+
+            logger.info("CAService: Revoking certificates with " + threads + " thread(s)");
+
+            mRevocationExecutor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                private final AtomicInteger threadNumber = new AtomicInteger();
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "RevocationTask-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        return mRevocationExecutor;
     }
 
     /**
@@ -1738,19 +1912,21 @@ class serviceRevoke implements IServant {
                 new RevokedCertImpl[crlentries.length];
         String svcerrors[] = null;
 
+        String errors[] = mService.revokeCerts(crlentries, request.getRequestId().toString());
+
         for (int i = 0; i < crlentries.length; i++) {
-            try {
-                mService.revokeCert(crlentries[i], request.getRequestId().toString());
+            if (errors == null || errors[i] == null) {
                 revokedCerts[i] = crlentries[i];
-            } catch (ECAException e) {
-                mCA.log(ILogger.LL_FAILURE, CMS.getLogMessage("CMSCORE_CA_CANNOT_REVOKE", Integer.toString(i), request
-                        .getRequestId().toString(), e.toString()));
-                revokedCerts[i] = null;
-                if (svcerrors == null) {
-                    svcerrors = new String[revokedCerts.length];
-                }
-                svcerrors[i] = e.toString();
+                continue;
+            }
+
+            mCA.log(ILogger.LL_FAILURE, CMS.getLogMessage("CMSCORE_CA_CANNOT_REVOKE", Integer.toString(i), request
+                    .getRequestId().toString(), errors[i]));
+            revokedCerts[i] = null;
+            if (svcerrors == null) {
+                svcerrors = new String[revokedCerts.length];
             }
+            svcerrors[i] = errors[i];
         }
 
         // #605941 - request.get(IRequest.CERT_INFO) store exact same thing
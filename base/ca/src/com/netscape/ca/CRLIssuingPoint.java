@@ -57,9 +57,9 @@ import com.netscape.certsrv.ca.ICertificateAuthority;
 import com.netscape.certsrv.common.Constants;
 import com.netscape.certsrv.common.NameValuePairs;
 import com.netscape.certsrv.dbs.EDBNotAvailException;
+import com.netscape.certsrv.dbs.IDBPagedSearch;
 import com.netscape.certsrv.dbs.IElementProcessor;
 import com.netscape.certsrv.dbs.certdb.ICertRecord;
-import com.netscape.certsrv.dbs.certdb.ICertRecordList;
 import com.netscape.certsrv.dbs.certdb.ICertificateRepository;
 import com.netscape.certsrv.dbs.certdb.IRevocationInfo;
 import com.netscape.certsrv.dbs.crldb.ICRLIssuingPointRecord;
@@ -2010,17 +2010,19 @@ public class CRLIssuingPoint implements ICRLIssuingPoint, Runnable {
 
         synchronized (cr.certStatusUpdateTask) {
             logger.debug("Starting processRevokedCerts (entered lock)");
-            ICertRecordList list = mCertRepository.findCertRecordsInList(
+            // the CRL entries are collected into a map,
+            // so the records do not need to be sorted
+            try (IDBPagedSearch<ICertRecord> search = mCertRepository.findPagedCertRecords(
                     filter,
                     new String[] {
                             ICertRecord.ATTR_ID, ICertRecord.ATTR_REVO_INFO, "objectclass"
                     },
-                    "serialno",
-                    mPageSize);
+                    mPageSize)) {
 
-            int totalSize = list.getSize();
-
-            list.processCertRecords(0, totalSize - 1, cp);
+                while (search.hasNext()) {
+                    cp.process(search.next());
+                }
+            }
             logger.debug("processRevokedCerts done");
         }
     }
@@ -2305,6 +2307,36 @@ public class CRLIssuingPoint implements ICRLIssuingPoint, Runnable {
         }
     }
 
+    public void addRevokedCerts(Map<BigInteger, RevokedCertImpl> revokedCerts,
+                                String requestId) {
+
+        if (!mEnable || !mEnableCRLCache) {
+            return;
+        }
+
+        CertRecProcessor cp = new CertRecProcessor(mCRLCerts, this, mAllowExtensions);
+        int count = 0;
+
+        for (Map.Entry<BigInteger, RevokedCertImpl> entry : revokedCerts.entrySet()) {
+            RevokedCertImpl revokedCert = entry.getValue();
+            if (!cp.checkRevokedCertExtensions(revokedCert.getExtensions())) {
+                continue;
+            }
+            updateRevokedCert(REVOKED_CERT, entry.getKey(), revokedCert, requestId);
+            count++;
+        }
+
+        if (count > 0 && mCacheUpdateInterval == 0) {
+            try {
+                mCRLRepository.updateRevokedCerts(mId, mRevokedCerts, mUnrevokedCerts);
+                mFirstUnsaved = ICRLIssuingPointRecord.CLEAN_CACHE;
+            } catch (EBaseException e) {
+                log(ILogger.LL_FAILURE,
+                        CMS.getLogMessage("CMSCORE_CA_ISSUING_STORE_REVOKED_CERT", mId, e.toString()));
+            }
+        }
+    }
+
     /**
      * registers unrevoked certificates
      */
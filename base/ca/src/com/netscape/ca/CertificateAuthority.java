@@ -30,6 +30,7 @@ import java.security.KeyPair;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
+import java.security.SecureRandom;
 import java.security.Signature;
 import java.security.cert.CRLException;
 import java.security.cert.CertificateException;
@@ -48,7 +49,15 @@ import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.Vector;
 import java.util.concurrent.CountDownLatch;
-
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpSession;
 
@@ -101,7 +110,9 @@ import com.netscape.certsrv.base.EBaseException;
 import com.netscape.certsrv.base.EPropertyNotFound;
 import com.netscape.certsrv.base.IConfigStore;
 import com.netscape.certsrv.base.ISubsystem;
-import com.netscape.certsrv.base.Nonces;
+import com.netscape.certsrv.base.ConcurrentNonces;
+import com.netscape.certsrv.base.INonceStore;
+import com.netscape.certsrv.base.StatelessNonces;
 import com.netscape.certsrv.base.PKIException;
 import com.netscape.certsrv.ca.AuthorityID;
 import com.netscape.certsrv.ca.CADisabledException;
@@ -164,7 +175,9 @@ import com.netscape.cmscore.ldap.PublisherProcessor;
 import com.netscape.cmscore.ldapconn.LdapBoundConnFactory;
 import com.netscape.cmscore.listeners.ListenerPlugin;
 import com.netscape.cmscore.request.RequestSubsystem;
+import com.netscape.cmscore.security.JssSubsystem;
 import com.netscape.cmscore.security.KeyCertUtil;
+import com.netscape.cmscore.util.IdleReleaser;
 import com.netscape.cmsutil.crypto.CryptoUtil;
 import com.netscape.cmsutil.ldap.LDAPPostReadControl;
 import com.netscape.cmsutil.ldap.LDAPUtil;
@@ -240,6 +253,18 @@ public class CertificateAuthority
     private boolean hasKeys = false;
     private ECAException signingUnitException = null;
 
+    /* Lightweight CAs loaded from the database may be initialised
+     * on first use (lazyAuthorityInit) and release their signing
+     * units again after authorityIdleTimeout seconds without use.
+     */
+    private boolean mLazyAuthorityInit = false;
+    private long mAuthorityIdleTimeout = 0;
+    private volatile boolean initialized = true;
+    private volatile long lastAccessTime = System.currentTimeMillis();
+    private static ScheduledExecutorService authorityIdleMonitor;
+
+    private ExecutorService mBulkEnrollmentExecutor;
+
     protected ISubsystem mOwner = null;
     protected IConfigStore mConfig = null;
 
@@ -340,6 +365,10 @@ public class CertificateAuthority
 
     private boolean mUseNonces = true;
     private int mMaxNonces = 100;
+    private long mNonceLifetime;
+    private boolean mStatelessNonces;
+    private SecretKey mNonceKey;
+    private SecureRandom mNonceRandom;
 
     /* Variables to manage loading and tracking of lightweight CAs
      *
@@ -381,7 +410,8 @@ public class CertificateAuthority
             String signingKeyNickname,
             Collection<String> authorityKeyHosts,
             String authorityDescription,
-            boolean authorityEnabled
+            boolean authorityEnabled,
+            boolean lazyInit
             ) throws EBaseException {
         setId(hostCA.getId());
         this.hostCA = hostCA;
@@ -397,6 +427,15 @@ public class CertificateAuthority
         this.authorityEnabled = authorityEnabled;
         mNickname = signingKeyNickname;
         this.authorityKeyHosts = authorityKeyHosts;
+
+        if (lazyInit) {
+            // only keep the metadata until the authority is used
+            mOwner = hostCA.mOwner;
+            mConfig = hostCA.mConfig;
+            initialized = false;
+            return;
+        }
+
         init(hostCA.mOwner, hostCA.mConfig);
     }
 
@@ -404,8 +443,81 @@ public class CertificateAuthority
         return hostCA == this;
     }
 
+    /**
+     * Initialises a lightweight CA that was loaded lazily and
+     * records the access for the idle timeout.
+     */
+    private void ensureInitialized() {
+
+        lastAccessTime = System.currentTimeMillis();
+
+        if (initialized) {
+            return;
+        }
+
+        synchronized (this) {
+            if (initialized) {
+                return;
+            }
+
+            logger.info("CertificateAuthority: initializing authority " + authorityID);
+
+            try {
+                init(hostCA.mOwner, hostCA.mConfig);
+                initialized = true;
+
+            } catch (EBaseException e) {
+                logger.warn("Error initialising lightweight CA: " + e.getMessage(), e);
+                signingUnitException = e instanceof ECAException
+                        ? (ECAException) e
+                        : new ECAException("Unable to initialize authority: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Releases lightweight CAs that have not been used within the
+     * idle timeout.
+     * <p>
+     * Each idle authority is replaced in caMap with an uninitialized
+     * copy that is set up again on next use. The released authority is
+     * left intact, so requests that are still using it (e.g. signing a
+     * certificate) complete with its signing units.
+     */
+    private void releaseIdleAuthorities() {
+
+        List<AuthorityID> released = new IdleReleaser<AuthorityID, ICertificateAuthority>() {
+
+            protected long getLastAccessTime(ICertificateAuthority authority) {
+                CertificateAuthority ca = (CertificateAuthority) authority;
+
+                // an authority that is waiting for its keys must keep its key retriever
+                if (ca.isHostAuthority() || !ca.initialized
+                        || keyRetrieverThreads.containsKey(ca.authorityID)) {
+                    return -1;
+                }
+
+                return ca.lastAccessTime;
+            }
+
+            protected ICertificateAuthority release(ICertificateAuthority authority) throws EBaseException {
+                CertificateAuthority ca = (CertificateAuthority) authority;
+                return new CertificateAuthority(
+                    hostCA, ca.mName, ca.authorityID, ca.authorityParentID, ca.authoritySerial,
+                    ca.mNickname, ca.authorityKeyHosts, ca.authorityDescription, ca.authorityEnabled,
+                    true);
+            }
+
+        }.releaseIdle(caMap, mAuthorityIdleTimeout);
+
+        for (AuthorityID aid : released) {
+            logger.info("CertificateAuthority: released idle authority " + aid);
+        }
+    }
+
     public void ensureReady()
             throws ECAException {
+        ensureInitialized();
         if (!authorityEnabled)
             throw new CADisabledException("Authority is disabled");
         if (!isReady()) {
@@ -417,6 +529,7 @@ public class CertificateAuthority
     }
 
     public boolean isReady() {
+        ensureInitialized();
         return hasKeys;
     }
 
@@ -473,7 +586,7 @@ public class CertificateAuthority
         return mUseNonces;
     }
 
-    public Map<Object, Long> getNonces(HttpServletRequest request, String name) {
+    public INonceStore getNonces(HttpServletRequest request, String name) {
 
         // Create a new session or use an existing one.
         HttpSession session = request.getSession(true);
@@ -481,22 +594,31 @@ public class CertificateAuthority
             throw new PKIException("Unable to create session.");
         }
 
-        // Lock the session to prevent concurrent access.
+        if (mStatelessNonces) {
+            // nonces are bound to the session but not stored in it
+            return new StatelessNonces(mNonceKey, session.getId() + ":" + name, mNonceLifetime);
+        }
+
+        // Find the existing storage in the session.
+        INonceStore nonces = (INonceStore) session.getAttribute("nonces-" + name);
+        if (nonces != null) {
+            return nonces;
+        }
+
+        // Lock the session to prevent concurrent creation of the storage.
         // http://yet-another-dev.blogspot.com/2009/08/synchronizing-httpsession.html
 
-        Object lock = request.getSession().getId().intern();
+        Object lock = session.getId().intern();
         synchronized (lock) {
 
-            // Find the existing storage in the session.
-            @SuppressWarnings("unchecked")
-            Map<Object, Long> nonces = (Map<Object, Long>)session.getAttribute("nonces-"+name);
+            nonces = (INonceStore) session.getAttribute("nonces-" + name);
 
             if (nonces == null) {
                 // If not present, create a new storage.
-                nonces = Collections.synchronizedMap(new Nonces(mMaxNonces));
+                nonces = new ConcurrentNonces(mMaxNonces, mNonceLifetime, mNonceRandom);
 
                 // Put the storage in the session.
-                session.setAttribute("nonces-"+name, nonces);
+                session.setAttribute("nonces-" + name, nonces);
             }
 
             return nonces;
@@ -593,6 +715,22 @@ public class CertificateAuthority
 
             mUseNonces = mConfig.getBoolean("enableNonces", true);
             mMaxNonces = mConfig.getInteger("maxNumberOfNonces", 100);
+            mNonceLifetime = mConfig.getInteger("nonceLifetime", 3600) * 1000L;
+            mStatelessNonces = mConfig.getBoolean("statelessNonces", false);
+
+            if (mUseNonces) {
+                JssSubsystem jssSubsystem = (JssSubsystem) engine.getSubsystem(JssSubsystem.ID);
+                mNonceRandom = jssSubsystem.getRandomNumberGenerator();
+            }
+
+            if (mUseNonces && mStatelessNonces) {
+                if (mNonceLifetime <= 0) {
+                    throw new EBaseException("Invalid nonce lifetime for stateless nonces: " + mNonceLifetime);
+                }
+                byte[] nonceKey = new byte[32];
+                mNonceRandom.nextBytes(nonceKey);
+                mNonceKey = new SecretKeySpec(nonceKey, StatelessNonces.ALGORITHM);
+            }
 
             // init request queue and related modules.
             logger.debug("CertificateAuthority init: initRequestQueue");
@@ -643,6 +781,11 @@ public class CertificateAuthority
             initCRL();
 
             if (isHostAuthority() && haveLightweightCAsContainer()) {
+                mLazyAuthorityInit = mConfig.getBoolean("lazyAuthorityInit", false);
+                mAuthorityIdleTimeout = mConfig.getInteger("authorityIdleTimeout", 0) * 1000L;
+
+                long start = System.currentTimeMillis();
+
                 new Thread(this, "authorityMonitor").start();
                 try {
                     initialLoadDone.await();
@@ -651,6 +794,16 @@ public class CertificateAuthority
                             + "while waiting for initial load of authorities.");
                 }
 
+                Runtime runtime = Runtime.getRuntime();
+                logger.info("CertificateAuthority: loaded " + caMap.size() + " authorities in "
+                        + (System.currentTimeMillis() - start) + " ms"
+                        + (mLazyAuthorityInit ? " (lazy)" : "")
+                        + ", heap used: " + (runtime.totalMemory() - runtime.freeMemory()) / 1024 + " KB");
+
+                if (mLazyAuthorityInit && mAuthorityIdleTimeout > 0) {
+                    startAuthorityIdleMonitor();
+                }
+
                 if (!foundHostAuthority) {
                     logger.debug("loadLightweightCAs: no entry for host authority");
                     logger.debug("loadLightweightCAs: adding entry for host authority");
@@ -1026,10 +1179,30 @@ public class CertificateAuthority
             mCertRepot.shutdown();
         }
 
+        if (mRequestQueue != null) {
+            mRequestQueue.shutdown();
+        }
+
+        if (mNotify != null) {
+            mNotify.shutdown();
+        }
+
         if (mPublisherProcessor != null) {
             mPublisherProcessor.shutdown();
         }
 
+        synchronized (this) {
+            if (mBulkEnrollmentExecutor != null) {
+                mBulkEnrollmentExecutor.shutdownNow();
+                mBulkEnrollmentExecutor = null;
+            }
+
+            if (authorityIdleMonitor != null) {
+                authorityIdleMonitor.shutdownNow();
+                authorityIdleMonitor = null;
+            }
+        }
+
         /* Stop the activityMonitor thread
          *
          * dbFactory.reset() will disconnect all connections,
@@ -1047,6 +1220,41 @@ public class CertificateAuthority
         }
     }
 
+    public ExecutorService getBulkEnrollmentExecutor() {
+
+        // lightweight authorities share the executor of the host authority
+        if (!isHostAuthority()) {
+            return hostCA.getBulkEnrollmentExecutor();
+        }
+
+        synchronized (this) {
+            if (mBulkEnrollmentExecutor == null) {
+                int threads = Runtime.getRuntime().availableProcessors();
+                try {
+                    int n = mConfig.getInteger(PROP_BULK_ENROLLMENT_THREADS, 0);
+                    if (n > 0) {
+                        threads = n;
+                    }
+                } catch (EBaseException e) {
+                    logger.warn("CertificateAuthority: Invalid " + PROP_BULK_ENROLLMENT_THREADS + ": " + e.getMessage(), e);
+                }
+
+                logger.info("CertificateAuthority: Enrolling bulk requests with " + threads + " thread(s)");
+
+                mBulkEnrollmentExecutor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                    private final AtomicInteger threadNumber = new AtomicInteger();
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "BulkEnrollment-" + threadNumber.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+            }
+
+            return mBulkEnrollmentExecutor;
+        }
+    }
+
     /**
      * Retrieves the configuration store of this subsystem.
      * <P>
@@ -1075,14 +1283,17 @@ public class CertificateAuthority
     }
 
     public SignatureAlgorithm getDefaultSignatureAlgorithm() {
+        ensureInitialized();
         return mSigningUnit.getDefaultSignatureAlgorithm();
     }
 
     public String getDefaultAlgorithm() {
+        ensureInitialized();
         return mSigningUnit.getDefaultAlgorithm();
     }
 
     public void setDefaultAlgorithm(String algorithm) throws EBaseException {
+        ensureInitialized();
         mSigningUnit.setDefaultAlgorithm(algorithm);
     }
 
@@ -1402,14 +1613,17 @@ public class CertificateAuthority
      * @return request identifier
      */
     public ISigningUnit getSigningUnit() {
+        ensureInitialized();
         return mSigningUnit;
     }
 
     public ISigningUnit getCRLSigningUnit() {
+        ensureInitialized();
         return mCRLSigningUnit;
     }
 
     public ISigningUnit getOCSPSigningUnit() {
+        ensureInitialized();
         return mOCSPSigningUnit;
     }
 
@@ -1563,6 +1777,7 @@ public class CertificateAuthority
             default:
                 break;
             }
+
         } catch (NoSuchAlgorithmException e) {
             log(ILogger.LL_FAILURE, CMS.getLogMessage("CMSCORE_CA_CA_SIGN_CERT", e.toString(), e.getMessage()));
             throw new ECAException(
@@ -1583,6 +1798,115 @@ public class CertificateAuthority
         return signedcert;
     }
 
+    /**
+     * Signs the given certificate infos using the specified signing
+     * algorithm. The algorithm is resolved once and the signing unit
+     * signs the whole batch with pooled signature contexts.
+     * If no algorithm is specified the CA's default algorithm is used.
+     * <P>
+     *
+     * @param certInfos the certificate infos to be signed.
+     * @param algname the signing algorithm to use, or null for the
+     *            CA's default signing algorithm.
+     * @return signed certificates in the same order as the certificate infos
+     */
+    public X509CertImpl[] sign(X509CertInfo[] certInfos, String algname)
+            throws EBaseException {
+
+        CMSEngine engine = CMS.getCMSEngine();
+        ensureReady();
+
+        IStatsSubsystem statsSub = (IStatsSubsystem) engine.getSubsystem(IStatsSubsystem.ID);
+        if (statsSub != null) {
+            statsSub.startTiming("signing");
+        }
+
+        try {
+            if (algname == null) {
+                algname = mSigningUnit.getDefaultAlgorithm();
+            }
+
+            AlgorithmId alg = AlgorithmId.get(algname);
+
+            logger.debug("CA cert signing: encoding " + certInfos.length + " certs");
+            byte[][] rawCerts = new byte[certInfos.length][];
+
+            for (int i = 0; i < certInfos.length; i++) {
+
+                if (certInfos[i] == null) {
+                    log(ILogger.LL_FAILURE, CMS.getLogMessage("CMSCORE_CA_CA_NO_CERTINFO"));
+                    throw new ECAException(
+                            CMS.getUserMessage("CMS_CA_SIGNING_CERT_FAILED", "Missing certificate info"));
+                }
+
+                try (DerOutputStream tmp = new DerOutputStream()) {
+                    certInfos[i].encode(tmp);
+                    rawCerts[i] = tmp.toByteArray();
+                }
+            }
+
+            logger.debug("CA cert signing: signing " + certInfos.length + " certs");
+            byte[][] signatures = mSigningUnit.sign(rawCerts, algname);
+
+            X509CertImpl[] signedcerts = new X509CertImpl[certInfos.length];
+            for (int i = 0; i < certInfos.length; i++) {
+                signedcerts[i] = createSignedCert(certInfos[i], rawCerts[i], alg, signatures[i]);
+            }
+
+            return signedcerts;
+
+        } catch (NoSuchAlgorithmException e) {
+            log(ILogger.LL_FAILURE, CMS.getLogMessage("CMSCORE_CA_CA_SIGN_CERT", e.toString(), e.getMessage()));
+            throw new ECAException(
+                    CMS.getUserMessage("CMS_CA_SIGNING_CERT_FAILED", e.getMessage()));
+        } catch (IOException e) {
+            log(ILogger.LL_FAILURE, CMS.getLogMessage("CMSCORE_CA_CA_SIGN_CERT", e.toString(), e.getMessage()));
+            throw new ECAException(
+                    CMS.getUserMessage("CMS_CA_SIGNING_CERT_FAILED", e.getMessage()));
+        } catch (CertificateException e) {
+            log(ILogger.LL_FAILURE, CMS.getLogMessage("CMSCORE_CA_CA_SIGN_CERT", e.toString(), e.getMessage()));
+            throw new ECAException(
+                    CMS.getUserMessage("CMS_CA_SIGNING_CERT_FAILED", e.getMessage()));
+        } finally {
+            if (statsSub != null) {
+                statsSub.endTiming("signing");
+            }
+        }
+    }
+
+    /**
+     * Wraps the encoded certificate info, the algorithm identifier
+     * and the signature into a signed certificate.
+     */
+    private X509CertImpl createSignedCert(
+            X509CertInfo certInfo,
+            byte[] rawCert,
+            AlgorithmId alg,
+            byte[] signature) throws IOException, CertificateException {
+
+        try (DerOutputStream out = new DerOutputStream();
+                DerOutputStream tmp = new DerOutputStream()) {
+
+            tmp.write(rawCert);
+            alg.encode(tmp);
+            tmp.putBitString(signature);
+
+            // Wrap the signed data in a SEQUENCE { data, algorithm, sig }
+            out.write(DerValue.tag_Sequence, tmp);
+
+            switch (mFastSigning) {
+            case FASTSIGNING_DISABLED:
+                return new X509CertImpl(out.toByteArray());
+
+            case FASTSIGNING_ENABLED:
+                return new X509CertImpl(out.toByteArray(), certInfo);
+
+            default:
+                return null;
+            }
+        }
+    }
+
     /**
      * Sign a byte array using the specified algorithm.
      * If algorithm is null the CA's default algorithm is used.
@@ -1614,11 +1938,14 @@ public class CertificateAuthority
      * @return this CA's cert chain.
      */
     public CertificateChain getCACertChain() {
+        ensureInitialized();
         return mCACertChain;
     }
 
     public X509CertImpl getCACert() throws EBaseException {
 
+        ensureInitialized();
+
         if (mCaCert != null) {
             return mCaCert;
         }
@@ -1644,10 +1971,13 @@ public class CertificateAuthority
     }
 
     public org.mozilla.jss.crypto.X509Certificate getCaX509Cert() {
+        ensureInitialized();
         return mCaX509Cert;
     }
 
     public String[] getCASigningAlgorithms() {
+        ensureInitialized();
+
         if (mCASigningAlgorithms != null)
             return mCASigningAlgorithms;
 
@@ -2238,9 +2568,16 @@ public class CertificateAuthority
                 IRequestScheduler scheduler = (IRequestScheduler)
                         Class.forName(schedulerClass).newInstance();
 
+                scheduler.init(mConfig.getSubStore("requestScheduler"));
                 mRequestQueue.setRequestScheduler(scheduler);
+
+            } catch (EBaseException e) {
+                logger.error("CertificateAuthority: Unable to initialize request scheduler " + schedulerClass + ": " + e.getMessage(), e);
+                throw e;
+
             } catch (Exception e) {
-                // do nothing here
+                logger.error("CertificateAuthority: Unable to initialize request scheduler " + schedulerClass + ": " + e.getMessage(), e);
+                throw new EBaseException("Unable to initialize request scheduler: " + e.getMessage(), e);
             }
         }
     }
@@ -2734,13 +3071,21 @@ public class CertificateAuthority
      * @return the authority, or null if not found
      */
     public ICertificateAuthority getCA(AuthorityID aid) {
-        return aid == null ? hostCA : caMap.get(aid);
+        if (aid == null)
+            return hostCA;
+
+        CertificateAuthority ca = (CertificateAuthority) caMap.get(aid);
+        if (ca != null)
+            ca.ensureInitialized();
+        return ca;
     }
 
     public ICertificateAuthority getCA(X500Name dn) {
         for (ICertificateAuthority ca : getCAs()) {
-            if (ca.getX500Name().equals(dn))
+            if (ca.getX500Name().equals(dn)) {
+                ((CertificateAuthority) ca).ensureInitialized();
                 return ca;
+            }
         }
         return null;
     }
@@ -2930,7 +3275,7 @@ public class CertificateAuthority
             hostCA, subjectX500Name,
             aid, this.authorityID, cert.getSerialNumber(),
             nickname, Collections.singleton(thisClone),
-            description, true);
+            description, true, false);
 
         // Update authority record with serial of issued cert
         LDAPModificationSet mods = new LDAPModificationSet();
@@ -2948,6 +3293,8 @@ public class CertificateAuthority
     public void renewAuthority(HttpServletRequest httpReq)
             throws EBaseException {
 
+        ensureInitialized();
+
         CMSEngine engine = CMS.getCMSEngine();
         if (
             authorityParentID != null
@@ -3195,6 +3542,9 @@ public class CertificateAuthority
         if (hasSubCAs)
             throw new CANotLeafException("CA with sub-CAs cannot be deleted (delete sub-CAs first)");
 
+        // the certificate is needed to revoke it and remove it from NSSDB
+        ensureInitialized();
+
         shutdown();
 
         revokeAuthority(httpReq);
@@ -3290,6 +3640,32 @@ public class CertificateAuthority
         }
     }
 
+    private synchronized void startAuthorityIdleMonitor() {
+
+        if (authorityIdleMonitor != null) {
+            return;
+        }
+
+        authorityIdleMonitor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "authorityIdleMonitor");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        long period = Math.max(mAuthorityIdleTimeout / 2, 1000);
+        authorityIdleMonitor.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                try {
+                    releaseIdleAuthorities();
+                } catch (Exception e) {
+                    logger.warn("authorityIdleMonitor: " + e.getMessage(), e);
+                }
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
     private void checkInitialLoadDone() {
         if (initialNumAuthorities != null
                 && numAuthoritiesLoaded >= initialNumAuthorities)
@@ -3530,7 +3906,7 @@ public class CertificateAuthority
         try {
             CertificateAuthority ca = new CertificateAuthority(
                 hostCA, dn, aid, parentAID, serial,
-                keyNick, keyHosts, desc, enabled);
+                keyNick, keyHosts, desc, enabled, hostCA.mLazyAuthorityInit);
             caMap.put(aid, ca);
             entryUSNs.put(aid, newEntryUSN);
             nsUniqueIds.put(aid, nsUniqueId);
@@ -21,6 +21,15 @@ import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
 import java.security.SignatureException;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
 
 import org.mozilla.jss.CryptoManager;
 import org.mozilla.jss.NoSuchTokenException;
@@ -63,6 +72,16 @@ public final class SigningUnit implements ISigningUnit {
 
     public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(SigningUnit.class);
 
+    /**
+     * Maximum number of initialized signature contexts kept per
+     * signing algorithm. It should not exceed the number of sessions
+     * the token allows. Zero disables pooling.
+     */
+    public static final String PROP_CONTEXT_POOL_SIZE = "contextPoolSize";
+
+    // initializes pooled signature contexts off the signing path
+    private static ExecutorService contextExecutor;
+
     private CryptoManager mManager = null;
     private CryptoToken mToken = null;
     private PublicKey mPubk = null;
@@ -82,6 +101,15 @@ public final class SigningUnit implements ISigningUnit {
     private String mDefSigningAlgname = null;
     private SignatureAlgorithm mDefSigningAlgorithm = null;
 
+    // algorithms already validated by checkSigningAlgorithmFromName()
+    private Map<String, SignatureAlgorithm> mSigningAlgorithms =
+            new ConcurrentHashMap<String, SignatureAlgorithm>();
+
+    // signature context pools for the current key, replaced on re-init
+    private volatile Map<SignatureAlgorithm, SignatureContextPool> mSignatureContexts =
+            new ConcurrentHashMap<SignatureAlgorithm, SignatureContextPool>();
+    private int mContextPoolSize;
+
     public SigningUnit() {
     }
 
@@ -183,11 +211,23 @@ public final class SigningUnit implements ISigningUnit {
 
             mPubk = mCert.getPublicKey();
 
+            // contexts initialized with a previous key cannot be reused;
+            // the pools are replaced rather than cleared so that contexts
+            // still in use are returned to the pool of their own key
+            mSigningAlgorithms.clear();
+            mContextPoolSize = config.getInteger(PROP_CONTEXT_POOL_SIZE,
+                    Runtime.getRuntime().availableProcessors());
+            mSignatureContexts = new ConcurrentHashMap<SignatureAlgorithm, SignatureContextPool>();
+            logger.debug("SigningUnit: signature context pool size: " + mContextPoolSize);
+
             // get def alg and check if def sign alg is valid for token.
             mDefSigningAlgname = config.getString(PROP_DEFAULT_SIGNALG);
             mDefSigningAlgorithm = checkSigningAlgorithmFromName(mDefSigningAlgname);
             logger.debug("SigningUnit: signing algorithm: " + mDefSigningAlgorithm);
 
+            mSigningAlgorithms.put(mDefSigningAlgname, mDefSigningAlgorithm);
+            getSignatureContextPool(mDefSigningAlgorithm);
+
             mInited = true;
 
         } catch (java.security.cert.CertificateException e) {
@@ -252,31 +292,234 @@ public final class SigningUnit implements ISigningUnit {
         }
     }
 
+    /**
+     * Returns the JSS algorithm for the given JCA algorithm name,
+     * validating it against the token and key on first use.
+     */
+    private SignatureAlgorithm getSigningAlgorithm(String algname)
+            throws EBaseException {
+
+        if (algname == null) {
+            return mDefSigningAlgorithm;
+        }
+
+        SignatureAlgorithm signAlg = mSigningAlgorithms.get(algname);
+        if (signAlg == null) {
+            signAlg = checkSigningAlgorithmFromName(algname);
+            mSigningAlgorithms.put(algname, signAlg);
+        }
+
+        return signAlg;
+    }
+
+    private static synchronized ExecutorService getContextExecutor() {
+
+        if (contextExecutor == null) {
+            contextExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "SignatureContextPool");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        return contextExecutor;
+    }
+
+    /**
+     * Returns the pool of signature contexts for the given algorithm,
+     * or null if pooling is disabled. A new pool is filled in the
+     * background.
+     */
+    private SignatureContextPool getSignatureContextPool(SignatureAlgorithm signAlg) {
+
+        if (mContextPoolSize <= 0) {
+            return null;
+        }
+
+        Map<SignatureAlgorithm, SignatureContextPool> pools = mSignatureContexts;
+
+        SignatureContextPool pool = pools.get(signAlg);
+        if (pool != null) {
+            return pool;
+        }
+
+        SignatureContextPool newPool = new SignatureContextPool(mToken, signAlg, mPrivk, mContextPoolSize);
+        pool = pools.putIfAbsent(signAlg, newPool);
+        if (pool != null) {
+            return pool;
+        }
+
+        newPool.fill();
+        return newPool;
+    }
+
+    /**
+     * A bounded pool of signature contexts initialized with one key.
+     * <p>
+     * A slot is reserved for every context that is pooled or waiting
+     * to be re-initialized, so no more than the pool size of contexts
+     * are ever held outside of the callers, and the initialization
+     * tasks queued on the shared executor are bounded as well.
+     */
+    static class SignatureContextPool {
+
+        CryptoToken token;
+        SignatureAlgorithm signAlg;
+        PrivateKey privk;
+
+        BlockingQueue<Signature> contexts;
+        Semaphore slots;
+
+        SignatureContextPool(CryptoToken token, SignatureAlgorithm signAlg, PrivateKey privk, int size) {
+            this.token = token;
+            this.signAlg = signAlg;
+            this.privk = privk;
+            this.contexts = new ArrayBlockingQueue<Signature>(size);
+            this.slots = new Semaphore(size);
+        }
+
+        /**
+         * Returns a signature context initialized for signing, taken
+         * from the pool if one is available.
+         */
+        Signature get() throws NoSuchAlgorithmException, TokenException, InvalidKeyException {
+
+            Signature signer = contexts.poll();
+            if (signer != null) {
+                slots.release();
+                return signer;
+            }
+
+            logger.debug("SigningUnit: creating signature context for " + signAlg);
+            signer = token.getSignatureContext(signAlg);
+            signer.initSign(privk);
+            return signer;
+        }
+
+        /**
+         * Fills the free slots of the pool in the background.
+         */
+        void fill() {
+
+            if (!slots.tryAcquire()) {
+                return;
+            }
+
+            submit(new Runnable() {
+                public void run() {
+                    try {
+                        do {
+                            Signature signer = token.getSignatureContext(signAlg);
+                            signer.initSign(privk);
+                            contexts.add(signer);
+                        } while (slots.tryAcquire());
+
+                        logger.debug("SigningUnit: filled signature context pool for " + signAlg);
+
+                    } catch (Exception e) {
+                        slots.release();
+                        logger.warn("SigningUnit: Unable to fill signature context pool for "
+                                + signAlg + ": " + e.getMessage(), e);
+                    }
+                }
+            });
+        }
+
+        /**
+         * Re-initializes a signature context after a successful
+         * signature and returns it to the pool in the background.
+         * The context is dropped if the pool is full.
+         */
+        void release(final Signature signer) {
+
+            if (!slots.tryAcquire()) {
+                return;
+            }
+
+            submit(new Runnable() {
+                public void run() {
+                    try {
+                        signer.initSign(privk);
+                        contexts.add(signer);
+
+                    } catch (Exception e) {
+                        slots.release();
+                        logger.warn("SigningUnit: Unable to reinitialize signature context: " + e.getMessage(), e);
+                    }
+                }
+            });
+        }
+
+        void submit(Runnable task) {
+            try {
+                getContextExecutor().execute(task);
+
+            } catch (RejectedExecutionException e) {
+                slots.release();
+                logger.warn("SigningUnit: Unable to initialize signature context: " + e.getMessage());
+            }
+        }
+    }
+
     /**
      * @param algname is expected to be one of JCA's algorithm names.
      */
     public byte[] sign(byte[] data, String algname)
             throws EBaseException {
-        CMSEngine engine = (CMSEngine) CMS.getCMSEngine();
         if (!mInited) {
             throw new EBaseException("CASigningUnit not initialized!");
         }
-        boolean testSignatureFailure = false;
-        try {
-            // XXX for now do this mapping until James changes the names
-            // to match JCA names and provide a getAlgorithm method.
-            SignatureAlgorithm signAlg = mDefSigningAlgorithm;
 
-            if (algname != null) {
-                signAlg = checkSigningAlgorithmFromName(algname);
-            }
+        // XXX for now do this mapping until James changes the names
+        // to match JCA names and provide a getAlgorithm method.
+        SignatureAlgorithm signAlg = getSigningAlgorithm(algname);
 
-            // XXX use a pool of signers based on alg ?
-            // XXX Map algor. name to id. hack: use hardcoded define for now.
+        return sign(data, signAlg, algname);
+    }
+
+    /**
+     * Signs each of the given data blocks with the same algorithm.
+     * The algorithm is resolved once for the whole batch and every
+     * block is signed with a pooled signature context.
+     *
+     * @param data the data blocks to be signed
+     * @param algname is expected to be one of JCA's algorithm names.
+     * @return the signatures in the same order as the data blocks
+     */
+    public byte[][] sign(byte[][] data, String algname)
+            throws EBaseException {
+        if (!mInited) {
+            throw new EBaseException("CASigningUnit not initialized!");
+        }
+
+        SignatureAlgorithm signAlg = getSigningAlgorithm(algname);
+        logger.debug("SigningUnit: signing " + data.length + " data blocks with " + signAlg);
+
+        byte[][] signatures = new byte[data.length][];
+        for (int i = 0; i < data.length; i++) {
+            signatures[i] = sign(data[i], signAlg, algname);
+        }
+
+        return signatures;
+    }
+
+    private byte[] sign(byte[] data, SignatureAlgorithm signAlg, String algname)
+            throws EBaseException {
+        CMSEngine engine = (CMSEngine) CMS.getCMSEngine();
+        boolean testSignatureFailure = false;
+        try {
             logger.debug("Getting algorithm context for " + algname + " " + signAlg);
-            Signature signer = mToken.getSignatureContext(signAlg);
+            SignatureContextPool pool = getSignatureContextPool(signAlg);
+            Signature signer;
+            if (pool != null) {
+                signer = pool.get();
+            } else {
+                signer = mToken.getSignatureContext(signAlg);
+                signer.initSign(mPrivk);
+            }
 
-            signer.initSign(mPrivk);
             signer.update(data);
 
             /* debugging
@@ -297,7 +540,14 @@ public final class SigningUnit implements ISigningUnit {
                 throw new SignatureException("Signature Exception forced for testing purposes.");
             }
 
-            return signer.sign();
+            byte[] signature = signer.sign();
+
+            // contexts that failed are dropped rather than pooled
+            if (pool != null) {
+                pool.release(signer);
+            }
+
+            return signature;
         } catch (NoSuchAlgorithmException e) {
             log(ILogger.LL_FAILURE, CMS.getLogMessage("OPERATION_ERROR", e.toString()));
             throw new ECAException(
@@ -10,6 +10,7 @@ import org.dogtagpki.server.rest.AccountService;
 import org.dogtagpki.server.rest.AuditService;
 import org.dogtagpki.server.rest.AuthMethodInterceptor;
 import org.dogtagpki.server.rest.CAInfoService;
+import org.dogtagpki.server.rest.DBStatisticsService;
 import org.dogtagpki.server.rest.FeatureService;
 import org.dogtagpki.server.rest.GroupService;
 import org.dogtagpki.server.rest.MessageFormatInterceptor;
@@ -40,6 +41,9 @@ public class CAApplication extends Application {
         // audit
         classes.add(AuditService.class);
 
+        // database statistics
+        classes.add(DBStatisticsService.class);
+
         // installer
         classes.add(CAInstallerService.class);
 
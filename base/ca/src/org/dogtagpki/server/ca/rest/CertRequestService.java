@@ -19,17 +19,27 @@
 package org.dogtagpki.server.ca.rest;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.List;
 
 import javax.ws.rs.PathParam;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
 import org.jboss.resteasy.plugins.providers.atom.Link;
 import org.mozilla.jss.netscape.security.x509.X500Name;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.module.jaxb.JaxbAnnotationModule;
 import com.netscape.certsrv.authentication.EAuthException;
 import com.netscape.certsrv.authorization.EAuthzException;
 import com.netscape.certsrv.base.BadRequestDataException;
@@ -47,6 +57,7 @@ import com.netscape.certsrv.ca.CAMissingCertException;
 import com.netscape.certsrv.ca.CAMissingKeyException;
 import com.netscape.certsrv.ca.CANotFoundException;
 import com.netscape.certsrv.ca.ICertificateAuthority;
+import com.netscape.certsrv.cert.CertBulkEnrollmentItem;
 import com.netscape.certsrv.cert.CertEnrollmentRequest;
 import com.netscape.certsrv.cert.CertRequestInfo;
 import com.netscape.certsrv.cert.CertRequestInfos;
@@ -65,6 +76,7 @@ import com.netscape.certsrv.property.EPropertyException;
 import com.netscape.certsrv.request.RequestId;
 import com.netscape.certsrv.request.RequestNotFoundException;
 import com.netscape.cms.servlet.base.PKIService;
+import com.netscape.cms.servlet.cert.BulkEnrollmentProcessor;
 import com.netscape.cms.servlet.cert.CertRequestDAO;
 import com.netscape.cmscore.apps.CMS;
 import com.netscape.cmscore.apps.CMSEngine;
@@ -119,36 +131,7 @@ public class CertRequestService extends PKIService implements CertRequestResourc
             throw new BadRequestException(message);
         }
 
-        if (aidString != null && adnString != null)
-            throw new BadRequestException("Cannot provide both issuer-id and issuer-dn");
-
-        CMSEngine engine = CMS.getCMSEngine();
-        AuthorityID aid = null;
-        ICertificateAuthority ca = (ICertificateAuthority) engine.getSubsystem(ICertificateAuthority.ID);
-        if (aidString != null) {
-            try {
-                aid = new AuthorityID(aidString);
-            } catch (IllegalArgumentException e) {
-                throw new BadRequestException("invalid AuthorityID: " + aidString, e);
-            }
-            ca = ca.getCA(aid);
-            if (ca == null)
-                throw new ResourceNotFoundException("CA not found: " + aidString);
-        }
-        if (adnString != null) {
-            X500Name adn = null;
-            try {
-                adn = new X500Name(adnString);
-            } catch (IOException e) {
-                throw new BadRequestException("invalid DN: " + adnString, e);
-            }
-            ca = ca.getCA(adn);
-            if (ca == null)
-                throw new ResourceNotFoundException("CA not found: " + adnString);
-            aid = ca.getAuthorityID();
-        }
-        if (!ca.getAuthorityEnabled())
-            throw new ConflictingOperationException("CA not enabled: " + aid.toString());
+        AuthorityID aid = getAuthorityID(aidString, adnString);
 
         data.setRemoteHost(servletRequest.getRemoteHost());
         data.setRemoteAddr(servletRequest.getRemoteAddr());
@@ -192,6 +175,173 @@ public class CertRequestService extends PKIService implements CertRequestResourc
         return createOKResponse(infos);
     }
 
+    @Override
+    public Response enrollCerts(final InputStream data, String aidString, String adnString) {
+        if (data == null) {
+            String message = "Unable to create bulk enrollment request: Missing input data";
+            logger.error(message);
+            throw new BadRequestException(message);
+        }
+
+        AuthorityID aid = getAuthorityID(aidString, adnString);
+
+        final ObjectMapper mapper = new ObjectMapper();
+        mapper.registerModule(new JaxbAnnotationModule());
+
+        final JsonParser parser;
+        CertEnrollmentRequest template;
+        try {
+            parser = mapper.getFactory().createParser(data);
+            template = readBulkEnrollmentTemplate(mapper, parser);
+
+        } catch (IOException e) {
+            String message = "Invalid bulk enrollment request: " + e.getMessage();
+            logger.error(message, e);
+            throw new BadRequestException(message, e);
+        }
+
+        if (template.isRenewal()) {
+            throw new BadRequestException("Bulk enrollment does not support renewal");
+        }
+
+        template.setRemoteHost(servletRequest.getRemoteHost());
+        template.setRemoteAddr(servletRequest.getRemoteAddr());
+
+        final CertRequestDAO dao = new CertRequestDAO();
+
+        // authenticate before the response is committed so
+        // that authentication failures return the proper status
+        final BulkEnrollmentProcessor processor;
+        try {
+            processor = dao.startBulkEnrollment(aid, template, servletRequest, getLocale(headers));
+
+        } catch (EAuthException e) {
+            String message = "Authentication failed: " + e.getMessage();
+            logger.error(message, e);
+            throw new UnauthorizedException(message, e);
+
+        } catch (EAuthzException e) {
+            String message = "Authorization failed: " + e.getMessage();
+            logger.error(message, e);
+            throw new UnauthorizedException(message, e);
+
+        } catch (BadRequestDataException e) {
+            String message = "Bad request data: " + e.getMessage();
+            logger.error(message, e);
+            throw new BadRequestException(message, e);
+
+        } catch (EBaseException e) {
+            String message = "Unable to create bulk enrollment request: " + e.getMessage();
+            logger.error(message, e);
+            throw new PKIException(message, e);
+        }
+
+        StreamingOutput so = new StreamingOutput() {
+
+            @Override
+            public void write(OutputStream out) throws IOException, WebApplicationException {
+
+                JsonGenerator generator = mapper.getFactory().createGenerator(out);
+
+                generator.writeStartObject();
+                generator.writeArrayFieldStart("entries");
+
+                try {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        CertBulkEnrollmentItem item = mapper.readValue(parser, CertBulkEnrollmentItem.class);
+
+                        for (BulkEnrollmentProcessor.Result result : processor.submit(
+                                item.getId(), item.getRequest(), item.getRequestType())) {
+                            writeBulkEnrollmentResult(mapper, generator, dao, result);
+                        }
+
+                        BulkEnrollmentProcessor.Result result;
+                        while ((result = processor.poll()) != null) {
+                            writeBulkEnrollmentResult(mapper, generator, dao, result);
+                        }
+                    }
+
+                    BulkEnrollmentProcessor.Result result;
+                    while ((result = processor.take()) != null) {
+                        writeBulkEnrollmentResult(mapper, generator, dao, result);
+                    }
+
+                } catch (InterruptedException e) {
+                    // the response has already been committed
+                    logger.error("Bulk enrollment interrupted", e);
+                    throw new IOException("Bulk enrollment interrupted", e);
+
+                } finally {
+                    processor.shutdown();
+                    parser.close();
+                }
+
+                generator.writeEndArray();
+
+                generator.writeNumberField("total", processor.getTotal());
+                generator.writeNumberField("issued", processor.getIssued());
+                generator.writeNumberField("deferred", processor.getDeferred());
+                generator.writeNumberField("failed", processor.getFailed());
+                generator.writeNumberField("elapsed", processor.getElapsedTime());
+                generator.writeNumberField("throughput", processor.getThroughput());
+
+                generator.writeEndObject();
+                generator.flush();
+            }
+        };
+
+        return Response.ok(so, MediaType.APPLICATION_JSON).build();
+    }
+
+    /**
+     * Reads the template request and positions the parser
+     * at the start of the array of CSRs.
+     */
+    private CertEnrollmentRequest readBulkEnrollmentTemplate(ObjectMapper mapper, JsonParser parser)
+            throws IOException {
+
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new BadRequestException("Invalid bulk enrollment request: Expected JSON object");
+        }
+
+        CertEnrollmentRequest template = null;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+
+            if ("Template".equals(name)) {
+                template = mapper.readValue(parser, CertEnrollmentRequest.class);
+
+            } else if ("Items".equals(name)) {
+                if (template == null) {
+                    throw new BadRequestException("Invalid bulk enrollment request: Template must precede Items");
+                }
+                if (token != JsonToken.START_ARRAY) {
+                    throw new BadRequestException("Invalid bulk enrollment request: Items must be an array");
+                }
+                return template;
+
+            } else {
+                parser.skipChildren();
+            }
+        }
+
+        throw new BadRequestException("Invalid bulk enrollment request: Missing Template or Items");
+    }
+
+    private void writeBulkEnrollmentResult(
+            ObjectMapper mapper,
+            JsonGenerator generator,
+            CertRequestDAO dao,
+            BulkEnrollmentProcessor.Result result) throws IOException {
+
+        mapper.writeValue(generator, dao.createBulkEnrollmentResult(result, uriInfo));
+
+        // send each result to the client as soon as it is available
+        generator.flush();
+    }
+
     @Override
     public Response approveRequest(RequestId id, CertReviewResponse data) {
         changeRequestState(id, data, "approve");
@@ -493,4 +643,44 @@ public class CertRequestService extends PKIService implements CertRequestResourc
 
         return createOKResponse(infos);
     }
+
+    /**
+     * Returns the ID of the CA specified by issuer-id or issuer-dn,
+     * or null for the host CA.
+     */
+    private AuthorityID getAuthorityID(String aidString, String adnString) {
+
+        if (aidString != null && adnString != null)
+            throw new BadRequestException("Cannot provide both issuer-id and issuer-dn");
+
+        CMSEngine engine = CMS.getCMSEngine();
+        AuthorityID aid = null;
+        ICertificateAuthority ca = (ICertificateAuthority) engine.getSubsystem(ICertificateAuthority.ID);
+        if (aidString != null) {
+            try {
+                aid = new AuthorityID(aidString);
+            } catch (IllegalArgumentException e) {
+                throw new BadRequestException("invalid AuthorityID: " + aidString, e);
+            }
+            ca = ca.getCA(aid);
+            if (ca == null)
+                throw new ResourceNotFoundException("CA not found: " + aidString);
+        }
+        if (adnString != null) {
+            X500Name adn = null;
+            try {
+                adn = new X500Name(adnString);
+            } catch (IOException e) {
+                throw new BadRequestException("invalid DN: " + adnString, e);
+            }
+            ca = ca.getCA(adn);
+            if (ca == null)
+                throw new ResourceNotFoundException("CA not found: " + adnString);
+            aid = ca.getAuthorityID();
+        }
+        if (!ca.getAuthorityEnabled())
+            throw new ConflictingOperationException("CA not enabled: " + aid.toString());
+
+        return aid;
+    }
 }
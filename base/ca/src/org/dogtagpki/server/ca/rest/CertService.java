@@ -20,21 +20,24 @@ package org.dogtagpki.server.ca.rest;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigInteger;
 import java.net.URI;
 import java.security.InvalidKeyException;
 import java.security.Principal;
 import java.security.PublicKey;
-import java.security.SecureRandom;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.List;
-import java.util.Map;
 
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
 import org.apache.catalina.realm.GenericPrincipal;
 import org.jboss.resteasy.plugins.providers.atom.Link;
@@ -51,11 +54,18 @@ import org.mozilla.jss.netscape.security.x509.X509CertImpl;
 import org.mozilla.jss.netscape.security.x509.X509ExtensionException;
 import org.mozilla.jss.netscape.security.x509.X509Key;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.module.jaxb.JaxbAnnotationModule;
+
 import com.netscape.certsrv.base.BadRequestException;
 import com.netscape.certsrv.base.EBaseException;
+import com.netscape.certsrv.base.INonceStore;
 import com.netscape.certsrv.base.PKIException;
+import com.netscape.certsrv.base.ResourceNotFoundException;
 import com.netscape.certsrv.base.UnauthorizedException;
 import com.netscape.certsrv.ca.ICertificateAuthority;
+import com.netscape.certsrv.cert.CertBulkRevokeRequest;
 import com.netscape.certsrv.cert.CertData;
 import com.netscape.certsrv.cert.CertDataInfo;
 import com.netscape.certsrv.cert.CertDataInfos;
@@ -63,9 +73,11 @@ import com.netscape.certsrv.cert.CertNotFoundException;
 import com.netscape.certsrv.cert.CertRequestInfo;
 import com.netscape.certsrv.cert.CertResource;
 import com.netscape.certsrv.cert.CertRetrievalRequest;
+import com.netscape.certsrv.cert.CertRevokeJobInfo;
 import com.netscape.certsrv.cert.CertRevokeRequest;
 import com.netscape.certsrv.cert.CertSearchRequest;
 import com.netscape.certsrv.dbs.EDBRecordNotFoundException;
+import com.netscape.certsrv.dbs.IElementProcessor;
 import com.netscape.certsrv.dbs.certdb.CertId;
 import com.netscape.certsrv.dbs.certdb.ICertRecord;
 import com.netscape.certsrv.dbs.certdb.ICertRecordList;
@@ -75,6 +87,7 @@ import com.netscape.certsrv.logging.AuditFormat;
 import com.netscape.certsrv.logging.ILogger;
 import com.netscape.certsrv.request.IRequest;
 import com.netscape.cms.servlet.base.PKIService;
+import com.netscape.cms.servlet.cert.BulkRevocationJob;
 import com.netscape.cms.servlet.cert.CertRequestDAO;
 import com.netscape.cms.servlet.cert.FilterBuilder;
 import com.netscape.cms.servlet.cert.RevocationProcessor;
@@ -83,7 +96,6 @@ import com.netscape.cmscore.apps.CMS;
 import com.netscape.cmscore.apps.CMSEngine;
 import com.netscape.cmscore.cert.CertPrettyPrint;
 import com.netscape.cmscore.cert.CertUtils;
-import com.netscape.cmscore.security.JssSubsystem;
 import com.netscape.cmsutil.ldap.LDAPUtil;
 
 /**
@@ -96,7 +108,6 @@ public class CertService extends PKIService implements CertResource {
 
     ICertificateAuthority authority;
     ICertificateRepository repo;
-    SecureRandom random;
 
     public static final int DEFAULT_MAXTIME = 0;
     public static final int DEFAULT_MAXRESULTS = 20;
@@ -105,10 +116,6 @@ public class CertService extends PKIService implements CertResource {
 
         CMSEngine engine = CMS.getCMSEngine();
         authority = (ICertificateAuthority) engine.getSubsystem(ICertificateAuthority.ID);
-        if (authority.noncesEnabled()) {
-            JssSubsystem jssSubsystem = (JssSubsystem) engine.getSubsystem(JssSubsystem.ID);
-            random = jssSubsystem.getRandomNumberGenerator();
-        }
         repo = authority.getCertificateRepository();
     }
 
@@ -371,6 +378,102 @@ public class CertService extends PKIService implements CertResource {
         }
     }
 
+    @Override
+    public Response startRevokeJob(CertBulkRevokeRequest request) {
+
+        if (request == null || request.getSearchRequest() == null) {
+            throw new BadRequestException("Unable to revoke certificates: Missing search request");
+        }
+
+        RevocationReason reason = request.getReason();
+        if (reason == null) {
+            throw new BadRequestException("Unable to revoke certificates: Missing revocation reason");
+        }
+
+        if (reason == RevocationReason.REMOVE_FROM_CRL) {
+            throw new BadRequestException("Unable to revoke certificates: Invalid revocation reason: " + reason);
+        }
+
+        // TODO remove hardcoded role names and consult authzmgr
+        // (so that we can handle externally-authenticated principals)
+        GenericPrincipal principal = (GenericPrincipal) servletRequest.getUserPrincipal();
+        if (!principal.hasRole("Certificate Manager Agents")) {
+            throw new UnauthorizedException("Unable to revoke certificates: Not an agent");
+        }
+
+        String filter = createSearchFilter(request.getSearchRequest());
+        logger.info("Revoking certificates matching " + filter);
+
+        BulkRevocationJob job = new BulkRevocationJob(
+                "caDoRevoke-agent",
+                getLocale(headers),
+                authority,
+                filter,
+                reason,
+                request.getInvalidityDate(),
+                request.getComments(),
+                AuditFormat.FROMAGENT + " agentID: " + principal.getName());
+
+        BulkRevocationJob.start(job);
+
+        URI uri = uriInfo.getAbsolutePathBuilder().path(job.getId()).build();
+        return createCreatedResponse(createRevokeJobInfo(job), uri);
+    }
+
+    @Override
+    public Response getRevokeJob(String id) {
+        return createOKResponse(createRevokeJobInfo(findRevokeJob(id)));
+    }
+
+    @Override
+    public Response cancelRevokeJob(String id) {
+
+        BulkRevocationJob job = findRevokeJob(id);
+
+        logger.info("Canceling revocation job " + id);
+        job.cancel();
+
+        return createOKResponse(createRevokeJobInfo(job));
+    }
+
+    private BulkRevocationJob findRevokeJob(String id) {
+
+        if (id == null) {
+            throw new BadRequestException("Missing revocation job ID");
+        }
+
+        BulkRevocationJob job = BulkRevocationJob.getJob(id);
+        if (job == null) {
+            throw new ResourceNotFoundException("Revocation job not found: " + id);
+        }
+
+        return job;
+    }
+
+    private CertRevokeJobInfo createRevokeJobInfo(BulkRevocationJob job) {
+
+        CertRevokeJobInfo info = new CertRevokeJobInfo();
+        info.setId(job.getId());
+        info.setStatus(job.getStatus());
+        info.setFilter(job.getFilter());
+        info.setReason(job.getReason());
+        info.setProcessed(job.getProcessed());
+        info.setRevoked(job.getRevoked());
+        info.setSkipped(job.getSkipped());
+        info.setFailed(job.getFailed());
+
+        BigInteger lastSerialNumber = job.getLastSerialNumber();
+        if (lastSerialNumber != null) {
+            info.setLastSerialNumber(new CertId(lastSerialNumber));
+        }
+
+        info.setStartTime(job.getStartTime());
+        info.setEndTime(job.getEndTime());
+        info.setErrors(job.getErrors());
+
+        return info;
+    }
+
     private String createSearchFilter(String status) {
         String filter;
 
@@ -393,7 +496,8 @@ public class CertService extends PKIService implements CertResource {
     }
 
     @Override
-    public Response listCerts(String status, Integer maxResults, Integer maxTime, Integer start, Integer size) {
+    public Response listCerts(String status, Integer maxResults, Integer maxTime, Integer start, Integer size,
+            String after, Boolean stream) {
 
         logger.info("Listing certificates");
 
@@ -405,6 +509,14 @@ public class CertService extends PKIService implements CertResource {
         String filter = createSearchFilter(status);
         logger.info("Search filter: " + filter);
 
+        if (stream != null && stream) {
+            return streamCerts(filter, parseContinuationToken(after), maxResults, maxTime);
+        }
+
+        if (after != null) {
+            return listCertsAfter(filter, parseContinuationToken(after), size, maxTime);
+        }
+
         CertDataInfos infos = new CertDataInfos();
         try {
             Enumeration<ICertRecord> e = repo.searchCertificates(filter, maxResults, maxTime);
@@ -448,7 +560,7 @@ public class CertService extends PKIService implements CertResource {
     }
 
     @Override
-    public Response searchCerts(CertSearchRequest data, Integer start, Integer size) {
+    public Response searchCerts(CertSearchRequest data, Integer start, Integer size, String after) {
 
         logger.info("Searching for certificates");
 
@@ -462,6 +574,10 @@ public class CertService extends PKIService implements CertResource {
         String filter = createSearchFilter(data);
         logger.info("Search filter: " + filter);
 
+        if (after != null) {
+            return listCertsAfter(filter, parseContinuationToken(after), size, DEFAULT_MAXTIME);
+        }
+
         CertDataInfos infos = new CertDataInfos();
         try {
             ICertRecordList list = repo.findCertRecordsInList(filter, null, "serialno", size);
@@ -500,6 +616,147 @@ public class CertService extends PKIService implements CertResource {
         return createOKResponse(infos);
     }
 
+    /**
+     * Returns a page of certificates in serial number order after the given
+     * serial number. One more record than the page size is requested to find
+     * out whether there is a next page, whose "next" link carries a
+     * continuation token for the last serial number of this page.
+     */
+    private Response listCertsAfter(String filter, BigInteger after, int size, int maxTime) {
+
+        if (size <= 0) {
+            throw new BadRequestException("Invalid page size: " + size);
+        }
+
+        final List<ICertRecord> records = new ArrayList<ICertRecord>();
+
+        try {
+            repo.processCertificatesAfter(filter, after, size + 1, maxTime, new IElementProcessor() {
+                public void process(Object o) throws EBaseException {
+                    records.add((ICertRecord) o);
+                }
+            });
+
+        } catch (Exception e) {
+            logger.error("Unable to list certificates: " + e.getMessage(), e);
+            throw new PKIException("Unable to list certificates: " + e.getMessage(), e);
+        }
+
+        logger.info("Search results: " + records.size());
+
+        CertDataInfos infos = new CertDataInfos();
+
+        try {
+            for (int i = 0; i < size && i < records.size(); i++) {
+                infos.addEntry(createCertDataInfo(records.get(i)));
+            }
+
+        } catch (Exception e) {
+            logger.error("Unable to list certificates: " + e.getMessage(), e);
+            throw new PKIException("Unable to list certificates: " + e.getMessage(), e);
+        }
+
+        if (records.size() > size) {
+            BigInteger last = records.get(size - 1).getSerialNumber();
+            URI uri = uriInfo.getRequestUriBuilder()
+                    .replaceQueryParam("start")
+                    .replaceQueryParam("after", createContinuationToken(last))
+                    .build();
+            infos.addLink(new Link("next", uri));
+        }
+
+        return createOKResponse(infos);
+    }
+
+    /**
+     * Writes the certificates as a JSON document while they are returned
+     * by the server instead of collecting them first:
+     *
+     * <pre>
+     * { "entries": [ ... ], "next": "&lt;continuation token&gt;" }
+     * </pre>
+     *
+     * The "next" field is only present if the search was limited by maxResults.
+     */
+    private Response streamCerts(final String filter, final BigInteger after, final int maxResults, final int maxTime) {
+
+        final ObjectMapper mapper = new ObjectMapper();
+        mapper.registerModule(new JaxbAnnotationModule());
+
+        StreamingOutput so = new StreamingOutput() {
+
+            @Override
+            public void write(OutputStream out) throws IOException, WebApplicationException {
+
+                final JsonGenerator generator = mapper.getFactory().createGenerator(out);
+                final int[] count = new int[1];
+                final BigInteger[] last = new BigInteger[1];
+
+                generator.writeStartObject();
+                generator.writeArrayFieldStart("entries");
+
+                try {
+                    repo.processCertificatesAfter(filter, after, maxResults, maxTime, new IElementProcessor() {
+                        public void process(Object o) throws EBaseException {
+                            ICertRecord record = (ICertRecord) o;
+                            try {
+                                // flushed to the client as soon as it is written
+                                mapper.writeValue(generator, createCertDataInfo(record));
+                            } catch (IOException | InvalidKeyException e) {
+                                throw new EBaseException("Unable to write certificate: " + e.getMessage(), e);
+                            }
+                            count[0]++;
+                            last[0] = record.getSerialNumber();
+                        }
+                    });
+
+                } catch (EBaseException e) {
+                    // the response has already been committed
+                    logger.error("Unable to stream certificates: " + e.getMessage(), e);
+                    throw new IOException("Unable to stream certificates: " + e.getMessage(), e);
+                }
+
+                generator.writeEndArray();
+
+                if (count[0] == maxResults && last[0] != null) {
+                    generator.writeStringField("next", createContinuationToken(last[0]));
+                }
+
+                generator.writeEndObject();
+                generator.flush();
+
+                logger.info("Streamed " + count[0] + " certificates");
+            }
+        };
+
+        return Response.ok(so, MediaType.APPLICATION_JSON).build();
+    }
+
+    /**
+     * Creates an opaque continuation token for a serial number.
+     */
+    private String createContinuationToken(BigInteger serialNumber) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(serialNumber.toByteArray());
+    }
+
+    /**
+     * Parses a continuation token. An empty token starts from
+     * the lowest serial number.
+     */
+    private BigInteger parseContinuationToken(String token) {
+
+        if (token == null || token.isEmpty()) {
+            return null;
+        }
+
+        try {
+            return new BigInteger(Base64.getUrlDecoder().decode(token));
+
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("Invalid continuation token: " + token);
+        }
+    }
+
     public CertData getCert(CertRetrievalRequest data, boolean generateNonce) throws EBaseException, CertificateEncodingException {
         CertId certId = data.getCertId();
 
@@ -553,10 +810,8 @@ public class CertService extends PKIService implements CertResource {
 
         if (authority.noncesEnabled() && generateNonce) {
             // generate nonce
-            long n = random.nextLong();
-            // store nonce in session
-            Map<Object, Long> nonces = authority.getNonces(servletRequest, "cert-revoke");
-            nonces.put(certId.toBigInteger(), n);
+            INonceStore nonces = authority.getNonces(servletRequest, "cert-revoke");
+            long n = nonces.createNonce(certId.toBigInteger());
             // return nonce to client
             certData.setNonce(n);
         }
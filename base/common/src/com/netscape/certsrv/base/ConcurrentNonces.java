@@ -0,0 +1,129 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2019 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package com.netscape.certsrv.base;
+
+import java.io.Serializable;
+import java.security.SecureRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * This class provides a concurrent storage for nonces bounded by
+ * size and lifetime. Nonces are kept in a concurrent map; a ring
+ * of the most recently issued nonces evicts the oldest one once the
+ * limit is reached, so neither issuing nor verifying takes a lock.
+ * A nonce is removed when it is verified.
+ */
+public class ConcurrentNonces implements INonceStore, Serializable {
+
+    private static final long serialVersionUID = -4062532785395946311L;
+
+    private static final SecureRandom defaultRandom = new SecureRandom();
+
+    private static class Entry implements Serializable {
+
+        private static final long serialVersionUID = 2419457466917226452L;
+
+        final Object id;
+        final long nonce;
+        final long created;
+
+        Entry(Object id, long nonce, long created) {
+            this.id = id;
+            this.nonce = nonce;
+            this.created = created;
+        }
+    }
+
+    private int limit;
+    private long lifetime;
+
+    // not kept when the session is serialized
+    private transient SecureRandom random;
+
+    private ConcurrentHashMap<Object, Entry> entries = new ConcurrentHashMap<Object, Entry>();
+    private AtomicReferenceArray<Entry> ring;
+    private AtomicLong next = new AtomicLong();
+
+    public ConcurrentNonces() {
+        this(100, 0, null);
+    }
+
+    /**
+     * @param limit maximum number of nonces
+     * @param lifetime nonce lifetime in milliseconds, 0 for no expiration
+     * @param random random number generator for new nonces, or null for a default one
+     */
+    public ConcurrentNonces(int limit, long lifetime, SecureRandom random) {
+        this.limit = limit;
+        this.lifetime = lifetime;
+        this.random = random;
+        ring = new AtomicReferenceArray<Entry>(limit);
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public long getLifetime() {
+        return lifetime;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long createNonce(Object id) {
+        long nonce = (random == null ? defaultRandom : random).nextLong();
+        put(id, nonce);
+        return nonce;
+    }
+
+    /**
+     * Stores a nonce for the given ID, replacing any previous one.
+     */
+    public void put(Object id, long nonce) {
+
+        Entry entry = new Entry(id, nonce, System.currentTimeMillis());
+        entries.put(id, entry);
+
+        int slot = (int) (next.getAndIncrement() % limit);
+        Entry evicted = ring.getAndSet(slot, entry);
+
+        if (evicted != null) {
+            // only removes the evicted nonce, not a newer one for the same ID
+            entries.remove(evicted.id, evicted);
+        }
+    }
+
+    public Result verifyNonce(Object id, long nonce) {
+
+        Entry entry = entries.remove(id);
+        if (entry == null) {
+            return Result.MISSING;
+        }
+
+        if (lifetime > 0 && System.currentTimeMillis() - entry.created > lifetime) {
+            return Result.INVALID;
+        }
+
+        // comparison of primitive longs does not depend on the matching bits
+        return (entry.nonce ^ nonce) == 0 ? Result.VALID : Result.INVALID;
+    }
+}
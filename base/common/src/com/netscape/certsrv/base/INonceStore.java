@@ -0,0 +1,51 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2019 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package com.netscape.certsrv.base;
+
+/**
+ * This interface represents a storage for nonces issued to a client
+ * and verified when the client submits them back.
+ */
+public interface INonceStore {
+
+    public enum Result {
+        VALID,
+        MISSING,
+        INVALID
+    }
+
+    /**
+     * Creates a new nonce for the given ID.
+     *
+     * @param id object the nonce is issued for, e.g. a serial number
+     * @return nonce
+     */
+    public long createNonce(Object id);
+
+    /**
+     * Verifies the nonce submitted for the given ID. A valid
+     * nonce cannot be used again if the store keeps state.
+     *
+     * @param id object the nonce was issued for
+     * @param nonce nonce submitted by the client
+     * @return VALID if the nonce matches, MISSING if no nonce was
+     *         issued for the ID, INVALID if it does not match or
+     *         has expired
+     */
+    public Result verifyNonce(Object id, long nonce);
+}
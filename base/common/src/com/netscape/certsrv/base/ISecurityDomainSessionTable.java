@@ -18,6 +18,7 @@
 package com.netscape.certsrv.base;
 
 import java.util.Enumeration;
+import java.util.List;
 
 /**
  * This interface defines the abstraction for the cookie table.
@@ -46,5 +47,12 @@ public interface ISecurityDomainSessionTable {
 
     public Enumeration<String> getSessionIDs() throws Exception;
 
+    /**
+     * Removes the sessions that are older than the time to live.
+     *
+     * @return the IDs of the removed sessions
+     */
+    public List<String> removeExpiredEntries() throws Exception;
+
     public void shutdown();
 }
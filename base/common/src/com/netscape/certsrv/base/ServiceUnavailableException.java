@@ -6,12 +6,25 @@ public class ServiceUnavailableException extends PKIException {
 
     private static final long serialVersionUID = -9160776882517621347L;
 
+    // number of seconds the client should wait before retrying, or 0
+    private final int retryAfter;
+
     public ServiceUnavailableException(String message) {
-        super(Response.Status.SERVICE_UNAVAILABLE, message);
+        this(message, 0);
     }
 
     public ServiceUnavailableException(String message, Throwable cause) {
         super(Response.Status.SERVICE_UNAVAILABLE, message, cause);
+        this.retryAfter = 0;
+    }
+
+    public ServiceUnavailableException(String message, int retryAfter) {
+        super(Response.Status.SERVICE_UNAVAILABLE, message);
+        this.retryAfter = retryAfter;
+    }
+
+    public int getRetryAfter() {
+        return retryAfter;
     }
 
 }
@@ -0,0 +1,107 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2019 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package com.netscape.certsrv.base;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+
+/**
+ * This class provides nonces that do not need to be stored.
+ * A nonce is derived with HMAC from a server secret, the context
+ * it was issued in (e.g. the session and the operation), the ID
+ * and the current time period, so the server only has to recompute
+ * it to verify it. A nonce is accepted during the period it was
+ * issued in and the following one. Since nothing is stored, a nonce
+ * can be used more than once within that time.
+ */
+public class StatelessNonces implements INonceStore {
+
+    public static final String ALGORITHM = "HmacSHA256";
+
+    private static final ThreadLocal<Mac> macs = new ThreadLocal<Mac>() {
+        protected Mac initialValue() {
+            try {
+                return Mac.getInstance(ALGORITHM);
+            } catch (GeneralSecurityException e) {
+                throw new RuntimeException("Unable to create " + ALGORITHM + ": " + e.getMessage(), e);
+            }
+        }
+    };
+
+    private SecretKey key;
+    private String context;
+    private long lifetime;
+
+    /**
+     * @param key HMAC key
+     * @param context context the nonces are bound to
+     * @param lifetime length of a time period in milliseconds
+     */
+    public StatelessNonces(SecretKey key, String context, long lifetime) {
+        this.key = key;
+        this.context = context;
+        this.lifetime = lifetime;
+    }
+
+    public long createNonce(Object id) {
+        long period = System.currentTimeMillis() / lifetime;
+        return ByteBuffer.wrap(compute(id, period)).getLong();
+    }
+
+    public Result verifyNonce(Object id, long nonce) {
+
+        byte[] bytes = ByteBuffer.allocate(8).putLong(nonce).array();
+        long period = System.currentTimeMillis() / lifetime;
+
+        // check both periods so the time taken does not reveal which one matched
+        boolean current = MessageDigest.isEqual(compute(id, period), bytes);
+        boolean previous = MessageDigest.isEqual(compute(id, period - 1), bytes);
+
+        return current | previous ? Result.VALID : Result.INVALID;
+    }
+
+    /**
+     * Returns the first 8 bytes of the HMAC of the context,
+     * the ID and the time period.
+     */
+    private byte[] compute(Object id, long period) {
+
+        Mac mac = macs.get();
+
+        try {
+            mac.init(key);
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("Unable to initialize " + ALGORITHM + ": " + e.getMessage(), e);
+        }
+
+        mac.update(context.getBytes(StandardCharsets.UTF_8));
+        mac.update((byte) 0);
+        mac.update(id.toString().getBytes(StandardCharsets.UTF_8));
+        mac.update((byte) 0);
+        mac.update(ByteBuffer.allocate(8).putLong(period).array());
+
+        byte[] result = new byte[8];
+        System.arraycopy(mac.doFinal(), 0, result, 0, result.length);
+        return result;
+    }
+}
@@ -73,12 +73,25 @@ public class CACertClient extends Client {
     }
 
     public CertDataInfos listCerts(String status, Integer maxResults, Integer maxTime, Integer start, Integer size) {
-        Response response = certClient.listCerts(status, maxResults, maxTime, start, size);
+        return listCerts(status, maxResults, maxTime, start, size, null);
+    }
+
+    /**
+     * Lists certificates in serial number order, continuing after
+     * the position identified by the token from the "next" link of
+     * the previous page, or from the beginning if the token is empty.
+     */
+    public CertDataInfos listCerts(String status, Integer maxResults, Integer maxTime, Integer start, Integer size, String after) {
+        Response response = certClient.listCerts(status, maxResults, maxTime, start, size, after, null);
         return client.getEntity(response, CertDataInfos.class);
     }
 
     public CertDataInfos findCerts(CertSearchRequest data, Integer start, Integer size) {
-        Response response = certClient.searchCerts(data, start, size);
+        return findCerts(data, start, size, null);
+    }
+
+    public CertDataInfos findCerts(CertSearchRequest data, Integer start, Integer size, String after) {
+        Response response = certClient.searchCerts(data, start, size, after);
         return client.getEntity(response, CertDataInfos.class);
     }
 
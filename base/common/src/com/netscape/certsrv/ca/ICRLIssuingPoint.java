@@ -19,6 +19,7 @@ package com.netscape.certsrv.ca;
 
 import java.math.BigInteger;
 import java.util.Date;
+import java.util.Map;
 import java.util.Set;
 import java.util.Vector;
 
@@ -444,6 +445,18 @@ public interface ICRLIssuingPoint {
     public void addRevokedCert(BigInteger serialNumber, RevokedCertImpl revokedCert,
                                String requestId);
 
+    /**
+     * Adds revoked certificates to delta-CRL cache. Unlike calling
+     * addRevokedCert() for each certificate, the cache is saved
+     * at most once.
+     *
+     * @param revokedCerts revocation information supplied by revocation
+     *        request, keyed by serial number
+     * @param requestId revocation request id
+     */
+    public void addRevokedCerts(Map<BigInteger, RevokedCertImpl> revokedCerts,
+                                String requestId);
+
     /**
      * Adds unrevoked certificate to delta-CRL cache.
      *
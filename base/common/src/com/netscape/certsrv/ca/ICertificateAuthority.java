@@ -19,7 +19,7 @@ package com.netscape.certsrv.ca;
 
 import java.util.Enumeration;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
 import javax.servlet.http.HttpServletRequest;
 
@@ -29,6 +29,7 @@ import org.mozilla.jss.crypto.SignatureAlgorithm;
 import com.netscape.certsrv.authentication.IAuthToken;
 import com.netscape.certsrv.base.EBaseException;
 import com.netscape.certsrv.base.IConfigStore;
+import com.netscape.certsrv.base.INonceStore;
 import com.netscape.certsrv.base.ISubsystem;
 import com.netscape.certsrv.dbs.IDBSubsystem;
 import com.netscape.certsrv.dbs.certdb.ICertificateRepository;
@@ -115,6 +116,11 @@ public interface ICertificateAuthority extends ISubsystem {
     public final static String PROP_CERTDB_TRANS_MAXRECORDS = "transitMaxRecords";
     public final static String PROP_CERTDB_TRANS_PAGESIZE = "transitRecordPageSize";
 
+    /**
+     * Number of threads shared by all bulk enrollments (default: number of CPUs).
+     */
+    public final static String PROP_BULK_ENROLLMENT_THREADS = "bulkEnrollment.threads";
+
     /**
      * Retrieves the certificate repository where all the locally
      * issued certificates are kept.
@@ -138,7 +144,7 @@ public interface ICertificateAuthority extends ISubsystem {
 
     public boolean noncesEnabled();
 
-    public Map<Object, Long> getNonces(HttpServletRequest request, String name);
+    public INonceStore getNonces(HttpServletRequest request, String name);
 
     /**
      * Retrieves the publishing processor of this certificate authority.
@@ -453,6 +459,17 @@ public interface ICertificateAuthority extends ISubsystem {
     public X509CertImpl sign(X509CertInfo certInfo, String algname)
             throws EBaseException;
 
+    /**
+     * Signs a batch of X.509 certificate templates with the same algorithm.
+     *
+     * @param certInfos X.509 certificate templates
+     * @param algname algorithm used for signing
+     * @return signed certificates in the same order as the templates
+     * @exception EBaseException failed to sign certificates
+     */
+    public X509CertImpl[] sign(X509CertInfo[] certInfos, String algname)
+            throws EBaseException;
+
     /**
      * Retrieves the default certificate version.
      *
@@ -622,4 +639,10 @@ public interface ICertificateAuthority extends ISubsystem {
      * get Issuance Protection Certificate
      */
     public org.mozilla.jss.crypto.X509Certificate getIssuanceProtCert();
+
+    /**
+     * Returns the executor that enrolls the CSRs of all bulk enrollment
+     * requests. It is owned by the host authority and shut down with it.
+     */
+    public ExecutorService getBulkEnrollmentExecutor();
 }
@@ -0,0 +1,94 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2019 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package com.netscape.certsrv.cert;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * The result of a single CSR in a bulk enrollment request. It contains
+ * the requests created for the CSR and the issued certificate, or an
+ * error message if the CSR could not be processed.
+ *
+ * @see CertRequestResource#enrollCerts
+ */
+@XmlRootElement(name = "CertBulkEnrollmentResult")
+@XmlAccessorType(XmlAccessType.FIELD)
+public class CertBulkEnrollmentResult {
+
+    @XmlElement(name = "ID")
+    protected String id;
+
+    @XmlElement(name = "Request")
+    protected Collection<CertRequestInfo> requests = new ArrayList<CertRequestInfo>();
+
+    @XmlElement(name = "Certificate")
+    protected String certificate;
+
+    @XmlElement(name = "Error")
+    protected String error;
+
+    public CertBulkEnrollmentResult() {
+        // required for jaxb
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public Collection<CertRequestInfo> getRequests() {
+        return requests;
+    }
+
+    public void setRequests(Collection<CertRequestInfo> requests) {
+        this.requests.clear();
+        this.requests.addAll(requests);
+    }
+
+    public void addRequest(CertRequestInfo request) {
+        requests.add(request);
+    }
+
+    /**
+     * @return the issued certificate in PEM format
+     */
+    public String getCertificate() {
+        return certificate;
+    }
+
+    public void setCertificate(String certificate) {
+        this.certificate = certificate;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+}
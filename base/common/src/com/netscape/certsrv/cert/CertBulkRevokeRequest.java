@@ -0,0 +1,87 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2019 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package com.netscape.certsrv.cert;
+
+import java.util.Date;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.adapters.XmlJavaTypeAdapter;
+
+import org.mozilla.jss.netscape.security.x509.RevocationReason;
+import org.mozilla.jss.netscape.security.x509.RevocationReasonAdapter;
+
+import com.netscape.certsrv.util.DateAdapter;
+
+/**
+ * Request to revoke all certificates matching a search.
+ *
+ * @see CertResource#startRevokeJob
+ */
+@XmlRootElement(name = "CertBulkRevokeRequest")
+@XmlAccessorType(XmlAccessType.FIELD)
+public class CertBulkRevokeRequest {
+
+    @XmlElement(name = "SearchRequest")
+    protected CertSearchRequest searchRequest;
+
+    @XmlElement(name = "Reason")
+    @XmlJavaTypeAdapter(RevocationReasonAdapter.class)
+    protected RevocationReason reason;
+
+    @XmlElement(name = "InvalidityDate")
+    @XmlJavaTypeAdapter(DateAdapter.class)
+    protected Date invalidityDate;
+
+    @XmlElement(name = "Comments")
+    protected String comments;
+
+    public CertSearchRequest getSearchRequest() {
+        return searchRequest;
+    }
+
+    public void setSearchRequest(CertSearchRequest searchRequest) {
+        this.searchRequest = searchRequest;
+    }
+
+    public RevocationReason getReason() {
+        return reason;
+    }
+
+    public void setReason(RevocationReason reason) {
+        this.reason = reason;
+    }
+
+    public Date getInvalidityDate() {
+        return invalidityDate;
+    }
+
+    public void setInvalidityDate(Date invalidityDate) {
+        this.invalidityDate = invalidityDate;
+    }
+
+    public String getComments() {
+        return comments;
+    }
+
+    public void setComments(String comments) {
+        this.comments = comments;
+    }
+}
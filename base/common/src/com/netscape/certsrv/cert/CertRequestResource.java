@@ -17,12 +17,18 @@
 // --- END COPYRIGHT BLOCK ---
 package com.netscape.certsrv.cert;
 
+import java.io.InputStream;
+
+import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
 import org.jboss.resteasy.annotations.ClientResponseType;
 
@@ -42,6 +48,41 @@ public interface CertRequestResource {
         @QueryParam("issuer-id") String caIDString,
         @QueryParam("issuer-dn") String caDNString);
 
+    /**
+     * Used to enroll a batch of CSRs for a single profile. The request
+     * body is a JSON document containing a template request followed by
+     * the CSRs:
+     *
+     * <pre>
+     * { "Template": { "ProfileID": ..., "Input": [ ... ] },
+     *   "Items": [ { "ID": ..., "Request": ..., "RequestType": ... }, ... ] }
+     * </pre>
+     *
+     * Only agents authenticated with their SSL client certificate can
+     * call this. The caller is authenticated once more with the template
+     * inputs, so the profile must authenticate the caller with the SSL
+     * client certificate or have no authenticator, in which case the
+     * requests are deferred for approval. The CSRs are read and enrolled concurrently
+     * while the results are streamed back in the order they complete:
+     *
+     * <pre>
+     * { "entries": [ CertBulkEnrollmentResult, ... ],
+     *   "total": ..., "issued": ..., "deferred": ..., "failed": ...,
+     *   "elapsed": &lt;ms&gt;, "throughput": &lt;requests/s&gt; }
+     * </pre>
+     */
+    @POST
+    @Path("agent/certrequests/bulk")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    @ClientResponseType(entityType=StreamingOutput.class)
+    @ACLMapping("certrequests")
+    @AuthMethodMapping("certrequests")
+    public Response enrollCerts(
+        InputStream data,
+        @QueryParam("issuer-id") String caIDString,
+        @QueryParam("issuer-dn") String caDNString);
+
     /**
      * Used to retrieve cert request info for a specific request
      */
@@ -24,7 +24,9 @@ public interface CertResource {
             @QueryParam("maxResults") Integer maxResults,
             @QueryParam("maxTime") Integer maxTime,
             @QueryParam("start") Integer start,
-            @QueryParam("size") Integer size);
+            @QueryParam("size") Integer size,
+            @QueryParam("after") String after,
+            @QueryParam("stream") Boolean stream);
 
     @POST
     @Path("certs/search")
@@ -32,7 +34,8 @@ public interface CertResource {
     public Response searchCerts(
             CertSearchRequest data,
             @QueryParam("start") Integer start,
-            @QueryParam("size") Integer size);
+            @QueryParam("size") Integer size,
+            @QueryParam("after") String after);
 
     @GET
     @Path("certs/{id}")
@@ -60,6 +63,32 @@ public interface CertResource {
     @AuthMethodMapping("certs")
     public Response revokeCert(@PathParam("id") CertId id, CertRevokeRequest request);
 
+    /**
+     * Starts revoking all certificates matching the search
+     * in the background. The progress can be polled with
+     * getRevokeJob().
+     */
+    @POST
+    @Path("agent/certs/revoke-jobs")
+    @ClientResponseType(entityType=CertRevokeJobInfo.class)
+    @ACLMapping("certs")
+    @AuthMethodMapping("certs")
+    public Response startRevokeJob(CertBulkRevokeRequest request);
+
+    @GET
+    @Path("agent/certs/revoke-jobs/{id}")
+    @ClientResponseType(entityType=CertRevokeJobInfo.class)
+    @ACLMapping("certs")
+    @AuthMethodMapping("certs")
+    public Response getRevokeJob(@PathParam("id") String id);
+
+    @POST
+    @Path("agent/certs/revoke-jobs/{id}/cancel")
+    @ClientResponseType(entityType=CertRevokeJobInfo.class)
+    @ACLMapping("certs")
+    @AuthMethodMapping("certs")
+    public Response cancelRevokeJob(@PathParam("id") String id);
+
     @POST
     @Path("agent/certs/{id}/unrevoke")
     @ClientResponseType(entityType=CertRequestInfo.class)
@@ -0,0 +1,185 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2019 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package com.netscape.certsrv.cert;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.adapters.XmlJavaTypeAdapter;
+
+import org.mozilla.jss.netscape.security.x509.RevocationReason;
+import org.mozilla.jss.netscape.security.x509.RevocationReasonAdapter;
+
+import com.netscape.certsrv.dbs.certdb.CertId;
+import com.netscape.certsrv.dbs.certdb.CertIdAdapter;
+import com.netscape.certsrv.util.DateAdapter;
+
+/**
+ * Progress of a bulk revocation job.
+ *
+ * @see CertResource#getRevokeJob
+ */
+@XmlRootElement(name = "CertRevokeJobInfo")
+@XmlAccessorType(XmlAccessType.FIELD)
+public class CertRevokeJobInfo {
+
+    @XmlElement(name = "ID")
+    protected String id;
+
+    @XmlElement(name = "Status")
+    protected String status;
+
+    @XmlElement(name = "Filter")
+    protected String filter;
+
+    @XmlElement(name = "Reason")
+    @XmlJavaTypeAdapter(RevocationReasonAdapter.class)
+    protected RevocationReason reason;
+
+    @XmlElement(name = "Processed")
+    protected long processed;
+
+    @XmlElement(name = "Revoked")
+    protected long revoked;
+
+    @XmlElement(name = "Skipped")
+    protected long skipped;
+
+    @XmlElement(name = "Failed")
+    protected long failed;
+
+    @XmlElement(name = "LastSerialNumber")
+    @XmlJavaTypeAdapter(CertIdAdapter.class)
+    protected CertId lastSerialNumber;
+
+    @XmlElement(name = "StartTime")
+    @XmlJavaTypeAdapter(DateAdapter.class)
+    protected Date startTime;
+
+    @XmlElement(name = "EndTime")
+    @XmlJavaTypeAdapter(DateAdapter.class)
+    protected Date endTime;
+
+    @XmlElement(name = "Error")
+    protected Collection<String> errors = new ArrayList<String>();
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    /**
+     * @return pending, running, complete, canceled, or failed
+     */
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public String getFilter() {
+        return filter;
+    }
+
+    public void setFilter(String filter) {
+        this.filter = filter;
+    }
+
+    public RevocationReason getReason() {
+        return reason;
+    }
+
+    public void setReason(RevocationReason reason) {
+        this.reason = reason;
+    }
+
+    public long getProcessed() {
+        return processed;
+    }
+
+    public void setProcessed(long processed) {
+        this.processed = processed;
+    }
+
+    public long getRevoked() {
+        return revoked;
+    }
+
+    public void setRevoked(long revoked) {
+        this.revoked = revoked;
+    }
+
+    public long getSkipped() {
+        return skipped;
+    }
+
+    public void setSkipped(long skipped) {
+        this.skipped = skipped;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    public void setFailed(long failed) {
+        this.failed = failed;
+    }
+
+    public CertId getLastSerialNumber() {
+        return lastSerialNumber;
+    }
+
+    public void setLastSerialNumber(CertId lastSerialNumber) {
+        this.lastSerialNumber = lastSerialNumber;
+    }
+
+    public Date getStartTime() {
+        return startTime;
+    }
+
+    public void setStartTime(Date startTime) {
+        this.startTime = startTime;
+    }
+
+    public Date getEndTime() {
+        return endTime;
+    }
+
+    public void setEndTime(Date endTime) {
+        this.endTime = endTime;
+    }
+
+    public Collection<String> getErrors() {
+        return errors;
+    }
+
+    public void setErrors(Collection<String> errors) {
+        this.errors.clear();
+        this.errors.addAll(errors);
+    }
+}
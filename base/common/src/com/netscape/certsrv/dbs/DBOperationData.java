@@ -0,0 +1,99 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2019 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package com.netscape.certsrv.dbs;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlElement;
+
+/**
+ * Latency histogram of one operation type on one repository.
+ * Times are in microseconds.
+ */
+@XmlAccessorType(XmlAccessType.NONE)
+public class DBOperationData {
+
+    String operation;
+    String category;
+    Long count;
+    Long averageTime;
+    Long maxTime;
+    List<Long> buckets = new ArrayList<Long>();
+
+    @XmlAttribute(name="name")
+    public String getOperation() {
+        return operation;
+    }
+
+    public void setOperation(String operation) {
+        this.operation = operation;
+    }
+
+    @XmlAttribute(name="category")
+    public String getCategory() {
+        return category;
+    }
+
+    public void setCategory(String category) {
+        this.category = category;
+    }
+
+    @XmlElement(name="Count")
+    public Long getCount() {
+        return count;
+    }
+
+    public void setCount(Long count) {
+        this.count = count;
+    }
+
+    @XmlElement(name="AverageTime")
+    public Long getAverageTime() {
+        return averageTime;
+    }
+
+    public void setAverageTime(Long averageTime) {
+        this.averageTime = averageTime;
+    }
+
+    @XmlElement(name="MaxTime")
+    public Long getMaxTime() {
+        return maxTime;
+    }
+
+    public void setMaxTime(Long maxTime) {
+        this.maxTime = maxTime;
+    }
+
+    /**
+     * Number of operations per histogram bucket. The last
+     * bucket counts the operations above the last bound.
+     */
+    @XmlElement(name="Bucket")
+    public List<Long> getBuckets() {
+        return buckets;
+    }
+
+    public void setBuckets(List<Long> buckets) {
+        this.buckets = buckets;
+    }
+}
@@ -0,0 +1,160 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2019 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package com.netscape.certsrv.dbs;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+import org.jboss.resteasy.plugins.providers.atom.Link;
+
+/**
+ * Latency statistics of the internal database operations.
+ */
+@XmlRootElement(name="DBStatistics")
+@XmlAccessorType(XmlAccessType.NONE)
+public class DBStatisticsData {
+
+    public static Marshaller marshaller;
+    public static Unmarshaller unmarshaller;
+
+    static {
+        try {
+            marshaller = JAXBContext.newInstance(DBStatisticsData.class).createMarshaller();
+            marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
+            unmarshaller = JAXBContext.newInstance(DBStatisticsData.class).createUnmarshaller();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    Boolean enabled;
+    Long slowThreshold;
+    Date startTime;
+    List<Long> bucketBounds = new ArrayList<Long>();
+    List<DBOperationData> operations = new ArrayList<DBOperationData>();
+    List<DBSlowOperationData> slowOperations = new ArrayList<DBSlowOperationData>();
+
+    Link link;
+
+    @XmlElement(name="Enabled")
+    public Boolean getEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(Boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Slow operation threshold in milliseconds.
+     */
+    @XmlElement(name="SlowThreshold")
+    public Long getSlowThreshold() {
+        return slowThreshold;
+    }
+
+    public void setSlowThreshold(Long slowThreshold) {
+        this.slowThreshold = slowThreshold;
+    }
+
+    @XmlElement(name="StartTime")
+    public Date getStartTime() {
+        return startTime;
+    }
+
+    public void setStartTime(Date startTime) {
+        this.startTime = startTime;
+    }
+
+    /**
+     * Upper bounds of the histogram buckets in milliseconds.
+     */
+    @XmlElement(name="BucketBound")
+    public List<Long> getBucketBounds() {
+        return bucketBounds;
+    }
+
+    public void setBucketBounds(List<Long> bucketBounds) {
+        this.bucketBounds = bucketBounds;
+    }
+
+    @XmlElement(name="Operation")
+    public List<DBOperationData> getOperations() {
+        return operations;
+    }
+
+    public void setOperations(List<DBOperationData> operations) {
+        this.operations = operations;
+    }
+
+    public void addOperation(DBOperationData operation) {
+        operations.add(operation);
+    }
+
+    @XmlElement(name="SlowOperation")
+    public List<DBSlowOperationData> getSlowOperations() {
+        return slowOperations;
+    }
+
+    public void setSlowOperations(List<DBSlowOperationData> slowOperations) {
+        this.slowOperations = slowOperations;
+    }
+
+    public void addSlowOperation(DBSlowOperationData slowOperation) {
+        slowOperations.add(slowOperation);
+    }
+
+    @XmlElement(name="Link")
+    public Link getLink() {
+        return link;
+    }
+
+    public void setLink(Link link) {
+        this.link = link;
+    }
+
+    public String toString() {
+        try {
+            StringWriter sw = new StringWriter();
+            marshaller.marshal(this, sw);
+            return sw.toString();
+
+        } catch (Exception e) {
+            return super.toString();
+        }
+    }
+
+    public static DBStatisticsData valueOf(String string) throws Exception {
+        try {
+            return (DBStatisticsData)unmarshaller.unmarshal(new StringReader(string));
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
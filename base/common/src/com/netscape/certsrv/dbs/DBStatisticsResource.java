@@ -0,0 +1,55 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2019 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package com.netscape.certsrv.dbs;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Response;
+
+import org.jboss.resteasy.annotations.ClientResponseType;
+
+import com.netscape.certsrv.acls.ACLMapping;
+import com.netscape.certsrv.authentication.AuthMethodMapping;
+
+/**
+ * Latency statistics of the internal database operations.
+ */
+@Path("database/statistics")
+@AuthMethodMapping("dbstats")
+public interface DBStatisticsResource {
+
+    @GET
+    @ClientResponseType(entityType=DBStatisticsData.class)
+    @ACLMapping("dbstats.read")
+    public Response getStatistics();
+
+    /**
+     * Enables, disables, or resets the statistics.
+     *
+     * @param action enable, disable, or reset
+     * @param slowThreshold new slow operation threshold in milliseconds (optional)
+     */
+    @POST
+    @ClientResponseType(entityType=DBStatisticsData.class)
+    @ACLMapping("dbstats.modify")
+    public Response changeStatistics(
+            @QueryParam("action") String action,
+            @QueryParam("slowThreshold") Long slowThreshold);
+}
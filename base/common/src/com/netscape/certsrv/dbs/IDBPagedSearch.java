@@ -0,0 +1,52 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2019 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package com.netscape.certsrv.dbs;
+
+import com.netscape.certsrv.base.EBaseException;
+
+/**
+ * A sequential scan of search results that are retrieved
+ * from the server one page at a time. The search has to be
+ * closed if it is not read to the end.
+ *
+ * @param <T> type of the objects returned
+ */
+public interface IDBPagedSearch<T> extends AutoCloseable {
+
+    /**
+     * Checks if any object is available, retrieving
+     * the next page if necessary.
+     *
+     * @return true if there are more objects
+     * @exception EBaseException failed to retrieve the next page
+     */
+    public boolean hasNext() throws EBaseException;
+
+    /**
+     * Retrieves the next object.
+     *
+     * @return next object
+     * @exception EBaseException failed to retrieve the next page
+     */
+    public T next() throws EBaseException;
+
+    /**
+     * Releases the search.
+     */
+    public void close();
+}
@@ -0,0 +1,50 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2019 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package com.netscape.certsrv.dbs;
+
+import com.netscape.certsrv.base.EBaseException;
+
+import netscape.ldap.LDAPAttributeSet;
+
+/**
+ * A projection reads a fixed set of LDAP attributes from
+ * each search result and maps them into a lightweight
+ * object, bypassing the registry mappers so that large
+ * attributes (e.g. certificates) are neither fetched nor
+ * decoded.
+ *
+ * @param <T> type of the projected objects
+ */
+public interface IDBProjection<T> {
+
+    /**
+     * Retrieves the LDAP attributes to fetch.
+     *
+     * @return LDAP attribute names
+     */
+    public String[] getLDAPAttributes();
+
+    /**
+     * Maps the attributes of a single entry.
+     *
+     * @param attrs attributes returned by the server
+     * @return projected object, or null to skip the entry
+     * @exception EBaseException failed to map the entry
+     */
+    public T map(LDAPAttributeSet attrs) throws EBaseException;
+}
@@ -17,6 +17,8 @@
 // --- END COPYRIGHT BLOCK ---
 package com.netscape.certsrv.dbs;
 
+import java.util.Enumeration;
+
 import netscape.ldap.LDAPSearchResults;
 
 import com.netscape.certsrv.base.EBaseException;
@@ -183,6 +185,51 @@ public interface IDBSSession extends AutoCloseable {
     public IDBSearchResults search(String base, String filter,
             String attrs[]) throws EBaseException;
 
+    /**
+     * Retrieves only the attributes required by the projection
+     * for the objects that satisfy the given filter. The results
+     * are read lazily from the server.
+     *
+     * @param base starting point of the search
+     * @param filter search filter
+     * @param maxSize max number of entries
+     * @param projection attributes to fetch and how to map them
+     * @return projected objects
+     * @exception EBaseException failed to search
+     */
+    public <T> Enumeration<T> search(String base, String filter, int maxSize,
+            IDBProjection<T> projection) throws EBaseException;
+
+    /**
+     * Retrieves the objects that satisfy the given filter one page
+     * at a time using the simple paged results control. The results
+     * are not sorted. The search has to be closed before the session.
+     *
+     * @param base starting point of the search
+     * @param filter search filter
+     * @param attrs selected attributes
+     * @param pageSize number of entries per page
+     * @return paged search
+     * @exception EBaseException failed to search
+     */
+    public <T> IDBPagedSearch<T> createPagedSearch(String base, String filter,
+            String attrs[], int pageSize) throws EBaseException;
+
+    /**
+     * Retrieves only the attributes required by the projection for
+     * the objects that satisfy the given filter one page at a time
+     * using the simple paged results control.
+     *
+     * @param base starting point of the search
+     * @param filter search filter
+     * @param pageSize number of entries per page
+     * @param projection attributes to fetch and how to map them
+     * @return paged search
+     * @exception EBaseException failed to search
+     */
+    public <T> IDBPagedSearch<T> createPagedSearch(String base, String filter,
+            int pageSize, IDBProjection<T> projection) throws EBaseException;
+
     /**
      * Retrieves a list of objects.
      *
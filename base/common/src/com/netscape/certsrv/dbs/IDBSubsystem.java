@@ -66,6 +66,17 @@ public interface IDBSubsystem extends ISubsystem {
      */
     public IDBSSession createSession() throws EDBException;
 
+    /**
+     * Creates a database session for reads that can be served
+     * by a read-only replica. Operations that modify the database,
+     * or reads that must see changes made by other threads, should
+     * use createSession() instead.
+     *
+     * @return database session
+     * @exception EDBException failed to create session
+     */
+    public IDBSSession createReadSession() throws EDBException;
+
     /**
      * Avoids losing serial number.
      *
@@ -25,6 +25,8 @@ import java.util.Hashtable;
 
 import com.netscape.certsrv.base.EBaseException;
 import com.netscape.certsrv.base.MetaInfo;
+import com.netscape.certsrv.dbs.IDBPagedSearch;
+import com.netscape.certsrv.dbs.IElementProcessor;
 import com.netscape.certsrv.dbs.ModificationSet;
 import com.netscape.certsrv.dbs.repository.IRepository;
 
@@ -256,6 +258,41 @@ public interface ICertificateRepository extends IRepository {
     public Enumeration<ICertRecord> searchCertificates(String filter, int maxSize,
             int timeLimit,String sortAttribute) throws EBaseException;
 
+    /**
+     * Scans the certificate records that satisfy the filter one page
+     * at a time using the simple paged results control. The records
+     * are not sorted. The next page is retrieved while the current
+     * one is processed. The search has to be closed if it is not
+     * read to the end.
+     *
+     * @param filter search filter
+     * @param attrs selected attributes, or null for all attributes
+     * @param pageSize number of records per page
+     * @return paged search of certificate records
+     * @exception EBaseException failed to search
+     */
+    public IDBPagedSearch<ICertRecord> findPagedCertRecords(String filter, String attrs[], int pageSize)
+            throws EBaseException;
+
+    /**
+     * Processes the certificate records that satisfy the filter
+     * and whose serial numbers are greater than the given serial
+     * number, in serial number order. The records are searched in
+     * bounded windows of serial numbers and passed to the processor
+     * window by window, so a listing can be continued from the last
+     * serial number returned without a server-side sort.
+     *
+     * @param filter search filter
+     * @param after serial number to continue after, or null
+     *        to start with the lowest serial number
+     * @param maxSize max number of records to process
+     * @param timeLimit time limit in seconds, 0 for no limit
+     * @param processor processor for the certificate records
+     * @exception EBaseException failed to search
+     */
+    public void processCertificatesAfter(String filter, BigInteger after, int maxSize,
+            int timeLimit, IElementProcessor processor) throws EBaseException;
+
     /**
      * Finds a list of certificate records that satisifies
      * the filter.
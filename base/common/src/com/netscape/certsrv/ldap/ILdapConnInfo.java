@@ -32,6 +32,7 @@ public interface ILdapConnInfo {
     public static final String PROP_SECURE = "secureConn";
     public static final String PROP_PROTOCOL = "version";
     public static final String PROP_FOLLOW_REFERRALS = "followReferrals";
+    public static final String PROP_READ_REPLICAS = "readReplicas";
     public static final String PROP_HOST_DEFAULT = "localhost";
     public static final String PROP_PORT_DEFAULT = "389";
 
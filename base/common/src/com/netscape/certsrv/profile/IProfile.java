@@ -362,6 +362,12 @@ public interface IProfile {
      */
     public Enumeration<IProfilePolicy> getProfilePolicies(String setId);
 
+    /**
+     * Prepares the policy sets for request processing after the
+     * profile has been initialized or its policies have changed.
+     */
+    public void compile();
+
     /**
      * Creates one or more requests. Normally, only one request will
      * be created. In case of CRMF request, multiple requests may be
@@ -17,40 +17,78 @@
 // --- END COPYRIGHT BLOCK ---
 package com.netscape.certsrv.request;
 
+import java.lang.management.ManagementFactory;
 import java.math.BigInteger;
 import java.util.Enumeration;
 import java.util.Hashtable;
-import java.util.Vector;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
 
-import com.netscape.certsrv.base.EBaseException;
 import com.netscape.certsrv.ca.ICertificateAuthority;
-import com.netscape.certsrv.ldap.ILdapConnFactory;
-import com.netscape.certsrv.ldap.ILdapConnModule;
-import com.netscape.certsrv.publish.IPublisherProcessor;
 
 /**
  * The ARequestNotifier class implements the IRequestNotifier interface,
  * which notifies all registered request listeners.
+ * <p>
+ * If the publishing queue is enabled, requests are put into a bounded
+ * queue served by a fixed pool of publishing threads. The queue holds
+ * the request objects, so publishing does not read the requests from the
+ * database again. If the queue is full, the request is published by the
+ * submitting thread.
+ * <p>
+ * The progress of the queue is saved in the request repository as a
+ * checkpoint: the ID of the request up to which all queued requests have
+ * been published, or -1 if the queue is empty. On startup the completed
+ * requests after the checkpoint are published again. See
+ * PublishingCheckpoint for when the checkpoint is saved.
  *
  * @version $Revision$, $Date$
  */
-public class ARequestNotifier implements IRequestNotifier {
+public class ARequestNotifier implements IRequestNotifier, PublishingQueueMBean {
 
     public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(ARequestNotifier.class);
 
+    public final static String OBJECT_NAME = "com.netscape.certsrv.request:type=PublishingQueue";
+
+    public final static int DEFAULT_CAPACITY = 1000;
+    public final static int DEFAULT_CHECKPOINT_INTERVAL = 10;
+
     private Hashtable<String, IRequestListener> mListeners = new Hashtable<String, IRequestListener>();
-    private Vector<Thread> mNotifierThreads = new Vector<Thread>();
-    private Vector<String> mRequests = new Vector<String>();
     private int mMaxRequests = 100;
-    private boolean mSearchForRequests = false;
     private int mMaxThreads = 1;
+    private int mCapacity = DEFAULT_CAPACITY;
     private ICertificateAuthority mCA = null;
     private boolean mIsPublishingQueueEnabled = false;
     private int mPublishingQueuePriority = 0;
     private IRequestQueue mRequestQueue = null;
-    private String mPublishingStatus = null;
     private int mSavePublishingStatus = 0;
-    private int mSavePublishingCounter = 0;
+    private int mCheckpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+
+    // publishing threads, null if the publishing queue is disabled
+    private ThreadPoolExecutor mPublishingExecutor;
+
+    // threads running listeners asynchronously without the publishing queue
+    private ExecutorService mListenerExecutor;
+
+    // progress of the publishing queue, null if the queue is disabled
+    private volatile PublishingCheckpoint mCheckpoint;
+
+    private LongAdder mPublished = new LongAdder();
+    private LongAdder mOverflowed = new LongAdder();
+    private LongAdder mQueueLatency = new LongAdder();
+    private AtomicLong mMaxQueueLatency = new AtomicLong();
 
     public ARequestNotifier() {
         mPublishingQueuePriority = Thread.currentThread().getPriority();
@@ -66,15 +104,21 @@ public class ARequestNotifier implements IRequestNotifier {
                                     int publishingQueuePriorityLevel,
                                     int maxNumberOfPublishingThreads,
                                     int publishingQueuePageSize,
-                                    int savePublishingStatus) {
+                                    int savePublishingStatus,
+                                    int publishingQueueCapacity,
+                                    int checkpointInterval) {
         logger.debug("setPublishingQueue:  Publishing Queue Enabled: " + isPublishingQueueEnabled +
                   "  Priority Level: " + publishingQueuePriorityLevel +
                   "  Maximum Number of Threads: " + maxNumberOfPublishingThreads +
-                  "  Page Size: " + publishingQueuePageSize);
+                  "  Page Size: " + publishingQueuePageSize +
+                  "  Capacity: " + publishingQueueCapacity +
+                  "  Checkpoint Interval: " + checkpointInterval);
         mIsPublishingQueueEnabled = isPublishingQueueEnabled;
         mMaxThreads = maxNumberOfPublishingThreads;
         mMaxRequests = publishingQueuePageSize;
         mSavePublishingStatus = savePublishingStatus;
+        mCapacity = publishingQueueCapacity;
+        mCheckpointInterval = checkpointInterval;
 
         // Publishing Queue Priority Levels:  2 - maximum, 1 - higher, 0 - normal, -1 - lower, -2 - minimum
         if (publishingQueuePriorityLevel > 1) {
@@ -91,18 +135,62 @@ public class ARequestNotifier implements IRequestNotifier {
 
         if (mCA != null && mRequestQueue == null)
             mRequestQueue = mCA.getRequestQueue();
-        if (mIsPublishingQueueEnabled && mSavePublishingStatus > 0 && mRequestQueue != null) {
-            mPublishingStatus = mRequestQueue.getPublishingStatus();
+
+        if (!mIsPublishingQueueEnabled) {
+            return;
+        }
+
+        if (mPublishingExecutor == null) {
+            mCheckpoint = new PublishingCheckpoint(mSavePublishingStatus, mCheckpointInterval * 1000L) {
+                protected boolean store(String checkpoint) {
+                    return saveCheckpoint(checkpoint);
+                }
+            };
+
+            int threads = Math.max(mMaxThreads, 1);
+            mPublishingExecutor = new ThreadPoolExecutor(
+                    threads, threads, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<Runnable>(Math.max(mCapacity, 1)),
+                    new NotifierThreadFactory("PublishingQueue", mPublishingQueuePriority),
+                    new OverflowHandler());
+            registerMBean();
+        }
+
+        if (mSavePublishingStatus > 0 && mRequestQueue != null) {
+            String status = mRequestQueue.getPublishingStatus();
             try {
-                BigInteger status = new BigInteger(mPublishingStatus);
-                if (status.compareTo(BigInteger.ZERO) > -1) {
-                    recoverPublishingQueue(mPublishingStatus);
+                BigInteger checkpoint = new BigInteger(status);
+                if (checkpoint.compareTo(BigInteger.ZERO) > -1) {
+                    recoverPublishingQueue(status);
                 }
             } catch (Exception e) {
                 logger.warn("setPublishingQueue:  Exception: " + e.getMessage(), e);
             }
         }
+    }
 
+    private void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(new StandardMBean(this, PublishingQueueMBean.class), name);
+            }
+        } catch (Exception e) {
+            logger.warn("ARequestNotifier: unable to register publishing queue MBean: " + e.getMessage(), e);
+        }
+    }
+
+    private void unregisterMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (Exception e) {
+            logger.warn("ARequestNotifier: unable to unregister publishing queue MBean: " + e.getMessage(), e);
+        }
     }
 
     /**
@@ -174,116 +262,38 @@ public class ARequestNotifier implements IRequestNotifier {
         return mListeners.elements();
     }
 
-    private Object publishingCounterMonitor = new Object();
-
+    /**
+     * Records that a queued request has been published.
+     *
+     * @param id request ID
+     */
     public void updatePublishingStatus(String id) {
-        if (mRequestQueue != null) {
-            synchronized (publishingCounterMonitor) {
-                if (mSavePublishingCounter == 0) {
-                    logger.debug("updatePublishingStatus  requestId: " + id);
-                    mRequestQueue.setPublishingStatus(id);
-                }
-                mSavePublishingCounter++;
-                logger.debug("updatePublishingStatus  mSavePublishingCounter: " + mSavePublishingCounter +
-                          " mSavePublishingStatus: " + mSavePublishingStatus);
-                if (mSavePublishingCounter >= mSavePublishingStatus) {
-                    mSavePublishingCounter = 0;
-                }
-            }
-        } else {
-            logger.warn("updatePublishingStatus  mRequestQueue == null");
+
+        mPublished.increment();
+
+        PublishingCheckpoint checkpoint = mCheckpoint;
+        if (checkpoint != null) {
+            checkpoint.published(new BigInteger(id));
         }
     }
 
     /**
-     * Gets request from publishing queue.
-     *
-     * @return request
+     * Saves the ID of the request up to which all queued
+     * requests have been published.
      */
-    public synchronized IRequest getRequest() {
-        IRequest r = null;
-        String id = null;
+    private boolean saveCheckpoint(String checkpoint) {
 
-        logger.debug("getRequest  mRequests=" + mRequests.size() + "  mSearchForRequests=" + mSearchForRequests);
-        if (mSearchForRequests && mRequests.size() == 1) {
-            id = mRequests.elementAt(0);
-            if (mCA != null && mRequestQueue == null)
-                mRequestQueue = mCA.getRequestQueue();
-            if (id != null && mRequestQueue != null) {
-                logger.debug("getRequest  request id=" + id);
-                IRequestVirtualList list = mRequestQueue.getPagedRequestsByFilter(
-                                               new RequestId(id),
-                                               "(requeststate=complete)", mMaxRequests, "requestId");
-                int s = list.getSize() - list.getCurrentIndex();
-                logger.debug("getRequest  list size: " + s);
-                for (int i = 0; i < s; i++) {
-                    r = null;
-                    try {
-                        r = list.getElementAt(i);
-                    } catch (Exception e) {
-                        // handled below
-                    }
-                    if (r == null) {
-                        continue;
-                    }
-                    String requestType = r.getRequestType();
-                    if (requestType == null) {
-                        continue;
-                    }
-                    if (!(requestType.equals(IRequest.ENROLLMENT_REQUEST) ||
-                            requestType.equals(IRequest.RENEWAL_REQUEST) ||
-                            requestType.equals(IRequest.REVOCATION_REQUEST) ||
-                            requestType.equals(IRequest.CMCREVOKE_REQUEST) ||
-                            requestType.equals(IRequest.UNREVOCATION_REQUEST))) {
-                        continue;
-                    }
-                    if (i == 0 && id.equals(r.getRequestId().toString())) {
-                        if (s == 1) {
-                            break;
-                        } else {
-                            continue;
-                        }
-                    }
-                    if (mRequests.size() < mMaxRequests) {
-                        mRequests.addElement(r.getRequestId().toString());
-                        logger.debug("getRequest  added "
-                                + r.getRequestType() + " request " + r.getRequestId().toString() +
-                                  " to mRequests: " + mRequests.size() + " (" + mMaxRequests + ")");
-                    } else {
-                        break;
-                    }
-                }
-                logger.debug("getRequest  done with adding requests to mRequests: " + mRequests.size());
-            } else {
-                logger.warn("getRequest  has no access to the request queue");
-            }
-        }
-        if (mRequests.size() > 0) {
-            id = mRequests.elementAt(0);
-            if (id != null) {
-                logger.debug("getRequest  getting request: " + id);
-                if (mCA != null && mRequestQueue == null)
-                    mRequestQueue = mCA.getRequestQueue();
-                if (mRequestQueue != null) {
-                    try {
-                        r = mRequestQueue.findRequest(new RequestId(id));
-                        mRequests.remove(0);
-                        logger.debug("getRequest  request " + id + ((r != null) ? " found" : " not found"));
-                        //updatePublishingStatus(id);
-                    } catch (EBaseException e) {
-                        logger.warn("getRequest  Exception: " + e.getMessage(), e);
-                    }
-                } else {
-                    logger.warn("getRequest  has no access to the request queue");
-                }
-            }
-            if (mRequests.size() == 0) {
-                mSearchForRequests = false;
-            }
+        if (mCA != null && mRequestQueue == null)
+            mRequestQueue = mCA.getRequestQueue();
+
+        if (mRequestQueue == null) {
+            logger.warn("updatePublishingStatus  mRequestQueue == null");
+            return false;
         }
-        logger.debug("getRequest  mRequests=" + mRequests.size() + "  mSearchForRequests=" + mSearchForRequests + " done");
 
-        return r;
+        logger.debug("updatePublishingStatus  checkpoint: " + checkpoint);
+        mRequestQueue.setPublishingStatus(checkpoint);
+        return true;
     }
 
     /**
@@ -292,7 +302,7 @@ public class ARequestNotifier implements IRequestNotifier {
      * @return number of requests in publishing queue
      */
     public int getNumberOfRequests() {
-        return mRequests.size();
+        return getQueueDepth();
     }
 
     /**
@@ -304,21 +314,6 @@ public class ARequestNotifier implements IRequestNotifier {
         return mIsPublishingQueueEnabled;
     }
 
-    /**
-     * Removes a notifier thread from the pool of publishing queue threads.
-     *
-     * @param notifierThread Thread
-     */
-    public void removeNotifierThread(Thread notifierThread) {
-        if (mNotifierThreads.size() > 0) {
-            mNotifierThreads.remove(notifierThread);
-            if (mNotifierThreads.size() == 0) {
-                mRequestQueue.setPublishingStatus("-1");
-            }
-        }
-        logger.debug("Number of publishing threads: " + mNotifierThreads.size());
-    }
-
     /**
      * Notifies all registered listeners about request.
      *
@@ -339,143 +334,282 @@ public class ARequestNotifier implements IRequestNotifier {
                 }
             }
         } else {
-            // spawn a seperate thread to call the listeners and return.
+            // call the listeners in a separate thread and return.
             try {
-                new Thread(new RunListeners(r, mListeners.elements())).start();
+                getListenerExecutor().execute(new RunListeners(r, mListeners.elements()));
             } catch (Throwable e) {
                 logger.warn("Could not run listeners for request " + r.getRequestId() + ": " + e.getMessage(), e);
             }
         }
     }
 
+    private synchronized ExecutorService getListenerExecutor() {
+        if (mListenerExecutor == null) {
+            mListenerExecutor = Executors.newCachedThreadPool(
+                    new NotifierThreadFactory("RequestNotifier", Thread.NORM_PRIORITY));
+        }
+        return mListenerExecutor;
+    }
+
     /**
-     * Checks for available publishing connections
+     * Adds request to the publishing queue.
      *
-     * @return true if there are available publishing connections, false otherwise
+     * @param r request
      */
-    private boolean checkAvailablePublishingConnections() {
-        boolean availableConnections = false;
+    public void addToNotify(IRequest r) {
 
-        IPublisherProcessor pp = null;
-        if (mCA != null)
-            pp = mCA.getPublisherProcessor();
-        if (pp != null && (pp.isCertPublishingEnabled() || pp.isCRLPublishingEnabled())) {
-            ILdapConnModule ldapConnModule = pp.getLdapConnModule();
-            if (ldapConnModule != null) {
-                ILdapConnFactory ldapConnFactory = ldapConnModule.getLdapConnFactory();
-                if (ldapConnFactory != null) {
-                    logger.debug("checkAvailablePublishingConnections  maxConn: " + ldapConnFactory.maxConn() +
-                                                               "  totalConn: " + ldapConnFactory.totalConn());
-                    if (ldapConnFactory.maxConn() > ldapConnFactory.totalConn()) {
-                        availableConnections = true;
-                    }
-                } else {
-                    logger.warn("checkAvailablePublishingConnections  ldapConnFactory is not accessible");
-                }
-            } else {
-                logger.warn("checkAvailablePublishingConnections  ldapConnModule is not accessible");
-            }
-        } else {
-            logger.warn("checkAvailablePublishingConnections  PublisherProcessor is not " +
-                      ((pp != null) ? "enabled" : "accessible"));
+        ThreadPoolExecutor executor = mPublishingExecutor;
+        if (executor == null) {
+            // queue not initialized yet
+            new RunListeners(r, mListeners.elements()).run();
+            return;
         }
 
-        return availableConnections;
+        mCheckpoint.queued(r.getRequestId().toBigInteger());
+
+        executor.execute(new PublishTask(r));
     }
 
     /**
-     * Checks if more publishing threads can be added.
+     * Publishes the completed requests after the checkpoint.
      *
-     * @return true if more publishing threads can be added, false otherwise
+     * @param id checkpoint
      */
-    private boolean morePublishingThreads() {
-        boolean moreThreads = false;
-
-        if (mNotifierThreads.size() == 0) {
-            moreThreads = true;
-        } else if (mNotifierThreads.size() < mMaxThreads) {
-            logger.debug("morePublishingThreads  (" + mRequests.size() + ">" +
-                      ((mMaxRequests * mNotifierThreads.size()) / mMaxThreads) +
-                      " " + "(" + mMaxRequests + "*" + mNotifierThreads.size() + "):" + mMaxThreads);
-            // gradually add new publishing threads
-            if (mRequests.size() > ((mMaxRequests * mNotifierThreads.size()) / mMaxThreads)) {
-                // check for available publishing connections
-                if (checkAvailablePublishingConnections()) {
-                    moreThreads = true;
+    public void recoverPublishingQueue(String id) {
+
+        final BigInteger start = new BigInteger(id).add(BigInteger.ONE);
+        logger.info("recoverPublishingQueue  publishing completed requests from " + start);
+
+        mCheckpoint.startRecovery(id);
+
+        Thread thread = new NotifierThreadFactory("PublishingQueueRecovery", mPublishingQueuePriority)
+                .newThread(new Runnable() {
+                    public void run() {
+                        recover(start);
+                    }
+                });
+        thread.start();
+    }
+
+    private void recover(BigInteger start) {
+
+        int count = 0;
+
+        try {
+            if (mCA != null && mRequestQueue == null)
+                mRequestQueue = mCA.getRequestQueue();
+
+            if (mRequestQueue == null) {
+                logger.warn("recoverPublishingQueue  has no access to the request queue");
+                return;
+            }
+
+            // the virtual list fetches the requests page by page
+            IRequestVirtualList list = mRequestQueue.getPagedRequestsByFilter(
+                    new RequestId(start), "(requeststate=complete)", mMaxRequests, "requestId");
+            int s = list.getSize() - list.getCurrentIndex();
+            logger.debug("recoverPublishingQueue  list size: " + s);
+
+            for (int i = 0; i < s; i++) {
+                IRequest r = null;
+                try {
+                    r = list.getElementAt(i);
+                } catch (Exception e) {
+                    // handled below
                 }
+                if (r == null) {
+                    continue;
+                }
+
+                mCheckpoint.setRecoveryCursor(r.getRequestId().toBigInteger());
+
+                if (!isPublishable(r)) {
+                    continue;
+                }
+
+                addToNotify(r);
+                count++;
             }
+
+        } catch (Throwable e) {
+            logger.warn("recoverPublishingQueue  Exception: " + e.getMessage(), e);
+
+        } finally {
+            logger.info("recoverPublishingQueue  queued " + count + " requests");
+            mCheckpoint.endRecovery();
+        }
+    }
+
+    private static boolean isPublishable(IRequest r) {
+        String requestType = r.getRequestType();
+        if (requestType == null) {
+            return false;
+        }
+        return requestType.equals(IRequest.ENROLLMENT_REQUEST) ||
+                requestType.equals(IRequest.RENEWAL_REQUEST) ||
+                requestType.equals(IRequest.REVOCATION_REQUEST) ||
+                requestType.equals(IRequest.CMCREVOKE_REQUEST) ||
+                requestType.equals(IRequest.UNREVOCATION_REQUEST);
+    }
+
+    public void shutdown() {
+
+        ExecutorService listenerExecutor;
+        synchronized (this) {
+            listenerExecutor = mListenerExecutor;
+            mListenerExecutor = null;
+        }
+        if (listenerExecutor != null) {
+            listenerExecutor.shutdown();
+        }
+
+        ThreadPoolExecutor executor = mPublishingExecutor;
+        if (executor == null) {
+            return;
+        }
+
+        logger.info("ARequestNotifier: stopping publishing queue with " + getQueueDepth() + " queued requests");
+        executor.shutdown();
+
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                // remaining requests are recovered from the checkpoint
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
         }
-        logger.debug("morePublishingThreads  moreThreads: " + moreThreads);
 
-        return moreThreads;
+        mCheckpoint.flush();
+
+        mPublishingExecutor = null;
+        unregisterMBean();
+    }
+
+    public int getMaxThreads() {
+        return mMaxThreads;
+    }
+
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    public int getQueueDepth() {
+        ThreadPoolExecutor executor = mPublishingExecutor;
+        return executor == null ? 0 : executor.getQueue().size();
+    }
+
+    public int getActiveThreads() {
+        ThreadPoolExecutor executor = mPublishingExecutor;
+        return executor == null ? 0 : executor.getActiveCount();
+    }
+
+    public long getPublished() {
+        return mPublished.sum();
+    }
+
+    public long getOverflowed() {
+        return mOverflowed.sum();
+    }
+
+    public long getAverageQueueLatency() {
+        long published = mPublished.sum();
+        return published == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(mQueueLatency.sum() / published);
+    }
+
+    public long getMaxQueueLatency() {
+        return TimeUnit.NANOSECONDS.toMillis(mMaxQueueLatency.get());
+    }
+
+    public String getCheckpoint() {
+        PublishingCheckpoint checkpoint = mCheckpoint;
+        return checkpoint == null ? PublishingCheckpoint.EMPTY : checkpoint.getCheckpoint();
+    }
+
+    public void resetStatistics() {
+        mPublished.reset();
+        mOverflowed.reset();
+        mQueueLatency.reset();
+        mMaxQueueLatency.set(0);
+    }
+
+    private void recordQueueLatency(long latency) {
+        mQueueLatency.add(latency);
+        long max = mMaxQueueLatency.get();
+        while (latency > max && !mMaxQueueLatency.compareAndSet(max, latency)) {
+            max = mMaxQueueLatency.get();
+        }
     }
 
     /**
-     * Notifies all registered listeners about request.
-     *
-     * @param r request
+     * Publishes a queued request.
      */
-    public synchronized void addToNotify(IRequest r) {
-        if (!mSearchForRequests) {
-            if (mRequests.size() < mMaxRequests) {
-                mRequests.addElement(r.getRequestId().toString());
-                logger.debug("addToNotify  extended buffer to " + mRequests.size() + "(" + mMaxRequests + ")" +
-                          " requests by adding request " + r.getRequestId().toString());
-                if (morePublishingThreads()) {
-                    try {
-                        Thread notifierThread = new Thread(new RunListeners(this));
-                        if (notifierThread != null) {
-                            mNotifierThreads.addElement(notifierThread);
-                            logger.debug("Number of publishing threads: " + mNotifierThreads.size());
-                            if (mPublishingQueuePriority > 0) {
-                                notifierThread.setPriority(mPublishingQueuePriority);
-                            }
-                            notifierThread.start();
-                        }
-                    } catch (Throwable e) {
-                        logger.warn("addToNotify  Exception: " + e.getMessage(), e);
-                    }
-                }
-            } else {
-                mSearchForRequests = true;
+    class PublishTask implements Runnable {
+
+        IRequest mRequest;
+        long mQueued = System.nanoTime();
+
+        PublishTask(IRequest r) {
+            mRequest = r;
+        }
+
+        public void run() {
+            recordQueueLatency(System.nanoTime() - mQueued);
+
+            try {
+                new RunListeners(mRequest, mListeners.elements()).run();
+            } catch (Throwable e) {
+                logger.warn("Could not publish request " + mRequest.getRequestId() + ": " + e.getMessage(), e);
             }
+
+            updatePublishingStatus(mRequest.getRequestId().toString());
         }
     }
 
     /**
-     * Recovers publishing queue.
-     *
-     * @param id request request
+     * Publishes the request in the submitting thread if the queue is full.
      */
-    public void recoverPublishingQueue(String id) {
-        logger.debug("recoverPublishingQueue  mRequests.size()=" + mRequests.size() + "(" + mMaxRequests + ")" +
-                      " requests by adding request " + id);
-        if (mRequests.size() == 0) {
-            mRequests.addElement(id);
-            logger.debug("recoverPublishingQueue  extended buffer to " + mRequests.size() + "(" + mMaxRequests + ")" +
-                      " requests by adding request " + id);
-            if (morePublishingThreads()) {
-                synchronized (this) {
-                    mSearchForRequests = true;
-                }
-                try {
-                    Thread notifierThread = new Thread(new RunListeners(this));
-                    if (notifierThread != null) {
-                        mNotifierThreads.addElement(notifierThread);
-                        logger.debug("Number of publishing threads: " + mNotifierThreads.size());
-                        if (mPublishingQueuePriority > 0) {
-                            notifierThread.setPriority(mPublishingQueuePriority);
-                        }
-                        notifierThread.start();
-                    }
-                } catch (Throwable e) {
-                    logger.warn("recoverPublishingQueue  Exception: " + e.getMessage(), e);
-                }
+    class OverflowHandler implements RejectedExecutionHandler {
+
+        public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+
+            if (executor.isShutdown()) {
+                // recovered from the checkpoint on restart
+                logger.warn("ARequestNotifier: publishing queue stopped, request not published");
+                return;
             }
+
+            mOverflowed.increment();
+            task.run();
         }
     }
 }
 
+/**
+ * Creates named daemon threads for the request notifier.
+ */
+class NotifierThreadFactory implements ThreadFactory {
+
+    private String mName;
+    private int mPriority;
+    private AtomicInteger mCounter = new AtomicInteger();
+
+    NotifierThreadFactory(String name, int priority) {
+        mName = name;
+        mPriority = priority;
+    }
+
+    public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, mName + "-" + mCounter.incrementAndGet());
+        thread.setDaemon(true);
+        if (mPriority > 0) {
+            thread.setPriority(mPriority);
+        }
+        return thread;
+    }
+}
+
 /**
  * The RunListeners class implements Runnable interface.
  * This class executes notification of registered listeners.
@@ -486,7 +620,6 @@ class RunListeners implements Runnable {
 
     IRequest mRequest = null;
     Enumeration<IRequestListener> mListeners = null;
-    IRequestNotifier mRequestNotifier = null;
 
     /**
      * RunListeners class constructor.
@@ -499,48 +632,18 @@ class RunListeners implements Runnable {
         mListeners = listeners;
     }
 
-    /**
-     * RunListeners class constructor.
-     *
-     * @param r request
-     * @param listeners list of listeners
-     */
-    public RunListeners(IRequestNotifier requestNotifier) {
-        mRequestNotifier = requestNotifier;
-        mListeners = mRequestNotifier.getListeners();
-    }
-
     /**
      * RunListeners thread implementation.
      */
     public void run() {
-        logger.debug("RunListeners::"
-                + ((mRequestNotifier != null && mRequestNotifier.getNumberOfRequests() > 0) ? " Queue: "
-                        + mRequestNotifier.getNumberOfRequests() : " noQueue") +
-                  " " + ((mRequest != null) ? " SingleRequest" : " noSingleRequest"));
-        do {
-            if (mRequestNotifier != null)
-                mRequest = mRequestNotifier.getRequest();
-            if (mListeners != null && mRequest != null) {
-                while (mListeners.hasMoreElements()) {
-                    IRequestListener l = mListeners.nextElement();
-                    logger.debug("RunListeners: IRequestListener = " + l.getClass().getName());
-                    l.accept(mRequest);
-                }
-                if (mRequestNotifier != null) {
-                    logger.debug("RunListeners: mRequest = " + mRequest.getRequestId().toString());
-                    mRequestNotifier.updatePublishingStatus(mRequest.getRequestId().toString());
-                }
-            }
-            logger.debug("RunListeners: "
-                    + ((mRequestNotifier != null && mRequestNotifier.getNumberOfRequests() > 0) ? " Queue: "
-                            + mRequestNotifier.getNumberOfRequests() : " noQueue") +
-                      " " + ((mRequest != null) ? " SingleRequest" : " noSingleRequest"));
-            if (mRequestNotifier != null)
-                mListeners = mRequestNotifier.getListeners();
-        } while (mRequestNotifier != null && mRequestNotifier.getNumberOfRequests() > 0);
-
-        if (mRequestNotifier != null)
-            mRequestNotifier.removeNotifierThread(Thread.currentThread());
+        if (mListeners == null || mRequest == null) {
+            return;
+        }
+
+        while (mListeners.hasMoreElements()) {
+            IRequestListener l = mListeners.nextElement();
+            logger.debug("RunListeners: IRequestListener = " + l.getClass().getName());
+            l.accept(mRequest);
+        }
     }
 }
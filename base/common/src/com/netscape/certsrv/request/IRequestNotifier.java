@@ -77,13 +77,6 @@ public interface IRequestNotifier extends INotify {
      */
     public Enumeration<IRequestListener> getListeners();
 
-    /**
-     * Gets request from publishing queue.
-     *
-     * @return request
-     */
-    public IRequest getRequest();
-
     /**
      * Gets number of requests in publishing queue.
      *
@@ -98,13 +91,6 @@ public interface IRequestNotifier extends INotify {
      */
     public boolean isPublishingQueueEnabled();
 
-    /**
-     * Removes a notifier thread from the pool of publishing queue threads.
-     *
-     * @param notifierThread Thread
-     */
-    public void removeNotifierThread(Thread notifierThread);
-
     /**
      * Notifies all registered listeners about request.
      *
@@ -118,13 +104,30 @@ public interface IRequestNotifier extends INotify {
      * @param isPublishingQueueEnabled publishing queue switch
      * @param publishingQueuePriorityLevel publishing queue priority level
      * @param maxNumberOfPublishingThreads maximum number of publishing threads
-     * @param publishingQueuePageSize publishing queue page size
+     * @param publishingQueuePageSize page size used to recover the publishing queue
+     * @param savePublishingStatus number of published requests between checkpoints
+     * @param publishingQueueCapacity maximum number of queued requests
+     * @param checkpointInterval minimum number of seconds between the
+     *            checkpoints saved when the publishing queue becomes empty
      */
     public void setPublishingQueue(boolean isPublishingQueueEnabled,
                                     int publishingQueuePriorityLevel,
                                     int maxNumberOfPublishingThreads,
                                     int publishingQueuePageSize,
-                                    int savePublishingStatus);
+                                    int savePublishingStatus,
+                                    int publishingQueueCapacity,
+                                    int checkpointInterval);
 
+    /**
+     * Records that a request from the publishing queue has been published.
+     *
+     * @param id request ID
+     */
     public void updatePublishingStatus(String id);
+
+    /**
+     * Stops the publishing queue. Requests that have not been
+     * published are recovered from the checkpoint on restart.
+     */
+    public void shutdown();
 }
@@ -412,4 +412,9 @@ public interface IRequestQueue {
     public String getPublishingStatus();
 
     public void setPublishingStatus(String status);
+
+    /**
+     * Releases the resources used by this request queue.
+     */
+    public void shutdown();
 }
@@ -17,22 +17,53 @@
 // --- END COPYRIGHT BLOCK ---
 package com.netscape.certsrv.request;
 
-//import java.io.Serializable;
+import com.netscape.certsrv.base.EBaseException;
+import com.netscape.certsrv.base.IConfigStore;
 
 /**
- * This is an interface to a request scheduler that prioritizes
- * the threads based on the request processing order.
- * The request that enters the request queue first should
- * be processed first.
+ * This is an interface to a request scheduler that controls
+ * how requests are admitted into the request queue processing
+ * and how they move through the processing stages.
  *
  * @version $Revision$ $Date$
  */
 public interface IRequestScheduler {
 
     /**
-     * Request entered the request queue processing.
+     * Policy evaluation of a new request.
+     */
+    public final static String STAGE_VALIDATE = "validate";
+
+    /**
+     * Request servicing, e.g. certificate issuance or key recovery.
+     */
+    public final static String STAGE_SIGN = "sign";
+
+    /**
+     * Writing the request to the database.
+     */
+    public final static String STAGE_PERSIST = "persist";
+
+    /**
+     * Invoking the request notifiers.
+     */
+    public final static String STAGE_NOTIFY = "notify";
+
+    /**
+     * Initializes the scheduler.
+     *
+     * @param config scheduler configuration
+     * @exception EBaseException failed to initialize
+     */
+    public void init(IConfigStore config) throws EBaseException;
+
+    /**
+     * Request entered the request queue processing. If the request
+     * is admitted, requestOut() must be called when it exits.
      *
      * @param r request
+     * @exception com.netscape.certsrv.base.ServiceUnavailableException
+     *            the request cannot be admitted
      */
     public void requestIn(IRequest r);
 
@@ -42,4 +73,22 @@ public interface IRequestScheduler {
      * @param r request
      */
     public void requestOut(IRequest r);
+
+    /**
+     * Request entered a processing stage.
+     *
+     * @param r request
+     * @param stage stage name
+     * @exception com.netscape.certsrv.base.ServiceUnavailableException
+     *            the request cannot enter the validate stage
+     */
+    public void stageIn(IRequest r, String stage);
+
+    /**
+     * Request exited a processing stage.
+     *
+     * @param r request
+     * @param stage stage name
+     */
+    public void stageOut(IRequest r, String stage);
 }
@@ -0,0 +1,175 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2019 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package com.netscape.certsrv.request;
+
+import java.math.BigInteger;
+import java.util.TreeMap;
+
+/**
+ * The PublishingCheckpoint class tracks the requests in the publishing
+ * queue and decides when the checkpoint has to be saved.
+ * <p>
+ * The checkpoint is the ID of the request up to which all queued
+ * requests have been published, or -1 if the queue is empty. A saved
+ * checkpoint that is lower than the first queued request is still
+ * valid, it only causes more requests to be published again after a
+ * restart. So the checkpoint is saved when a request is queued only if
+ * the saved checkpoint does not cover it, and when the queue becomes
+ * empty only if the checkpoint has not been saved for the checkpoint
+ * interval. It is also saved every saveStatus published requests.
+ */
+abstract class PublishingCheckpoint {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(PublishingCheckpoint.class);
+
+    public final static String EMPTY = "-1";
+
+    private int mSaveStatus;
+    private long mInterval;
+
+    // queued requests by ID with the number of times they are queued
+    private TreeMap<BigInteger, Integer> mPending = new TreeMap<BigInteger, Integer>();
+
+    // last request read by the recovery, null if not recovering
+    private BigInteger mRecoveryCursor;
+
+    private int mCounter;
+    private String mCheckpoint = EMPTY;
+    private long mLastSaved;
+
+    /**
+     * @param saveStatus number of published requests between
+     *            checkpoints, 0 to disable the checkpoint
+     * @param interval minimum time in milliseconds between the
+     *            checkpoints saved when the queue becomes empty
+     */
+    PublishingCheckpoint(int saveStatus, long interval) {
+        mSaveStatus = saveStatus;
+        mInterval = interval;
+    }
+
+    /**
+     * Saves the checkpoint in the database.
+     *
+     * @return true if the checkpoint has been saved
+     */
+    protected abstract boolean store(String checkpoint);
+
+    /**
+     * Records a request added to the publishing queue. Must be
+     * called before the request is queued.
+     */
+    synchronized void queued(BigInteger id) {
+
+        Integer count = mPending.get(id);
+        mPending.put(id, count == null ? 1 : count + 1);
+
+        if (mCheckpoint.equals(EMPTY) || new BigInteger(mCheckpoint).compareTo(id) >= 0) {
+            // make the request recoverable before accepting it
+            save();
+        }
+    }
+
+    /**
+     * Records a request that has been published.
+     */
+    synchronized void published(BigInteger id) {
+
+        Integer count = mPending.get(id);
+        if (count == null) {
+            return;
+        }
+
+        if (count > 1) {
+            mPending.put(id, count - 1);
+        } else {
+            mPending.remove(id);
+        }
+
+        mCounter++;
+
+        if (mCounter >= mSaveStatus) {
+            save();
+
+        } else if (isIdle() && System.currentTimeMillis() - mLastSaved >= mInterval) {
+            save();
+        }
+    }
+
+    /**
+     * Starts recovering the requests after the saved checkpoint.
+     */
+    synchronized void startRecovery(String checkpoint) {
+        mCheckpoint = checkpoint;
+        mRecoveryCursor = new BigInteger(checkpoint).add(BigInteger.ONE);
+    }
+
+    synchronized void setRecoveryCursor(BigInteger id) {
+        mRecoveryCursor = id;
+    }
+
+    synchronized void endRecovery() {
+        mRecoveryCursor = null;
+        if (mPending.isEmpty()) {
+            save();
+        }
+    }
+
+    /**
+     * Saves the current checkpoint regardless of the interval.
+     */
+    synchronized void flush() {
+        save();
+    }
+
+    synchronized String getCheckpoint() {
+        return mCheckpoint;
+    }
+
+    synchronized boolean isIdle() {
+        return mPending.isEmpty() && mRecoveryCursor == null;
+    }
+
+    private void save() {
+
+        mCounter = 0;
+
+        if (mSaveStatus <= 0) {
+            return;
+        }
+
+        BigInteger first = mPending.isEmpty() ? null : mPending.firstKey();
+        if (mRecoveryCursor != null && (first == null || mRecoveryCursor.compareTo(first) < 0)) {
+            first = mRecoveryCursor;
+        }
+
+        String checkpoint = first == null ? EMPTY : first.subtract(BigInteger.ONE).toString();
+        if (checkpoint.equals(mCheckpoint)) {
+            return;
+        }
+
+        logger.debug("PublishingCheckpoint: saving checkpoint " + checkpoint);
+
+        if (!store(checkpoint)) {
+            return;
+        }
+
+        mCheckpoint = checkpoint;
+        mLastSaved = System.currentTimeMillis();
+    }
+}
@@ -0,0 +1,71 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2019 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package com.netscape.certsrv.request;
+
+/**
+ * Management interface of the publishing queue.
+ *
+ * @see ARequestNotifier
+ */
+public interface PublishingQueueMBean {
+
+    public boolean isPublishingQueueEnabled();
+
+    public int getMaxThreads();
+
+    public int getCapacity();
+
+    /**
+     * Returns the number of requests waiting in the queue.
+     */
+    public int getQueueDepth();
+
+    /**
+     * Returns the number of threads currently publishing.
+     */
+    public int getActiveThreads();
+
+    /**
+     * Returns the number of queued requests that have been published.
+     */
+    public long getPublished();
+
+    /**
+     * Returns the number of requests published by the submitting
+     * thread because the queue was full.
+     */
+    public long getOverflowed();
+
+    /**
+     * Returns the average time requests spent in the queue in milliseconds.
+     */
+    public long getAverageQueueLatency();
+
+    /**
+     * Returns the longest time a request spent in the queue in milliseconds.
+     */
+    public long getMaxQueueLatency();
+
+    /**
+     * Returns the last saved checkpoint: the ID of the request
+     * up to which all requests have been published, or -1.
+     */
+    public String getCheckpoint();
+
+    public void resetStatistics();
+}
@@ -287,4 +287,15 @@ public interface IUGSubsystem extends ISubsystem, IUsrGrp {
      * @return CertUserLocator
      */
     public ICertUserLocator getCertUserLocator();
+
+    /**
+     * Returns a counter that is incremented whenever a user,
+     * a user certificate, or a group is modified. Changes made
+     * on other servers are counted while the principal cache,
+     * the group membership cache, or the certificate index is
+     * enabled.
+     *
+     * @return change counter
+     */
+    public long getChangeCount();
 }
@@ -383,9 +383,16 @@ public class KeyRecoveryAuthority implements IAuthority, IKeyService, IKeyRecove
                 IRequestScheduler scheduler = (IRequestScheduler)
                         Class.forName(schedulerClass).newInstance();
 
+                scheduler.init(mConfig.getSubStore("requestScheduler"));
                 mRequestQueue.setRequestScheduler(scheduler);
+
+            } catch (EBaseException e) {
+                logger.error("KeyRecoveryAuthority: Unable to initialize request scheduler " + schedulerClass + ": " + e.getMessage(), e);
+                throw e;
+
             } catch (Exception e) {
-                // do nothing here
+                logger.error("KeyRecoveryAuthority: Unable to initialize request scheduler " + schedulerClass + ": " + e.getMessage(), e);
+                throw new EBaseException("Unable to initialize request scheduler: " + e.getMessage(), e);
             }
         }
         initNotificationListeners();
@@ -464,6 +471,10 @@ public class KeyRecoveryAuthority implements IAuthority, IKeyService, IKeyRecove
             mKeyDB.shutdown();
         }
 
+        if (mRequestQueue != null) {
+            mRequestQueue.shutdown();
+        }
+
         systemLogger.log(ILogger.LL_INFO, mName.toString() + " is stopped");
 
         mInitialized = false;
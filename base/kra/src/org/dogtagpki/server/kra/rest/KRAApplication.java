@@ -9,6 +9,7 @@ import org.dogtagpki.server.rest.ACLInterceptor;
 import org.dogtagpki.server.rest.AccountService;
 import org.dogtagpki.server.rest.AuditService;
 import org.dogtagpki.server.rest.AuthMethodInterceptor;
+import org.dogtagpki.server.rest.DBStatisticsService;
 import org.dogtagpki.server.rest.GroupService;
 import org.dogtagpki.server.rest.KRAInfoService;
 import org.dogtagpki.server.rest.MessageFormatInterceptor;
@@ -39,6 +40,9 @@ public class KRAApplication extends Application {
         // audit
         classes.add(AuditService.class);
 
+        // database statistics
+        classes.add(DBStatisticsService.class);
+
         // installer
         classes.add(KRAInstallerService.class);
 
@@ -9,6 +9,7 @@ import org.dogtagpki.server.rest.ACLInterceptor;
 import org.dogtagpki.server.rest.AccountService;
 import org.dogtagpki.server.rest.AuditService;
 import org.dogtagpki.server.rest.AuthMethodInterceptor;
+import org.dogtagpki.server.rest.DBStatisticsService;
 import org.dogtagpki.server.rest.GroupService;
 import org.dogtagpki.server.rest.MessageFormatInterceptor;
 import org.dogtagpki.server.rest.PKIExceptionMapper;
@@ -38,6 +39,9 @@ public class OCSPApplication extends Application {
         // audit
         classes.add(AuditService.class);
 
+        // database statistics
+        classes.add(DBStatisticsService.class);
+
         // installer
         classes.add(OCSPInstallerService.class);
 
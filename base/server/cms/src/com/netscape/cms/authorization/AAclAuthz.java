@@ -17,11 +17,19 @@
 // --- END COPYRIGHT BLOCK ---
 package com.netscape.cms.authorization;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.mozilla.jss.netscape.security.util.Utils;
 
@@ -87,6 +95,9 @@ public abstract class AAclAuthz implements IAuthzManager {
     private Hashtable<String, IACL> mACLs = new Hashtable<>();
     private Hashtable<String, IAccessEvaluator> mEvaluators = new Hashtable<String, IAccessEvaluator>();
 
+    /* compiled ACLs, replaced whenever the ACLs change */
+    private volatile CompiledACLs mCompiledACLs = new CompiledACLs(new Hashtable<String, IACL>());
+
     /* Vector of extendedPluginInfo strings */
     protected static Vector<String> mExtendedPluginInfo = null;
 
@@ -187,11 +198,14 @@ public abstract class AAclAuthz implements IAuthzManager {
         ACL acl = ACL.parseACL(resACLs);
 
         if (acl != null) {
-            ACL curACL = (ACL) mACLs.get(acl.getName());
-            if (curACL == null) {
-                mACLs.put(acl.getName(), acl);
-            } else {
-                curACL.merge(acl);
+            synchronized (mACLs) {
+                ACL curACL = (ACL) mACLs.get(acl.getName());
+                if (curACL == null) {
+                    mACLs.put(acl.getName(), acl);
+                } else {
+                    curACL.merge(acl);
+                }
+                mCompiledACLs = new CompiledACLs(mACLs);
             }
         } else {
             logger.warn("AAclAuthz: parseACL failed");
@@ -501,13 +515,13 @@ public abstract class AAclAuthz implements IAuthzManager {
      * @param perm permission requested
      * @exception EACLsException access permission denied
      */
-    public synchronized void checkPermission(IAuthToken authToken, String name,
+    public void checkPermission(IAuthToken authToken, String name,
             String perm)
             throws EACLsException {
 
         logger.debug("AAclAuthz.checkPermission(" + name + ", " + perm + ")");
 
-        Vector<String> nodes = getNodes(name);
+        CompiledEntry[][] nodes = mCompiledACLs.getNodes(name);
         EvaluationOrder order = getOrder();
 
         boolean permitted = false;
@@ -535,128 +549,40 @@ public abstract class AAclAuthz implements IAuthzManager {
         logger.info("AAclAuthz: " + infoMsg);
     }
 
-    protected boolean checkAllowEntries(
+    private boolean checkAllowEntries(
             IAuthToken authToken,
-            Iterable<String> nodes,
+            CompiledEntry[][] nodes,
             String perm) {
-        for (ACLEntry entry : getEntries(ACLEntry.Type.Allow, nodes, perm)) {
-            logger.debug("checkAllowEntries(): expressions: " + entry.getAttributeExpressions());
-            if (evaluateExpressions(authToken, entry.getAttributeExpressions())) {
-                return true;
+        for (CompiledEntry[] entries : nodes) {
+            for (CompiledEntry entry : entries) {
+                if (entry.type != ACLEntry.Type.Allow || !entry.permissions.contains(perm))
+                    continue;
+                logger.debug("checkAllowEntries(): expressions: " + entry.expression);
+                if (entry.expression.evaluate(authToken, mEvaluators)) {
+                    return true;
+                }
             }
         }
         return false;
     }
 
     /** throw EACLsException if a deny entry is matched */
-    protected void checkDenyEntries(
+    private void checkDenyEntries(
             IAuthToken authToken,
-            Iterable<String> nodes,
+            CompiledEntry[][] nodes,
             String perm)
             throws EACLsException {
-        for (ACLEntry entry : getEntries(ACLEntry.Type.Deny, nodes, perm)) {
-            logger.debug("checkDenyEntries(): expressions: " + entry.getAttributeExpressions());
-            if (evaluateExpressions(authToken, entry.getAttributeExpressions())) {
-                logger.error("AAclAuthz: checkPermission(): permission denied");
-                throw new EACLsException(CMS.getUserMessage("CMS_ACL_PERMISSION_DENIED"));
-            }
-        }
-    }
-
-    protected Iterable<ACLEntry> getEntries(
-            ACLEntry.Type entryType,
-            Iterable<String> nodes,
-            String operation
-    ) {
-        Vector<ACLEntry> v = new Vector<ACLEntry>();
-
-        for (String name : nodes) {
-            ACL acl = (ACL) mACLs.get(name);
-            if (acl == null)
-                continue;
-            Enumeration<ACLEntry> e = acl.entries();
-            while (e.hasMoreElements()) {
-                ACLEntry entry = e.nextElement();
-
-                if (entry.getType() == entryType &&
-                        entry.containPermission(operation)) {
-                    v.addElement(entry);
+        for (CompiledEntry[] entries : nodes) {
+            for (CompiledEntry entry : entries) {
+                if (entry.type != ACLEntry.Type.Deny || !entry.permissions.contains(perm))
+                    continue;
+                logger.debug("checkDenyEntries(): expressions: " + entry.expression);
+                if (entry.expression.evaluate(authToken, mEvaluators)) {
+                    logger.error("AAclAuthz: checkPermission(): permission denied");
+                    throw new EACLsException(CMS.getUserMessage("CMS_ACL_PERMISSION_DENIED"));
                 }
             }
         }
-
-        return v;
-    }
-
-    /**
-     * Resolves the given expressions.
-     * expression || expression || ...
-     * example:
-     * group="Administrators" || group="Operators"
-     */
-    private boolean evaluateExpressions(IAuthToken authToken, String s) {
-        // XXX - just handle "||" (or) among multiple expressions for now
-        // XXX - could use some optimization ... later
-        logger.debug("evaluating expressions: " + s);
-
-        Vector<Object> v = new Vector<Object>();
-
-        while (s.length() > 0) {
-            int orIndex = s.indexOf("||");
-            int andIndex = s.indexOf("&&");
-
-            // this is the last expression
-            if (orIndex == -1 && andIndex == -1) {
-                boolean passed = evaluateExpression(authToken, s.trim());
-
-                logger.debug("evaluated expression: " + s.trim() + " to be " + passed);
-                v.addElement(Boolean.valueOf(passed));
-                break;
-
-                // || first
-            } else if (andIndex == -1 || (orIndex != -1 && orIndex < andIndex)) {
-                String s1 = s.substring(0, orIndex);
-                boolean passed = evaluateExpression(authToken, s1.trim());
-
-                logger.debug("evaluated expression: " + s1.trim() + " to be " + passed);
-                v.addElement(new Boolean(passed));
-                v.addElement("||");
-                s = s.substring(orIndex + 2);
-                // && first
-            } else {
-                String s1 = s.substring(0, andIndex);
-                boolean passed = evaluateExpression(authToken, s1.trim());
-
-                logger.debug("evaluated expression: " + s1.trim() + " to be " + passed);
-                v.addElement(new Boolean(passed));
-                v.addElement("&&");
-                s = s.substring(andIndex + 2);
-            }
-        }
-
-        if (v.size() == 0) {
-            return false;
-        }
-
-        if (v.size() == 1) {
-            Boolean bool = (Boolean) v.remove(0);
-
-            return bool.booleanValue();
-        }
-
-        boolean left = false;
-        String op = "";
-        boolean right = false;
-
-        while (v.size() > 0) {
-            if (op.equals(""))
-                left = ((Boolean) v.remove(0)).booleanValue();
-            op = (String) v.remove(0);
-            right = ((Boolean) v.remove(0)).booleanValue();
-            left = evaluateExp(left, op, right);
-        }
-
-        return left;
     }
 
     public Vector<String> getNodes(String resourceID) {
@@ -679,57 +605,6 @@ public abstract class AAclAuthz implements IAuthzManager {
         return v;
     }
 
-    /**
-     * Resolves the given expression.
-     */
-    private boolean evaluateExpression(IAuthToken authToken, String expression) {
-        String op = getOp(expression);
-        String type = "";
-        String value = "";
-
-        if (!op.equals("")) {
-            int len = op.length();
-            int i = expression.indexOf(op);
-
-            type = expression.substring(0, i).trim();
-            value = expression.substring(i + len).trim();
-        }
-        IAccessEvaluator evaluator = mEvaluators.get(type);
-
-        if (evaluator == null) {
-            logger.warn("AAclAuthz: " + CMS.getLogMessage("AUTHZ_EVALUATOR_NOT_FOUND", type));
-            return false;
-        }
-
-        return evaluator.evaluate(authToken, type, op, value);
-    }
-
-    private String getOp(String exp) {
-        int i = exp.indexOf("!=");
-
-        if (i == -1) {
-            i = exp.indexOf("=");
-            if (i == -1) {
-                i = exp.indexOf(">");
-                if (i == -1) {
-                    i = exp.indexOf("<");
-                    if (i == -1) {
-                        logger.warn("AAclAuthz: " + CMS.getLogMessage("AUTHZ_OP_NOT_SUPPORTED", exp));
-                    } else {
-                        return "<";
-                    }
-                } else {
-                    return ">";
-                }
-            } else {
-                return "=";
-            }
-        } else {
-            return "!=";
-        }
-        return "";
-    }
-
     private boolean evaluateExp(boolean left, String op, boolean right) {
         if (op.equals("||")) {
             if (left == false && right == false)
@@ -767,7 +642,10 @@ public abstract class AAclAuthz implements IAuthzManager {
             throw new EACLsException(CMS.getUserMessage("CMS_ACL_PARSING_ERROR_0"));
         }
 
-        mACLs.put(ac.getName(), ac);
+        synchronized (mACLs) {
+            mACLs.put(ac.getName(), ac);
+            mCompiledACLs = new CompiledACLs(mACLs);
+        }
     }
 
     /**
@@ -882,6 +760,93 @@ public abstract class AAclAuthz implements IAuthzManager {
     }
 
     public boolean evaluateACLs(IAuthToken authToken, String exp) {
-        return evaluateExpressions(authToken, exp);
+        logger.debug("evaluating expressions: " + exp);
+        return ACLExpression.parse(exp).evaluate(authToken, mEvaluators);
+    }
+
+    /**
+     * ACL entry with its permissions and parsed expression.
+     */
+    private static class CompiledEntry {
+
+        final ACLEntry.Type type;
+        final Set<String> permissions;
+        final ACLExpression expression;
+
+        CompiledEntry(ACLEntry entry) {
+            type = entry.getType();
+            permissions = new HashSet<>(Collections.list(entry.permissions()));
+            expression = ACLExpression.parse(entry.getAttributeExpressions());
+        }
+    }
+
+    /**
+     * Immutable snapshot of the ACLs with parsed expressions. A new
+     * snapshot is built whenever the ACLs are added or updated and
+     * published through a volatile field, so permission checks read
+     * it without locking.
+     */
+    private static class CompiledACLs {
+
+        private final static int MAX_NODES = 10000;
+        private final static CompiledEntry[][] NO_NODES = new CompiledEntry[0][];
+
+        // entries by resource name
+        private final Map<String, CompiledEntry[]> mEntries = new HashMap<>();
+
+        // entries of a resource and its ancestors, from the leaf up
+        private final Map<String, CompiledEntry[][]> mNodes = new ConcurrentHashMap<>();
+
+        CompiledACLs(Hashtable<String, IACL> acls) {
+            for (IACL iacl : acls.values()) {
+                ACL acl = (ACL) iacl;
+                List<CompiledEntry> entries = new ArrayList<>();
+
+                Enumeration<ACLEntry> e = acl.entries();
+                while (e.hasMoreElements()) {
+                    entries.add(new CompiledEntry(e.nextElement()));
+                }
+
+                mEntries.put(acl.getName(), entries.toArray(new CompiledEntry[entries.size()]));
+            }
+        }
+
+        CompiledEntry[][] getNodes(String name) {
+
+            if (name == null || name.equals("")) {
+                return NO_NODES;
+            }
+
+            CompiledEntry[][] nodes = mNodes.get(name);
+            if (nodes != null) {
+                return nodes;
+            }
+
+            List<CompiledEntry[]> list = new ArrayList<>();
+            String node = name;
+
+            while (true) {
+                CompiledEntry[] entries = mEntries.get(node);
+                if (entries != null) {
+                    list.add(entries);
+                }
+
+                int index = node.lastIndexOf(".");
+                if (index == -1) {
+                    break;
+                }
+                node = node.substring(0, index);
+            }
+
+            nodes = list.toArray(new CompiledEntry[list.size()][]);
+
+            // resource names come from the code, but do not let
+            // arbitrary names grow the cache without bound
+            if (mNodes.size() < MAX_NODES) {
+                mNodes.put(name, nodes);
+            }
+
+            return nodes;
+        }
     }
 }
@@ -0,0 +1,229 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2019 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package com.netscape.cms.authorization;
+
+import java.util.Map;
+
+import com.netscape.certsrv.authentication.IAuthToken;
+import com.netscape.certsrv.evaluators.IAccessEvaluator;
+import com.netscape.cmscore.apps.CMS;
+
+/**
+ * The ACLExpression class represents a parsed ACL attribute expression,
+ * for example:
+ *
+ * <PRE>
+ *   group="Administrators" || group="Operators"
+ * </PRE>
+ *
+ * The expression is parsed once into an immutable tree so that it can
+ * be evaluated concurrently without parsing the string again. The
+ * "&amp;&amp;" and "||" operators have the same precedence and are
+ * evaluated from left to right.
+ */
+public abstract class ACLExpression {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(ACLExpression.class);
+
+    public final static String OR = "||";
+    public final static String AND = "&&";
+
+    public final static ACLExpression FALSE = new ACLExpression() {
+        public boolean evaluate(IAuthToken authToken, Map<String, IAccessEvaluator> evaluators) {
+            return false;
+        }
+
+        public String toString() {
+            return "";
+        }
+    };
+
+    /**
+     * Evaluates this expression with the given access evaluators.
+     *
+     * @param authToken authentication token of the caller
+     * @param evaluators access evaluators by attribute type
+     * @return true if the expression is satisfied
+     */
+    public abstract boolean evaluate(IAuthToken authToken, Map<String, IAccessEvaluator> evaluators);
+
+    /**
+     * Parses an attribute expression.
+     *
+     * @param s expression in the format: expression [(||,&amp;&amp;) expression ...]
+     * @return parsed expression
+     */
+    public static ACLExpression parse(String s) {
+
+        if (s == null || s.length() == 0) {
+            return FALSE;
+        }
+
+        ACLExpression expression = null;
+        String op = null;
+
+        while (true) {
+            int orIndex = s.indexOf(OR);
+            int andIndex = s.indexOf(AND);
+
+            String term;
+            String next;
+
+            if (orIndex == -1 && andIndex == -1) {
+                // this is the last expression
+                term = s;
+                next = null;
+
+            } else if (andIndex == -1 || (orIndex != -1 && orIndex < andIndex)) {
+                // || first
+                term = s.substring(0, orIndex);
+                next = OR;
+                s = s.substring(orIndex + 2);
+
+            } else {
+                // && first
+                term = s.substring(0, andIndex);
+                next = AND;
+                s = s.substring(andIndex + 2);
+            }
+
+            ACLExpression right = new Term(term.trim());
+
+            if (expression == null) {
+                expression = right;
+            } else if (OR.equals(op)) {
+                expression = new Or(expression, right);
+            } else {
+                expression = new And(expression, right);
+            }
+
+            if (next == null) {
+                return expression;
+            }
+
+            op = next;
+        }
+    }
+
+    /**
+     * A single attribute expression, for example: group="Administrators"
+     */
+    public static class Term extends ACLExpression {
+
+        private String expression;
+        private String type = "";
+        private String op = "";
+        private String value = "";
+
+        public Term(String expression) {
+
+            this.expression = expression;
+
+            op = getOp(expression);
+            if (op.equals("")) {
+                logger.warn("ACLExpression: " + CMS.getLogMessage("AUTHZ_OP_NOT_SUPPORTED", expression));
+                return;
+            }
+
+            int i = expression.indexOf(op);
+            type = expression.substring(0, i).trim();
+            value = expression.substring(i + op.length()).trim();
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public String getOp() {
+            return op;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        public boolean evaluate(IAuthToken authToken, Map<String, IAccessEvaluator> evaluators) {
+
+            IAccessEvaluator evaluator = evaluators.get(type);
+
+            if (evaluator == null) {
+                logger.warn("ACLExpression: " + CMS.getLogMessage("AUTHZ_EVALUATOR_NOT_FOUND", type));
+                return false;
+            }
+
+            boolean passed = evaluator.evaluate(authToken, type, op, value);
+            logger.debug("evaluated expression: " + expression + " to be " + passed);
+
+            return passed;
+        }
+
+        public String toString() {
+            return expression;
+        }
+
+        private static String getOp(String exp) {
+            if (exp.indexOf("!=") != -1)
+                return "!=";
+            if (exp.indexOf("=") != -1)
+                return "=";
+            if (exp.indexOf(">") != -1)
+                return ">";
+            if (exp.indexOf("<") != -1)
+                return "<";
+            return "";
+        }
+    }
+
+    public static class Or extends ACLExpression {
+
+        private ACLExpression left;
+        private ACLExpression right;
+
+        public Or(ACLExpression left, ACLExpression right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        public boolean evaluate(IAuthToken authToken, Map<String, IAccessEvaluator> evaluators) {
+            return left.evaluate(authToken, evaluators) || right.evaluate(authToken, evaluators);
+        }
+
+        public String toString() {
+            return left + " " + OR + " " + right;
+        }
+    }
+
+    public static class And extends ACLExpression {
+
+        private ACLExpression left;
+        private ACLExpression right;
+
+        public And(ACLExpression left, ACLExpression right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        public boolean evaluate(IAuthToken authToken, Map<String, IAccessEvaluator> evaluators) {
+            return left.evaluate(authToken, evaluators) && right.evaluate(authToken, evaluators);
+        }
+
+        public String toString() {
+            return left + " " + AND + " " + right;
+        }
+    }
+}
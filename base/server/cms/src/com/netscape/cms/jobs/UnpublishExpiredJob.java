@@ -19,7 +19,6 @@ package com.netscape.cms.jobs;
 
 import java.text.DateFormat;
 import java.util.Date;
-import java.util.Enumeration;
 import java.util.Locale;
 
 import org.mozilla.jss.netscape.security.x509.X509CertImpl;
@@ -30,6 +29,7 @@ import com.netscape.certsrv.base.IExtendedPluginInfo;
 import com.netscape.certsrv.base.ISubsystem;
 import com.netscape.certsrv.base.MetaInfo;
 import com.netscape.certsrv.ca.ICertificateAuthority;
+import com.netscape.certsrv.dbs.IDBPagedSearch;
 import com.netscape.certsrv.dbs.certdb.ICertRecord;
 import com.netscape.certsrv.dbs.certdb.ICertificateRepository;
 import com.netscape.certsrv.jobs.IJob;
@@ -69,6 +69,9 @@ public class UnpublishExpiredJob extends AJobBase
     IPublisherProcessor mPublisherProcessor = null;
     private boolean mSummary = false;
 
+    // number of certificate records retrieved per page
+    private final static int PAGE_SIZE = 100;
+
     /* Holds configuration parameters accepted by this implementation.
      * This list is passed to the configuration console so configuration
      * for instances of this implementation can be configured through the
@@ -182,21 +185,6 @@ public class UnpublishExpiredJob extends AJobBase
         // a test for without CertRecord.META_LDAPPUBLISH
         //String filter = "(x509Cert.notAfter<="+ now +")";
 
-        Enumeration<Object> expired = null;
-
-        try {
-            expired = mRepository.findCertRecs(filter);
-            // bug 399150
-            /*
-             CertRecordList list = null;
-             list = mRepository.findCertRecordsInList(filter,  null, "serialno", 5);
-             int size = list.getSize();
-             expired = list.getCertRecords(0, size - 1);
-             */
-        } catch (EBaseException e) {
-            logger.warn("UnpublishExpiredJob: " + CMS.getLogMessage("OPERATION_ERROR", e.toString()), e);
-        }
-
         int count = 0; // how many have been unpublished successfully
         int negCount = 0; // how many have NOT been unpublished successfully
         String contentForm = null;
@@ -208,131 +196,143 @@ public class UnpublishExpiredJob extends AJobBase
             itemForm = getTemplateContent(mItemForm);
         }
 
-        // unpublish them and unpublish() will set inLdapPublishDir flag
-        while (expired != null && expired.hasMoreElements()) {
-            ICertRecord rec = (ICertRecord) expired.nextElement();
-
-            if (rec == null)
-                break;
-            X509CertImpl cert = rec.getCertificate();
-
-            if (mSummary == true)
-                buildItemParams(cert);
-
-            // get request id from cert record MetaInfo
-            MetaInfo minfo = null;
+        try (IDBPagedSearch<ICertRecord> expired = mRepository.findPagedCertRecords(filter, null, PAGE_SIZE)) {
+            // bug 399150
+            /*
+             CertRecordList list = null;
+             list = mRepository.findCertRecordsInList(filter,  null, "serialno", 5);
+             int size = list.getSize();
+             expired = list.getCertRecords(0, size - 1);
+             */
 
-            try {
-                minfo = (MetaInfo) rec.get(ICertRecord.ATTR_META_INFO);
-            } catch (EBaseException e) {
-                negCount += 1;
-                if (mSummary == true)
-                    buildItemParams(IEmailFormProcessor.TOKEN_STATUS,
-                            STATUS_FAILURE);
-                logger.warn("UnpublishExpiredJob: " + CMS.getLogMessage("JOBS_META_INFO_ERROR",
-                                cert.getSerialNumber().toString(16) + e.getMessage()), e);
-            }
+            // unpublish them and unpublish() will set inLdapPublishDir flag
+            while (true) {
+                ICertRecord rec = nextCertRecord(expired);
 
-            String ridString = null;
+                if (rec == null)
+                    break;
+                X509CertImpl cert = rec.getCertificate();
 
-            try {
-                if (minfo != null)
-                    ridString = (String) minfo.get(ICertRecord.META_REQUEST_ID);
-            } catch (EBaseException e) {
-                negCount += 1;
-                if (mSummary == true)
-                    buildItemParams(IEmailFormProcessor.TOKEN_STATUS,
-                            STATUS_FAILURE);
-                logger.warn("UnpublishExpiredJob: " + CMS.getLogMessage("JOBS_META_REQUEST_ERROR",
-                                cert.getSerialNumber().toString(16) + e.getMessage()), e);
-            } catch (NullPointerException e) {
-                // no requestId in MetaInfo...skip to next record
-                negCount += 1;
                 if (mSummary == true)
-                    buildItemParams(IEmailFormProcessor.TOKEN_STATUS,
-                            STATUS_FAILURE);
-                logger.warn("UnpublishExpiredJob: " + CMS.getLogMessage("JOBS_META_REQUEST_ERROR",
-                                cert.getSerialNumber().toString(16) + e.getMessage()), e);
-            }
+                    buildItemParams(cert);
 
-            if (ridString != null) {
-                RequestId rid = new RequestId(ridString);
-
-                // get request from request id
-                IRequest req = null;
+                // get request id from cert record MetaInfo
+                MetaInfo minfo = null;
 
                 try {
-                    req = mReqQ.findRequest(rid);
-                    if (req != null) {
-                        if (mSummary == true)
-                            buildItemParams(req);
-                    }
+                    minfo = (MetaInfo) rec.get(ICertRecord.ATTR_META_INFO);
                 } catch (EBaseException e) {
                     negCount += 1;
                     if (mSummary == true)
                         buildItemParams(IEmailFormProcessor.TOKEN_STATUS,
                                 STATUS_FAILURE);
-                    logger.warn("UnpublishExpiredJob: " + CMS.getLogMessage("JOBS_FIND_REQUEST_ERROR",
+                    logger.warn("UnpublishExpiredJob: " + CMS.getLogMessage("JOBS_META_INFO_ERROR",
                                     cert.getSerialNumber().toString(16) + e.getMessage()), e);
                 }
+
+                String ridString = null;
+
                 try {
-                    if ((mPublisherProcessor != null) &&
-                            mPublisherProcessor.isCertPublishingEnabled()) {
-                        mPublisherProcessor.unpublishCert(cert, req);
-                        if (mSummary == true)
-                            buildItemParams(IEmailFormProcessor.TOKEN_STATUS,
-                                    STATUS_SUCCESS);
-                        count += 1;
-                    } else {
-                        negCount += 1;
-                    }
-                } catch (Exception e) {
+                    if (minfo != null)
+                        ridString = (String) minfo.get(ICertRecord.META_REQUEST_ID);
+                } catch (EBaseException e) {
                     negCount += 1;
                     if (mSummary == true)
                         buildItemParams(IEmailFormProcessor.TOKEN_STATUS,
                                 STATUS_FAILURE);
-                    logger.warn("UnpublishExpiredJob: " + CMS.getLogMessage("JOBS_UNPUBLISH_ERROR",
+                    logger.warn("UnpublishExpiredJob: " + CMS.getLogMessage("JOBS_META_REQUEST_ERROR",
                                     cert.getSerialNumber().toString(16) + e.getMessage()), e);
-                }
-            } // ridString != null
-            else {
-                try {
-                    if ((mPublisherProcessor != null) &&
-                            mPublisherProcessor.isCertPublishingEnabled()) {
-                        mPublisherProcessor.unpublishCert(cert, null);
-                        if (mSummary == true)
-                            buildItemParams(IEmailFormProcessor.TOKEN_STATUS,
-                                    STATUS_SUCCESS);
-                        count += 1;
-                    } else {
-                        negCount += 1;
-                    }
-                } catch (Exception e) {
+                } catch (NullPointerException e) {
+                    // no requestId in MetaInfo...skip to next record
                     negCount += 1;
                     if (mSummary == true)
                         buildItemParams(IEmailFormProcessor.TOKEN_STATUS,
                                 STATUS_FAILURE);
-                    logger.warn("UnpublishExpiredJob: " + CMS.getLogMessage("JOBS_UNPUBLISH_ERROR",
+                    logger.warn("UnpublishExpiredJob: " + CMS.getLogMessage("JOBS_META_REQUEST_ERROR",
                                     cert.getSerialNumber().toString(16) + e.getMessage()), e);
                 }
-            } // ridString == null
-
-            // inLdapPublishDir flag should have been set by the
-            // unpublish() method
-
-            // if summary is enabled, form the item content
-            if (mSummary) {
-                EmailFormProcessor emailItemFormProcessor = new EmailFormProcessor();
-                String c = emailItemFormProcessor.getEmailContent(itemForm,
-                        mItemParams);
-
-                // add item content to the item list
-                if (itemListContent == null) {
-                    itemListContent = c;
-                } else {
-                    itemListContent += c;
+
+                if (ridString != null) {
+                    RequestId rid = new RequestId(ridString);
+
+                    // get request from request id
+                    IRequest req = null;
+
+                    try {
+                        req = mReqQ.findRequest(rid);
+                        if (req != null) {
+                            if (mSummary == true)
+                                buildItemParams(req);
+                        }
+                    } catch (EBaseException e) {
+                        negCount += 1;
+                        if (mSummary == true)
+                            buildItemParams(IEmailFormProcessor.TOKEN_STATUS,
+                                    STATUS_FAILURE);
+                        logger.warn("UnpublishExpiredJob: " + CMS.getLogMessage("JOBS_FIND_REQUEST_ERROR",
+                                        cert.getSerialNumber().toString(16) + e.getMessage()), e);
+                    }
+                    try {
+                        if ((mPublisherProcessor != null) &&
+                                mPublisherProcessor.isCertPublishingEnabled()) {
+                            mPublisherProcessor.unpublishCert(cert, req);
+                            if (mSummary == true)
+                                buildItemParams(IEmailFormProcessor.TOKEN_STATUS,
+                                        STATUS_SUCCESS);
+                            count += 1;
+                        } else {
+                            negCount += 1;
+                        }
+                    } catch (Exception e) {
+                        negCount += 1;
+                        if (mSummary == true)
+                            buildItemParams(IEmailFormProcessor.TOKEN_STATUS,
+                                    STATUS_FAILURE);
+                        logger.warn("UnpublishExpiredJob: " + CMS.getLogMessage("JOBS_UNPUBLISH_ERROR",
+                                        cert.getSerialNumber().toString(16) + e.getMessage()), e);
+                    }
+                } // ridString != null
+                else {
+                    try {
+                        if ((mPublisherProcessor != null) &&
+                                mPublisherProcessor.isCertPublishingEnabled()) {
+                            mPublisherProcessor.unpublishCert(cert, null);
+                            if (mSummary == true)
+                                buildItemParams(IEmailFormProcessor.TOKEN_STATUS,
+                                        STATUS_SUCCESS);
+                            count += 1;
+                        } else {
+                            negCount += 1;
+                        }
+                    } catch (Exception e) {
+                        negCount += 1;
+                        if (mSummary == true)
+                            buildItemParams(IEmailFormProcessor.TOKEN_STATUS,
+                                    STATUS_FAILURE);
+                        logger.warn("UnpublishExpiredJob: " + CMS.getLogMessage("JOBS_UNPUBLISH_ERROR",
+                                        cert.getSerialNumber().toString(16) + e.getMessage()), e);
+                    }
+                } // ridString == null
+
+                // inLdapPublishDir flag should have been set by the
+                // unpublish() method
+
+                // if summary is enabled, form the item content
+                if (mSummary) {
+                    EmailFormProcessor emailItemFormProcessor = new EmailFormProcessor();
+                    String c = emailItemFormProcessor.getEmailContent(itemForm,
+                            mItemParams);
+
+                    // add item content to the item list
+                    if (itemListContent == null) {
+                        itemListContent = c;
+                    } else {
+                        itemListContent += c;
+                    }
                 }
             }
+        } catch (EBaseException e) {
+            logger.warn("UnpublishExpiredJob: " + CMS.getLogMessage("OPERATION_ERROR", e.toString()), e);
         }
 
         // time for summary
@@ -359,6 +359,21 @@ public class UnpublishExpiredJob extends AJobBase
         }
     }
 
+    /**
+     * Returns the next certificate record, or null
+     * when there are no more records or the search failed.
+     */
+    private ICertRecord nextCertRecord(IDBPagedSearch<ICertRecord> search) {
+        try {
+            if (search.hasNext()) {
+                return search.next();
+            }
+        } catch (EBaseException e) {
+            logger.warn("UnpublishExpiredJob: " + CMS.getLogMessage("OPERATION_ERROR", e.toString()), e);
+        }
+        return null;
+    }
+
     /**
      * Returns a list of configuration parameter names.
      * The list is passed to the configuration console so instances of
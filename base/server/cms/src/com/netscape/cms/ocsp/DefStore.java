@@ -627,7 +627,7 @@ public class DefStore implements IDefStore, IExtendedPluginInfo {
     public Enumeration<ICRLIssuingPointRecord> searchCRLIssuingPointRecord(String filter,
             int maxSize)
             throws EBaseException {
-        IDBSSession s = mDBService.createSession();
+        IDBSSession s = mDBService.createReadSession();
         Vector<ICRLIssuingPointRecord> v = new Vector<ICRLIssuingPointRecord>();
 
         try {
@@ -802,7 +802,7 @@ public class DefStore implements IDefStore, IExtendedPluginInfo {
     public ICertRecord readCertRecord(String name, String thisUpdate,
             String sno)
             throws EBaseException {
-        IDBSSession s = mDBService.createSession();
+        IDBSSession s = mDBService.createReadSession();
         ICertRecord rec = null;
 
         try {
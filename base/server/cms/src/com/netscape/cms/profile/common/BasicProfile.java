@@ -17,8 +17,10 @@
 // --- END COPYRIGHT BLOCK ---
 package com.netscape.cms.profile.common;
 
+import java.util.Collections;
 import java.util.Date;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Locale;
 import java.util.Map;
@@ -102,6 +104,32 @@ public abstract class BasicProfile implements IProfile {
 
     protected Hashtable<String, Vector<IProfilePolicy>> mPolicySet = new Hashtable<String, Vector<IProfilePolicy>>();
 
+    // policy chains built by compile(), discarded whenever mPolicySet changes
+    protected volatile Map<String, PolicyChain> mPolicyChains;
+
+    /**
+     * The defaults and constraints of a policy set in evaluation order.
+     * A chain is immutable once built.
+     */
+    protected static class PolicyChain {
+
+        final IPolicyDefault[] defaults;
+        final IPolicyConstraint[] constraints;
+
+        PolicyChain(Vector<IProfilePolicy> policies) {
+
+            int size = policies.size();
+            defaults = new IPolicyDefault[size];
+            constraints = new IPolicyConstraint[size];
+
+            for (int i = 0; i < size; i++) {
+                IProfilePolicy policy = policies.elementAt(i);
+                defaults[i] = policy.getDefault();
+                constraints[i] = policy.getConstraint();
+            }
+        }
+    }
+
     public BasicProfile() {
     }
 
@@ -410,6 +438,7 @@ public abstract class BasicProfile implements IProfile {
 
     public void deleteProfilePolicy(String setId, String policyId)
             throws EProfileException {
+        mPolicyChains = null;
         Vector<IProfilePolicy> policies = mPolicySet.get(setId);
 
         if (policies == null) {
@@ -487,6 +516,7 @@ public abstract class BasicProfile implements IProfile {
         }
 
         mPolicySet.clear();
+        mPolicyChains = null;
     }
 
     public void deleteProfileInput(String inputId) throws EProfileException {
@@ -795,6 +825,7 @@ public abstract class BasicProfile implements IProfile {
         // String constraintClassId : if of the constraint plugin ex: basicConstraintsExtConstraintImpl
         // boolean createConfig : true : being called from the console. false: being called from server startup code
 
+        mPolicyChains = null;
         Vector<IProfilePolicy> policies = mPolicySet.get(setId);
 
         IConfigStore policyStore = mConfig.getSubStore("policyset." + setId);
@@ -1100,6 +1131,59 @@ public abstract class BasicProfile implements IProfile {
         return policies;
     }
 
+    /**
+     * Builds the policy chains used by populate() and validate()
+     * and preloads the parameters of their defaults and constraints.
+     * The chains are discarded when a policy is added or removed;
+     * until compile() is called again the policy sets are walked
+     * on every request.
+     */
+    public synchronized void compile() {
+
+        Map<String, PolicyChain> chains = new HashMap<String, PolicyChain>();
+
+        for (Map.Entry<String, Vector<IProfilePolicy>> entry : mPolicySet.entrySet()) {
+
+            PolicyChain chain = new PolicyChain(entry.getValue());
+
+            for (IPolicyDefault def : chain.defaults) {
+                Enumeration<String> names = def.getConfigNames();
+                while (names.hasMoreElements()) {
+                    def.getConfig(names.nextElement());
+                }
+            }
+
+            for (IPolicyConstraint constraint : chain.constraints) {
+                Enumeration<String> names = constraint.getConfigNames();
+                while (names.hasMoreElements()) {
+                    constraint.getConfig(names.nextElement());
+                }
+            }
+
+            chains.put(entry.getKey(), chain);
+        }
+
+        logger.debug("BasicProfile: compiled " + chains.size() + " policy set(s) for profile " + mId);
+        mPolicyChains = Collections.unmodifiableMap(chains);
+    }
+
+    /**
+     * Returns the compiled chain of a policy set, or a chain built
+     * from the current policy set if the profile is not compiled.
+     */
+    protected PolicyChain getPolicyChain(String setId) {
+
+        Map<String, PolicyChain> chains = mPolicyChains;
+        if (chains != null) {
+            PolicyChain chain = chains.get(setId);
+            if (chain != null) {
+                return chain;
+            }
+        }
+
+        return new PolicyChain(getPolicies(setId));
+    }
+
     /**
      * Passes the request to the set of default policies that
      * populate the profile information against the profile.
@@ -1108,13 +1192,11 @@ public abstract class BasicProfile implements IProfile {
             throws EProfileException {
         String method = "BasicProfile: populate: ";
         String setId = getPolicySetId(request);
-        Vector<IProfilePolicy> policies = getPolicies(setId);
+        PolicyChain chain = getPolicyChain(setId);
         logger.debug(method + "policy setid =" + setId);
 
-        for (int i = 0; i < policies.size(); i++) {
-            IProfilePolicy policy = policies.elementAt(i);
-
-            policy.getDefault().populate(request);
+        for (IPolicyDefault def : chain.defaults) {
+            def.populate(request);
         }
     }
 
@@ -1126,12 +1208,10 @@ public abstract class BasicProfile implements IProfile {
             throws ERejectException {
         String setId = getPolicySetId(request);
         logger.debug("BasicProfile: validate start on setId=" + setId);
-        Vector<IProfilePolicy> policies = getPolicies(setId);
-
-        for (int i = 0; i < policies.size(); i++) {
-            IProfilePolicy policy = policies.elementAt(i);
+        PolicyChain chain = getPolicyChain(setId);
 
-            policy.getConstraint().validate(request);
+        for (IPolicyConstraint constraint : chain.constraints) {
+            constraint.validate(request);
         }
         logger.debug("BasicProfile: change to pending state");
         request.setRequestStatus(RequestStatus.PENDING);
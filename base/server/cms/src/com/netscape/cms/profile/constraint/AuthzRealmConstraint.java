@@ -71,6 +71,7 @@ public class AuthzRealmConstraint extends EnrollConstraint {
                 " value=" + value);
 
         mConfig.getSubStore("params").putString(name, value);
+        mParamCache.remove(name);
     }
 
     public IDescriptor getConfigDescriptor(Locale locale, String name) {
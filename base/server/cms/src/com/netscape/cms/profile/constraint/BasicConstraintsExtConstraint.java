@@ -221,6 +221,7 @@ public class BasicConstraintsExtConstraint extends EnrollConstraint {
 
             }
             mConfig.getSubStore("params").putString(name, value);
+            mParamCache.remove(name);
         }
     }
 }
@@ -19,7 +19,10 @@ package com.netscape.cms.profile.constraint;
 
 import java.util.Enumeration;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
 
 import org.mozilla.jss.netscape.security.x509.CertificateExtensions;
 import org.mozilla.jss.netscape.security.x509.Extension;
@@ -52,6 +55,15 @@ public abstract class EnrollConstraint implements IPolicyConstraint {
     protected IConfigStore mConfig = null;
     protected Vector<String> mConfigNames = new Vector<String>();
 
+    // marks parameters that are not set in the cache below
+    private static final String MISSING = new String();
+
+    // parameter values read by getConfig(), invalidated by setConfig() and init()
+    protected Map<String, String> mParamCache = new ConcurrentHashMap<String, String>();
+
+    // compiled patterns keyed by regular expression
+    protected Map<String, Pattern> mPatternCache = new ConcurrentHashMap<String, Pattern>();
+
     public EnrollConstraint() {
     }
 
@@ -88,6 +100,7 @@ public abstract class EnrollConstraint implements IPolicyConstraint {
         } else {
             mConfig.getSubStore(CONFIG_PARAMS).putString(name, value);
         }
+        mParamCache.remove(name);
     }
 
     public String getConfig(String name) {
@@ -103,6 +116,11 @@ public abstract class EnrollConstraint implements IPolicyConstraint {
      */
     public String getConfig(String name, String defval) {
 
+        String cached = mParamCache.get(name);
+        if (cached != null) {
+            return cached == MISSING ? defval : cached;
+        }
+
         if (mConfig == null) {
             logger.warn("Error: Missing profile configuration");
             return null;
@@ -114,18 +132,47 @@ public abstract class EnrollConstraint implements IPolicyConstraint {
             return null;
         }
 
+        String value;
         try {
-            return params.getString(name, defval);
+            value = params.getString(name, null);
 
         } catch (EBaseException e) {
             logger.warn("EnrollConstraint: " + e.getMessage(), e);
             return null;
         }
+
+        mParamCache.put(name, value == null ? MISSING : value);
+        return value == null ? defval : value;
+    }
+
+    /**
+     * Get constraint parameter as a compiled regular expression.
+     * The pattern is compiled once per distinct parameter value.
+     *
+     * @param name parameter name
+     * @return compiled pattern, or null if the parameter cannot be read
+     * @exception java.util.regex.PatternSyntaxException invalid pattern
+     */
+    public Pattern getConfigPattern(String name) {
+
+        String regex = getConfig(name);
+        if (regex == null) {
+            return null;
+        }
+
+        Pattern pattern = mPatternCache.get(regex);
+        if (pattern == null) {
+            pattern = Pattern.compile(regex);
+            mPatternCache.put(regex, pattern);
+        }
+
+        return pattern;
     }
 
     public void init(IProfile profile, IConfigStore config)
             throws EProfileException {
         mConfig = config;
+        mParamCache.clear();
     }
 
     public IConfigStore getConfigStore() {
@@ -80,6 +80,7 @@ public class ExtensionConstraint extends EnrollConstraint {
                 }
             }
             mConfig.getSubStore("params").putString(name, value);
+            mParamCache.remove(name);
         }
     }
 
@@ -93,6 +93,7 @@ public class SigningAlgConstraint extends EnrollConstraint {
                 }
             }
             mConfig.getSubStore("params").putString(name, value);
+            mParamCache.remove(name);
         }
     }
 
@@ -20,9 +20,11 @@ package com.netscape.cms.profile.def;
 import java.io.IOException;
 import java.util.Enumeration;
 import java.util.Locale;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.StringTokenizer;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.mozilla.jss.netscape.security.extensions.KerberosName;
 import org.mozilla.jss.netscape.security.util.DerInputStream;
@@ -85,6 +87,12 @@ public abstract class EnrollDefault implements IPolicyDefault, ICertInfoPolicyDe
     protected Vector<String> mConfigNames = new Vector<String>();
     protected Vector<String> mValueNames = new Vector<String>();
 
+    // marks parameters that are not set in the cache below
+    private static final String MISSING = new String();
+
+    // parameter values read by getConfig(), invalidated by setConfig() and init()
+    protected Map<String, String> mParamCache = new ConcurrentHashMap<String, String>();
+
     public EnrollDefault() {
     }
 
@@ -107,6 +115,7 @@ public abstract class EnrollDefault implements IPolicyDefault, ICertInfoPolicyDe
         } else {
             mConfig.getSubStore("params").putString(name, value);
         }
+        mParamCache.remove(name);
     }
 
     public String getConfig(String name) {
@@ -122,6 +131,11 @@ public abstract class EnrollDefault implements IPolicyDefault, ICertInfoPolicyDe
      */
     public String getConfig(String name, String defval) {
 
+        String cached = mParamCache.get(name);
+        if (cached != null) {
+            return cached == MISSING ? defval : cached;
+        }
+
         if (mConfig == null) {
             logger.error("Error: Missing profile configuration");
             return null;
@@ -133,18 +147,23 @@ public abstract class EnrollDefault implements IPolicyDefault, ICertInfoPolicyDe
             return null;
         }
 
+        String value;
         try {
-            return params.getString(name, defval);
+            value = params.getString(name, null);
 
         } catch (EBaseException e) {
             logger.error("EnrollDefault: " + e.getMessage(), e);
             return null;
         }
+
+        mParamCache.put(name, value == null ? MISSING : value);
+        return value == null ? defval : value;
     }
 
     public void init(IProfile profile, IConfigStore config)
             throws EProfileException {
         mConfig = config;
+        mParamCache.clear();
     }
 
     /**
@@ -131,6 +131,7 @@ public class SubjectAltNameExtDefault extends EnrollExtDefault {
                 paramConfig.putString(CONFIG_PATTERN + "0", old_pattern);
                 paramConfig.remove(CONFIG_OLD_TYPE);
                 paramConfig.remove(CONFIG_OLD_PATTERN);
+                mParamCache.clear();
                 profile.getConfigStore().commit(true);
             } catch (Exception e) {
                 logger.warn("SubjectAltNameExtDefault: Failed to upgrade " + e.getMessage(), e);
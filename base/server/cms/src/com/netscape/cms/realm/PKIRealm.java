@@ -15,6 +15,8 @@ import com.netscape.certsrv.authentication.IAuthSubsystem;
 import com.netscape.certsrv.authentication.IAuthToken;
 import com.netscape.certsrv.authentication.ICertUserDBAuthentication;
 import com.netscape.certsrv.authentication.IPasswdUserDBAuthentication;
+import com.netscape.certsrv.base.EBaseException;
+import com.netscape.certsrv.base.IConfigStore;
 import com.netscape.certsrv.base.SessionContext;
 import com.netscape.certsrv.logging.ILogger;
 import com.netscape.certsrv.logging.event.AuthEvent;
@@ -27,6 +29,7 @@ import com.netscape.cms.logging.SignedAuditLogger;
 import com.netscape.cms.servlet.common.AuthCredentials;
 import com.netscape.cmscore.apps.CMS;
 import com.netscape.cmscore.apps.CMSEngine;
+import com.netscape.cmscore.usrgrp.UGSubsystem;
 
 /**
  *  PKI Realm
@@ -42,6 +45,42 @@ public class PKIRealm extends RealmBase {
 
     private static Logger signedAuditLogger = SignedAuditLogger.getLogger();
 
+    public static final String PROP_PRINCIPAL_CACHE_SIZE = UGSubsystem.PROP_PRINCIPAL_CACHE_SIZE;
+    public static final String PROP_PRINCIPAL_CACHE_TTL = "auth.principalCache.ttl";
+
+    private PrincipalCache principalCache;
+
+    public PKIRealm() {
+
+        CMSEngine engine = CMS.getCMSEngine();
+        if (engine == null) {
+            return;
+        }
+
+        try {
+            IConfigStore cs = engine.getConfigStore();
+            int size = cs.getInteger(PROP_PRINCIPAL_CACHE_SIZE, 0);
+
+            if (size > 0) {
+                long ttl = cs.getInteger(PROP_PRINCIPAL_CACHE_TTL, 30) * 1000L;
+                logger.info("PKIRealm: caching up to " + size + " certificate principals for "
+                        + ttl / 1000 + " seconds");
+                principalCache = new PrincipalCache(size, ttl);
+            }
+
+        } catch (EBaseException e) {
+            logger.warn("PKIRealm: unable to configure principal cache: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Returns the certificate principal cache, or null
+     * if the cache is disabled.
+     */
+    public PrincipalCache getPrincipalCache() {
+        return principalCache;
+    }
+
     protected String getName() {
         return "PKIRealm";
     }
@@ -97,7 +136,31 @@ public class PKIRealm extends RealmBase {
         String auditSubjectID = getAuditUserfromCert(certs[0]);
         String attemptedAuditUID = auditSubjectID;
 
+        String cacheKey = null;
+        long changeCount = 0;
+
         try {
+            if (principalCache != null) {
+                IUGSubsystem ugSub = (IUGSubsystem) engine.getSubsystem(IUGSubsystem.ID);
+
+                // obtained before the principal is resolved so that
+                // a concurrent change prevents caching the principal
+                changeCount = ugSub.getChangeCount();
+                cacheKey = PrincipalCache.getKey(certs);
+
+                PKIPrincipal principal = (PKIPrincipal) principalCache.get(cacheKey, changeCount);
+                if (principal != null) {
+                    auditSubjectID = principal.getAuthToken().getInString(IAuthToken.USER_ID);
+                    logger.info("User ID: " + principal.getName() + " (cached)");
+
+                    signedAuditLogger.log(AuthEvent.createSuccessEvent(
+                                auditSubjectID,
+                                IAuthSubsystem.CERTUSERDB_AUTHMGR_ID));
+
+                    return principal;
+                }
+            }
+
             X509CertImpl certImpls[] = new X509CertImpl[certs.length];
             for (int i=0; i<certs.length; i++) {
                 X509Certificate cert = certs[i];
@@ -125,7 +188,14 @@ public class PKIRealm extends RealmBase {
                         auditSubjectID,
                         IAuthSubsystem.CERTUSERDB_AUTHMGR_ID));
 
-            return getPrincipal(username, authToken);
+            Principal principal = getPrincipal(username, authToken);
+
+            if (principalCache != null && principal instanceof PKIPrincipal) {
+                principalCache.put(cacheKey, (PKIPrincipal) principal, changeCount);
+                logger.debug("PKIRealm: " + principalCache);
+            }
+
+            return principal;
 
         } catch (Throwable e) {
 
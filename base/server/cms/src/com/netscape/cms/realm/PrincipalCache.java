@@ -0,0 +1,192 @@
+package com.netscape.cms.realm;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Principal;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The PrincipalCache class is a bounded cache of principals
+ * authenticated by PKIRealm with client certificates, keyed by the
+ * SHA-256 fingerprint of the certificate chain.
+ * <p>
+ * Each principal expires after a short time to live, and as soon as
+ * any user, user certificate, or group changes. Changes are detected
+ * with the change counter of the user/group subsystem, which has to
+ * be obtained before the principal is resolved.
+ * <p>
+ * Lookups do not lock the cache. When the cache is full, a single
+ * thread removes the expired principals and then the least recently
+ * used ones, down to slightly below the maximum size so that the
+ * eviction cost is spread over several additions.
+ */
+public class PrincipalCache {
+
+    private int mMaxEntries;
+    private long mTTL;
+
+    private ConcurrentHashMap<String, Entry> mEntries = new ConcurrentHashMap<String, Entry>();
+    private ReentrantLock mEvictionLock = new ReentrantLock();
+
+    private AtomicLong mHits = new AtomicLong();
+    private AtomicLong mMisses = new AtomicLong();
+
+    /**
+     * @param maxEntries maximum number of principals
+     * @param ttl time to live of each principal in milliseconds
+     */
+    public PrincipalCache(int maxEntries, long ttl) {
+        mMaxEntries = maxEntries;
+        mTTL = ttl;
+    }
+
+    /**
+     * Returns the key of a certificate chain.
+     */
+    public static String getKey(X509Certificate[] certs)
+            throws NoSuchAlgorithmException, CertificateEncodingException {
+
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        for (X509Certificate cert : certs) {
+            digest.update(cert.getEncoded());
+        }
+
+        return Base64.getEncoder().encodeToString(digest.digest());
+    }
+
+    /**
+     * Returns the cached principal, or null if the principal has to
+     * be resolved again.
+     *
+     * @param key certificate chain key
+     * @param changeCount current change counter of the user/group subsystem
+     */
+    public Principal get(String key, long changeCount) {
+
+        Entry entry = mEntries.get(key);
+
+        if (entry == null
+                || entry.changeCount != changeCount
+                || entry.expires <= System.currentTimeMillis()) {
+            if (entry != null) {
+                mEntries.remove(key, entry);
+            }
+            mMisses.incrementAndGet();
+            return null;
+        }
+
+        entry.lastAccess = System.nanoTime();
+        mHits.incrementAndGet();
+        return entry.principal;
+    }
+
+    /**
+     * Adds a principal resolved after obtaining the given change counter.
+     */
+    public void put(String key, Principal principal, long changeCount) {
+
+        mEntries.put(key, new Entry(principal, changeCount, System.currentTimeMillis() + mTTL));
+
+        if (mEntries.size() > mMaxEntries) {
+            evict();
+        }
+    }
+
+    /**
+     * Removes the expired principals, then the least recently
+     * used ones. Threads that find an eviction in progress
+     * do not wait for it.
+     */
+    void evict() {
+
+        if (!mEvictionLock.tryLock()) {
+            return;
+        }
+
+        try {
+            long now = System.currentTimeMillis();
+            Iterator<Entry> i = mEntries.values().iterator();
+            while (i.hasNext()) {
+                if (i.next().expires <= now) {
+                    i.remove();
+                }
+            }
+
+            int target = mMaxEntries - mMaxEntries / 8;
+            if (mEntries.size() <= target) {
+                return;
+            }
+
+            List<Map.Entry<String, Entry>> entries = new ArrayList<Map.Entry<String, Entry>>(mEntries.entrySet());
+            Collections.sort(entries, new Comparator<Map.Entry<String, Entry>>() {
+                public int compare(Map.Entry<String, Entry> e1, Map.Entry<String, Entry> e2) {
+                    return Long.compare(e1.getValue().lastAccess, e2.getValue().lastAccess);
+                }
+            });
+
+            for (Map.Entry<String, Entry> e : entries) {
+                if (mEntries.size() <= target) {
+                    break;
+                }
+                mEntries.remove(e.getKey(), e.getValue());
+            }
+
+        } finally {
+            mEvictionLock.unlock();
+        }
+    }
+
+    public void invalidateAll() {
+        mEntries.clear();
+    }
+
+    public int getSize() {
+        return mEntries.size();
+    }
+
+    public long getHits() {
+        return mHits.get();
+    }
+
+    public long getMisses() {
+        return mMisses.get();
+    }
+
+    public double getHitRatio() {
+        long hits = mHits.get();
+        long total = hits + mMisses.get();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    public String toString() {
+        return "PrincipalCache[size=" + getSize()
+                + ", hits=" + getHits()
+                + ", misses=" + getMisses()
+                + ", hitRatio=" + getHitRatio() + "]";
+    }
+
+    static class Entry {
+
+        Principal principal;
+        long changeCount;
+        long expires;
+        volatile long lastAccess = System.nanoTime();
+
+        Entry(Principal principal, long changeCount, long expires) {
+            this.principal = principal;
+            this.changeCount = changeCount;
+            this.expires = expires;
+        }
+    }
+}
@@ -17,34 +17,215 @@
 // --- END COPYRIGHT BLOCK ---
 package com.netscape.cms.request;
 
-import java.util.Vector;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
+import com.netscape.certsrv.base.EBaseException;
+import com.netscape.certsrv.base.IConfigStore;
+import com.netscape.certsrv.base.ServiceUnavailableException;
 import com.netscape.certsrv.request.IRequest;
 import com.netscape.certsrv.request.IRequestScheduler;
 
 /**
- * This class represents a request scheduler that prioritizes
- * the threads based on the request processing order.
- * The request that enters the request queue first should
- * be processed first.
+ * This class represents a request scheduler that bounds the
+ * number of requests processed concurrently by the request queue.
+ * <p>
+ * Requests are admitted per request type. Each admission gate
+ * allows a limited number of active requests and a limited number
+ * of requests waiting for admission. A request that cannot be admitted
+ * within the wait timeout is rejected with ServiceUnavailableException,
+ * which is returned to the client as HTTP 503 with a Retry-After header.
+ * <p>
+ * Admitted requests pass through the validate, sign, persist, and notify
+ * stages. Each stage has its own concurrency limit. Requests wait for
+ * a free slot in the stage, so a saturated stage holds the admission
+ * slots of the waiting requests and eventually causes new requests to
+ * be rejected at admission.
+ * <p>
+ * Waiting for a stage is bounded by the stage wait timeout. A request
+ * that times out waiting for the validate stage has not been processed
+ * yet and is rejected with ServiceUnavailableException. A request that
+ * times out waiting for a later stage cannot be abandoned halfway, so
+ * it enters the stage beyond its limit and the overrun is counted.
+ * <p>
+ * Configuration (relative to the &lt;subsystem&gt;.requestScheduler store):
+ *
+ * <pre>
+ * retryAfter=10
+ * admission.types=enrollment,revocation,renewal,recovery
+ * admission.&lt;type|default&gt;.maxActive=50
+ * admission.&lt;type|default&gt;.maxWaiting=50
+ * admission.&lt;type|default&gt;.waitTimeout=30
+ * stage.&lt;validate|sign|persist|notify&gt;.maxActive=0
+ * stage.&lt;validate|sign|persist|notify&gt;.waitTimeout=60
+ * </pre>
+ *
+ * A maxActive of 0 means unlimited. A stage waitTimeout of 0 means
+ * waiting indefinitely. Request types not listed in
+ * admission.types share the default admission gate.
  *
  * @version $Revision$, $Date$
  */
 public class RequestScheduler implements IRequestScheduler {
-    private Vector<Thread> mRequestThreads = new Vector<Thread>();
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(RequestScheduler.class);
+
+    public final static String PROP_RETRY_AFTER = "retryAfter";
+    public final static String PROP_ADMISSION = "admission";
+    public final static String PROP_TYPES = "types";
+    public final static String PROP_STAGE = "stage";
+    public final static String PROP_MAX_ACTIVE = "maxActive";
+    public final static String PROP_MAX_WAITING = "maxWaiting";
+    public final static String PROP_WAIT_TIMEOUT = "waitTimeout";
+
+    public final static String DEFAULT_ADMISSION = "default";
+
+    public final static String DEFAULT_TYPES =
+            IRequest.ENROLLMENT_REQUEST + "," +
+            IRequest.REVOCATION_REQUEST + "," +
+            IRequest.RENEWAL_REQUEST + "," +
+            IRequest.KEYRECOVERY_REQUEST;
+
+    public final static int DEFAULT_RETRY_AFTER = 10; // seconds
+    public final static int DEFAULT_MAX_ACTIVE = 50;
+    public final static int DEFAULT_MAX_WAITING = 50;
+    public final static int DEFAULT_WAIT_TIMEOUT = 30; // seconds
+    public final static int DEFAULT_STAGE_WAIT_TIMEOUT = 60; // seconds
+
+    public final static String[] STAGES = {
+            STAGE_VALIDATE, STAGE_SIGN, STAGE_PERSIST, STAGE_NOTIFY
+    };
+
+    private int mRetryAfter = DEFAULT_RETRY_AFTER;
+
+    // replaced as a whole by init()
+    private volatile Map<String, Gate> mAdmission;
+    private volatile Gate mDefaultAdmission;
+    private volatile Map<String, Gate> mStages;
+
+    // admission depth of the current thread, so that requests
+    // processed while servicing another request are not gated again
+    private ThreadLocal<int[]> mAdmitted = new ThreadLocal<int[]>() {
+        protected int[] initialValue() {
+            return new int[1];
+        }
+    };
+
+    public RequestScheduler() {
+
+        Map<String, Gate> admission = new LinkedHashMap<String, Gate>();
+        for (String type : DEFAULT_TYPES.split(",")) {
+            admission.put(type, new Gate(type,
+                    DEFAULT_MAX_ACTIVE, DEFAULT_MAX_WAITING, DEFAULT_WAIT_TIMEOUT * 1000L));
+        }
+
+        Map<String, Gate> stages = new LinkedHashMap<String, Gate>();
+        for (String stage : STAGES) {
+            stages.put(stage, new Gate(stage, getDefaultStageLimit(stage), -1, DEFAULT_STAGE_WAIT_TIMEOUT * 1000L));
+        }
+
+        mAdmission = admission;
+        mDefaultAdmission = new Gate(DEFAULT_ADMISSION,
+                DEFAULT_MAX_ACTIVE, DEFAULT_MAX_WAITING, DEFAULT_WAIT_TIMEOUT * 1000L);
+        mStages = stages;
+    }
+
+    /**
+     * Signing is CPU bound, so by default it is limited to
+     * twice the number of processors. Other stages are bounded
+     * by the admission gates and the database connection pool.
+     */
+    private static int getDefaultStageLimit(String stage) {
+        if (STAGE_SIGN.equals(stage)) {
+            return Runtime.getRuntime().availableProcessors() * 2;
+        }
+        return 0;
+    }
+
+    public void init(IConfigStore config) throws EBaseException {
+
+        mRetryAfter = config.getInteger(PROP_RETRY_AFTER, DEFAULT_RETRY_AFTER);
+
+        IConfigStore admissionConfig = config.getSubStore(PROP_ADMISSION);
+        String types = admissionConfig.getString(PROP_TYPES, DEFAULT_TYPES);
+
+        Map<String, Gate> admission = new LinkedHashMap<String, Gate>();
+        for (String type : types.split(",")) {
+            type = type.trim();
+            if (type.isEmpty()) {
+                continue;
+            }
+            admission.put(type, createAdmissionGate(type, admissionConfig.getSubStore(type)));
+        }
+
+        Gate defaultAdmission = createAdmissionGate(DEFAULT_ADMISSION,
+                admissionConfig.getSubStore(DEFAULT_ADMISSION));
+
+        IConfigStore stageConfig = config.getSubStore(PROP_STAGE);
+
+        Map<String, Gate> stages = new LinkedHashMap<String, Gate>();
+        for (String stage : STAGES) {
+            IConfigStore cs = stageConfig.getSubStore(stage);
+            int maxActive = cs.getInteger(PROP_MAX_ACTIVE, getDefaultStageLimit(stage));
+            int waitTimeout = cs.getInteger(PROP_WAIT_TIMEOUT, DEFAULT_STAGE_WAIT_TIMEOUT);
+            logger.info("RequestScheduler: stage " + stage + ": max active: " + maxActive
+                    + ", wait timeout: " + waitTimeout + "s");
+            stages.put(stage, new Gate(stage, maxActive, -1, waitTimeout * 1000L));
+        }
+
+        mAdmission = admission;
+        mDefaultAdmission = defaultAdmission;
+        mStages = stages;
+    }
+
+    private Gate createAdmissionGate(String name, IConfigStore config) throws EBaseException {
+
+        int maxActive = config.getInteger(PROP_MAX_ACTIVE, DEFAULT_MAX_ACTIVE);
+        int maxWaiting = config.getInteger(PROP_MAX_WAITING, DEFAULT_MAX_WAITING);
+        int waitTimeout = config.getInteger(PROP_WAIT_TIMEOUT, DEFAULT_WAIT_TIMEOUT);
+
+        logger.info("RequestScheduler: admission " + name + ": max active: " + maxActive
+                + ", max waiting: " + maxWaiting + ", wait timeout: " + waitTimeout + "s");
+
+        return new Gate(name, maxActive, maxWaiting, waitTimeout * 1000L);
+    }
+
+    private Gate getAdmissionGate(IRequest r) {
+        String type = r.getRequestType();
+        Gate gate = type == null ? null : mAdmission.get(type);
+        return gate == null ? mDefaultAdmission : gate;
+    }
 
     /**
      * Request entered the request queue processing.
      *
      * @param r request
      */
-    public synchronized void requestIn(IRequest r) {
-        Thread current = Thread.currentThread();
+    public void requestIn(IRequest r) {
+
+        int[] depth = mAdmitted.get();
+        if (depth[0] > 0) {
+            // nested request, already admitted
+            depth[0]++;
+            return;
+        }
+
+        Gate gate = getAdmissionGate(r);
 
-        if (mRequestThreads.size() == 0) {
-            current.setPriority(Thread.MAX_PRIORITY);
+        if (!gate.enter()) {
+            logger.warn("RequestScheduler: rejecting " + r.getRequestType() + " request " + r.getRequestId()
+                    + ": active: " + gate.getActive() + ", waiting: " + gate.getWaiting());
+            throw new ServiceUnavailableException(
+                    "Server is too busy to process " + gate.getName() + " requests", mRetryAfter);
         }
-        mRequestThreads.addElement(current);
+
+        depth[0] = 1;
     }
 
     /**
@@ -52,20 +233,265 @@ public class RequestScheduler implements IRequestScheduler {
      *
      * @param r request
      */
-    public synchronized void requestOut(IRequest r) {
-        Thread current = Thread.currentThread();
-        Thread first = mRequestThreads.elementAt(0);
+    public void requestOut(IRequest r) {
+
+        int[] depth = mAdmitted.get();
+        if (depth[0] == 0) {
+            return;
+        }
+
+        if (--depth[0] > 0) {
+            return;
+        }
+
+        getAdmissionGate(r).exit();
+    }
+
+    public void stageIn(IRequest r, String stage) {
+
+        Gate gate = mStages.get(stage);
+        if (gate == null || gate.enter()) {
+            return;
+        }
+
+        if (STAGE_VALIDATE.equals(stage)) {
+            logger.warn("RequestScheduler: rejecting " + r.getRequestType() + " request " + r.getRequestId()
+                    + ": timed out waiting for " + stage + " stage");
+            throw new ServiceUnavailableException(
+                    "Server is too busy to process " + r.getRequestType() + " requests", mRetryAfter);
+        }
+
+        // the request has already been partially processed
+        logger.warn("RequestScheduler: " + stage + " stage limit exceeded by request " + r.getRequestId()
+                + " after waiting for " + gate.getWaitTimeout() + " ms");
+        gate.overrun();
+    }
+
+    public void stageOut(IRequest r, String stage) {
+        Gate gate = mStages.get(stage);
+        if (gate != null) {
+            gate.exit();
+        }
+    }
+
+    public Collection<Gate> getAdmissionGates() {
+        Map<String, Gate> gates = new LinkedHashMap<String, Gate>(mAdmission);
+        gates.put(DEFAULT_ADMISSION, mDefaultAdmission);
+        return Collections.unmodifiableCollection(gates.values());
+    }
+
+    public Collection<Gate> getStages() {
+        return Collections.unmodifiableCollection(mStages.values());
+    }
+
+    /**
+     * A bounded gate with queue-depth metrics. Entering the gate
+     * takes one of maxActive slots, waiting for a slot if necessary.
+     * The gate is reentrant per thread.
+     */
+    public static class Gate {
+
+        private String name;
+        private int maxActive;
+        private int maxWaiting;
+        private long waitTimeout;
+
+        // null if the number of active requests is unlimited
+        private Semaphore permits;
+
+        private AtomicInteger active = new AtomicInteger();
+        private AtomicInteger waiting = new AtomicInteger();
+        private AtomicInteger peakWaiting = new AtomicInteger();
+        private LongAdder entered = new LongAdder();
+        private LongAdder rejected = new LongAdder();
+        private LongAdder overruns = new LongAdder();
+        private LongAdder waitTime = new LongAdder();
+
+        // entry depth of the current thread, and whether
+        // the outermost entry holds a permit
+        private ThreadLocal<int[]> depth = new ThreadLocal<int[]>() {
+            protected int[] initialValue() {
+                return new int[2];
+            }
+        };
+
+        /**
+         * @param name gate name
+         * @param maxActive maximum number of active requests, 0 for unlimited
+         * @param maxWaiting maximum number of waiting requests, -1 for unlimited
+         * @param waitTimeout maximum wait time in milliseconds, 0 to wait indefinitely
+         */
+        public Gate(String name, int maxActive, int maxWaiting, long waitTimeout) {
+            this.name = name;
+            this.maxActive = maxActive;
+            this.maxWaiting = maxWaiting;
+            this.waitTimeout = waitTimeout;
+
+            if (maxActive > 0) {
+                permits = new Semaphore(maxActive, true);
+            }
+        }
+
+        /**
+         * Enters the gate.
+         *
+         * @return false if the wait queue is full or the wait timed out
+         */
+        public boolean enter() {
 
-        if (current.equals(first)) {
-            // reprioritize
+            int[] d = depth.get();
+            if (d[0] > 0) {
+                d[0]++;
+                return true;
+            }
+
+            if (permits != null && !permits.tryAcquire() && !await()) {
+                rejected.increment();
+                return false;
+            }
+
+            d[0] = 1;
+            d[1] = permits != null ? 1 : 0;
+            active.incrementAndGet();
+            entered.increment();
+            return true;
+        }
+
+        /**
+         * Enters the gate without a slot after enter() has failed,
+         * for requests that cannot be rejected.
+         */
+        public void overrun() {
+
+            int[] d = depth.get();
+            if (d[0] > 0) {
+                d[0]++;
+                return;
+            }
+
+            d[0] = 1;
+            d[1] = 0;
+            active.incrementAndGet();
+            entered.increment();
+            overruns.increment();
+        }
+
+        private boolean await() {
+
+            int w = waiting.incrementAndGet();
             try {
-                Thread second = mRequestThreads.elementAt(1);
+                if (maxWaiting >= 0 && w > maxWaiting) {
+                    return false;
+                }
+
+                int peak = peakWaiting.get();
+                while (w > peak && !peakWaiting.compareAndSet(peak, w)) {
+                    peak = peakWaiting.get();
+                }
+
+                long start = System.nanoTime();
+                try {
+                    if (waitTimeout <= 0) {
+                        permits.acquireUninterruptibly();
+                        return true;
+                    }
+
+                    return permits.tryAcquire(waitTimeout, TimeUnit.MILLISECONDS);
+
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
 
-                second.setPriority(Thread.MAX_PRIORITY);
-            } catch (Exception e) {
-                // no second element; nothing to do
+                } finally {
+                    waitTime.add(System.nanoTime() - start);
+                }
+
+            } finally {
+                waiting.decrementAndGet();
+            }
+        }
+
+        /**
+         * Exits the gate entered by the current thread.
+         */
+        public void exit() {
+
+            int[] d = depth.get();
+            if (d[0] == 0 || --d[0] > 0) {
+                return;
+            }
+
+            active.decrementAndGet();
+
+            if (d[1] == 1) {
+                d[1] = 0;
+                permits.release();
             }
         }
-        mRequestThreads.removeElement(current);
+
+        public String getName() {
+            return name;
+        }
+
+        public int getMaxActive() {
+            return maxActive;
+        }
+
+        public int getMaxWaiting() {
+            return maxWaiting;
+        }
+
+        public long getWaitTimeout() {
+            return waitTimeout;
+        }
+
+        /**
+         * Returns the number of requests inside the gate.
+         */
+        public int getActive() {
+            return active.get();
+        }
+
+        /**
+         * Returns the number of requests waiting to enter the gate.
+         */
+        public int getWaiting() {
+            return waiting.get();
+        }
+
+        public int getPeakWaiting() {
+            return peakWaiting.get();
+        }
+
+        public long getEntered() {
+            return entered.sum();
+        }
+
+        public long getRejected() {
+            return rejected.sum();
+        }
+
+        /**
+         * Returns the number of requests that entered
+         * the gate beyond its limit.
+         */
+        public long getOverruns() {
+            return overruns.sum();
+        }
+
+        /**
+         * Returns the total time spent waiting to enter the gate in milliseconds.
+         */
+        public long getWaitTime() {
+            return TimeUnit.NANOSECONDS.toMillis(waitTime.sum());
+        }
+
+        public String toString() {
+            return name + ": active=" + getActive() + "/" + (maxActive > 0 ? maxActive : "unlimited")
+                    + ", waiting=" + getWaiting() + ", peakWaiting=" + getPeakWaiting()
+                    + ", entered=" + getEntered() + ", rejected=" + getRejected()
+                    + ", overruns=" + getOverruns()
+                    + ", waitTime=" + getWaitTime() + "ms";
+        }
     }
 }
@@ -68,6 +68,7 @@ import com.netscape.certsrv.base.EBaseException;
 import com.netscape.certsrv.base.IArgBlock;
 import com.netscape.certsrv.base.IConfigStore;
 import com.netscape.certsrv.base.SessionContext;
+import com.netscape.certsrv.base.ServiceUnavailableException;
 import com.netscape.certsrv.ca.ICertificateAuthority;
 import com.netscape.certsrv.common.ICMSRequest;
 import com.netscape.certsrv.dbs.certdb.ICertRecord;
@@ -508,6 +509,14 @@ public abstract class CMSServlet extends HttpServlet {
             //e.printStackTrace(ps);
             log(e.toString());
             renderException(cmsRequest, e);
+        } catch (ServiceUnavailableException e) {
+            // the request queue is overloaded
+            iCommandQueue.unRegisterProccess(cmsRequest, this);
+            log(e.toString());
+            if (e.getRetryAfter() > 0) {
+                httpResp.setHeader("Retry-After", Integer.toString(e.getRetryAfter()));
+            }
+            httpResp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, e.getMessage());
         } catch (Exception ex) {
             iCommandQueue.unRegisterProccess(cmsRequest, this);
             ByteArrayOutputStream os = new ByteArrayOutputStream();
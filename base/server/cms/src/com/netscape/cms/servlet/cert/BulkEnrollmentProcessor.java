@@ -0,0 +1,469 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2019 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package com.netscape.cms.servlet.cert;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+
+import javax.servlet.http.HttpServletRequest;
+
+import com.netscape.certsrv.authentication.EAuthException;
+import com.netscape.certsrv.authentication.IAuthToken;
+import com.netscape.certsrv.base.BadRequestDataException;
+import com.netscape.certsrv.base.EBaseException;
+import com.netscape.certsrv.base.EPropertyNotFound;
+import com.netscape.certsrv.base.IConfigStore;
+import com.netscape.certsrv.base.SessionContext;
+import com.netscape.certsrv.ca.AuthorityID;
+import com.netscape.certsrv.ca.ICertificateAuthority;
+import com.netscape.certsrv.cert.CertEnrollmentRequest;
+import com.netscape.certsrv.profile.IEnrollProfile;
+import com.netscape.certsrv.profile.IProfile;
+import com.netscape.certsrv.profile.IProfileAuthenticator;
+import com.netscape.certsrv.profile.IProfileContext;
+import com.netscape.certsrv.profile.ProfileAttribute;
+import com.netscape.certsrv.profile.ProfileInput;
+import com.netscape.certsrv.request.IRequest;
+import com.netscape.cms.servlet.common.AuthCredentials;
+import com.netscape.cms.servlet.profile.SSLClientCertProvider;
+import com.netscape.cmscore.apps.CMS;
+import com.netscape.cmscore.apps.CMSEngine;
+
+/**
+ * The BulkEnrollmentProcessor class enrolls a batch of certificate
+ * requests for a single profile.
+ * <p>
+ * The caller is authenticated and authorized once by
+ * {@link #authenticate(CertEnrollmentRequest, HttpServletRequest, AuthorityID, AuthCredentials)}
+ * using the inputs of a template request. Each CSR submitted with
+ * {@link #submit(String, String, String)} is then enrolled with the
+ * resulting auth token on the CA's bulk enrollment executor, so profile
+ * validation and signing of different CSRs run concurrently.
+ * <p>
+ * Since the auth token is reused for every CSR, bulk enrollment is only
+ * allowed for profiles that authenticate the caller with the SSL client
+ * certificate (e.g. agent-authenticated profiles) and for profiles
+ * without an authenticator, whose requests are deferred for agent
+ * approval. Profiles using one-time credentials such as a PIN or a CMC
+ * request are rejected.
+ * <p>
+ * The executor threads are shared by all bulk enrollments and configured
+ * with ca.bulkEnrollment.threads. The number of CSRs that a single bulk
+ * enrollment may have queued or in progress at a time is configured with:
+ *
+ * <pre>
+ * processor.&lt;id&gt;.bulk.maxPending=&lt;4 x number of CPUs&gt;
+ * </pre>
+ *
+ * submit() blocks while maxPending CSRs are outstanding, so the caller
+ * can read CSRs from a stream without holding the whole batch in memory.
+ * Results are returned by {@link #poll()} and {@link #take()} in the order
+ * they complete. This class is not thread-safe: a single thread is expected
+ * to submit CSRs and collect the results.
+ */
+public class BulkEnrollmentProcessor extends EnrollmentProcessor {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(BulkEnrollmentProcessor.class);
+
+    public final static String PROP_MAX_PENDING = "bulk.maxPending";
+
+    public final static String INPUT_NAME = "Bulk Enrollment Request";
+
+    private int maxPending;
+
+    private AuthorityID aid;
+    private CertEnrollmentRequest template;
+    private AuthCredentials credentials;
+    private IAuthToken authToken;
+
+    // session context of the authenticated caller, copied into each worker
+    private Hashtable<Object, Object> sessionContext;
+
+    private CompletionService<Result> completionService;
+    private Set<Future<Result>> pending = new HashSet<Future<Result>>();
+
+    private long startTime;
+    private int total;
+    private int issued;
+    private int deferred;
+    private int failed;
+
+    public BulkEnrollmentProcessor(String id, Locale locale) throws EPropertyNotFound, EBaseException {
+        super(id, locale);
+
+        CMSEngine engine = CMS.getCMSEngine();
+        IConfigStore cs = engine.getConfigStore().getSubStore("processor." + id);
+
+        maxPending = cs.getInteger(PROP_MAX_PENDING, 0);
+        if (maxPending <= 0) {
+            maxPending = 4 * Runtime.getRuntime().availableProcessors();
+        }
+    }
+
+    public int getMaxPending() {
+        return maxPending;
+    }
+
+    /**
+     * Authenticates and authorizes the caller against the profile
+     * of the template request.
+     *
+     * @param data template request containing the profile ID and
+     *        the inputs shared by all CSRs in the batch
+     * @exception EBaseException if the caller is not an authenticated
+     *            agent or cannot be authenticated, the profile is not
+     *            available, or the profile does not allow bulk enrollment
+     */
+    public void authenticate(
+            CertEnrollmentRequest data,
+            HttpServletRequest request,
+            AuthorityID aid,
+            AuthCredentials credentials)
+            throws EBaseException {
+
+        if (completionService != null) {
+            throw new EBaseException("Bulk enrollment already started");
+        }
+
+        // a single call can submit any number of CSRs, so anonymous
+        // callers are rejected even if the profile has no authenticator
+        if (request.getUserPrincipal() == null) {
+            throw new EAuthException("Bulk enrollment requires an authenticated agent");
+        }
+
+        this.aid = aid;
+        this.template = data;
+        this.credentials = credentials;
+
+        try {
+            String profileId = (this.profileID == null) ? data.getProfileId() : this.profileID;
+            logger.info("BulkEnrollmentProcessor: Authenticating bulk enrollment for profile " + profileId);
+
+            IProfile profile = ps.getProfile(profileId);
+            if (profile == null) {
+                throw new BadRequestDataException(CMS.getUserMessage(locale, "CMS_PROFILE_NOT_FOUND", profileId));
+            }
+
+            if (!ps.isProfileEnable(profileId)) {
+                throw new BadRequestDataException("Profile " + profileId + " not enabled");
+            }
+
+            IProfileContext ctx = profile.createContext();
+
+            if (aid != null)
+                ctx.set(IEnrollProfile.REQUEST_AUTHORITY_ID, aid.toString());
+
+            setInputsIntoContext(data, profile, ctx);
+
+            IProfileAuthenticator authenticator = profile.getAuthenticator();
+            if (!isBulkEnrollmentAllowed(authenticator)) {
+                throw new BadRequestDataException("Profile " + profileId + " does not allow bulk enrollment");
+            }
+
+            if (authenticator != null) {
+                setCredentialsIntoContext(request, credentials, authenticator, ctx);
+            }
+
+            SessionContext context = SessionContext.getContext();
+            context.put("profileContext", ctx);
+            context.put("sslClientCertProvider", new SSLClientCertProvider(request));
+
+            authToken = authenticate(request, null, authenticator, context, false, credentials);
+            authorize(profileId, profile, authToken);
+
+            // the workers only need the caller's identity
+            sessionContext = new Hashtable<Object, Object>(context);
+            sessionContext.remove("profileContext");
+            sessionContext.remove("sslClientCertProvider");
+
+        } finally {
+            SessionContext.releaseContext();
+            endAllEvents();
+        }
+
+        ICertificateAuthority ca = (ICertificateAuthority) CMS.getCMSEngine().getSubsystem(ICertificateAuthority.ID);
+        completionService = new ExecutorCompletionService<Result>(ca.getBulkEnrollmentExecutor());
+        startTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Returns true if the auth token returned by the authenticator can be
+     * reused for several requests, i.e. the caller is authenticated with
+     * the SSL client certificate, or there is no authenticator and the
+     * requests of the agent are deferred for approval.
+     */
+    static boolean isBulkEnrollmentAllowed(IProfileAuthenticator authenticator) {
+        return authenticator == null || authenticator.isSSLClientRequired();
+    }
+
+    /**
+     * Queues a CSR for enrollment. Blocks while the maximum number
+     * of CSRs are queued or in progress, returning the results that
+     * completed in the meantime.
+     *
+     * @param id client-supplied identifier returned with the result
+     * @param certRequest the CSR
+     * @param certRequestType the CSR type, e.g. pkcs10 or crmf
+     * @return results that completed while waiting for room in the queue
+     */
+    public List<Result> submit(String id, String certRequest, String certRequestType)
+            throws InterruptedException {
+
+        if (completionService == null) {
+            throw new IllegalStateException("Bulk enrollment not authenticated");
+        }
+
+        List<Result> results = new ArrayList<Result>();
+
+        while (pending.size() >= maxPending) {
+            results.add(take());
+        }
+
+        pending.add(completionService.submit(
+                new EnrollmentTask(id, createRequest(template, certRequest, certRequestType))));
+        total++;
+
+        return results;
+    }
+
+    /**
+     * Returns the next completed result, or null if none has completed yet.
+     */
+    public Result poll() {
+
+        if (pending.isEmpty()) {
+            return null;
+        }
+
+        Future<Result> future = completionService.poll();
+        if (future == null) {
+            return null;
+        }
+
+        return complete(future);
+    }
+
+    /**
+     * Waits for the next result, or returns null if no CSR is outstanding.
+     */
+    public Result take() throws InterruptedException {
+
+        if (pending.isEmpty()) {
+            return null;
+        }
+
+        return complete(completionService.take());
+    }
+
+    /**
+     * Cancels the CSRs that are still queued or in progress.
+     * The executor itself is shared and remains running.
+     */
+    public void shutdown() {
+
+        if (completionService == null) {
+            return;
+        }
+
+        for (Future<Result> future : pending) {
+            future.cancel(true);
+        }
+        pending.clear();
+
+        long elapsed = getElapsedTime();
+        logger.info("BulkEnrollmentProcessor: Processed " + total + " request(s) in " + elapsed + " ms ("
+                + getThroughput() + " requests/s): "
+                + issued + " issued, " + deferred + " deferred, " + failed + " failed");
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public int getIssued() {
+        return issued;
+    }
+
+    public int getDeferred() {
+        return deferred;
+    }
+
+    public int getFailed() {
+        return failed;
+    }
+
+    public long getElapsedTime() {
+        return System.currentTimeMillis() - startTime;
+    }
+
+    /**
+     * Returns the number of completed requests per second.
+     */
+    public double getThroughput() {
+        long elapsed = getElapsedTime();
+        int completed = issued + deferred + failed;
+        return elapsed == 0 ? completed : completed * 1000.0 / elapsed;
+    }
+
+    /**
+     * Creates the request for a single CSR from the template. The template
+     * inputs are shared; the CSR is added as a separate input that takes
+     * precedence over any CSR in the template.
+     */
+    static CertEnrollmentRequest createRequest(
+            CertEnrollmentRequest template,
+            String certRequest,
+            String certRequestType) {
+
+        CertEnrollmentRequest data = new CertEnrollmentRequest();
+        data.setProfileId(template.getProfileId());
+        data.setRemoteHost(template.getRemoteHost());
+        data.setRemoteAddr(template.getRemoteAddr());
+
+        ProfileInput input = new ProfileInput();
+        input.setName(INPUT_NAME);
+        input.addAttribute(new ProfileAttribute("cert_request_type",
+                certRequestType == null ? "pkcs10" : certRequestType, null));
+        input.addAttribute(new ProfileAttribute("cert_request", certRequest, null));
+
+        List<ProfileInput> inputs = new ArrayList<ProfileInput>(template.getInputs());
+        inputs.add(input);
+        data.setInputs(inputs);
+
+        return data;
+    }
+
+    private Result complete(Future<Result> future) {
+
+        pending.remove(future);
+
+        Result result;
+        try {
+            result = future.get();
+        } catch (InterruptedException | ExecutionException | CancellationException e) {
+            // EnrollmentTask does not throw exceptions
+            throw new RuntimeException(e);
+        }
+
+        if (result.getException() != null || "1".equals(result.getErrorCode())
+                || "3".equals(result.getErrorCode())) {
+            failed++;
+        } else if ("2".equals(result.getErrorCode())) {
+            deferred++;
+        } else {
+            issued++;
+        }
+
+        return result;
+    }
+
+    private class EnrollmentTask implements Callable<Result> {
+
+        private String id;
+        private CertEnrollmentRequest data;
+
+        public EnrollmentTask(String id, CertEnrollmentRequest data) {
+            this.id = id;
+            this.data = data;
+        }
+
+        @Override
+        public Result call() {
+
+            Result result = new Result(id);
+
+            // pooled threads are shared with other bulk enrollments,
+            // so the caller's context is released after each CSR
+            SessionContext.getContext().putAll(sessionContext);
+
+            try {
+                // Each CSR uses its own processor since the processor
+                // tracks the statistics events of the current thread.
+                EnrollmentProcessor processor = new EnrollmentProcessor(
+                        BulkEnrollmentProcessor.this.id, locale);
+
+                // The servlet request is not used since the caller has already
+                // been authenticated, and it must not be accessed from
+                // another thread.
+                HashMap<String, Object> ret = processor.processEnrollment(data, null, aid, credentials, authToken);
+
+                result.requests = (IRequest[]) ret.get(ARG_REQUESTS);
+                result.errorCode = (String) ret.get(ARG_ERROR_CODE);
+                result.errorReason = (String) ret.get(ARG_ERROR_REASON);
+
+            } catch (Exception e) {
+                logger.warn("BulkEnrollmentProcessor: Unable to enroll " + id + ": " + e.getMessage(), e);
+                result.exception = e;
+
+            } finally {
+                SessionContext.releaseContext();
+            }
+
+            return result;
+        }
+    }
+
+    public static class Result {
+
+        private String id;
+        private IRequest[] requests;
+        private String errorCode;
+        private String errorReason;
+        private Exception exception;
+
+        public Result(String id) {
+            this.id = id;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public IRequest[] getRequests() {
+            return requests;
+        }
+
+        /**
+         * Returns the enrollment error code: null if the certificates
+         * were issued, 2 if the requests were deferred, or 1 or 3 if
+         * they were rejected.
+         */
+        public String getErrorCode() {
+            return errorCode;
+        }
+
+        public String getErrorReason() {
+            return errorReason;
+        }
+
+        public Exception getException() {
+            return exception;
+        }
+    }
+}
@@ -0,0 +1,403 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2019 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package com.netscape.cms.servlet.cert;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.mozilla.jss.netscape.security.x509.RevocationReason;
+import org.mozilla.jss.netscape.security.x509.X509CertImpl;
+
+import com.netscape.certsrv.base.EBaseException;
+import com.netscape.certsrv.base.PKIException;
+import com.netscape.certsrv.base.SessionContext;
+import com.netscape.certsrv.ca.ICertificateAuthority;
+import com.netscape.certsrv.dbs.IDBPagedSearch;
+import com.netscape.certsrv.dbs.certdb.ICertRecord;
+import com.netscape.certsrv.dbs.certdb.ICertificateRepository;
+import com.netscape.certsrv.logging.ILogger;
+import com.netscape.certsrv.request.IRequest;
+import com.netscape.certsrv.request.RequestStatus;
+
+/**
+ * The BulkRevocationJob class revokes all certificates matching
+ * a search filter in the background.
+ * <p>
+ * The matching certificates are read with a single paged search that
+ * runs for the whole job, so they are never held in memory all at once
+ * and each of them is only read once. Each page is revoked
+ * with a single revocation request, which updates the certificate
+ * records concurrently and informs the CRL issuing points once per page
+ * (see CAService.revokeCerts()). Certificates that are already revoked
+ * are skipped, so a failed or canceled job can be started again with
+ * the same filter.
+ * <p>
+ * Jobs run one at a time. Their progress can be polled with
+ * {@link #getJob(String)} until they finish; the last
+ * {@link #MAX_FINISHED_JOBS} finished jobs are kept.
+ */
+public class BulkRevocationJob implements Runnable {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(BulkRevocationJob.class);
+
+    public final static String STATUS_PENDING = "pending";
+    public final static String STATUS_RUNNING = "running";
+    public final static String STATUS_COMPLETE = "complete";
+    public final static String STATUS_CANCELED = "canceled";
+    public final static String STATUS_FAILED = "failed";
+
+    public final static int DEFAULT_PAGE_SIZE = 1000;
+    public final static int MAX_ERRORS = 100;
+    public final static int MAX_FINISHED_JOBS = 100;
+
+    private static Map<String, BulkRevocationJob> jobs = new LinkedHashMap<String, BulkRevocationJob>();
+
+    private static ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "BulkRevocationJob");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private String id = UUID.randomUUID().toString();
+
+    private String processorId;
+    private Locale locale;
+    private ICertificateAuthority authority;
+    private String filter;
+    private RevocationReason reason;
+    private Date invalidityDate;
+    private String comments;
+    private String initiative;
+    private int pageSize = DEFAULT_PAGE_SIZE;
+
+    // session context of the requester, used for auditing
+    private Hashtable<Object, Object> sessionContext;
+
+    private volatile String status = STATUS_PENDING;
+    private volatile boolean canceled;
+    private volatile Date startTime;
+    private volatile Date endTime;
+    private volatile BigInteger lastSerialNumber;
+
+    private AtomicLong processed = new AtomicLong();
+    private AtomicLong revoked = new AtomicLong();
+    private AtomicLong skipped = new AtomicLong();
+    private AtomicLong failed = new AtomicLong();
+    private List<String> errors = new ArrayList<String>();
+
+    /**
+     * @param processorId ID of the RevocationProcessor configuration
+     * @param filter search filter for the certificates to revoke
+     * @param initiative initiative for the revocation log
+     */
+    public BulkRevocationJob(
+            String processorId,
+            Locale locale,
+            ICertificateAuthority authority,
+            String filter,
+            RevocationReason reason,
+            Date invalidityDate,
+            String comments,
+            String initiative) {
+
+        this.processorId = processorId;
+        this.locale = locale;
+        this.authority = authority;
+        this.filter = filter;
+        this.reason = reason;
+        this.invalidityDate = invalidityDate;
+        this.comments = comments;
+        this.initiative = initiative;
+    }
+
+    /**
+     * Queues a job. The requester's session context is
+     * captured so that the revocations are attributed to them.
+     */
+    public static void start(BulkRevocationJob job) {
+
+        job.sessionContext = new Hashtable<Object, Object>(SessionContext.getContext());
+
+        synchronized (jobs) {
+            // discard the oldest finished jobs
+            int finished = 0;
+            for (BulkRevocationJob j : jobs.values()) {
+                if (j.isFinished()) finished++;
+            }
+
+            Iterator<BulkRevocationJob> i = jobs.values().iterator();
+            while (finished >= MAX_FINISHED_JOBS && i.hasNext()) {
+                if (i.next().isFinished()) {
+                    i.remove();
+                    finished--;
+                }
+            }
+
+            jobs.put(job.getId(), job);
+        }
+
+        logger.info("BulkRevocationJob: Starting job " + job.getId() + " with filter " + job.getFilter());
+        executor.submit(job);
+    }
+
+    public static BulkRevocationJob getJob(String id) {
+        synchronized (jobs) {
+            return jobs.get(id);
+        }
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getFilter() {
+        return filter;
+    }
+
+    public RevocationReason getReason() {
+        return reason;
+    }
+
+    public void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public boolean isFinished() {
+        return STATUS_COMPLETE.equals(status)
+                || STATUS_CANCELED.equals(status)
+                || STATUS_FAILED.equals(status);
+    }
+
+    /**
+     * Stops the job after the current page.
+     */
+    public void cancel() {
+        canceled = true;
+    }
+
+    public Date getStartTime() {
+        return startTime;
+    }
+
+    public Date getEndTime() {
+        return endTime;
+    }
+
+    /**
+     * Returns the highest serial number processed so far.
+     */
+    public BigInteger getLastSerialNumber() {
+        return lastSerialNumber;
+    }
+
+    public long getProcessed() {
+        return processed.get();
+    }
+
+    public long getRevoked() {
+        return revoked.get();
+    }
+
+    public long getSkipped() {
+        return skipped.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * Returns the first {@link #MAX_ERRORS} errors.
+     */
+    public List<String> getErrors() {
+        synchronized (errors) {
+            return new ArrayList<String>(errors);
+        }
+    }
+
+    public void run() {
+
+        if (canceled) {
+            status = STATUS_CANCELED;
+            return;
+        }
+
+        status = STATUS_RUNNING;
+        startTime = new Date();
+
+        SessionContext.getContext().putAll(sessionContext);
+
+        // certificates that are already revoked are skipped by the search
+        String searchFilter = "(&" + filter
+                + "(!(" + ICertRecord.ATTR_CERT_STATUS + "=" + ICertRecord.STATUS_REVOKED + "))"
+                + "(!(" + ICertRecord.ATTR_CERT_STATUS + "=" + ICertRecord.STATUS_REVOKED_EXPIRED + ")))";
+
+        ICertificateRepository repo = authority.getCertificateRepository();
+
+        try (IDBPagedSearch<ICertRecord> search = repo.findPagedCertRecords(searchFilter, null, pageSize)) {
+
+            List<ICertRecord> records = new ArrayList<ICertRecord>(pageSize);
+
+            while (!canceled && search.hasNext()) {
+
+                ICertRecord record = search.next();
+                if (record == null) {
+                    continue;
+                }
+
+                records.add(record);
+
+                if (records.size() == pageSize) {
+                    revoke(records);
+                    records.clear();
+                }
+            }
+
+            if (!canceled && !records.isEmpty()) {
+                revoke(records);
+            }
+
+            status = canceled ? STATUS_CANCELED : STATUS_COMPLETE;
+
+        } catch (Exception e) {
+            logger.error("BulkRevocationJob: Job " + id + " failed: " + e.getMessage(), e);
+            addError(e.getMessage());
+            status = STATUS_FAILED;
+
+        } finally {
+            endTime = new Date();
+            SessionContext.releaseContext();
+        }
+
+        logger.info("BulkRevocationJob: Job " + id + " " + status + ": "
+                + revoked + " revoked, " + skipped + " skipped, " + failed + " failed in "
+                + (endTime.getTime() - startTime.getTime()) + " ms");
+    }
+
+    /**
+     * Revokes a page of certificates with a single revocation request.
+     */
+    private void revoke(List<ICertRecord> records) throws EBaseException, IOException {
+
+        for (ICertRecord record : records) {
+            BigInteger serialNumber = record.getSerialNumber();
+            if (lastSerialNumber == null || serialNumber.compareTo(lastSerialNumber) > 0) {
+                lastSerialNumber = serialNumber;
+            }
+        }
+
+        RevocationProcessor processor = new RevocationProcessor(processorId, locale);
+        processor.setStartTime(System.currentTimeMillis());
+        processor.setInitiative(initiative);
+        processor.setRevocationReason(reason);
+        processor.setRequestType(reason == RevocationReason.CERTIFICATE_HOLD
+                ? RevocationProcessor.ON_HOLD : RevocationProcessor.REVOKE);
+        processor.setInvalidityDate(invalidityDate);
+        processor.setComments(comments);
+        processor.setAuthority(authority);
+
+        processor.createCRLExtension();
+
+        for (ICertRecord record : records) {
+            processed.incrementAndGet();
+            try {
+                processor.validateCertificateToRevoke(null, record, false);
+                processor.addCertificateToRevoke(record.getCertificate());
+
+            } catch (PKIException e) {
+                logger.debug("BulkRevocationJob: Skipping certificate 0x"
+                        + record.getSerialNumber().toString(16) + ": " + e.getMessage());
+                skipped.incrementAndGet();
+            }
+        }
+
+        logger.info("BulkRevocationJob: Job " + id + ": processed " + processed + " certificate(s)");
+
+        List<X509CertImpl> certs = new ArrayList<X509CertImpl>(processor.getCertificates());
+        if (certs.isEmpty()) {
+            return;
+        }
+
+        processor.createRevocationRequest();
+        processor.auditChangeRequest(ILogger.SUCCESS);
+
+        EBaseException exception = null;
+        try {
+            processor.processRevocationRequest();
+            processor.auditChangeRequestProcessed(ILogger.SUCCESS);
+
+        } catch (EBaseException e) {
+            processor.auditChangeRequestProcessed(ILogger.FAILURE);
+            exception = e;
+        }
+
+        IRequest request = processor.getRequest();
+        RequestStatus requestStatus = request.getRequestStatus();
+        String[] svcErrors = request.getExtDataInStringArray(IRequest.SVCERRORS);
+
+        if (svcErrors != null) {
+            // the request lists the certificates that could not be revoked
+            long count = 0;
+            for (int i = 0; i < svcErrors.length && i < certs.size(); i++) {
+                if (svcErrors[i] == null) continue;
+                addError("0x" + certs.get(i).getSerialNumber().toString(16) + ": " + svcErrors[i]);
+                count++;
+            }
+            failed.addAndGet(count);
+            revoked.addAndGet(certs.size() - count);
+
+        } else if (exception != null) {
+            addError("Request " + request.getRequestId() + ": " + exception.getMessage());
+            failed.addAndGet(certs.size());
+
+        } else if (requestStatus != RequestStatus.COMPLETE && requestStatus != RequestStatus.SVC_PENDING) {
+            addError("Request " + request.getRequestId() + ": " + requestStatus);
+            failed.addAndGet(certs.size());
+
+        } else {
+            revoked.addAndGet(certs.size());
+        }
+    }
+
+    private void addError(String error) {
+        synchronized (errors) {
+            if (errors.size() < MAX_ERRORS) {
+                errors.add(error);
+            }
+        }
+    }
+}
@@ -17,24 +17,27 @@
 // --- END COPYRIGHT BLOCK ---
 package com.netscape.cms.servlet.cert;
 
-import java.security.SecureRandom;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
-import java.util.Map;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.core.UriInfo;
 
+import org.mozilla.jss.netscape.security.x509.X509CertImpl;
+
 import com.netscape.certsrv.base.EBaseException;
+import com.netscape.certsrv.base.INonceStore;
 import com.netscape.certsrv.ca.AuthorityID;
 import com.netscape.certsrv.ca.ICertificateAuthority;
+import com.netscape.certsrv.cert.CertBulkEnrollmentResult;
 import com.netscape.certsrv.cert.CertEnrollmentRequest;
 import com.netscape.certsrv.cert.CertRequestInfo;
 import com.netscape.certsrv.cert.CertRequestInfos;
 import com.netscape.certsrv.cert.CertReviewResponse;
+import com.netscape.certsrv.profile.IEnrollProfile;
 import com.netscape.certsrv.profile.IProfile;
 import com.netscape.certsrv.profile.IProfileSubsystem;
 import com.netscape.certsrv.request.CMSRequestInfo;
@@ -48,7 +51,7 @@ import com.netscape.cms.servlet.processors.CAProcessor;
 import com.netscape.cms.servlet.request.CMSRequestDAO;
 import com.netscape.cmscore.apps.CMS;
 import com.netscape.cmscore.apps.CMSEngine;
-import com.netscape.cmscore.security.JssSubsystem;
+import com.netscape.cmscore.cert.CertUtils;
 
 /**
  * @author alee
@@ -61,7 +64,6 @@ public class CertRequestDAO extends CMSRequestDAO {
     private IRequestQueue queue;
     private ICertificateAuthority ca;
     IProfileSubsystem ps;
-    private SecureRandom random = null;
 
     public static final String ATTR_SERIALNO = "serialNumber";
 
@@ -70,10 +72,6 @@ public class CertRequestDAO extends CMSRequestDAO {
         CMSEngine engine = CMS.getCMSEngine();
         ca = (ICertificateAuthority) engine.getSubsystem(ICertificateAuthority.ID);
         queue = ca.getRequestQueue();
-        if (ca.noncesEnabled()) {
-            JssSubsystem jssSubsystem = (JssSubsystem) engine.getSubsystem(JssSubsystem.ID);
-            random = jssSubsystem.getRandomNumberGenerator();
-        }
         ps = (IProfileSubsystem) engine.getSubsystem(IProfileSubsystem.ID);
     }
 
@@ -153,11 +151,8 @@ public class CertRequestDAO extends CMSRequestDAO {
 
         if (ca.noncesEnabled()) {
             // generate nonce
-            long n = random.nextLong();
-
-            // store nonce in session
-            Map<Object, Long> nonces = ca.getNonces(servletRequest, "cert-request");
-            nonces.put(info.getRequestId().toBigInteger(), n);
+            INonceStore nonces = ca.getNonces(servletRequest, "cert-request");
+            long n = nonces.createNonce(info.getRequestId().toBigInteger());
 
             // return nonce to client
             info.setNonce(Long.toString(n));
@@ -183,15 +178,7 @@ public class CertRequestDAO extends CMSRequestDAO {
 
         CertRequestInfos ret = new CertRequestInfos();
 
-        AuthCredentials credentials = new AuthCredentials();
-        String uid = data.getAttribute("uid");
-        if (uid != null) {
-            credentials.set("uid", uid);
-        }
-        String password = data.getAttribute("pwd");
-        if (password != null) {
-            credentials.set("pwd", password);
-        }
+        AuthCredentials credentials = createCredentials(data);
 
         HashMap<String, Object> results = null;
         if (data.isRenewal()) {
@@ -219,6 +206,73 @@ public class CertRequestDAO extends CMSRequestDAO {
         return ret;
     }
 
+    /**
+     * Authenticates a bulk enrollment request and returns the processor
+     * that enrolls the CSRs.
+     *
+     * @param data template request containing the profile ID and
+     *        the inputs shared by all CSRs
+     * @return the processor, which must be shut down by the caller
+     * @throws EBaseException
+     */
+    public BulkEnrollmentProcessor startBulkEnrollment(
+            AuthorityID aid,
+            CertEnrollmentRequest data,
+            HttpServletRequest request,
+            Locale locale)
+        throws EBaseException {
+
+        BulkEnrollmentProcessor processor = new BulkEnrollmentProcessor("caProfileSubmit", locale);
+        processor.authenticate(data, request, aid, createCredentials(data));
+
+        return processor;
+    }
+
+    public CertBulkEnrollmentResult createBulkEnrollmentResult(
+            BulkEnrollmentProcessor.Result result,
+            UriInfo uriInfo) {
+
+        CertBulkEnrollmentResult ret = new CertBulkEnrollmentResult();
+        ret.setId(result.getId());
+
+        if (result.getException() != null) {
+            ret.setError(result.getException().getMessage());
+            return ret;
+        }
+
+        ret.setError(result.getErrorReason());
+
+        for (IRequest req : result.getRequests()) {
+            try {
+                ret.addRequest(CertRequestInfoFactory.create(req, uriInfo));
+            } catch (NoSuchMethodException e) {
+                logger.warn("Error in creating certrequestinfo - no such method: " + e.getMessage(), e);
+            }
+
+            X509CertImpl cert = req.getExtDataInCert(IEnrollProfile.REQUEST_ISSUED_CERT);
+            if (cert != null && ret.getCertificate() == null) {
+                ret.setCertificate(CertUtils.getEncodedCert(cert));
+            }
+        }
+
+        return ret;
+    }
+
+    private AuthCredentials createCredentials(CertEnrollmentRequest data) {
+
+        AuthCredentials credentials = new AuthCredentials();
+        String uid = data.getAttribute("uid");
+        if (uid != null) {
+            credentials.set("uid", uid);
+        }
+        String password = data.getAttribute("pwd");
+        if (password != null) {
+            credentials.set("pwd", password);
+        }
+
+        return credentials;
+    }
+
     public void changeRequestState(RequestId id, HttpServletRequest request, CertReviewResponse data,
             Locale locale, String op) throws EBaseException {
         IRequest ireq = queue.findRequest(id);
@@ -89,6 +89,9 @@ public class DoRevoke extends CMSServlet {
     private IPublisherProcessor mPublisherProcessor = null;
     private int mTimeLimits = 30; /* in seconds */
 
+    // revokeAll requests matching more certificates are revoked by a BulkRevocationJob
+    private int mBulkRevocationThreshold = 1000;
+
     public DoRevoke() {
         super();
     }
@@ -120,6 +123,15 @@ public class DoRevoke extends CMSServlet {
         } catch (Exception e) {
             /* do nothing, just use the default if integer parsing failed */
         }
+
+        String threshold = sc.getInitParameter("bulkRevocationThreshold");
+        if (threshold != null) {
+            try {
+                mBulkRevocationThreshold = Integer.parseInt(threshold);
+            } catch (NumberFormatException e) {
+                logger.warn("DoRevoke: Invalid bulkRevocationThreshold: " + threshold);
+            }
+        }
     }
 
     /**
@@ -413,6 +425,34 @@ public class DoRevoke extends CMSServlet {
             }
         }
 
+        // An agent revoking a large number of certificates: revoke them
+        // in the background in pages instead of loading them all into a
+        // single request. Per-certificate nonces cannot be validated here.
+        if (mAuthority instanceof ICertificateAuthority &&
+            eeSerialNumber == null &&
+            revokeAll != null &&
+            mBulkRevocationThreshold > 0 &&
+            totalRecordCount > mBulkRevocationThreshold &&
+            (!certAuthority.noncesEnabled() || processor.isMemberOfSubsystemGroup(clientCert))) {
+
+            BulkRevocationJob job = new BulkRevocationJob(
+                    servletConfig.getServletName(),
+                    locale,
+                    certAuthority,
+                    revokeAll,
+                    revReason,
+                    invalidityDate,
+                    comments,
+                    initiative);
+
+            BulkRevocationJob.start(job);
+
+            header.addIntegerValue("totalRecordCount", totalRecordCount);
+            header.addStringValue("revoked", "pending");
+            header.addStringValue("bulkRevocationJob", job.getId());
+            return;
+        }
+
         try {
             processor.createCRLExtension();
 
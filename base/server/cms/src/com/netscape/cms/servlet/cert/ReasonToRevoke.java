@@ -18,11 +18,9 @@
 package com.netscape.cms.servlet.cert;
 
 import java.io.IOException;
-import java.security.SecureRandom;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.Locale;
-import java.util.Map;
 
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
@@ -38,6 +36,7 @@ import com.netscape.certsrv.authorization.AuthzToken;
 import com.netscape.certsrv.authorization.EAuthzAccessDenied;
 import com.netscape.certsrv.base.EBaseException;
 import com.netscape.certsrv.base.IArgBlock;
+import com.netscape.certsrv.base.INonceStore;
 import com.netscape.certsrv.ca.ICertificateAuthority;
 import com.netscape.certsrv.common.ICMSRequest;
 import com.netscape.certsrv.dbs.certdb.ICertRecord;
@@ -49,9 +48,7 @@ import com.netscape.cms.servlet.common.CMSTemplate;
 import com.netscape.cms.servlet.common.CMSTemplateParams;
 import com.netscape.cms.servlet.common.ECMSGWException;
 import com.netscape.cmscore.apps.CMS;
-import com.netscape.cmscore.apps.CMSEngine;
 import com.netscape.cmscore.base.ArgBlock;
-import com.netscape.cmscore.security.JssSubsystem;
 
 /**
  * Specify the RevocationReason when revoking a certificate
@@ -70,7 +67,6 @@ public class ReasonToRevoke extends CMSServlet {
     private ICertificateRepository mCertDB = null;
     private String mFormPath = null;
     private ICertificateAuthority mCA = null;
-    private SecureRandom mRandom = null;
     private int mTimeLimits = 30; /* in seconds */
 
     public ReasonToRevoke() {
@@ -86,20 +82,12 @@ public class ReasonToRevoke extends CMSServlet {
     public void init(ServletConfig sc) throws ServletException {
         super.init(sc);
 
-        CMSEngine engine = (CMSEngine) CMS.getCMSEngine();
-
         mFormPath = "/" + mAuthority.getId() + "/" + TPL_FILE;
         if (mAuthority instanceof ICertificateAuthority) {
             mCA = (ICertificateAuthority) mAuthority;
             mCertDB = ((ICertificateAuthority) mAuthority).getCertificateRepository();
         }
 
-        if (mCA != null && mCA.noncesEnabled()) {
-
-            JssSubsystem jssSubsystem = (JssSubsystem) engine.getSubsystem(JssSubsystem.ID);
-            mRandom = jssSubsystem.getRandomNumberGenerator();
-        }
-
         mTemplates.remove(ICMSRequest.SUCCESS);
         if (mOutputTemplatePath != null)
             mFormPath = mOutputTemplatePath;
@@ -263,10 +251,8 @@ public class ReasonToRevoke extends CMSServlet {
 
                     if (mCA != null && mCA.noncesEnabled()) {
                         // generate nonce
-                        long n = mRandom.nextLong();
-                        // store nonce in session
-                        Map<Object, Long> nonces = mCA.getNonces(req, "cert-revoke");
-                        nonces.put(xcert.getSerialNumber(), n);
+                        INonceStore nonces = mCA.getNonces(req, "cert-revoke");
+                        long n = nonces.createNonce(xcert.getSerialNumber());
                         // store serial number and nonce
                         noncesList.add(xcert.getSerialNumber()+":"+n);
                     }
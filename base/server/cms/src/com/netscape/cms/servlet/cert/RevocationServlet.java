@@ -19,12 +19,10 @@ package com.netscape.cms.servlet.cert;
 
 import java.io.IOException;
 import java.math.BigInteger;
-import java.security.SecureRandom;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
 import java.util.Enumeration;
 import java.util.Locale;
-import java.util.Map;
 
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
@@ -43,6 +41,7 @@ import com.netscape.certsrv.authorization.AuthzToken;
 import com.netscape.certsrv.authorization.EAuthzAccessDenied;
 import com.netscape.certsrv.base.EBaseException;
 import com.netscape.certsrv.base.IArgBlock;
+import com.netscape.certsrv.base.INonceStore;
 import com.netscape.certsrv.ca.ICertificateAuthority;
 import com.netscape.certsrv.common.ICMSRequest;
 import com.netscape.certsrv.dbs.certdb.ICertRecord;
@@ -57,9 +56,7 @@ import com.netscape.cms.servlet.common.CMSTemplate;
 import com.netscape.cms.servlet.common.CMSTemplateParams;
 import com.netscape.cms.servlet.common.ECMSGWException;
 import com.netscape.cmscore.apps.CMS;
-import com.netscape.cmscore.apps.CMSEngine;
 import com.netscape.cmscore.base.ArgBlock;
-import com.netscape.cmscore.security.JssSubsystem;
 
 /**
  * Perform the first step in revoking a certificate
@@ -85,7 +82,6 @@ public class RevocationServlet extends CMSServlet {
     private String mFormPath = null;
     private boolean mRevokeByDN = true;
 
-    private SecureRandom mRandom = null;
 
     public RevocationServlet() {
         super();
@@ -110,16 +106,6 @@ public class RevocationServlet extends CMSServlet {
             if (mFormPath == null)
                 mFormPath = "/" + TPL_FILE;
 
-            CMSEngine engine = (CMSEngine) CMS.getCMSEngine();
-
-            if (mAuthority instanceof ICertificateAuthority) {
-                if (((ICertificateAuthority) mAuthority).noncesEnabled()) {
-
-                    JssSubsystem jssSubsystem = (JssSubsystem) engine.getSubsystem(JssSubsystem.ID);
-                    mRandom = jssSubsystem.getRandomNumberGenerator();
-                }
-            }
-
             // set to false by revokeByDN=false in web.xml
             mRevokeByDN = false;
             String tmp = sc.getInitParameter(PROP_REVOKEBYDN);
@@ -220,10 +206,8 @@ public class RevocationServlet extends CMSServlet {
 
             if (certAuthority.noncesEnabled()) {
                 // generate nonce
-                long n = mRandom.nextLong();
-                // store nonce in session
-                Map<Object, Long> nonces = certAuthority.getNonces(cmsReq.getHttpReq(), "cert-revoke");
-                nonces.put(old_serial_no, n);
+                INonceStore nonces = certAuthority.getNonces(cmsReq.getHttpReq(), "cert-revoke");
+                long n = nonces.createNonce(old_serial_no);
                 // return serial number and nonce to client
                 header.addStringValue("nonce", old_serial_no+":"+n);
             }
@@ -28,7 +28,6 @@ import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.Locale;
-import java.util.Map;
 import java.util.Map.Entry;
 import java.util.StringTokenizer;
 
@@ -46,6 +45,7 @@ import com.netscape.certsrv.base.EBaseException;
 import com.netscape.certsrv.base.EPropertyNotFound;
 import com.netscape.certsrv.base.ForbiddenException;
 import com.netscape.certsrv.base.IConfigStore;
+import com.netscape.certsrv.base.INonceStore;
 import com.netscape.certsrv.base.MetaInfo;
 import com.netscape.certsrv.base.SessionContext;
 import com.netscape.certsrv.ca.ICertificateAuthority;
@@ -999,19 +999,17 @@ public class CAProcessor extends Processor {
             throw new BadRequestException("Missing nonce.");
         }
 
-        Map<Object, Long> nonces = authority.getNonces(servletRequest, name);
+        INonceStore nonces = authority.getNonces(servletRequest, name);
 
-        Long storedNonce = nonces.get(id);
-        if (storedNonce == null) {
+        INonceStore.Result result = nonces.verifyNonce(id, nonce);
+        if (result == INonceStore.Result.MISSING) {
             throw new BadRequestException("Nonce for "+name+" "+id+" does not exist.");
         }
 
-        if (!nonce.equals(storedNonce)) {
+        if (result != INonceStore.Result.VALID) {
             throw new ForbiddenException("Invalid nonce");
         }
 
-        nonces.remove(id);
-
         logger.debug("Processor: Nonce verified");
     }
 }
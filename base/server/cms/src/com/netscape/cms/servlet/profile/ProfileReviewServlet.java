@@ -17,10 +17,8 @@
 // --- END COPYRIGHT BLOCK ---
 package com.netscape.cms.servlet.profile;
 
-import java.security.SecureRandom;
 import java.util.Enumeration;
 import java.util.Locale;
-import java.util.Map;
 
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
@@ -32,6 +30,7 @@ import com.netscape.certsrv.authentication.IAuthToken;
 import com.netscape.certsrv.authorization.AuthzToken;
 import com.netscape.certsrv.authorization.EAuthzAccessDenied;
 import com.netscape.certsrv.base.EBaseException;
+import com.netscape.certsrv.base.INonceStore;
 import com.netscape.certsrv.ca.ICertificateAuthority;
 import com.netscape.certsrv.logging.ILogger;
 import com.netscape.certsrv.profile.EProfileException;
@@ -52,7 +51,6 @@ import com.netscape.cms.servlet.common.CMSRequest;
 import com.netscape.cms.servlet.common.CMSTemplate;
 import com.netscape.cmscore.apps.CMS;
 import com.netscape.cmscore.apps.CMSEngine;
-import com.netscape.cmscore.security.JssSubsystem;
 
 /**
  * This servlet allows reviewing of profile-based request.
@@ -69,7 +67,6 @@ public class ProfileReviewServlet extends ProfileServlet {
 
     private String mAuthorityId = null;
     ICertificateAuthority authority = null;
-    private SecureRandom mRandom = null;
 
     public ProfileReviewServlet() {
     }
@@ -88,12 +85,6 @@ public class ProfileReviewServlet extends ProfileServlet {
 
         if (mAuthorityId != null)
             authority = (ICertificateAuthority) engine.getSubsystem(mAuthorityId);
-
-        if (authority != null && authority.noncesEnabled()) {
-
-            JssSubsystem jssSubsystem = (JssSubsystem) engine.getSubsystem(JssSubsystem.ID);
-            mRandom = jssSubsystem.getRandomNumberGenerator();
-        }
     }
 
     /**
@@ -252,9 +243,8 @@ public class ProfileReviewServlet extends ProfileServlet {
         }
 
         if (authority != null && authority.noncesEnabled()) {
-            long n = mRandom.nextLong();
-            Map<Object, Long> nonces = authority.getNonces(request, "cert-request");
-            nonces.put(req.getRequestId().toBigInteger(), n);
+            INonceStore nonces = authority.getNonces(request, "cert-request");
+            long n = nonces.createNonce(req.getRequestId().toBigInteger());
             args.set(ARG_REQUEST_NONCE, Long.toString(n));
         }
 
@@ -0,0 +1,131 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2019 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package org.dogtagpki.server.rest;
+
+import java.net.URI;
+
+import javax.ws.rs.core.Response;
+
+import org.jboss.resteasy.plugins.providers.atom.Link;
+
+import com.netscape.certsrv.base.BadRequestException;
+import com.netscape.certsrv.dbs.DBOperationData;
+import com.netscape.certsrv.dbs.DBSlowOperationData;
+import com.netscape.certsrv.dbs.DBStatisticsData;
+import com.netscape.certsrv.dbs.DBStatisticsResource;
+import com.netscape.cms.servlet.base.SubsystemService;
+import com.netscape.cmscore.dbs.DBStatistics;
+
+/**
+ * Exposes the latency statistics collected by DBStatistics.
+ * Changes made through this service are not persisted; the
+ * initial state comes from the dbs.statistics parameters.
+ */
+public class DBStatisticsService extends SubsystemService implements DBStatisticsResource {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(DBStatisticsService.class);
+
+    public DBStatisticsData createStatisticsData() {
+
+        DBStatistics stats = DBStatistics.getInstance();
+
+        DBStatisticsData data = new DBStatisticsData();
+        data.setEnabled(stats.isEnabled());
+        data.setSlowThreshold(stats.getSlowThreshold());
+        data.setStartTime(stats.getStartTime());
+
+        for (long bound : DBStatistics.BUCKETS) {
+            data.getBucketBounds().add(bound);
+        }
+
+        for (DBStatistics.Histogram histogram : stats.getHistograms()) {
+
+            DBOperationData operation = new DBOperationData();
+            operation.setOperation(histogram.getOperation());
+            operation.setCategory(histogram.getCategory());
+            operation.setCount(histogram.getCount());
+            operation.setAverageTime(histogram.getAverageTime());
+            operation.setMaxTime(histogram.getMaxTime());
+
+            for (long count : histogram.getBuckets()) {
+                operation.getBuckets().add(count);
+            }
+
+            data.addOperation(operation);
+        }
+
+        for (DBStatistics.SlowOperation op : stats.getSlowOperationList()) {
+
+            DBSlowOperationData slowOperation = new DBSlowOperationData();
+            slowOperation.setOperation(op.getOperation());
+            slowOperation.setCategory(op.getCategory());
+            slowOperation.setTime(op.getTime());
+            slowOperation.setDuration(op.getDuration());
+            slowOperation.setDN(op.getDN());
+            slowOperation.setFilter(op.getFilter());
+
+            data.addSlowOperation(slowOperation);
+        }
+
+        URI uri = uriInfo.getBaseUriBuilder().path(DBStatisticsResource.class).build();
+        data.setLink(new Link("self", uri));
+
+        return data;
+    }
+
+    @Override
+    public Response getStatistics() {
+
+        logger.debug("DBStatisticsService.getStatistics()");
+
+        return createOKResponse(createStatisticsData());
+    }
+
+    @Override
+    public Response changeStatistics(String action, Long slowThreshold) {
+
+        logger.info("DBStatisticsService: changing statistics: action=" + action + " slowThreshold=" + slowThreshold);
+
+        DBStatistics stats = DBStatistics.getInstance();
+
+        if (slowThreshold != null) {
+            if (slowThreshold < 0) {
+                throw new BadRequestException("Invalid slow operation threshold: " + slowThreshold);
+            }
+            stats.setSlowThreshold(slowThreshold);
+        }
+
+        if (action == null) {
+            // only the threshold is changed
+
+        } else if ("enable".equals(action)) {
+            stats.setEnabled(true);
+
+        } else if ("disable".equals(action)) {
+            stats.setEnabled(false);
+
+        } else if ("reset".equals(action)) {
+            stats.reset();
+
+        } else {
+            throw new BadRequestException("Invalid action: " + action);
+        }
+
+        return createOKResponse(createStatisticsData());
+    }
+}
@@ -7,6 +7,7 @@ import javax.ws.rs.ext.ExceptionMapper;
 import javax.ws.rs.ext.Provider;
 
 import com.netscape.certsrv.base.PKIException;
+import com.netscape.certsrv.base.ServiceUnavailableException;
 import com.netscape.cms.servlet.base.PKIService;
 
 @Provider
@@ -17,10 +18,18 @@ public class PKIExceptionMapper implements ExceptionMapper<PKIException> {
 
     public Response toResponse(PKIException exception) {
         // convert PKIException into HTTP response
-        return Response
+        Response.ResponseBuilder builder = Response
                 .status(exception.getCode())
                 .entity(exception.getData())
-                .type(PKIService.getResponseFormat(headers))
-                .build();
+                .type(PKIService.getResponseFormat(headers));
+
+        if (exception instanceof ServiceUnavailableException) {
+            int retryAfter = ((ServiceUnavailableException) exception).getRetryAfter();
+            if (retryAfter > 0) {
+                builder.header("Retry-After", retryAfter);
+            }
+        }
+
+        return builder.build();
     }
 }
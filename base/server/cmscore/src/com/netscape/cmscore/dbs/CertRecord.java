@@ -97,6 +97,46 @@ public class CertRecord implements IDBObj, ICertRecord {
         mModifyTime = new Date();
     }
 
+    /**
+     * Constructs a copy of a certificate record. The meta info,
+     * revocation info and dates are copied so that modifying the
+     * copy does not affect the original record. The certificate
+     * and the CRL entry extensions are shared since they are not
+     * modified once the record has been read.
+     */
+    public CertRecord(CertRecord record) throws EBaseException {
+        mId = record.mId;
+        mX509Certificate = record.mX509Certificate;
+        mStatus = record.mStatus;
+        mAutoRenew = record.mAutoRenew;
+
+        if (record.mMetaInfo != null) {
+            mMetaInfo = new MetaInfo();
+            Enumeration<String> names = record.mMetaInfo.getElements();
+            while (names.hasMoreElements()) {
+                String name = names.nextElement();
+                mMetaInfo.set(name, record.mMetaInfo.get(name));
+            }
+        }
+
+        if (record.mRevocationInfo != null) {
+            Date revocationDate = record.mRevocationInfo.getRevocationDate();
+            mRevocationInfo = new RevocationInfo(
+                    revocationDate == null ? null : new Date(revocationDate.getTime()),
+                    record.mRevocationInfo.getCRLEntryExtensions());
+        }
+
+        mCreateTime = copy(record.mCreateTime);
+        mModifyTime = copy(record.mModifyTime);
+        mIssuedBy = record.mIssuedBy;
+        mRevokedBy = record.mRevokedBy;
+        mRevokedOn = copy(record.mRevokedOn);
+    }
+
+    private static Date copy(Date date) {
+        return date == null ? null : new Date(date.getTime());
+    }
+
     /**
      * Sets attribute to this record.
      */
@@ -0,0 +1,225 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2019 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package com.netscape.cmscore.dbs;
+
+import java.math.BigInteger;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.mozilla.jss.netscape.security.x509.X509CertImpl;
+
+/**
+ * The CertRecordCache class is a bounded LRU cache of decoded
+ * certificate records used by CertificateRepository.readCertificateRecord().
+ * <p>
+ * The cache is bounded by the number of records and by the
+ * approximate size of the records, estimated from the size of
+ * the encoded certificates.
+ * <p>
+ * Records are invalidated when they are modified locally and, on
+ * clones, when the modification is received by RetrieveModificationsTask.
+ * A record read from the database is only added if no invalidation
+ * happened while it was being read, so a concurrent modification
+ * cannot leave a stale record in the cache.
+ * <p>
+ * The cache keeps its own copy of each record and returns a new
+ * copy on every hit, so callers may modify the returned record
+ * (e.g. its meta info) without affecting other readers.
+ */
+public class CertRecordCache {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(CertRecordCache.class);
+
+    // estimated size of a record excluding the certificate
+    public final static int RECORD_OVERHEAD = 1024;
+
+    private int mMaxRecords;
+    private long mMaxBytes;
+    private long mBytes;
+
+    private LinkedHashMap<BigInteger, Entry> mRecords = new LinkedHashMap<BigInteger, Entry>(16, 0.75f, true);
+
+    private long mGeneration;
+
+    private AtomicLong mHits = new AtomicLong();
+    private AtomicLong mMisses = new AtomicLong();
+
+    public CertRecordCache(int maxRecords, long maxBytes) {
+        mMaxRecords = maxRecords;
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the cached record, or null if the record has to
+     * be read from the database.
+     */
+    public synchronized CertRecord get(BigInteger serialNo) {
+
+        Entry entry = mRecords.get(serialNo);
+
+        if (entry == null) {
+            mMisses.incrementAndGet();
+            return null;
+        }
+
+        CertRecord record = copy(entry.record);
+        if (record == null) {
+            mRecords.remove(serialNo);
+            mBytes -= entry.size;
+            mMisses.incrementAndGet();
+            return null;
+        }
+
+        mHits.incrementAndGet();
+        return record;
+    }
+
+    /**
+     * Returns the current generation. The value has to be obtained
+     * before reading a record from the database and passed to
+     * {@link #put(BigInteger, CertRecord, long)}.
+     */
+    public synchronized long getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * Adds a record read from the database unless a record has
+     * been invalidated since the given generation.
+     */
+    public synchronized void put(BigInteger serialNo, CertRecord record, long generation) {
+
+        if (record == null || generation != mGeneration) {
+            return;
+        }
+
+        CertRecord copy = copy(record);
+        if (copy == null) {
+            return;
+        }
+
+        Entry entry = new Entry(copy, estimateSize(copy));
+
+        if (entry.size > mMaxBytes) {
+            return;
+        }
+
+        Entry old = mRecords.put(serialNo, entry);
+        if (old != null) {
+            mBytes -= old.size;
+        }
+        mBytes += entry.size;
+
+        Iterator<Entry> i = mRecords.values().iterator();
+        while ((mRecords.size() > mMaxRecords || mBytes > mMaxBytes) && i.hasNext()) {
+            mBytes -= i.next().size;
+            i.remove();
+        }
+    }
+
+    public synchronized void invalidate(BigInteger serialNo) {
+
+        mGeneration++;
+
+        Entry entry = mRecords.remove(serialNo);
+        if (entry != null) {
+            logger.debug("CertRecordCache: invalidated record " + serialNo);
+            mBytes -= entry.size;
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        mGeneration++;
+        mRecords.clear();
+        mBytes = 0;
+    }
+
+    public synchronized int getSize() {
+        return mRecords.size();
+    }
+
+    public synchronized long getBytes() {
+        return mBytes;
+    }
+
+    public long getHits() {
+        return mHits.get();
+    }
+
+    public long getMisses() {
+        return mMisses.get();
+    }
+
+    public double getHitRatio() {
+        long hits = mHits.get();
+        long total = hits + mMisses.get();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    public double getMissRatio() {
+        long misses = mMisses.get();
+        long total = mHits.get() + misses;
+        return total == 0 ? 0 : (double) misses / total;
+    }
+
+    public String toString() {
+        return "CertRecordCache[size=" + getSize()
+                + ", bytes=" + getBytes()
+                + ", hits=" + getHits()
+                + ", misses=" + getMisses()
+                + ", hitRatio=" + getHitRatio() + "]";
+    }
+
+    static CertRecord copy(CertRecord record) {
+        try {
+            return new CertRecord(record);
+        } catch (Exception e) {
+            logger.warn("CertRecordCache: unable to copy record " + record.getSerialNumber() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    static long estimateSize(CertRecord record) {
+
+        long size = RECORD_OVERHEAD;
+
+        X509CertImpl cert = record.getCertificate();
+        if (cert != null) {
+            try {
+                size += cert.getEncoded().length;
+            } catch (Exception e) {
+                // use the overhead only
+            }
+        }
+
+        return size;
+    }
+
+    static class Entry {
+
+        CertRecord record;
+        long size;
+
+        Entry(CertRecord record, long size) {
+            this.record = record;
+            this.size = size;
+        }
+    }
+}
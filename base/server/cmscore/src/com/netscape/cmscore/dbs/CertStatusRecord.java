@@ -0,0 +1,123 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2019 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package com.netscape.cmscore.dbs;
+
+import java.math.BigInteger;
+import java.util.Date;
+
+import com.netscape.certsrv.base.EBaseException;
+import com.netscape.certsrv.dbs.IDBProjection;
+
+import netscape.ldap.LDAPAttribute;
+import netscape.ldap.LDAPAttributeSet;
+
+/**
+ * A lightweight view of a certificate record containing only
+ * the serial number, status, validity and revocation date.
+ * It is read with {@link #PROJECTION} which fetches the
+ * corresponding LDAP attributes without the certificate blob,
+ * for maintenance tasks that only need to know which
+ * certificates changed state.
+ */
+public class CertStatusRecord {
+
+    public final static IDBProjection<CertStatusRecord> PROJECTION = new IDBProjection<CertStatusRecord>() {
+
+        private final String[] attrs = new String[] {
+                CertDBSchema.LDAP_ATTR_SERIALNO,
+                CertDBSchema.LDAP_ATTR_CERT_STATUS,
+                CertDBSchema.LDAP_ATTR_NOT_BEFORE,
+                CertDBSchema.LDAP_ATTR_NOT_AFTER,
+                CertDBSchema.LDAP_ATTR_REVOKED_ON
+        };
+
+        public String[] getLDAPAttributes() {
+            return attrs;
+        }
+
+        public CertStatusRecord map(LDAPAttributeSet attrs) throws EBaseException {
+
+            String serialNumber = getValue(attrs, CertDBSchema.LDAP_ATTR_SERIALNO);
+            if (serialNumber == null) {
+                return null;
+            }
+
+            CertStatusRecord record = new CertStatusRecord();
+            record.mSerialNumber = BigIntegerMapper.BigIntegerFromDB(serialNumber);
+            record.mStatus = getValue(attrs, CertDBSchema.LDAP_ATTR_CERT_STATUS);
+            record.mNotBefore = getDate(attrs, CertDBSchema.LDAP_ATTR_NOT_BEFORE);
+            record.mNotAfter = getDate(attrs, CertDBSchema.LDAP_ATTR_NOT_AFTER);
+            record.mRevokedOn = getDate(attrs, CertDBSchema.LDAP_ATTR_REVOKED_ON);
+
+            return record;
+        }
+    };
+
+    private BigInteger mSerialNumber;
+    private String mStatus;
+    private Date mNotBefore;
+    private Date mNotAfter;
+    private Date mRevokedOn;
+
+    public BigInteger getSerialNumber() {
+        return mSerialNumber;
+    }
+
+    public String getStatus() {
+        return mStatus;
+    }
+
+    public Date getNotBefore() {
+        return mNotBefore;
+    }
+
+    public Date getNotAfter() {
+        return mNotAfter;
+    }
+
+    public Date getRevokedOn() {
+        return mRevokedOn;
+    }
+
+    public String toString() {
+        return "CertStatusRecord[serialNumber=" + mSerialNumber
+                + ", status=" + mStatus
+                + ", notBefore=" + mNotBefore
+                + ", notAfter=" + mNotAfter + "]";
+    }
+
+    static String getValue(LDAPAttributeSet attrs, String name) {
+
+        LDAPAttribute attr = attrs.getAttribute(name);
+        if (attr == null) {
+            return null;
+        }
+
+        return (String) attr.getStringValues().nextElement();
+    }
+
+    static Date getDate(LDAPAttributeSet attrs, String name) {
+
+        String value = getValue(attrs, name);
+        if (value == null) {
+            return null;
+        }
+
+        return DateMapper.dateFromDB(value);
+    }
+}
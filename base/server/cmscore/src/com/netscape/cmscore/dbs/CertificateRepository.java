@@ -21,15 +21,28 @@ import java.io.Serializable;
 import java.math.BigInteger;
 import java.security.SecureRandom;
 import java.security.cert.Certificate;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.mozilla.jss.netscape.security.x509.CertificateValidity;
 import org.mozilla.jss.netscape.security.x509.RevokedCertImpl;
@@ -44,10 +57,12 @@ import com.netscape.certsrv.base.SessionContext;
 import com.netscape.certsrv.ca.ICRLIssuingPoint;
 import com.netscape.certsrv.dbs.EDBException;
 import com.netscape.certsrv.dbs.EDBRecordNotFoundException;
+import com.netscape.certsrv.dbs.IDBPagedSearch;
 import com.netscape.certsrv.dbs.IDBSSession;
 import com.netscape.certsrv.dbs.IDBSearchResults;
 import com.netscape.certsrv.dbs.IDBSubsystem;
 import com.netscape.certsrv.dbs.IDBVirtualList;
+import com.netscape.certsrv.dbs.IElementProcessor;
 import com.netscape.certsrv.dbs.Modification;
 import com.netscape.certsrv.dbs.ModificationSet;
 import com.netscape.certsrv.dbs.certdb.ICertRecord;
@@ -90,6 +105,20 @@ public class CertificateRepository extends Repository
     private static final String PROP_COLLISION_RECOVERY_STEPS = "collisionRecoverySteps";
     private static final String PROP_COLLISION_RECOVERY_REGENERATIONS = "collisionRecoveryRegenerations";
     private static final String PROP_MINIMUM_RANDOM_BITS = "minimumRandomBits";
+    private static final String PROP_RANDOM_SERIAL_NUMBER_BATCH_SIZE = "randomSerialNumberBatchSize";
+    private static final int MAX_ISSUED_SERIAL_NUMBERS = 1024;
+    private static final String PROP_CERT_RECORD_CACHE_SIZE = "certRecordCacheSize";
+    private static final String PROP_CERT_RECORD_CACHE_MAX_BYTES = "certRecordCacheMaxBytes";
+    // page size of the serial number scan in processCertificatesAfter()
+    private static final int SERIAL_NUMBER_PAGE_SIZE = 1000;
+
+    // a window of serial numbers in processCertificatesAfter() is narrowed
+    // when it holds more than this many times the records needed
+    private static final int SERIAL_NUMBER_SCAN_FACTOR = 4;
+
+    // number of records read at once by processCertificatesAfter()
+    private static final int CERT_RECORD_BATCH_SIZE = 50;
+
     private static final BigInteger BI_MINUS_ONE = (BigInteger.ZERO).subtract(BigInteger.ONE);
 
     private IDBSubsystem mDBService;
@@ -110,9 +139,28 @@ public class CertificateRepository extends Repository
     private int mMinRandomBitLength = 4;
     private int mMaxCollisionRecoverySteps = 10;
     private int mMaxCollisionRecoveryRegenerations = 3;
+    private int mRandomSerialNumberBatchSize = 16;
     private IConfigStore mDBConfig = null;
     private boolean mForceModeChange = false;
 
+    // random serial numbers checked against the database but not issued yet
+    private ConcurrentLinkedQueue<BigInteger> mReservedSerialNumbers = new ConcurrentLinkedQueue<BigInteger>();
+    private AtomicInteger mReservedSerialNumbersCount = new AtomicInteger();
+
+    // recently issued serial numbers whose records may not have been added yet
+    private ConcurrentLinkedQueue<BigInteger> mIssuedSerialNumbers = new ConcurrentLinkedQueue<BigInteger>();
+    private AtomicInteger mIssuedSerialNumbersCount = new AtomicInteger();
+
+    // reserved and recently issued serial numbers, excluded from new batches
+    private Set<BigInteger> mOutstandingSerialNumbers = Collections.newSetFromMap(new ConcurrentHashMap<BigInteger, Boolean>());
+
+    private Object nextSerialNumberMonitor = new Object();
+    private AtomicBoolean mReservePending = new AtomicBoolean();
+    private ExecutorService mReserveExecutor;
+
+    // decoded certificate records, null if disabled
+    private CertRecordCache mCertRecordCache;
+
     public CertStatusUpdateTask certStatusUpdateTask;
     public RetrieveModificationsTask retrieveModificationsTask;
     public SerialNumberUpdateTask serialNumberUpdateTask;
@@ -126,6 +174,32 @@ public class CertificateRepository extends Repository
         mBaseDN = certRepoBaseDN;
         mDBService = dbService;
         mDBConfig = mDBService.getDBConfigStore();
+
+        try {
+            int cacheSize = mDBConfig.getInteger(PROP_CERT_RECORD_CACHE_SIZE, 0);
+            if (cacheSize > 0) {
+                long maxBytes = mDBConfig.getInteger(PROP_CERT_RECORD_CACHE_MAX_BYTES, 16 * 1024 * 1024);
+                logger.info("CertificateRepository: caching up to " + cacheSize
+                        + " certificate records (" + maxBytes + " bytes)");
+                mCertRecordCache = new CertRecordCache(cacheSize, maxBytes);
+            }
+        } catch (EBaseException e) {
+            throw new EDBException("Unable to configure certificate record cache: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Returns the certificate record cache, or null
+     * if the cache is disabled.
+     */
+    public CertRecordCache getCertRecordCache() {
+        return mCertRecordCache;
+    }
+
+    private void invalidateCertRecord(BigInteger serialNo) {
+        if (mCertRecordCache != null) {
+            mCertRecordCache.invalidate(serialNo);
+        }
     }
 
     public ICertRecord createCertRecord(BigInteger id, Certificate cert, MetaInfo meta) {
@@ -142,6 +216,7 @@ public class CertificateRepository extends Repository
         CMSEngine engine = (CMSEngine) CMS.getCMSEngine();
         if (mEnableRandomSerialNumbers ^ random || forceModeChange) {
             mEnableRandomSerialNumbers = random;
+            clearReservedSerialNumbers();
             logger.debug("CertificateRepository:  setEnableRandomSerialNumbers   switching to " +
                       ((random)?PROP_RANDOM_MODE:PROP_SEQUENTIAL_MODE) + " mode");
             if (updateMode) {
@@ -213,95 +288,220 @@ public class CertificateRepository extends Repository
         return nextSerialNumber;
     }
 
-    private BigInteger checkSerialNumbers(BigInteger randomNumber, BigInteger serialNumber) throws EBaseException {
-        BigInteger nextSerialNumber = null;
-        BigInteger initialRandomNumber = randomNumber;
-        BigInteger delta = BigInteger.ZERO;
-        int i = 0;
-        int n = mMaxCollisionRecoverySteps;
+    /**
+     * Issues a reserved random serial number and updates the
+     * counter of serial numbers issued from the current range.
+     *
+     * @return the serial number, or null if the range has been
+     *         switched since the serial number was reserved
+     */
+    private synchronized BigInteger issueSerialNumber(BigInteger serialNumber) throws EBaseException {
 
-        do {
-            logger.debug("CertificateRepository: checkSerialNumbers  checking("+(i+1)+")="+serialNumber);
-            try {
-                if (readCertificateRecord(serialNumber) != null) {
-                    logger.debug("CertificateRepository: checkSerialNumbers  collision detected for serialNumber="+serialNumber);
+        if (serialNumber.compareTo(mMinSerialNo) < 0 || serialNumber.compareTo(mMaxSerialNo) > 0) {
+            logger.debug("CertificateRepository: issueSerialNumber  discarding "+serialNumber+
+                      " outside of range "+mMinSerialNo+".."+mMaxSerialNo);
+            mOutstandingSerialNumbers.remove(serialNumber);
+            return null;
+        }
+
+        if (mCounter.compareTo(BigInteger.ZERO) >= 0) {
+            mCounter = mCounter.add(BigInteger.ONE);
+        }
+        logger.debug("CertificateRepository: issueSerialNumber  nextSerialNumber="+
+                  serialNumber+"  mCounter="+mCounter);
+
+        super.checkRange();
+
+        // keep the most recently issued serial numbers out of new
+        // batches until their records have been added
+        mIssuedSerialNumbers.add(serialNumber);
+        if (mIssuedSerialNumbersCount.incrementAndGet() > MAX_ISSUED_SERIAL_NUMBERS) {
+            BigInteger oldest = mIssuedSerialNumbers.poll();
+            if (oldest != null) {
+                mIssuedSerialNumbersCount.decrementAndGet();
+                mOutstandingSerialNumbers.remove(oldest);
+            }
+        }
+
+        return serialNumber;
+    }
+
+    /**
+     * Reserves a batch of random serial numbers. The candidates are
+     * checked against the database with a single search and the ones
+     * that are not in use are added to the reserved queue.
+     *
+     * @param refill true to add a batch even if serial numbers are
+     *        still reserved, false to return if another thread has
+     *        already reserved some
+     */
+    private void reserveSerialNumbers(boolean refill) throws EBaseException {
+
+        synchronized (nextSerialNumberMonitor) {
+
+            if (!refill && !mReservedSerialNumbers.isEmpty()) {
+                return;
+            }
+
+            BigInteger minSerialNo;
+            BigInteger maxSerialNo;
+
+            synchronized (this) {
+                super.initCacheIfNeeded();
+                minSerialNo = mMinSerialNo;
+                maxSerialNo = mMaxSerialNo;
+            }
+
+            Set<BigInteger> candidates = new LinkedHashSet<BigInteger>();
+            int attempts = mRandomSerialNumberBatchSize * mMaxCollisionRecoverySteps;
+
+            for (int i = 0; candidates.size() < mRandomSerialNumberBatchSize && i < attempts; i++) {
+
+                BigInteger serialNumber = getRandomSerialNumber(getRandomNumber());
+
+                if (serialNumber.compareTo(minSerialNo) < 0 || serialNumber.compareTo(maxSerialNo) > 0) {
+                    continue;
                 }
-            } catch (EDBRecordNotFoundException nfe) {
-                logger.debug("CertificateRepository: checkSerialNumbers  serial number "+serialNumber+" is available");
-                nextSerialNumber = serialNumber;
-            } catch (Exception e) {
-                logger.warn("CertificateRepository: checkSerialNumbers: " + e.getMessage(), e);
+
+                if (mOutstandingSerialNumbers.contains(serialNumber)) {
+                    logger.debug("CertificateRepository: reserveSerialNumbers  "+serialNumber+" is already reserved");
+                    continue;
+                }
+
+                candidates.add(serialNumber);
+            }
+
+            if (candidates.isEmpty()) {
+                return;
             }
 
-            if (nextSerialNumber == null) {
-                if (i%2 == 0) {
-                    delta = delta.add(BigInteger.ONE);
-                    serialNumber = getRandomSerialNumber(initialRandomNumber.add(delta));
+            StringBuilder filter = new StringBuilder("(|");
+            for (BigInteger serialNumber : candidates) {
+                filter.append("(" + ICertRecord.ATTR_ID + "=" + serialNumber + ")");
+            }
+            filter.append(")");
 
-                    if (mMaxSerialNo != null && serialNumber.compareTo(mMaxSerialNo) > 0) {
-                        serialNumber = getRandomSerialNumber(initialRandomNumber.subtract(delta));
-                        i++;
-                        n++;
-                    }
-                } else {
-                    serialNumber = getRandomSerialNumber(initialRandomNumber.subtract(delta));
-                    if (mMinSerialNo != null && serialNumber.compareTo(mMinSerialNo) < 0) {
-                        delta = delta.add(BigInteger.ONE);
-                        serialNumber = getRandomSerialNumber(initialRandomNumber.add(delta));
-                        i++;
-                        n++;
+            try (IDBSSession s = mDBService.createSession()) {
+                Enumeration<CertStatusRecord> e = s.search(getDN(), filter.toString(), 0, CertStatusRecord.PROJECTION);
+
+                while (e.hasMoreElements()) {
+                    BigInteger serialNumber = e.nextElement().getSerialNumber();
+                    logger.debug("CertificateRepository: reserveSerialNumbers  collision detected for serialNumber="+serialNumber);
+                    candidates.remove(serialNumber);
+                }
+            }
+
+            for (BigInteger serialNumber : candidates) {
+                if (mOutstandingSerialNumbers.add(serialNumber)) {
+                    mReservedSerialNumbers.add(serialNumber);
+                    mReservedSerialNumbersCount.incrementAndGet();
+                }
+            }
+
+            logger.debug("CertificateRepository: reserveSerialNumbers  reserved "+candidates.size()+
+                      " serial numbers, available: "+mReservedSerialNumbersCount.get());
+        }
+    }
+
+    /**
+     * Reserves the next batch of random serial numbers in the
+     * background once less than half of a batch is left.
+     */
+    private void scheduleReserveSerialNumbers() {
+
+        if (mReservedSerialNumbersCount.get() > mRandomSerialNumberBatchSize / 2) {
+            return;
+        }
+
+        if (!mReservePending.compareAndSet(false, true)) {
+            return;
+        }
+
+        getReserveExecutor().execute(new Runnable() {
+            public void run() {
+                try {
+                    if (mEnableRandomSerialNumbers) {
+                        reserveSerialNumbers(true);
                     }
+                } catch (Exception e) {
+                    logger.warn("CertificateRepository: Unable to reserve serial numbers: " + e.getMessage(), e);
+                } finally {
+                    mReservePending.set(false);
                 }
-                i++;
             }
-        } while (nextSerialNumber == null && i < n);
+        });
+    }
 
-        return nextSerialNumber;
+    private synchronized ExecutorService getReserveExecutor() {
+
+        if (mReserveExecutor == null) {
+            mReserveExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "RandomSerialNumberReserveTask");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        return mReserveExecutor;
     }
 
-    private Object nextSerialNumberMonitor = new Object();
+    /**
+     * Discards the reserved random serial numbers, e.g. when
+     * switching between random and sequential mode.
+     */
+    private void clearReservedSerialNumbers() {
 
-    public synchronized BigInteger getNextSerialNumber()
+        BigInteger serialNumber;
+        while ((serialNumber = mReservedSerialNumbers.poll()) != null) {
+            mReservedSerialNumbersCount.decrementAndGet();
+            mOutstandingSerialNumbers.remove(serialNumber);
+        }
+    }
+
+    /**
+     * Returns the next serial number. In random mode the serial
+     * numbers are taken from a queue of random serial numbers
+     * which have been checked against the database in batches,
+     * so issuing a serial number does not require a database
+     * round trip unless the queue is empty.
+     */
+    public BigInteger getNextSerialNumber()
             throws EBaseException {
 
+        logger.debug("CertificateRepository: getNextSerialNumber  mEnableRandomSerialNumbers="+mEnableRandomSerialNumbers);
+
+        if (!mEnableRandomSerialNumbers) {
+            return super.getNextSerialNumber();
+        }
+
         BigInteger nextSerialNumber = null;
-        BigInteger randomNumber = null;
+        int i = 0;
 
-        super.initCacheIfNeeded();
-        logger.debug("CertificateRepository: getNextSerialNumber  mEnableRandomSerialNumbers="+mEnableRandomSerialNumbers);
+        while (nextSerialNumber == null) {
 
-        if (mEnableRandomSerialNumbers) {
-            int i = 0;
-            do {
+            BigInteger serialNumber = mReservedSerialNumbers.poll();
+
+            if (serialNumber == null) {
+                if (i >= mMaxCollisionRecoveryRegenerations) {
+                    logger.error("CertificateRepository: in getNextSerialNumber  nextSerialNumber is null");
+                    throw new EBaseException( "nextSerialNumber is null" );
+                }
                 if (i > 0) {
-                    logger.debug("CertificateRepository: getNextSerialNumber  regenerating serial number");
+                    logger.debug("CertificateRepository: getNextSerialNumber  regenerating serial numbers");
                 }
-                randomNumber = getRandomNumber();
-                nextSerialNumber = getRandomSerialNumber(randomNumber);
-                nextSerialNumber = checkSerialNumbers(randomNumber, nextSerialNumber);
+                reserveSerialNumbers(false);
                 i++;
-            } while (nextSerialNumber == null && i < mMaxCollisionRecoveryRegenerations);
-
-            if (nextSerialNumber == null) {
-                logger.error("CertificateRepository: in getNextSerialNumber  nextSerialNumber is null");
-                throw new EBaseException( "nextSerialNumber is null" );
-            }
-
-            if (mCounter.compareTo(BigInteger.ZERO) >= 0 &&
-                mMinSerialNo != null && mMaxSerialNo != null &&
-                nextSerialNumber != null &&
-                nextSerialNumber.compareTo(mMinSerialNo) >= 0 &&
-                nextSerialNumber.compareTo(mMaxSerialNo) <= 0) {
-                mCounter = mCounter.add(BigInteger.ONE);
+                continue;
             }
-            logger.debug("CertificateRepository: getNextSerialNumber  nextSerialNumber="+
-                      nextSerialNumber+"  mCounter="+mCounter);
 
-            super.checkRange();
-        } else {
-            nextSerialNumber = super.getNextSerialNumber();
+            mReservedSerialNumbersCount.decrementAndGet();
+            nextSerialNumber = issueSerialNumber(serialNumber);
         }
 
+        scheduleReserveSerialNumbers();
+
         return nextSerialNumber;
     }
 
@@ -445,6 +645,7 @@ public class CertificateRepository extends Repository
         mMinRandomBitLength = mDBConfig.getInteger(PROP_MINIMUM_RANDOM_BITS, 4);
         mMaxCollisionRecoverySteps = mDBConfig.getInteger(PROP_COLLISION_RECOVERY_STEPS, 10);
         mMaxCollisionRecoveryRegenerations = mDBConfig.getInteger(PROP_COLLISION_RECOVERY_REGENERATIONS, 3);
+        mRandomSerialNumberBatchSize = Math.max(1, mDBConfig.getInteger(PROP_RANDOM_SERIAL_NUMBER_BATCH_SIZE, 16));
         boolean modeChange = (mEnableRandomSerialNumbers && crMode != null && crMode.equals(PROP_SEQUENTIAL_MODE)) ||
                              ((!mEnableRandomSerialNumbers) && crMode != null && crMode.equals(PROP_RANDOM_MODE));
         boolean enableRsnAtConfig = mEnableRandomSerialNumbers && engine.isPreOpMode() &&
@@ -786,54 +987,8 @@ public class CertificateRepository extends Repository
      */
     public void transitValidCertificates() throws EBaseException {
 
-        Date now = new Date();
-        ICertRecordList recList = getValidCertsByNotAfterDate(now, -1 * mTransitRecordPageSize);
-
-        int size = recList.getSize();
-
-        if (size <= 0) {
-            logger.debug("index may be empty");
-            return;
-        }
-        int ltSize = recList.getSizeBeforeJumpTo();
-
-        ltSize = Math.min(ltSize, mTransitMaxRecords);
-
-        Vector<Serializable> cList = new Vector<Serializable>(ltSize);
-
-        logger.debug("transidValidCertificates: list size: " + size);
-        logger.debug("transitValidCertificates: ltSize " + ltSize);
-
-        CertRecord curRec = null;
-
-        int i;
-        ICertRecord obj = null;
-
-        for (i = 0; i < ltSize; i++) {
-            obj = recList.getCertRecord(i);
-
-            if (obj != null) {
-                curRec = (CertRecord) obj;
-
-                Date notAfter = curRec.getNotAfter();
-
-                //logger.debug("notAfter " + notAfter.toString() + " now " + now.toString());
-                if (notAfter.after(now)) {
-                    logger.debug("Record does not qualify,notAfter " + notAfter.toString() + " date " + now.toString());
-                    continue;
-                }
-
-                logger.debug("transitValid: curRec: " + i + " " + curRec.toString());
-
-                if (mConsistencyCheck) {
-                    cList.add(curRec);
-                } else {
-                    cList.add(curRec.getSerialNumber());
-                }
-            } else {
-                logger.warn("found null from getCertRecord");
-            }
-        }
+        Vector<Serializable> cList = findTransitCertificates(CertRecord.STATUS_VALID,
+                ICertRecord.ATTR_X509CERT_NOT_AFTER, new Date());
 
         transitCertList(cList, CertRecord.STATUS_EXPIRED);
     }
@@ -843,54 +998,11 @@ public class CertificateRepository extends Repository
      * if an revoked certificate becomes expired.
      */
     public void transitRevokedExpiredCertificates() throws EBaseException {
-        Date now = new Date();
-        ICertRecordList recList = getRevokedCertsByNotAfterDate(now, -1 * mTransitRecordPageSize);
-
-        int size = recList.getSize();
 
-        if (size <= 0) {
-            logger.debug("index may be empty");
-            return;
-        }
-
-        int ltSize = recList.getSizeBeforeJumpTo();
-        Vector<Serializable> cList = new Vector<Serializable>(ltSize);
-
-        ltSize = Math.min(ltSize, mTransitMaxRecords);
-
-        logger.debug("transitRevokedExpiredCertificates: list size: " + size);
-        logger.debug("transitRevokedExpiredCertificates: ltSize " + ltSize);
-
-        CertRecord curRec = null;
-        int i;
-        Object obj = null;
-
-        for (i = 0; i < ltSize; i++) {
-            obj = recList.getCertRecord(i);
-            if (obj != null) {
-                curRec = (CertRecord) obj;
-                logger.debug("transitRevokedExpired: curRec: " + i + " " + curRec.toString());
-
-                Date notAfter = curRec.getNotAfter();
-
-                // logger.debug("notAfter " + notAfter.toString() + " now " + now.toString());
-                if (notAfter.after(now)) {
-                    logger.debug("Record does not qualify,notAfter " + notAfter.toString() + " date " + now.toString());
-                    continue;
-                }
-
-                if (mConsistencyCheck) {
-                    cList.add(curRec);
-                } else {
-                    cList.add(curRec.getSerialNumber());
-                }
-            } else {
-                logger.warn("found null record in getCertRecord");
-            }
-        }
+        Vector<Serializable> cList = findTransitCertificates(CertRecord.STATUS_REVOKED,
+                ICertRecord.ATTR_X509CERT_NOT_AFTER, new Date());
 
         transitCertList(cList, CertRecord.STATUS_REVOKED_EXPIRED);
-
     }
 
     /**
@@ -899,60 +1011,112 @@ public class CertificateRepository extends Repository
      */
     public void transitInvalidCertificates() throws EBaseException {
 
-        Date now = new Date();
+        Vector<Serializable> cList = findTransitCertificates(CertRecord.STATUS_INVALID,
+                ICertRecord.ATTR_X509CERT_NOT_BEFORE, new Date());
 
-        ICertRecordList recList = getInvalidCertsByNotBeforeDate(now, -1 * mTransitRecordPageSize);
+        transitCertList(cList, CertRecord.STATUS_VALID);
+    }
 
-        int size = recList.getSize();
+    /**
+     * Finds up to transitMaxRecords certificates in the given status
+     * whose validity date is at or before the given date, reading
+     * transitRecordPageSize entries per page.
+     *
+     * Without consistency check only the attributes of CertStatusRecord
+     * are read, so the certificates themselves are neither transferred
+     * nor decoded, and the serial numbers are returned. With consistency
+     * check the full certificate records are returned.
+     */
+    private Vector<Serializable> findTransitCertificates(String status, String dateAttr, Date date)
+            throws EBaseException {
 
-        if (size <= 0) {
-            logger.debug("index may be empty");
-            return;
-        }
-        int ltSize = recList.getSizeBeforeJumpTo();
+        String filter = "(&(" + CertRecord.ATTR_CERT_STATUS + "=" + status + ")("
+                + dateAttr + "<=" + date.getTime() + "))";
 
-        ltSize = Math.min(ltSize, mTransitMaxRecords);
+        logger.debug("CertificateRepository: finding " + status + " certificates: " + filter);
 
-        Vector<Serializable> cList = new Vector<Serializable>(ltSize);
+        Vector<Serializable> cList = new Vector<Serializable>();
 
-        logger.debug("transidInValidCertificates: list size: " + size);
-        logger.debug("transitInValidCertificates: ltSize " + ltSize);
+        try (IDBSSession s = mDBService.createSession()) {
 
-        CertRecord curRec = null;
+            if (mConsistencyCheck) {
+                try (IDBPagedSearch<CertRecord> search = s.createPagedSearch(
+                        getDN(), filter, null, mTransitRecordPageSize)) {
 
-        int i;
+                    while (cList.size() < mTransitMaxRecords && search.hasNext()) {
+                        CertRecord rec = search.next();
+                        logger.debug("CertificateRepository: found " + rec.getSerialNumber());
+                        cList.add(rec);
+                    }
+                }
 
-        Object obj = null;
+            } else {
+                try (IDBPagedSearch<CertStatusRecord> search = s.createPagedSearch(
+                        getDN(), filter, mTransitRecordPageSize, CertStatusRecord.PROJECTION)) {
 
-        for (i = 0; i < ltSize; i++) {
-            obj = recList.getCertRecord(i);
+                    while (cList.size() < mTransitMaxRecords && search.hasNext()) {
+                        CertStatusRecord rec = search.next();
+                        logger.debug("CertificateRepository: found " + rec);
+                        cList.add(rec.getSerialNumber());
+                    }
+                }
+            }
+        }
 
-            if (obj != null) {
-                curRec = (CertRecord) obj;
+        return cList;
+    }
 
-                Date notBefore = curRec.getNotBefore();
+    /**
+     * Scans the certificate records that satisfy the filter one page
+     * at a time. The returned search owns a database session, so it
+     * has to be closed if it is not read to the end.
+     *
+     * @param filter search filter
+     * @param attrs selected attributes, or null for all attributes
+     * @param pageSize number of records per page
+     * @return paged search of certificate records
+     */
+    public IDBPagedSearch<ICertRecord> findPagedCertRecords(String filter, String attrs[], int pageSize)
+            throws EBaseException {
 
-                //logger.debug("notBefore " + notBefore.toString() + " now " + now.toString());
-                if (notBefore.after(now)) {
-                    logger.debug("Record does not qualify,notBefore " + notBefore.toString() + " date " + now.toString());
-                    continue;
+        logger.debug("CertificateRepository: findPagedCertRecords(" + filter + ")");
 
-                }
-                logger.debug("transitInValid: curRec: " + i + " " + curRec.toString());
+        final IDBSSession s = mDBService.createSession();
+        final IDBPagedSearch<ICertRecord> search;
 
-                if (mConsistencyCheck) {
-                    cList.add(curRec);
-                } else {
-                    cList.add(curRec.getSerialNumber());
-                }
+        try {
+            search = s.createPagedSearch(getDN(), filter, attrs, pageSize);
+        } catch (EBaseException e) {
+            s.close();
+            throw e;
+        }
 
-            } else {
-                logger.warn("found null from getCertRecord");
+        return new IDBPagedSearch<ICertRecord>() {
+
+            private boolean closed;
+
+            public boolean hasNext() throws EBaseException {
+                if (closed) return false;
+                if (search.hasNext()) return true;
+                close();
+                return false;
             }
-        }
 
-        transitCertList(cList, CertRecord.STATUS_VALID);
+            public ICertRecord next() throws EBaseException {
+                return search.next();
+            }
 
+            public void close() {
+                if (closed) return;
+                closed = true;
+                search.close();
+                try {
+                    s.close();
+                } catch (EDBException e) {
+                    logger.warn("CertificateRepository: " + e.getMessage(), e);
+                }
+            }
+        };
     }
 
     private void transitCertList(Vector<Serializable> cList, String newCertStatus) throws EBaseException {
@@ -1022,6 +1186,7 @@ public class CertificateRepository extends Repository
 
             s.delete(name);
         } finally {
+            invalidateCertRecord(serialNo);
             if (s != null)
                 s.close();
         }
@@ -1032,6 +1197,17 @@ public class CertificateRepository extends Repository
      */
     public ICertRecord readCertificateRecord(BigInteger serialNo)
             throws EBaseException {
+
+        long generation = 0;
+
+        if (mCertRecordCache != null) {
+            CertRecord rec = mCertRecordCache.get(serialNo);
+            if (rec != null) {
+                return rec;
+            }
+            generation = mCertRecordCache.getGeneration();
+        }
+
         IDBSSession s = mDBService.createSession();
         CertRecord rec = null;
 
@@ -1044,6 +1220,11 @@ public class CertificateRepository extends Repository
             if (s != null)
                 s.close();
         }
+
+        if (mCertRecordCache != null) {
+            mCertRecordCache.put(serialNo, rec, generation);
+        }
+
         return rec;
     }
 
@@ -1103,6 +1284,7 @@ public class CertificateRepository extends Repository
                     new Date());
             s.modify(name, mods);
         } finally {
+            invalidateCertRecord(serialNo);
             if (s != null)
                 s.close();
         }
@@ -1209,7 +1391,7 @@ public class CertificateRepository extends Repository
 
     public Enumeration<Object> searchCertificates(String filter, int maxSize,String sortAttribute)
             throws EBaseException {
-        IDBSSession s = mDBService.createSession();
+        IDBSSession s = mDBService.createReadSession();
         Enumeration<Object> e = null;
 
         logger.debug("searchCertificates filter " + filter + " maxSize " + maxSize);
@@ -1224,7 +1406,7 @@ public class CertificateRepository extends Repository
 
     public Enumeration<Object> searchCertificates(String filter, int maxSize)
             throws EBaseException {
-        IDBSSession s = mDBService.createSession();
+        IDBSSession s = mDBService.createReadSession();
         Enumeration<Object> e = null;
 
         logger.debug("searchCertificates filter " + filter + " maxSize " + maxSize);
@@ -1239,6 +1421,8 @@ public class CertificateRepository extends Repository
 
     public Enumeration<ICertRecord> searchCertificates(String filter, int maxSize, int timeLimit)
             throws EBaseException {
+        // selects the certificates to revoke, which must include
+        // certificates issued moments ago, so it reads from the primary
         IDBSSession s = mDBService.createSession();
         Vector<ICertRecord> v = new Vector<ICertRecord>();
 
@@ -1255,9 +1439,208 @@ public class CertificateRepository extends Repository
         return v.elements();
     }
 
+    /**
+     * The records are searched in windows of serial numbers starting
+     * after the last record processed. A window is widened while it
+     * holds fewer records than needed and narrowed when it holds too
+     * many, so each search only reads about a page of serial numbers,
+     * without a server-side sort or a scan of all the remaining records.
+     * The records of each window are read in small batches and passed
+     * to the processor before the next window is searched.
+     */
+    public void processCertificatesAfter(String filter, BigInteger after, int maxSize,
+            int timeLimit, IElementProcessor processor) throws EBaseException {
+
+        logger.debug("processCertificatesAfter filter " + filter + " after " + after + " maxSize " + maxSize);
+
+        if (maxSize <= 0) {
+            return;
+        }
+
+        long deadline = timeLimit > 0 ? System.currentTimeMillis() + timeLimit * 1000L : 0;
+
+        BigInteger low = after == null ? BigInteger.ZERO : after.add(BigInteger.ONE);
+        BigInteger width = BigInteger.valueOf(Math.min(maxSize, SERIAL_NUMBER_PAGE_SIZE));
+        int remaining = maxSize;
+
+        try (IDBSSession s = mDBService.createReadSession()) {
+
+            while (remaining > 0) {
+
+                int needed = Math.min(remaining, SERIAL_NUMBER_PAGE_SIZE);
+                BigInteger high = low.add(width).subtract(BigInteger.ONE);
+
+                // lowest serial numbers found in the window, highest first
+                PriorityQueue<BigInteger> selected = new PriorityQueue<BigInteger>(
+                        needed + 1, Collections.<BigInteger>reverseOrder());
+
+                int found = scanSerialNumbers(s, filter, low, high,
+                        needed, SERIAL_NUMBER_SCAN_FACTOR * needed, selected, deadline, timeLimit);
+
+                if (found < 0) {
+                    // too many records, narrow the window down to at most half
+                    // of its width, or to the part that is known to hold enough
+                    width = selected.peek().subtract(low).add(BigInteger.ONE)
+                            .min(width.shiftRight(1).max(BigInteger.ONE));
+                    continue;
+                }
+
+                List<BigInteger> serialNumbers = new ArrayList<BigInteger>(selected);
+                Collections.sort(serialNumbers);
+
+                logger.debug("processCertificatesAfter selected " + serialNumbers.size() +
+                        " records between " + low + " and " + high);
+
+                remaining -= processCertRecords(s, serialNumbers, processor, deadline, timeLimit);
+
+                if (found > needed) {
+                    // continue in the same window after the last record processed
+                    low = serialNumbers.get(serialNumbers.size() - 1).add(BigInteger.ONE);
+                    continue;
+                }
+
+                low = high.add(BigInteger.ONE);
+
+                if (found == needed) {
+                    continue;
+                }
+
+                // too few records, widen the window at least up to the next record
+                BigInteger next = findSerialNumber(s, filter, low);
+                if (next == null) {
+                    break;
+                }
+
+                width = width.shiftLeft(1).max(next.subtract(low).add(BigInteger.ONE));
+            }
+        }
+    }
+
+    /**
+     * Scans the serial numbers of the records in the given range and
+     * keeps the lowest of them in the selected queue.
+     *
+     * @return the number of records found, or -1 if there are more than the limit
+     */
+    private int scanSerialNumbers(IDBSSession s, String filter, BigInteger low, BigInteger high,
+            int maxSize, int limit, PriorityQueue<BigInteger> selected,
+            long deadline, int timeLimit) throws EBaseException {
+
+        String rangeFilter = "(&" + filter +
+                "(" + ICertRecord.ATTR_ID + ">=" + low + ")" +
+                "(" + ICertRecord.ATTR_ID + "<=" + high + "))";
+
+        int found = 0;
+
+        try (IDBPagedSearch<CertStatusRecord> search = s.createPagedSearch(
+                getDN(), rangeFilter, SERIAL_NUMBER_PAGE_SIZE, CertStatusRecord.PROJECTION)) {
+
+            while (search.hasNext()) {
+                CertStatusRecord record = search.next();
+                if (record == null) {
+                    continue;
+                }
+
+                if (++found > limit) {
+                    return -1;
+                }
+
+                BigInteger serialNumber = record.getSerialNumber();
+
+                if (selected.size() < maxSize) {
+                    selected.add(serialNumber);
+
+                } else if (serialNumber.compareTo(selected.peek()) < 0) {
+                    selected.poll();
+                    selected.add(serialNumber);
+                }
+
+                checkTimeLimit(deadline, timeLimit);
+            }
+        }
+
+        return found;
+    }
+
+    /**
+     * Returns the serial number of any record at or above
+     * the given serial number, or null if there is none.
+     */
+    private BigInteger findSerialNumber(IDBSSession s, String filter, BigInteger low)
+            throws EBaseException {
+
+        String rangeFilter = "(&" + filter + "(" + ICertRecord.ATTR_ID + ">=" + low + "))";
+
+        try (IDBPagedSearch<CertStatusRecord> search = s.createPagedSearch(
+                getDN(), rangeFilter, 1, CertStatusRecord.PROJECTION)) {
+
+            while (search.hasNext()) {
+                CertStatusRecord record = search.next();
+                if (record != null) {
+                    return record.getSerialNumber();
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Reads the records with the given serial numbers in small
+     * batches and passes them to the processor in the same order.
+     *
+     * @return the number of records processed
+     */
+    private int processCertRecords(IDBSSession s, List<BigInteger> serialNumbers,
+            IElementProcessor processor, long deadline, int timeLimit) throws EBaseException {
+
+        int processed = 0;
+
+        for (int i = 0; i < serialNumbers.size(); i += CERT_RECORD_BATCH_SIZE) {
+
+            List<BigInteger> batch = serialNumbers.subList(i,
+                    Math.min(i + CERT_RECORD_BATCH_SIZE, serialNumbers.size()));
+
+            StringBuilder sb = new StringBuilder("(|");
+            for (BigInteger serialNumber : batch) {
+                sb.append("(").append(ICertRecord.ATTR_ID).append("=").append(serialNumber).append(")");
+            }
+            sb.append(")");
+
+            Map<BigInteger, Object> records = new HashMap<BigInteger, Object>();
+
+            IDBSearchResults sr = s.search(getDN(), sb.toString(), batch.size());
+            while (sr.hasMoreElements()) {
+                Object o = sr.nextElement();
+                if (o != null) {
+                    records.put(((ICertRecord) o).getSerialNumber(), o);
+                }
+            }
+
+            for (BigInteger serialNumber : batch) {
+                // records removed since the scan are skipped
+                Object o = records.get(serialNumber);
+                if (o != null) {
+                    processor.process(o);
+                    processed++;
+                }
+            }
+
+            checkTimeLimit(deadline, timeLimit);
+        }
+
+        return processed;
+    }
+
+    private void checkTimeLimit(long deadline, int timeLimit) throws EDBException {
+        if (deadline > 0 && System.currentTimeMillis() > deadline) {
+            throw new EDBException("Time limit of " + timeLimit + " seconds exceeded");
+        }
+    }
+
     public Enumeration<ICertRecord> searchCertificates(String filter, int maxSize,
             int timeLimit,String sortAttribute) throws EBaseException {
-        IDBSSession s = mDBService.createSession();
+        IDBSSession s = mDBService.createReadSession();
         Vector<ICertRecord> v = new Vector<ICertRecord>();
 
         logger.debug("searchCertificateswith time limit filter " + filter);
@@ -1283,7 +1666,7 @@ public class CertificateRepository extends Repository
     public Enumeration<Object> findCertRecs(String filter)
             throws EBaseException {
         logger.debug("findCertRecs " + filter);
-        IDBSSession s = mDBService.createSession();
+        IDBSSession s = mDBService.createReadSession();
         Enumeration<Object> e = null;
         try {
             e = s.search(getDN(), filter);
@@ -1299,7 +1682,7 @@ public class CertificateRepository extends Repository
 
         logger.debug("findCertRecs " + filter
                  + "attrs " + Arrays.toString(attrs));
-        IDBSSession s = mDBService.createSession();
+        IDBSSession s = mDBService.createReadSession();
         Enumeration<Object> e = null;
         try {
             e = s.search(getDN(), filter, attrs);
@@ -1384,6 +1767,9 @@ public class CertificateRepository extends Repository
 
         logger.debug("CertificateRepository.findCertRecordsInList()");
 
+        // used by the subject and key uniqueness checks and to find the
+        // certificates to revoke, which must see certificates issued
+        // moments ago, so it reads from the primary
         IDBSSession session = mDBService.createSession();
 
         try {
@@ -1413,7 +1799,7 @@ public class CertificateRepository extends Repository
             String attrs[], String jumpTo, boolean hardJumpTo,
                          String sortKey, int pageSize)
             throws EBaseException {
-        IDBSSession s = mDBService.createSession();
+        IDBSSession s = mDBService.createReadSession();
         CertRecordList list = null;
 
         logger.debug("In findCertRecordsInList with Jumpto " + jumpTo);
@@ -1447,7 +1833,7 @@ public class CertificateRepository extends Repository
     public ICertRecordList findCertRecordsInListRawJumpto(String filter,
             String attrs[], String jumpTo, String sortKey, int pageSize)
             throws EBaseException {
-        IDBSSession s = mDBService.createSession();
+        IDBSSession s = mDBService.createReadSession();
         CertRecordList list = null;
 
         logger.debug("In findCertRecordsInListRawJumpto with Jumpto " + jumpTo);
@@ -1506,6 +1892,13 @@ public class CertificateRepository extends Repository
                     value);
             s.modify(name, mods);
         } finally {
+            if (mCertRecordCache != null) {
+                try {
+                    mCertRecordCache.invalidate(new BigInteger(serialno));
+                } catch (NumberFormatException e) {
+                    mCertRecordCache.invalidateAll();
+                }
+            }
             if (s != null)
                 s.close();
         }
@@ -2273,8 +2666,15 @@ public class CertificateRepository extends Repository
             try {
                 certRec = (ICertRecord) mDBService.getRegistry().createObject(entryAttrs);
             } catch (Exception e) {
+                logger.warn("getModifications  unable to parse " + entry.getDN() + ": " + e.getMessage(), e);
+                if (mCertRecordCache != null) {
+                    mCertRecordCache.invalidateAll();
+                }
             }
             if (certRec != null) {
+                // the record may have been modified by a clone
+                invalidateCertRecord(certRec.getSerialNumber());
+
                 String status = certRec.getStatus();
                 logger.debug("getModifications  serialNumber=" + certRec.getSerialNumber() +
                           "  status=" + status);
@@ -2372,6 +2772,12 @@ public class CertificateRepository extends Repository
         if (serialNumberUpdateTask != null) {
             serialNumberUpdateTask.stop();
         }
+
+        synchronized (this) {
+            if (mReserveExecutor != null) {
+                mReserveExecutor.shutdown();
+            }
+        }
     }
 }
 
@@ -2416,6 +2822,11 @@ class CertStatusUpdateTask implements Runnable {
         logger.debug("Starting updateCertStatus (entered lock)");
         repository.updateCertStatus();
         logger.debug("updateCertStatus done");
+
+        CertRecordCache cache = repository.getCertRecordCache();
+        if (cache != null) {
+            logger.info("CertStatusUpdateTask: " + cache);
+        }
     }
 
     public void stop() {
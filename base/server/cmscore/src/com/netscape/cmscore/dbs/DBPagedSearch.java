@@ -0,0 +1,252 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2019 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package com.netscape.cmscore.dbs;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import com.netscape.certsrv.base.EBaseException;
+import com.netscape.certsrv.dbs.EDBException;
+import com.netscape.certsrv.dbs.EDBNotAvailException;
+import com.netscape.certsrv.dbs.IDBPagedSearch;
+import com.netscape.certsrv.dbs.IDBProjection;
+import com.netscape.cmscore.apps.CMS;
+
+import netscape.ldap.LDAPConnection;
+import netscape.ldap.LDAPEntry;
+import netscape.ldap.LDAPException;
+import netscape.ldap.LDAPSearchConstraints;
+import netscape.ldap.LDAPSearchResults;
+import netscape.ldap.LDAPv2;
+
+/**
+ * A sequential scan of search results using the simple paged
+ * results control instead of server-side sorting and VLV.
+ * <p>
+ * While the caller processes a page, the next page is retrieved
+ * and mapped on a background thread. All pages are retrieved
+ * with the connection of the session that created the search,
+ * so the search has to be closed before the session.
+ */
+public class DBPagedSearch<T> implements IDBPagedSearch<T> {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(DBPagedSearch.class);
+
+    private static ExecutorService executorService = Executors.newCachedThreadPool(new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "DBPagedSearch");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private LDAPConnection mConn;
+    private String mBase;
+    private String mFilter;
+    private int mPageSize;
+    private IDBProjection<T> mProjection;
+
+    private Iterator<T> mEntries;
+    private Future<Page<T>> mNextPage;
+    private byte[] mCookie;
+    private boolean mClosed;
+
+    public DBPagedSearch(LDAPConnection conn, String base, String filter,
+            int pageSize, IDBProjection<T> projection) {
+        mConn = conn;
+        mBase = base;
+        mFilter = filter;
+        mPageSize = pageSize;
+        mProjection = projection;
+    }
+
+    public synchronized boolean hasNext() throws EBaseException {
+
+        if (mClosed) {
+            return false;
+        }
+
+        if (mEntries == null) {
+            // retrieve the first page in the caller's thread
+            setPage(fetch(null));
+        }
+
+        while (!mEntries.hasNext()) {
+
+            if (mNextPage == null) {
+                mClosed = true;
+                return false;
+            }
+
+            Future<Page<T>> nextPage = mNextPage;
+            mNextPage = null;
+            setPage(getPage(nextPage));
+        }
+
+        return true;
+    }
+
+    public synchronized T next() throws EBaseException {
+
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        return mEntries.next();
+    }
+
+    public synchronized void close() {
+
+        if (mClosed) {
+            return;
+        }
+
+        mClosed = true;
+
+        if (mNextPage != null) {
+            // the connection is still in use by the background thread
+            try {
+                mCookie = getPage(mNextPage).cookie;
+            } catch (EBaseException e) {
+                logger.warn("DBPagedSearch: " + e.getMessage(), e);
+                mCookie = null;
+            }
+            mNextPage = null;
+        }
+
+        if (mCookie == null) {
+            return;
+        }
+
+        // release the search on the server
+        logger.debug("DBPagedSearch: abandoning search " + mFilter);
+
+        try {
+            LDAPSearchConstraints cons = new LDAPSearchConstraints();
+            cons.setServerControls(new LDAPPagedResultsControl(0, mCookie));
+
+            LDAPSearchResults res = mConn.search(mBase,
+                    LDAPv2.SCOPE_ONE, mFilter, new String[] { "1.1" }, false, cons);
+            while (res.hasMoreElements()) {
+                res.next();
+            }
+
+        } catch (LDAPException e) {
+            logger.warn("DBPagedSearch: unable to abandon search: " + e.getMessage(), e);
+        }
+    }
+
+    private void setPage(Page<T> page) {
+
+        mEntries = page.entries.iterator();
+        mCookie = page.cookie;
+
+        if (mCookie == null) {
+            return;
+        }
+
+        // retrieve the next page while this one is being processed
+        final byte[] cookie = mCookie;
+        mNextPage = executorService.submit(new Callable<Page<T>>() {
+            public Page<T> call() throws Exception {
+                return fetch(cookie);
+            }
+        });
+    }
+
+    private Page<T> getPage(Future<Page<T>> future) throws EBaseException {
+
+        try {
+            return future.get();
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EDBException("Interrupted while retrieving search results", e);
+
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof EBaseException) {
+                throw (EBaseException) cause;
+            }
+            throw new EDBException("Unable to retrieve search results: " + cause.getMessage(), e);
+        }
+    }
+
+    private Page<T> fetch(byte[] cookie) throws EBaseException {
+
+        logger.debug("DBPagedSearch: retrieving " + (cookie == null ? "first" : "next") + " page of " + mFilter);
+
+        DBStatistics stats = DBStatistics.getInstance();
+        long start = stats.start();
+
+        try {
+            LDAPSearchConstraints cons = new LDAPSearchConstraints();
+            cons.setMaxResults(0);
+            cons.setServerControls(new LDAPPagedResultsControl(mPageSize, cookie));
+
+            LDAPSearchResults res = mConn.search(mBase,
+                    LDAPv2.SCOPE_ONE, mFilter, mProjection.getLDAPAttributes(), false, cons);
+
+            Page<T> page = new Page<T>();
+
+            while (res.hasMoreElements()) {
+
+                LDAPEntry entry = res.next();
+
+                try {
+                    T object = mProjection.map(entry.getAttributeSet());
+                    if (object != null) {
+                        page.entries.add(object);
+                    }
+                } catch (Exception e) {
+                    logger.warn("DBPagedSearch: unable to map " + entry.getDN() + ": " + e.getMessage(), e);
+                }
+            }
+
+            page.cookie = LDAPPagedResultsControl.getCookie(res.getResponseControls());
+
+            return page;
+
+        } catch (LDAPException e) {
+            if (e.getLDAPResultCode() == LDAPException.UNAVAILABLE)
+                throw new EDBNotAvailException(
+                        CMS.getUserMessage("CMS_DBS_INTERNAL_DIR_UNAVAILABLE"));
+            throw new EDBException("Unable to search LDAP record: " + e.getMessage(), e);
+
+        } catch (IOException e) {
+            throw new EDBException("Invalid paged results control: " + e.getMessage(), e);
+
+        } finally {
+            stats.record(DBStatistics.OP_PAGE, mBase, mFilter, start);
+        }
+    }
+
+    static class Page<T> {
+        List<T> entries = new ArrayList<T>();
+        byte[] cookie;
+    }
+}
@@ -0,0 +1,84 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2019 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package com.netscape.cmscore.dbs;
+
+import java.util.Enumeration;
+import java.util.NoSuchElementException;
+
+import com.netscape.certsrv.dbs.IDBProjection;
+
+import netscape.ldap.LDAPEntry;
+import netscape.ldap.LDAPException;
+
+/**
+ * Search results mapped by an IDBProjection. Entries are
+ * read and mapped one at a time as the caller iterates.
+ * Entries that cannot be mapped are logged and skipped.
+ */
+public class DBProjectedResults<T> implements Enumeration<T> {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(DBProjectedResults.class);
+
+    private Enumeration<Object> mRes;
+    private IDBProjection<T> mProjection;
+    private T mNext;
+
+    public DBProjectedResults(Enumeration<Object> res, IDBProjection<T> projection) {
+        mRes = res;
+        mProjection = projection;
+    }
+
+    public boolean hasMoreElements() {
+
+        while (mNext == null && mRes.hasMoreElements()) {
+
+            Object o = mRes.nextElement();
+
+            if (o instanceof LDAPException) {
+                // the last object in the search results is always LDAPException
+                continue;
+            }
+
+            if (!(o instanceof LDAPEntry)) {
+                logger.warn("DBProjectedResults: result format error class=" + o.getClass().getName());
+                continue;
+            }
+
+            LDAPEntry entry = (LDAPEntry) o;
+
+            try {
+                mNext = mProjection.map(entry.getAttributeSet());
+            } catch (Exception e) {
+                logger.warn("DBProjectedResults: unable to map " + entry.getDN() + ": " + e.getMessage(), e);
+            }
+        }
+
+        return mNext != null;
+    }
+
+    public T nextElement() {
+
+        if (!hasMoreElements()) {
+            throw new NoSuchElementException();
+        }
+
+        T next = mNext;
+        mNext = null;
+        return next;
+    }
+}
@@ -17,12 +17,21 @@
 // --- END COPYRIGHT BLOCK ---
 package com.netscape.cmscore.dbs;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -62,7 +71,8 @@ public class DBRegistry implements IDBRegistry, ISubsystem {
 
     private IConfigStore mConfig = null;
     private Hashtable<String, String[]> mOCclassNames = new Hashtable<String, String[]>();
-    private Hashtable<String, NameAndObject> mOCldapNames = new Hashtable<String, NameAndObject>();
+    // object class plans by fingerprint of their LDAP object classes
+    private Map<Long, ObjectClassPlan[]> mOCplans = new ConcurrentHashMap<Long, ObjectClassPlan[]>();
     private Hashtable<String, IDBAttrMapper> mAttrufNames = new Hashtable<String, IDBAttrMapper>();
     private IFilterConverter mConverter = null;
     private Vector<IDBDynAttrMapper> mDynAttrMappers = new Vector<IDBDynAttrMapper>();
@@ -118,7 +128,7 @@ public class DBRegistry implements IDBRegistry, ISubsystem {
      */
     public void shutdown() {
         mOCclassNames.clear();
-        mOCldapNames.clear();
+        mOCplans.clear();
         mAttrufNames.clear();
     }
 
@@ -131,9 +141,8 @@ public class DBRegistry implements IDBRegistry, ISubsystem {
             Class<?> c = Class.forName(className);
 
             mOCclassNames.put(className, ldapNames);
-            mOCldapNames.put(sortAndConcate(
-                    ldapNames).toLowerCase(),
-                    new NameAndObject(className, c));
+            addObjectClassPlan(new ObjectClassPlan(c, ldapNames, getConstructor(c)));
+
         } catch (ClassNotFoundException e) {
 
             /*LogDoc
@@ -147,6 +156,63 @@ public class DBRegistry implements IDBRegistry, ISubsystem {
         }
     }
 
+    /**
+     * Returns a handle to the no-argument constructor of a registered
+     * class so createObject() does not have to go through reflection,
+     * or null if the class cannot be instantiated that way.
+     */
+    private MethodHandle getConstructor(Class<?> c) {
+        try {
+            Constructor<?> constructor = c.getDeclaredConstructor();
+            constructor.setAccessible(true);
+
+            return MethodHandles.lookup().unreflectConstructor(constructor)
+                    .asType(MethodType.methodType(IDBObj.class));
+
+        } catch (Exception e) {
+            logger.warn("DBRegistry: No usable constructor in " + c.getName() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private synchronized void addObjectClassPlan(ObjectClassPlan plan) {
+        Long fingerprint = ObjectClassPlan.fingerprint(plan.getLdapNames());
+        ObjectClassPlan[] plans = mOCplans.get(fingerprint);
+
+        List<ObjectClassPlan> list = new ArrayList<ObjectClassPlan>();
+        if (plans != null) {
+            for (ObjectClassPlan p : plans) {
+                // re-registering a class replaces its plan
+                if (!p.getObjectClass().getName().equals(plan.getObjectClass().getName())) {
+                    list.add(p);
+                }
+            }
+        }
+        list.add(plan);
+
+        mOCplans.put(fingerprint, list.toArray(new ObjectClassPlan[list.size()]));
+    }
+
+    /**
+     * Finds the plan of the class registered with the given
+     * set of LDAP object classes (case-insensitive, in any order).
+     */
+    private ObjectClassPlan findObjectClassPlan(String ldapNames[]) {
+        ObjectClassPlan[] plans = mOCplans.get(ObjectClassPlan.fingerprint(ldapNames));
+
+        if (plans == null) {
+            return null;
+        }
+
+        for (ObjectClassPlan plan : plans) {
+            if (plan.matches(ldapNames)) {
+                return plan;
+            }
+        }
+
+        return null;
+    }
+
     /**
      * See if an object class is registered.
      */
@@ -162,6 +228,13 @@ public class DBRegistry implements IDBRegistry, ISubsystem {
         // should not allows 'objectclass' as attribute; it has
         // special meaning
         mAttrufNames.put(ufName.toLowerCase(), mapper);
+
+        // mappers are resolved again on the next read
+        for (ObjectClassPlan[] plans : mOCplans.values()) {
+            for (ObjectClassPlan plan : plans) {
+                plan.reset();
+            }
+        }
     }
 
     /**
@@ -483,32 +556,29 @@ public class DBRegistry implements IDBRegistry, ISubsystem {
 
         attrs.remove("objectclass");
 
-        // sort the object class values
-
         String[] s = attr.getStringValueArray();
-        String sorted = sortAndConcate(s).toLowerCase();
-        NameAndObject no = mOCldapNames.get(sorted);
+        ObjectClassPlan plan = findObjectClassPlan(s);
 
-        if (no == null) {
+        if (plan == null) {
             throw new EDBException(
-                    CMS.getUserMessage("CMS_DBS_INVALID_CLASS_NAME", sorted));
+                    CMS.getUserMessage("CMS_DBS_INVALID_CLASS_NAME", sortAndConcate(s)));
         }
-        Class<?> c = (Class<?>) no.getObject();
 
         try {
-            IDBObj obj = (IDBObj) c.newInstance();
-            Enumeration<String> ee = obj.getSerializableAttrNames();
+            IDBObj obj = plan.newInstance();
 
-            while (ee.hasMoreElements()) {
-                String oname = ee.nextElement();
-                IDBAttrMapper mapper = mAttrufNames.get(oname.toLowerCase());
+            String[] names = plan.getAttrNames();
+            IDBAttrMapper[] mappers = plan.getMappers();
 
-                if (mapper == null) {
-                    throw new EDBException(
-                            CMS.getUserMessage("CMS_DBS_NO_MAPPER_FOUND", oname));
-                }
-                mapper.mapLDAPAttributeSetToObject(attrs,
-                        oname, obj);
+            if (mappers == null) {
+                // first object of this class since the mappers were registered
+                names = getAttrNames(obj);
+                mappers = getMappers(names);
+                plan.setMappers(names, mappers);
+            }
+
+            for (int i = 0; i < mappers.length; i++) {
+                mappers[i].mapLDAPAttributeSetToObject(attrs, names[i], obj);
             }
             return obj;
         } catch (Exception e) {
@@ -524,48 +594,175 @@ public class DBRegistry implements IDBRegistry, ISubsystem {
         }
     }
 
+    private String[] getAttrNames(IDBObj obj) {
+        List<String> names = new ArrayList<String>();
+        Enumeration<String> e = obj.getSerializableAttrNames();
+
+        while (e.hasMoreElements()) {
+            names.add(e.nextElement());
+        }
+
+        return names.toArray(new String[names.size()]);
+    }
+
+    private IDBAttrMapper[] getMappers(String[] names) throws EDBException {
+        IDBAttrMapper[] mappers = new IDBAttrMapper[names.length];
+
+        for (int i = 0; i < names.length; i++) {
+            IDBAttrMapper mapper = mAttrufNames.get(names[i].toLowerCase());
+
+            if (mapper == null) {
+                throw new EDBException(
+                        CMS.getUserMessage("CMS_DBS_NO_MAPPER_FOUND", names[i]));
+            }
+            mappers[i] = mapper;
+        }
+
+        return mappers;
+    }
+
     /**
-     * Sorts and concate given strings.
+     * Sorts and concatenates the given object classes.
      */
     private String sortAndConcate(String s[]) {
-        Vector<String> v = new Vector<String>();
+        String[] sorted = new String[s.length];
 
-        // sort it first
         for (int i = 0; i < s.length; i++) {
-            for (int j = 0; j < v.size(); j++) {
-                String t = v.elementAt(j);
-
-                if (s[i].compareTo(t) < 0) {
-                    v.insertElementAt(s[i], j);
-                    break;
-                }
-            }
-            if (i != (v.size() - 1))
-                v.addElement(s[i]);
+            sorted[i] = s[i].toLowerCase();
         }
+        Arrays.sort(sorted);
 
-       return inStringFormat(v);
+        StringBuffer result = new StringBuffer();
+        for (String name : sorted) {
+            result.append(name);
+        }
+        return result.toString();
     }
 }
 
 /**
- * Just a convenient container class.
+ * The mapping plan of a registered object class: its LDAP object
+ * classes, a handle to its constructor and the mappers for its
+ * serializable attributes in order.
+ *
+ * The attribute names are taken from the first object created
+ * after the mappers are (re)registered; they are expected to be
+ * the same for every object of the class.
  */
-class NameAndObject {
+class ObjectClassPlan {
+
+    private Class<?> mClass;
+    private String[] mLdapNames;
+    private MethodHandle mConstructor;
+
+    private volatile Mapping mMapping;
 
-    private String mN = null;
-    private Object mO = null;
+    ObjectClassPlan(Class<?> c, String ldapNames[], MethodHandle constructor) {
+        mClass = c;
+        mConstructor = constructor;
+
+        mLdapNames = new String[ldapNames.length];
+        for (int i = 0; i < ldapNames.length; i++) {
+            mLdapNames[i] = ldapNames[i].toLowerCase();
+        }
+    }
 
-    public NameAndObject(String name, Object o) {
-        mN = name;
-        mO = o;
+    Class<?> getObjectClass() {
+        return mClass;
     }
 
-    public String getName() {
-        return mN;
+    String[] getLdapNames() {
+        return mLdapNames;
     }
 
-    public Object getObject() {
-        return mO;
+    IDBObj newInstance() throws EDBException {
+
+        if (mConstructor == null) {
+            throw new EDBException(CMS.getUserMessage("CMS_DBS_INVALID_CLASS_NAME", mClass.getName()));
+        }
+
+        try {
+            return (IDBObj) mConstructor.invokeExact();
+        } catch (Exception e) {
+            throw new EDBException(CMS.getUserMessage("CMS_DBS_INVALID_CLASS_NAME", mClass.getName()), e);
+        } catch (Throwable e) {
+            // errors are not wrapped
+            throw (Error) e;
+        }
+    }
+
+    String[] getAttrNames() {
+        Mapping mapping = mMapping;
+        return mapping == null ? null : mapping.names;
+    }
+
+    IDBAttrMapper[] getMappers() {
+        Mapping mapping = mMapping;
+        return mapping == null ? null : mapping.mappers;
+    }
+
+    void setMappers(String[] names, IDBAttrMapper[] mappers) {
+        mMapping = new Mapping(names, mappers);
+    }
+
+    void reset() {
+        mMapping = null;
+    }
+
+    /**
+     * Returns true if the given object classes are the object
+     * classes of this plan, ignoring case and order.
+     */
+    boolean matches(String ldapNames[]) {
+        if (ldapNames.length != mLdapNames.length) {
+            return false;
+        }
+
+        for (String name : ldapNames) {
+            boolean found = false;
+            for (String ldapName : mLdapNames) {
+                if (ldapName.equalsIgnoreCase(name)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Computes an order- and case-insensitive fingerprint of a set of
+     * object classes without sorting or allocating lower-cased copies.
+     */
+    static long fingerprint(String ldapNames[]) {
+        long sum = 0;
+
+        for (String name : ldapNames) {
+            int h = 0;
+            for (int i = 0; i < name.length(); i++) {
+                h = 31 * h + Character.toLowerCase(name.charAt(i));
+            }
+            // spread the bits so that sums of different sets rarely collide
+            long x = h * 0x9E3779B97F4A7C15L;
+            sum += x ^ (x >>> 32);
+        }
+
+        return sum * 31 + ldapNames.length;
+    }
+
+    // the names and mappers are replaced together
+    private static class Mapping {
+
+        String[] names;
+        IDBAttrMapper[] mappers;
+
+        Mapping(String[] names, IDBAttrMapper[] mappers) {
+            this.names = names;
+            this.mappers = mappers;
+        }
     }
 }
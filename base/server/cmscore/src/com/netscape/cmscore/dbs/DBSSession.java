@@ -25,6 +25,9 @@ import com.netscape.certsrv.dbs.EDBException;
 import com.netscape.certsrv.dbs.EDBNotAvailException;
 import com.netscape.certsrv.dbs.EDBRecordNotFoundException;
 import com.netscape.certsrv.dbs.IDBObj;
+import com.netscape.certsrv.dbs.IDBPagedSearch;
+import com.netscape.certsrv.dbs.IDBProjection;
+import com.netscape.certsrv.dbs.IDBRegistry;
 import com.netscape.certsrv.dbs.IDBSSession;
 import com.netscape.certsrv.dbs.IDBSearchResults;
 import com.netscape.certsrv.dbs.IDBSubsystem;
@@ -63,6 +66,7 @@ public class DBSSession implements IDBSSession {
 
     private IDBSubsystem mDBSystem = null;
     private LDAPConnection mConn = null;
+    private DBStatistics mStats = DBStatistics.getInstance();
 
     /**
      * Constructs a database session.
@@ -111,6 +115,8 @@ public class DBSSession implements IDBSSession {
 
         logger.debug("DBSSession: add(" + name + ")");
 
+        long start = mStats.start();
+
         try {
             LDAPAttributeSet attrs = mDBSystem.getRegistry(
                     ).createLDAPAttributeSet(obj);
@@ -127,6 +133,8 @@ public class DBSSession implements IDBSSession {
                 throw new EDBNotAvailException(
                         CMS.getUserMessage("CMS_DBS_INTERNAL_DIR_UNAVAILABLE"), e);
             throw new EDBException("Unable to create LDAP record: " + e.getMessage(), e);
+        } finally {
+            mStats.record(DBStatistics.OP_ADD, name, null, start);
         }
     }
 
@@ -152,6 +160,8 @@ public class DBSSession implements IDBSSession {
 
         logger.debug("DBSSession: read(" + name + ")");
 
+        long start = mStats.start();
+
         try {
             String ldapattrs[] = null;
 
@@ -187,6 +197,8 @@ public class DBSSession implements IDBSSession {
                 throw new EDBRecordNotFoundException(
                         CMS.getUserMessage("CMS_DBS_RECORD_NOT_FOUND"));
             throw new EDBException("Unable to read LDAP record: " + e.getMessage(), e);
+        } finally {
+            mStats.record(DBStatistics.OP_READ, name, null, start);
         }
     }
 
@@ -197,6 +209,8 @@ public class DBSSession implements IDBSSession {
 
         logger.debug("DBSSession: delete(" + name + ")");
 
+        long start = mStats.start();
+
         try {
             mConn.delete(name);
         } catch (LDAPException e) {
@@ -204,6 +218,8 @@ public class DBSSession implements IDBSSession {
                 throw new EDBNotAvailException(
                         CMS.getUserMessage("CMS_DBS_INTERNAL_DIR_UNAVAILABLE"));
             throw new EDBException("Unable to delete LDAP record: " + e.getMessage(), e);
+        } finally {
+            mStats.record(DBStatistics.OP_DELETE, name, null, start);
         }
     }
 
@@ -215,6 +231,8 @@ public class DBSSession implements IDBSSession {
 
         logger.debug("DBSSession: modify(" + name + ")");
 
+        long start = mStats.start();
+
         try {
             LDAPModificationSet ldapMods = new
                     LDAPModificationSet();
@@ -250,6 +268,8 @@ public class DBSSession implements IDBSSession {
                 throw new EDBRecordNotFoundException(
                         CMS.getUserMessage("CMS_DBS_RECORD_NOT_FOUND"));
             throw new EDBException("Unable to modify LDAP record: " + e.getMessage(), e);
+        } finally {
+            mStats.record(DBStatistics.OP_MODIFY, name, null, start);
         }
     }
 
@@ -283,6 +303,8 @@ public class DBSSession implements IDBSSession {
 
         logger.debug("DBSSession: search(" + base+ ", " + filter + ")");
 
+        long start = mStats.start();
+
         try {
             String ldapattrs[] = null;
             String ldapfilter =
@@ -304,6 +326,8 @@ public class DBSSession implements IDBSSession {
             // XXX error handling, should not raise exception if
             // entry not found
             throw new EDBException("Unable to search LDAP record: " + e.getMessage(), e);
+        } finally {
+            mStats.record(DBStatistics.OP_SEARCH, base, filter, start);
         }
     }
 
@@ -313,6 +337,8 @@ public class DBSSession implements IDBSSession {
 
         logger.debug("DBSSession: search(" + base + ", " + filter + ")");
 
+        long start = mStats.start();
+
         try {
             String ldapattrs[] = null;
             String ldapfilter =
@@ -340,6 +366,8 @@ public class DBSSession implements IDBSSession {
             // XXX error handling, should not raise exception if
             // entry not found
             throw new EDBException("Unable to search LDAP record: " + e.getMessage(), e);
+        } finally {
+            mStats.record(DBStatistics.OP_SEARCH, base, filter, start);
         }
     }
 
@@ -349,6 +377,8 @@ public class DBSSession implements IDBSSession {
 
         logger.debug("DBSSession: search(" + base + ", " + filter + ")");
 
+        long start = mStats.start();
+
         try {
             String ldapattrs[] = null;
             String ldapfilter =
@@ -371,6 +401,8 @@ public class DBSSession implements IDBSSession {
             // XXX error handling, should not raise exception if
             // entry not found
             throw new EDBException("Unable to search LDAP record: " + e.getMessage(), e);
+        } finally {
+            mStats.record(DBStatistics.OP_SEARCH, base, filter, start);
         }
     }
 
@@ -380,6 +412,8 @@ public class DBSSession implements IDBSSession {
 
         logger.debug("DBSSession: search(" + base + ", " + filter + ")");
 
+        long start = mStats.start();
+
         try {
             String ldapattrs[] = null;
             String ldapfilter =
@@ -408,6 +442,8 @@ public class DBSSession implements IDBSSession {
             // XXX error handling, should not raise exception if
             // entry not found
             throw new EDBException("Unable to search LDAP record: " + e.getMessage(), e);
+        } finally {
+            mStats.record(DBStatistics.OP_SEARCH, base, filter, start);
         }
 
     }
@@ -422,6 +458,8 @@ public class DBSSession implements IDBSSession {
 
         logger.debug("DBSSession: search(" + base + ", " + filter + ")");
 
+        long start = mStats.start();
+
         try {
             String ldapattrs[] = null;
 
@@ -453,9 +491,70 @@ public class DBSSession implements IDBSSession {
             // XXX error handling, should not raise exception if
             // entry not found
             throw new EDBException("Unable to search LDAP record: " + e.getMessage(), e);
+        } finally {
+            mStats.record(DBStatistics.OP_SEARCH, base, filter, start);
+        }
+    }
+
+    public <T> Enumeration<T> search(String base, String filter, int maxSize,
+            IDBProjection<T> projection) throws EBaseException {
+
+        logger.debug("DBSSession: search(" + base + ", " + filter + ", " + maxSize + ") with projection");
+
+        long start = mStats.start();
+
+        try {
+            String ldapfilter =
+                    mDBSystem.getRegistry().getFilter(filter);
+
+            LDAPSearchConstraints cons = new LDAPSearchConstraints();
+
+            cons.setMaxResults(maxSize);
+
+            LDAPSearchResults res = mConn.search(base,
+                    LDAPv2.SCOPE_ONE, ldapfilter, projection.getLDAPAttributes(), false, cons);
+
+            return new DBProjectedResults<T>(res, projection);
+
+        } catch (LDAPException e) {
+            if (e.getLDAPResultCode() == LDAPException.UNAVAILABLE)
+                throw new EDBNotAvailException(
+                        CMS.getUserMessage("CMS_DBS_INTERNAL_DIR_UNAVAILABLE"));
+            throw new EDBException("Unable to search LDAP record: " + e.getMessage(), e);
+        } finally {
+            mStats.record(DBStatistics.OP_SEARCH, base, filter, start);
         }
     }
 
+    public <T> IDBPagedSearch<T> createPagedSearch(String base, String filter,
+            String attrs[], int pageSize) throws EBaseException {
+
+        final IDBRegistry registry = mDBSystem.getRegistry();
+        final String ldapattrs[] = attrs == null ? null : registry.getLDAPAttributes(attrs);
+
+        return createPagedSearch(base, filter, pageSize, new IDBProjection<T>() {
+
+            public String[] getLDAPAttributes() {
+                return ldapattrs;
+            }
+
+            @SuppressWarnings("unchecked")
+            public T map(LDAPAttributeSet attrs) throws EBaseException {
+                return (T) registry.createObject(attrs);
+            }
+        });
+    }
+
+    public <T> IDBPagedSearch<T> createPagedSearch(String base, String filter,
+            int pageSize, IDBProjection<T> projection) throws EBaseException {
+
+        logger.debug("DBSSession: createPagedSearch(" + base + ", " + filter + ", " + pageSize + ")");
+
+        String ldapfilter = mDBSystem.getRegistry().getFilter(filter);
+
+        return new DBPagedSearch<T>(mConn, base, ldapfilter, pageSize, projection);
+    }
+
     public LDAPSearchResults persistentSearch(String base, String filter, String attrs[])
             throws EBaseException {
 
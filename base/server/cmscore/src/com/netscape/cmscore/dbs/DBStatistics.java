@@ -0,0 +1,492 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2019 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package com.netscape.cmscore.dbs;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The DBStatistics class records the latency of the LDAP
+ * operations performed by DBSSession, and the time spent
+ * waiting for a connection from the internal database pool.
+ * <p>
+ * Each operation is counted in a latency histogram keyed by
+ * the operation type and the repository the target DN belongs
+ * to (e.g. search:certs). Operations slower than the slow
+ * operation threshold are also kept, with their DN and filter,
+ * in a fixed-size ring buffer that overwrites the oldest entry.
+ * <p>
+ * Recording is lock-free. When the statistics are disabled
+ * start() does not read the clock and record() returns
+ * immediately, so the instrumentation can stay in place.
+ * <p>
+ * For searches the recorded latency is the time until the
+ * search call returns, which includes the first batch of
+ * results but not the iteration over the remaining ones.
+ */
+public class DBStatistics implements DBStatisticsMBean {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(DBStatistics.class);
+
+    public final static String OBJECT_NAME = "com.netscape.cmscore.dbs:type=DBStatistics";
+
+    public final static String PROP_ENABLE = "enable";
+    public final static String PROP_SLOW_THRESHOLD = "slowThreshold";
+    public final static String PROP_SLOW_LOG_SIZE = "slowLogSize";
+
+    public final static int DEFAULT_SLOW_THRESHOLD = 100; // milliseconds
+    public final static int DEFAULT_SLOW_LOG_SIZE = 100;
+
+    public final static String OP_ADD = "add";
+    public final static String OP_READ = "read";
+    public final static String OP_MODIFY = "modify";
+    public final static String OP_DELETE = "delete";
+    public final static String OP_SEARCH = "search";
+    public final static String OP_VLV = "vlv";
+    public final static String OP_PAGE = "page";
+    public final static String OP_GET_CONN = "getConn";
+
+    public final static String CATEGORY_CERTS = "certs";
+    public final static String CATEGORY_REQUESTS = "requests";
+    public final static String CATEGORY_CRLS = "crls";
+    public final static String CATEGORY_KEYS = "keys";
+    public final static String CATEGORY_RANGES = "ranges";
+    public final static String CATEGORY_POOL = "pool";
+    public final static String CATEGORY_OTHER = "other";
+
+    /**
+     * Upper bounds of the histogram buckets in milliseconds.
+     * The last bucket counts everything above the last bound.
+     */
+    public final static long[] BUCKETS = {
+            1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000
+    };
+
+    private static DBStatistics instance = new DBStatistics();
+
+    public static DBStatistics getInstance() {
+        return instance;
+    }
+
+    private volatile boolean enabled;
+    private volatile long slowThreshold = TimeUnit.MILLISECONDS.toNanos(DEFAULT_SLOW_THRESHOLD);
+
+    private ConcurrentHashMap<String, Histogram> histograms = new ConcurrentHashMap<String, Histogram>();
+
+    private volatile AtomicReferenceArray<SlowOperation> slowOperations =
+            new AtomicReferenceArray<SlowOperation>(DEFAULT_SLOW_LOG_SIZE);
+    private AtomicLong slowOperationCount = new AtomicLong();
+
+    private volatile long startTime = System.currentTimeMillis();
+
+    DBStatistics() {
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        logger.info("DBStatistics: " + (enabled ? "enabling" : "disabling") + " LDAP operation statistics");
+        this.enabled = enabled;
+    }
+
+    public long getSlowThreshold() {
+        return TimeUnit.NANOSECONDS.toMillis(slowThreshold);
+    }
+
+    public void setSlowThreshold(long millis) {
+        slowThreshold = TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    public int getSlowLogSize() {
+        return slowOperations.length();
+    }
+
+    public synchronized void setSlowLogSize(int size) {
+        if (size <= 0 || size == slowOperations.length()) {
+            return;
+        }
+        slowOperations = new AtomicReferenceArray<SlowOperation>(size);
+        slowOperationCount.set(0);
+    }
+
+    public Date getStartTime() {
+        return new Date(startTime);
+    }
+
+    /**
+     * Returns the start time of an operation,
+     * or 0 if the statistics are disabled.
+     */
+    public long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records an operation that started at the time returned by start().
+     *
+     * @param op operation type
+     * @param dn target DN or search base
+     * @param filter search filter, or null
+     * @param start value returned by start()
+     */
+    public void record(String op, String dn, String filter, long start) {
+
+        if (start == 0 || !enabled) {
+            return;
+        }
+
+        record(op, getCategory(dn), dn, filter, start);
+    }
+
+    /**
+     * Records an operation under an explicit category.
+     */
+    public void record(String op, String category, String dn, String filter, long start) {
+
+        if (start == 0 || !enabled) {
+            return;
+        }
+
+        long duration = System.nanoTime() - start;
+
+        getHistogram(op, category).add(duration);
+
+        if (duration >= slowThreshold) {
+            AtomicReferenceArray<SlowOperation> buffer = slowOperations;
+            int index = (int) (slowOperationCount.getAndIncrement() % buffer.length());
+            buffer.set(index, new SlowOperation(
+                    System.currentTimeMillis(), op, category, dn, filter, duration));
+        }
+    }
+
+    Histogram getHistogram(String op, String category) {
+
+        String key = op + ":" + category;
+        Histogram histogram = histograms.get(key);
+
+        if (histogram == null) {
+            histogram = new Histogram(op, category);
+            Histogram current = histograms.putIfAbsent(key, histogram);
+            if (current != null) {
+                histogram = current;
+            }
+        }
+
+        return histogram;
+    }
+
+    /**
+     * Maps a DN to the repository it belongs to.
+     */
+    public static String getCategory(String dn) {
+
+        if (dn == null) {
+            return CATEGORY_OTHER;
+        }
+
+        String s = dn.toLowerCase();
+
+        if (s.contains("ou=certificaterepository")) {
+            return CATEGORY_CERTS;
+        }
+        if (s.contains("ou=requests")) {
+            return CATEGORY_REQUESTS;
+        }
+        if (s.contains("ou=crlissuingpoints")) {
+            return CATEGORY_CRLS;
+        }
+        if (s.contains("ou=keyrepository")) {
+            return CATEGORY_KEYS;
+        }
+        if (s.contains("ou=ranges") || s.contains("ou=replica")) {
+            return CATEGORY_RANGES;
+        }
+
+        return CATEGORY_OTHER;
+    }
+
+    /**
+     * Returns the histograms sorted by operation and category.
+     */
+    public List<Histogram> getHistograms() {
+
+        List<Histogram> list = new ArrayList<Histogram>(histograms.values());
+
+        Collections.sort(list, new Comparator<Histogram>() {
+            public int compare(Histogram h1, Histogram h2) {
+                return h1.getName().compareTo(h2.getName());
+            }
+        });
+
+        return list;
+    }
+
+    /**
+     * Returns the recorded slow operations, slowest first.
+     */
+    public List<SlowOperation> getSlowOperationList() {
+
+        AtomicReferenceArray<SlowOperation> buffer = slowOperations;
+        List<SlowOperation> list = new ArrayList<SlowOperation>();
+
+        for (int i = 0; i < buffer.length(); i++) {
+            SlowOperation op = buffer.get(i);
+            if (op != null) {
+                list.add(op);
+            }
+        }
+
+        Collections.sort(list, new Comparator<SlowOperation>() {
+            public int compare(SlowOperation op1, SlowOperation op2) {
+                return Long.compare(op2.getDuration(), op1.getDuration());
+            }
+        });
+
+        return list;
+    }
+
+    public synchronized void reset() {
+
+        logger.info("DBStatistics: resetting LDAP operation statistics");
+
+        histograms.clear();
+
+        slowOperations = new AtomicReferenceArray<SlowOperation>(slowOperations.length());
+        slowOperationCount.set(0);
+
+        startTime = System.currentTimeMillis();
+    }
+
+    public String[] getOperations() {
+
+        List<Histogram> list = getHistograms();
+        String[] result = new String[list.size()];
+
+        for (int i = 0; i < result.length; i++) {
+            result[i] = list.get(i).toString();
+        }
+
+        return result;
+    }
+
+    public String[] getSlowOperations() {
+
+        List<SlowOperation> list = getSlowOperationList();
+        String[] result = new String[list.size()];
+
+        for (int i = 0; i < result.length; i++) {
+            result[i] = list.get(i).toString();
+        }
+
+        return result;
+    }
+
+    /**
+     * Latency histogram of a single operation type and category.
+     */
+    public static class Histogram {
+
+        private String op;
+        private String category;
+
+        private LongAdder count = new LongAdder();
+        private LongAdder totalTime = new LongAdder();
+        private AtomicLong maxTime = new AtomicLong();
+        private AtomicLongArray buckets = new AtomicLongArray(BUCKETS.length + 1);
+
+        Histogram(String op, String category) {
+            this.op = op;
+            this.category = category;
+        }
+
+        void add(long duration) {
+
+            count.increment();
+            totalTime.add(duration);
+
+            long max = maxTime.get();
+            while (duration > max && !maxTime.compareAndSet(max, duration)) {
+                max = maxTime.get();
+            }
+
+            long millis = TimeUnit.NANOSECONDS.toMillis(duration);
+            int i = 0;
+            while (i < BUCKETS.length && millis >= BUCKETS[i]) {
+                i++;
+            }
+            buckets.incrementAndGet(i);
+        }
+
+        public String getName() {
+            return op + ":" + category;
+        }
+
+        public String getOperation() {
+            return op;
+        }
+
+        public String getCategory() {
+            return category;
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        /**
+         * Returns the total time in microseconds.
+         */
+        public long getTotalTime() {
+            return TimeUnit.NANOSECONDS.toMicros(totalTime.sum());
+        }
+
+        /**
+         * Returns the maximum time in microseconds.
+         */
+        public long getMaxTime() {
+            return TimeUnit.NANOSECONDS.toMicros(maxTime.get());
+        }
+
+        /**
+         * Returns the average time in microseconds.
+         */
+        public long getAverageTime() {
+            long n = count.sum();
+            return n == 0 ? 0 : getTotalTime() / n;
+        }
+
+        /**
+         * Returns the number of operations in each bucket. Bucket i
+         * counts the operations that took less than BUCKETS[i] ms
+         * and not less than the previous bound.
+         */
+        public long[] getBuckets() {
+            long[] result = new long[buckets.length()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = buckets.get(i);
+            }
+            return result;
+        }
+
+        /**
+         * Returns the smallest bucket bound in milliseconds below
+         * which the given percentage of the operations completed,
+         * or -1 if they fall into the overflow bucket.
+         */
+        public long getPercentile(double percentage) {
+
+            long[] counts = getBuckets();
+            long total = 0;
+            for (long n : counts) {
+                total += n;
+            }
+
+            if (total == 0) {
+                return 0;
+            }
+
+            long threshold = (long) Math.ceil(total * percentage / 100);
+            long sum = 0;
+
+            for (int i = 0; i < BUCKETS.length; i++) {
+                sum += counts[i];
+                if (sum >= threshold) {
+                    return BUCKETS[i];
+                }
+            }
+
+            return -1;
+        }
+
+        public String toString() {
+            return getName()
+                    + " count=" + getCount()
+                    + " avg=" + getAverageTime() + "us"
+                    + " max=" + getMaxTime() + "us"
+                    + " p50<" + getPercentile(50) + "ms"
+                    + " p99<" + getPercentile(99) + "ms";
+        }
+    }
+
+    /**
+     * An operation that took longer than the slow operation threshold.
+     */
+    public static class SlowOperation {
+
+        private long time;
+        private String op;
+        private String category;
+        private String dn;
+        private String filter;
+        private long duration;
+
+        SlowOperation(long time, String op, String category, String dn, String filter, long duration) {
+            this.time = time;
+            this.op = op;
+            this.category = category;
+            this.dn = dn;
+            this.filter = filter;
+            this.duration = duration;
+        }
+
+        public Date getTime() {
+            return new Date(time);
+        }
+
+        public String getOperation() {
+            return op;
+        }
+
+        public String getCategory() {
+            return category;
+        }
+
+        public String getDN() {
+            return dn;
+        }
+
+        public String getFilter() {
+            return filter;
+        }
+
+        /**
+         * Returns the duration in microseconds.
+         */
+        public long getDuration() {
+            return TimeUnit.NANOSECONDS.toMicros(duration);
+        }
+
+        public String toString() {
+            return getTime() + " " + op + ":" + category
+                    + " " + getDuration() + "us"
+                    + " dn=" + dn
+                    + (filter == null ? "" : " filter=" + filter);
+        }
+    }
+}
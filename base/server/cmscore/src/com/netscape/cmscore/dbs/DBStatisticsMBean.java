@@ -0,0 +1,51 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2019 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package com.netscape.cmscore.dbs;
+
+/**
+ * Management interface of the LDAP operation statistics.
+ *
+ * @see DBStatistics
+ */
+public interface DBStatisticsMBean {
+
+    public boolean isEnabled();
+
+    public void setEnabled(boolean enabled);
+
+    /**
+     * Returns the slow operation threshold in milliseconds.
+     */
+    public long getSlowThreshold();
+
+    public void setSlowThreshold(long millis);
+
+    public int getSlowLogSize();
+
+    /**
+     * Returns a summary of each latency histogram.
+     */
+    public String[] getOperations();
+
+    /**
+     * Returns the recorded slow operations, slowest first.
+     */
+    public String[] getSlowOperations();
+
+    public void reset();
+}
@@ -17,9 +17,13 @@
 // --- END COPYRIGHT BLOCK ---
 package com.netscape.cmscore.dbs;
 
+import java.lang.management.ManagementFactory;
 import java.math.BigInteger;
 import java.util.Hashtable;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
 import org.mozilla.jss.netscape.security.x509.CertificateValidity;
 
 import com.netscape.certsrv.base.EBaseException;
@@ -125,6 +129,7 @@ public class DBSubsystem implements IDBSubsystem {
     private static final String PROP_LDAP = "ldap";
     private static final String PROP_NEXT_RANGE = "nextRange";
     private static final String PROP_ENABLE_SERIAL_MGMT = "enableSerialManagement";
+    private static final String PROP_STATISTICS = "statistics";
 
     // hash keys
     private static final String NAME = "name";
@@ -541,6 +546,8 @@ public class DBSubsystem implements IDBSubsystem {
 
             mOwner = owner;
 
+            initStatistics();
+
             mNextSerialConfig = new BigInteger(mDBConfig.getString(
                     PROP_NEXT_SERIAL_NUMBER, "0"), 16);
 
@@ -821,6 +828,32 @@ public class DBSubsystem implements IDBSubsystem {
         }
     }
 
+    /**
+     * Configures the LDAP operation statistics and
+     * registers them with the platform MBean server.
+     */
+    private void initStatistics() throws EBaseException {
+
+        IConfigStore statsConfig = mDBConfig.getSubStore(PROP_STATISTICS);
+        DBStatistics stats = DBStatistics.getInstance();
+
+        stats.setSlowThreshold(statsConfig.getInteger(
+                DBStatistics.PROP_SLOW_THRESHOLD, DBStatistics.DEFAULT_SLOW_THRESHOLD));
+        stats.setSlowLogSize(statsConfig.getInteger(
+                DBStatistics.PROP_SLOW_LOG_SIZE, DBStatistics.DEFAULT_SLOW_LOG_SIZE));
+        stats.setEnabled(statsConfig.getBoolean(DBStatistics.PROP_ENABLE, false));
+
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(DBStatistics.OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(stats, name);
+            }
+        } catch (Exception e) {
+            logger.warn("DBSubsystem: unable to register LDAP statistics MBean: " + e.getMessage(), e);
+        }
+    }
+
     public String getEntryAttribute(String dn, String attrName,
                                     String defaultValue, String errorValue) {
         LDAPConnection conn = null;
@@ -925,6 +958,16 @@ public class DBSubsystem implements IDBSubsystem {
         }
         if (mRegistry != null)
             mRegistry.shutdown();
+
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(DBStatistics.OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (Exception e) {
+            logger.warn("DBSubsystem: unable to unregister LDAP statistics MBean: " + e.getMessage(), e);
+        }
     }
 
     /**
@@ -941,7 +984,10 @@ public class DBSubsystem implements IDBSubsystem {
         LDAPConnection conn = null;
 
         try {
+            DBStatistics stats = DBStatistics.getInstance();
+            long start = stats.start();
             conn = mLdapConnFactory.getConn();
+            stats.record(DBStatistics.OP_GET_CONN, DBStatistics.CATEGORY_POOL, mBaseDN, null, start);
 
             String schemaAdded = mDBConfig.getString("newSchemaEntryAdded", "");
 
@@ -1000,6 +1046,32 @@ public class DBSubsystem implements IDBSubsystem {
         return new DBSSession(this, conn);
     }
 
+    /**
+     * Creates a database session on a read replica if configured
+     * in internaldb.ldapconn.readReplicas, otherwise on the primary.
+     */
+    public IDBSSession createReadSession() throws EDBException {
+        LDAPConnection conn = null;
+
+        try {
+            DBStatistics stats = DBStatistics.getInstance();
+            long start = stats.start();
+            conn = mLdapConnFactory.getReadConn();
+            stats.record(DBStatistics.OP_GET_CONN, DBStatistics.CATEGORY_POOL, mBaseDN, null, start);
+
+        } catch (ELdapException e) {
+            if (e instanceof ELdapServerDownException) {
+                throw new EDBNotAvailException(
+                        CMS.getUserMessage("CMS_DBS_INTERNAL_DIR_UNAVAILABLE"));
+            }
+            logger.error("DBSubsystem: "+ CMS.getLogMessage("CMSCORE_DBS_CONN_ERROR", e.toString()), e);
+            throw new EDBException(
+                    CMS.getUserMessage("CMS_DBS_CONNECT_LDAP_FAILED", e.toString()));
+        }
+
+        return new DBSSession(this, conn);
+    }
+
     public void returnConn(LDAPConnection conn) {
         mLdapConnFactory.returnConn(conn);
     }
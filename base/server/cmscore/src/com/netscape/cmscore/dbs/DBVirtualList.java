@@ -431,6 +431,10 @@ public class DBVirtualList<E> implements IDBVirtualList<E> {
         }
         // Empty the buffer
         mEntries.removeAllElements();
+
+        DBStatistics stats = DBStatistics.getInstance();
+        long start = stats.start();
+
         // Do a search
         try {
             //what happen if there is no matching?
@@ -513,6 +517,9 @@ public class DBVirtualList<E> implements IDBVirtualList<E> {
             logger.error(message, e);
 
             mLogger.log(ILogger.EV_SYSTEM, ILogger.S_DB, ILogger.LL_FAILURE, message);
+
+        } finally {
+            stats.record(DBStatistics.OP_VLV, mBase, mFilter, start);
         }
         //System.out.println( "Returning " + mEntries.size() +
         //       " entries" );
@@ -0,0 +1,91 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2019 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package com.netscape.cmscore.dbs;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import netscape.ldap.LDAPControl;
+import netscape.ldap.ber.stream.BERElement;
+import netscape.ldap.ber.stream.BERInteger;
+import netscape.ldap.ber.stream.BEROctetString;
+import netscape.ldap.ber.stream.BERSequence;
+import netscape.ldap.client.JDAPBERTagDecoder;
+
+/**
+ * Simple paged results control (RFC 2696).
+ *
+ * <pre>
+ * realSearchControlValue ::= SEQUENCE {
+ *     size            INTEGER (0..maxInt),
+ *     cookie          OCTET STRING
+ * }
+ * </pre>
+ */
+public class LDAPPagedResultsControl extends LDAPControl {
+
+    private static final long serialVersionUID = 1L;
+
+    public final static String OID = "1.2.840.113556.1.4.319";
+
+    /**
+     * Requests the next page of the given size.
+     *
+     * @param pageSize page size, or 0 to release the search
+     * @param cookie cookie returned with the previous page,
+     *        or null for the first page
+     */
+    public LDAPPagedResultsControl(int pageSize, byte[] cookie) {
+        super(OID, false, null);
+
+        BERSequence seq = new BERSequence();
+        seq.addElement(new BERInteger(pageSize));
+        seq.addElement(new BEROctetString(cookie == null ? new byte[0] : cookie));
+
+        m_value = flattenBER(seq);
+    }
+
+    /**
+     * Returns the cookie from the paged results control
+     * in the given response controls.
+     *
+     * @return cookie, or null if this was the last page
+     */
+    public static byte[] getCookie(LDAPControl[] controls) throws IOException {
+
+        if (controls == null) {
+            return null;
+        }
+
+        for (LDAPControl control : controls) {
+
+            if (!OID.equals(control.getID())) {
+                continue;
+            }
+
+            ByteArrayInputStream in = new ByteArrayInputStream(control.getValue());
+            int[] read = new int[1];
+            BERSequence seq = (BERSequence) BERElement.getElement(new JDAPBERTagDecoder(), in, read);
+            byte[] cookie = ((BEROctetString) seq.elementAt(1)).getValue();
+
+            return cookie == null || cookie.length == 0 ? null : cookie;
+        }
+
+        return null;
+    }
+}
@@ -63,7 +63,7 @@ public abstract class Repository implements IRepository {
     private String mNextMaxSerial = null;
     private String mNextMinSerial = null;
 
-    protected boolean mEnableRandomSerialNumbers = false;
+    protected volatile boolean mEnableRandomSerialNumbers = false;
     protected BigInteger mCounter = null;
     protected BigInteger mMinSerialNo = null;
     protected BigInteger mMaxSerialNo = null;
@@ -422,6 +422,37 @@ public abstract class Repository implements IRepository {
         return mLastSerialNo;
     }
 
+    /**
+     * Reserves a block of consecutive serial numbers, switching to
+     * the next range if the current range has been used up. The block
+     * is shorter than requested if the current range ends before.
+     *
+     * @param count maximum number of serial numbers to reserve
+     * @return the first and the last reserved serial number
+     */
+    protected synchronized BigInteger[] reserveSerialNumbers(int count) throws EBaseException {
+
+        if (mLastSerialNo == null) {
+            initCache();
+        }
+
+        mLastSerialNo = mLastSerialNo.add(BigInteger.ONE);
+
+        checkRange();
+
+        BigInteger first = mLastSerialNo;
+        BigInteger last = first.add(BigInteger.valueOf(count - 1));
+
+        if (mMaxSerialNo != null && last.compareTo(mMaxSerialNo) > 0) {
+            last = mMaxSerialNo;
+        }
+
+        mLastSerialNo = last;
+
+        logger.debug("Repository: reserveSerialNumbers: reserved " + first + ".." + last);
+        return new BigInteger[] { first, last };
+    }
+
     /**
      * Checks if the given number is in the current range.
      * If it does not exceed the current range, return cleanly.
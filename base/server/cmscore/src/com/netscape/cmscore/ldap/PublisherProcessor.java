@@ -52,6 +52,7 @@ import com.netscape.certsrv.publish.MapperProxy;
 import com.netscape.certsrv.publish.PublisherPlugin;
 import com.netscape.certsrv.publish.PublisherProxy;
 import com.netscape.certsrv.publish.RulePlugin;
+import com.netscape.certsrv.request.ARequestNotifier;
 import com.netscape.certsrv.request.IRequest;
 import com.netscape.certsrv.request.IRequestNotifier;
 import com.netscape.cms.logging.Logger;
@@ -411,16 +412,23 @@ public class PublisherProcessor implements
                 int maxNumberOfPublishingThreads = queueConfig.getInteger("maxNumberOfThreads", 1);
                 int publishingQueuePageSize = queueConfig.getInteger("pageSize", 100);
                 int savePublishingStatus = queueConfig.getInteger("saveStatus", 0);
+                int publishingQueueCapacity = queueConfig.getInteger("capacity", ARequestNotifier.DEFAULT_CAPACITY);
+                int checkpointInterval = queueConfig.getInteger("checkpointInterval",
+                        ARequestNotifier.DEFAULT_CHECKPOINT_INTERVAL);
                 logger.debug("PublisherProcessor: startup: Publishing Queue Enabled: " + isPublishingQueueEnabled +
                           "  Priority Level: " + publishingQueuePriorityLevel +
                           "  Maximum Number of Threads: " + maxNumberOfPublishingThreads +
-                          "  Page Size: " + publishingQueuePageSize);
+                          "  Page Size: " + publishingQueuePageSize +
+                          "  Capacity: " + publishingQueueCapacity +
+                          "  Checkpoint Interval: " + checkpointInterval);
                 IRequestNotifier reqNotifier = ((ICertificateAuthority) mAuthority).getRequestNotifier();
                 reqNotifier.setPublishingQueue(isPublishingQueueEnabled,
                                                 publishingQueuePriorityLevel,
                                                 maxNumberOfPublishingThreads,
                                                 publishingQueuePageSize,
-                                                savePublishingStatus);
+                                                savePublishingStatus,
+                                                publishingQueueCapacity,
+                                                checkpointInterval);
             }
         }
         mLdapRequestListener = listener;
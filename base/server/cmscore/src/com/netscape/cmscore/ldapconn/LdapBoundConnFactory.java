@@ -17,6 +17,10 @@
 // --- END COPYRIGHT BLOCK ---
 package com.netscape.cmscore.ldapconn;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import com.netscape.certsrv.base.EBaseException;
 import com.netscape.certsrv.base.IConfigStore;
 import com.netscape.certsrv.ldap.ELdapException;
@@ -53,6 +57,8 @@ public class LdapBoundConnFactory implements ILdapBoundConnFactory {
     public static final String PROP_LDAPAUTHINFO = "ldapauth";
 
     public static final String PROP_ERROR_IF_DOWN = "errorIfDown";
+    public static final String PROP_READ_AFTER_WRITE_INTERVAL = "readAfterWriteInterval";
+    public static final String PROP_REPLICA_RETRY_INTERVAL = "replicaRetryInterval";
 
     private int mNumConns = 0; // number of available conns in array
     private int mTotal = 0; // total num conns
@@ -61,6 +67,31 @@ public class LdapBoundConnFactory implements ILdapBoundConnFactory {
     private LdapBoundConnection mMasterConn = null; // master connection object.
     private BoundConnection mConns[];
 
+    /**
+     * read-only replicas, each with its own pool.
+     */
+    private List<LdapBoundConnFactory> mReplicas = new ArrayList<LdapBoundConnFactory>();
+
+    /**
+     * number of connections of this replica currently in use.
+     */
+    private AtomicInteger mOutstanding = new AtomicInteger();
+
+    /**
+     * time until which this replica is not used after a failure.
+     */
+    private volatile long mUnavailableUntil;
+
+    /**
+     * interval (in milliseconds) after a thread used a primary
+     * connection during which its reads also go to the primary.
+     */
+    private long mReadAfterWriteInterval = 5000;
+
+    private long mReplicaRetryInterval = 30000;
+
+    private ThreadLocal<Long> mLastPrimaryUse = new ThreadLocal<Long>();
+
     /**
      * return error if server is down at creation time.
      */
@@ -155,6 +186,35 @@ public class LdapBoundConnFactory implements ILdapBoundConnFactory {
         logger.debug("LdapBoundConnFactory: doCloning: " + doCloning);
 
         init(minConns, maxConns, maxResults, connInfo, authInfo);
+
+        mReadAfterWriteInterval = config.getInteger(PROP_READ_AFTER_WRITE_INTERVAL, 5000);
+        mReplicaRetryInterval = config.getInteger(PROP_REPLICA_RETRY_INTERVAL, 30000);
+
+        mReplicas.clear();
+        int index = 0;
+
+        for (LdapConnInfo replicaInfo : connInfo.getReadReplicas()) {
+
+            logger.info("LdapBoundConnFactory: read replica: "
+                    + replicaInfo.getHost() + ":" + replicaInfo.getPort());
+
+            LdapAuthInfo replicaAuthInfo = new LdapAuthInfo(config.getSubStore(PROP_LDAPAUTHINFO),
+                    replicaInfo.getHost(), replicaInfo.getPort(), replicaInfo.getSecure());
+
+            LdapBoundConnFactory replica = new LdapBoundConnFactory(id + "-replica-" + (++index), false);
+            replica.doCloning = doCloning;
+
+            try {
+                replica.init(minConns, maxConns, maxResults, replicaInfo, replicaAuthInfo);
+
+            } catch (ELdapException e) {
+                // a replica that is down should not prevent the startup
+                logger.warn("LdapBoundConnFactory: read replica " + replica.id + " unavailable: " + e.getMessage(), e);
+                replica.mUnavailableUntil = System.currentTimeMillis() + mReplicaRetryInterval;
+            }
+
+            mReplicas.add(replica);
+        }
     }
 
     /**
@@ -320,6 +380,80 @@ public class LdapBoundConnFactory implements ILdapBoundConnFactory {
         return getConn(true);
     }
 
+    /**
+     * Returns a connection for operations that only read and do not
+     * need to see changes made by other threads immediately.
+     * <p>
+     * If read replicas are configured the connection comes from the
+     * available replica with the fewest connections in use. The
+     * primary is used instead if there are no replicas, if none is
+     * available, or if the current thread used a primary connection
+     * within the read-after-write interval so that it can read its
+     * own writes.
+     * <p>
+     * The connection has to be returned with returnConn().
+     */
+    public LDAPConnection getReadConn() throws ELdapException {
+
+        if (mReplicas.isEmpty()) {
+            return getConn();
+        }
+
+        Long lastPrimaryUse = mLastPrimaryUse.get();
+        if (lastPrimaryUse != null
+                && System.currentTimeMillis() - lastPrimaryUse < mReadAfterWriteInterval) {
+            return getConn();
+        }
+
+        LdapBoundConnFactory replica = selectReplica();
+        if (replica == null) {
+            logger.debug("LdapBoundConnFactory: no read replica available");
+            return getConn();
+        }
+
+        replica.mOutstanding.incrementAndGet();
+        try {
+            LDAPConnection conn = replica.getConn(false);
+            if (conn != null) {
+                return conn;
+            }
+            logger.debug("LdapBoundConnFactory: out of connections to read replica " + replica.id);
+
+        } catch (ELdapException e) {
+            logger.warn("LdapBoundConnFactory: read replica " + replica.id + " unavailable: " + e.getMessage());
+            replica.mUnavailableUntil = System.currentTimeMillis() + mReplicaRetryInterval;
+        }
+
+        replica.mOutstanding.decrementAndGet();
+        return getConn();
+    }
+
+    /**
+     * Returns the available replica with the fewest connections in use.
+     */
+    private LdapBoundConnFactory selectReplica() {
+
+        long now = System.currentTimeMillis();
+        LdapBoundConnFactory selected = null;
+
+        for (LdapBoundConnFactory replica : mReplicas) {
+
+            if (replica.mUnavailableUntil > now) {
+                continue;
+            }
+
+            if (selected == null || replica.mOutstanding.get() < selected.mOutstanding.get()) {
+                selected = replica;
+            }
+        }
+
+        return selected;
+    }
+
+    public List<LdapBoundConnFactory> getReadReplicas() {
+        return mReplicas;
+    }
+
     /**
      * Returns a LDAP connection - a clone of the master connection.
      * All connections should be returned to the factory using returnConn()
@@ -446,10 +580,31 @@ public class LdapBoundConnFactory implements ILdapBoundConnFactory {
      * }
      * </pre>
      */
-    public synchronized void returnConn(LDAPConnection conn) {
+    public void returnConn(LDAPConnection conn) {
         if (conn == null) {
             return;
         }
+
+        if (!mReplicas.isEmpty() && conn instanceof BoundConnection) {
+
+            BoundConnection[] facId = ((BoundConnection) conn).getFacId();
+
+            for (LdapBoundConnFactory replica : mReplicas) {
+                if (facId == replica.mConns) {
+                    replica.returnConn(conn);
+                    replica.mOutstanding.decrementAndGet();
+                    return;
+                }
+            }
+
+            // primary connections may have been used for writes
+            mLastPrimaryUse.set(System.currentTimeMillis());
+        }
+
+        returnPrimaryConn(conn);
+    }
+
+    private synchronized void returnPrimaryConn(LDAPConnection conn) {
         BoundConnection boundconn = null;
 
         if (conn instanceof BoundConnection) {
@@ -489,6 +644,11 @@ public class LdapBoundConnFactory implements ILdapBoundConnFactory {
     public synchronized void reset()
             throws ELdapException {
         logger.debug("Destroying LdapBoundConnFactory(" + id + ")");
+
+        for (LdapBoundConnFactory replica : mReplicas) {
+            replica.reset();
+        }
+
         if (mNumConns == mTotal) {
             for (int i = 0; i < mNumConns; i++) {
                 try {
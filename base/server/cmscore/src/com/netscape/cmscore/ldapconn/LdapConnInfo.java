@@ -17,6 +17,9 @@
 // --- END COPYRIGHT BLOCK ---
 package com.netscape.cmscore.ldapconn;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import netscape.ldap.LDAPv2;
 
 import com.netscape.certsrv.base.EBaseException;
@@ -37,6 +40,7 @@ public class LdapConnInfo implements ILdapConnInfo {
     private boolean mSecure = false;
     private int mVersion = LDAPv2.PROTOCOL_VERSION;
     private boolean mFollowReferrals = true;
+    private List<LdapConnInfo> mReadReplicas = new ArrayList<LdapConnInfo>();
 
     /**
      * default constructor. must be followed by init(IConfigStore)
@@ -75,6 +79,38 @@ public class LdapConnInfo implements ILdapConnInfo {
         }
         mSecure = config.getBoolean(PROP_SECURE, false);
         mFollowReferrals = config.getBoolean(PROP_FOLLOW_REFERRALS, true);
+
+        // optional comma-separated list of <host>[:<port>] of read-only
+        // replicas using the same security and protocol settings
+        mReadReplicas.clear();
+        String replicas = config.getString(PROP_READ_REPLICAS, "");
+
+        for (String replica : replicas.split(",")) {
+            replica = replica.trim();
+            if (replica.length() == 0) {
+                continue;
+            }
+
+            String host = replica;
+            int port = mPort;
+
+            int i = replica.lastIndexOf(':');
+            if (i > 0) {
+                host = replica.substring(0, i);
+                try {
+                    port = Integer.parseInt(replica.substring(i + 1));
+                } catch (NumberFormatException e) {
+                    throw new EBaseException(
+                            CMS.getUserMessage("CMS_BASE_INVALID_PROPERTY", PROP_READ_REPLICAS));
+                }
+            }
+
+            LdapConnInfo replicaInfo = new LdapConnInfo(host, port, mSecure);
+            replicaInfo.mVersion = mVersion;
+            replicaInfo.mFollowReferrals = mFollowReferrals;
+
+            mReadReplicas.add(replicaInfo);
+        }
     }
 
     public LdapConnInfo(String host, int port, boolean secure) {
@@ -116,4 +152,12 @@ public class LdapConnInfo implements ILdapConnInfo {
         return mFollowReferrals;
     }
 
+    /**
+     * Returns the connection info of the read-only replicas,
+     * or an empty list if none are configured.
+     */
+    public List<LdapConnInfo> getReadReplicas() {
+        return mReadReplicas;
+    }
+
 }
@@ -149,6 +149,7 @@ public abstract class AbstractProfileSubsystem implements IProfileSubsystem {
             throw new EProfileException(
                     "Failed to initialise profile '" + id + "': " + e);
         }
+        newProfile.compile();
 
         // next replace the existing profile with the new profile;
         // this is to avoid any intermediate state where the profile
@@ -243,6 +243,7 @@ public class LDAPProfileSubsystem
             IProfile profile = (IProfile) Class.forName(className).newInstance();
             profile.setId(id);
             profile.init(this, subStoreConfig);
+            profile.compile();
             mProfiles.put(id, profile);
             mProfileClassIds.put(id, classid);
             return profile;
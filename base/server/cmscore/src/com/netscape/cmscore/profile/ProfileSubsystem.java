@@ -126,6 +126,7 @@ public class ProfileSubsystem
             logger.debug("ProfileSubsystem: initing " + className);
             profile.setId(id);
             profile.init(this, subStoreConfig);
+            profile.compile();
             mProfiles.put(id, profile);
             mProfileClassIds.put(id, classid);
             if (isNew)
@@ -27,9 +27,11 @@ import java.security.cert.CertificateException;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.Enumeration;
+import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 import java.util.Vector;
 
@@ -46,6 +48,7 @@ import com.netscape.certsrv.authentication.AuthToken;
 import com.netscape.certsrv.authentication.IAuthToken;
 import com.netscape.certsrv.base.EBaseException;
 import com.netscape.certsrv.base.IAttrSet;
+import com.netscape.certsrv.base.ServiceUnavailableException;
 import com.netscape.certsrv.base.SessionContext;
 import com.netscape.certsrv.request.AgentApprovals;
 import com.netscape.certsrv.request.IEnrollmentRequest;
@@ -154,14 +157,14 @@ public abstract class ARequestQueue
      * <p>
      * Update the persistant copy of this request with the current values in the object.
      * <p>
-     * Currently there are no hints for what has changed, so the entire request should be updated.
+     * Requests created by this queue keep track of the ext-data keys set since
+     * they were loaded or last written, so only those values need to be updated.
      * <p>
      *
      * @param request
-     * @exception EBaseException
-     *                TODO: this is not implemented yet
+     * @return true if the request was written to the database
      */
-    protected abstract void modifyRequest(IRequest request);
+    protected abstract boolean modifyRequest(IRequest request);
 
     /**
      * Get complete list of RequestId values found i this
@@ -359,6 +362,32 @@ public abstract class ARequestQueue
         return mRequestScheduler;
     }
 
+    private RequestIntentLog mIntentLog = null;
+
+    // requests left uncommitted by a previous process,
+    // replayed once by recoverWillBlock()
+    private Map<RequestId, RequestStatus> mRecoveredIntents = null;
+
+    /**
+     * Enables write coalescing. The state changes of a request during
+     * processRequest() are recorded in the intent log and the request
+     * is written to the database once it reaches a terminal state.
+     * <p>
+     * This must be called before the queue accepts requests: the
+     * requests that are uncommitted at this point are the ones
+     * recoverWillBlock() replays.
+     *
+     * @param intentLog the intent log, or null to write every update
+     */
+    public void setIntentLog(RequestIntentLog intentLog) {
+        mIntentLog = intentLog;
+        mRecoveredIntents = intentLog == null ? null : intentLog.getUncommitted();
+    }
+
+    public RequestIntentLog getIntentLog() {
+        return mIntentLog;
+    }
+
     /**
      * Implements IRequestQueue.processRequest
      * <p>
@@ -368,13 +397,21 @@ public abstract class ARequestQueue
     public final void processRequest(IRequest r)
             throws EBaseException {
 
-        // #610553 Thread Scheduler
+        // admission control, may reject the request if overloaded
         IRequestScheduler scheduler = getRequestScheduler();
 
         if (scheduler != null) {
-            scheduler.requestIn(r);
+            try {
+                scheduler.requestIn(r);
+
+            } catch (ServiceUnavailableException e) {
+                rejectUnadmittedRequest(r, e);
+                throw e;
+            }
         }
 
+        boolean coalesce = mIntentLog != null && r instanceof Request;
+
         try {
             // 1. Check for valid state
             RequestStatus rs = r.getRequestStatus();
@@ -382,14 +419,54 @@ public abstract class ARequestQueue
             if (rs != RequestStatus.BEGIN)
                 throw new EBaseException("Invalid Status");
 
+            if (coalesce) {
+                ((Request) r).mCoalescing = true;
+            }
+
             stateEngine(r);
+
+        } catch (ServiceUnavailableException e) {
+            // timed out waiting for the validate stage
+            rejectUnadmittedRequest(r, e);
+            throw e;
+
         } finally {
+            if (coalesce) {
+                // write whatever has been buffered if the state engine
+                // did not reach a terminal state
+                flushRequest(r);
+                ((Request) r).mCoalescing = false;
+            }
+
             if (scheduler != null) {
                 scheduler.requestOut(r);
             }
         }
     }
 
+    /**
+     * Marks a request that was not admitted by the scheduler as
+     * rejected so that it is not left behind in the BEGIN state.
+     * Requests that have not been written yet are not written.
+     */
+    private void rejectUnadmittedRequest(IRequest r, ServiceUnavailableException e) {
+
+        if (r.getRequestStatus() != RequestStatus.BEGIN
+                || "NOT_UPDATED".equals(r.getExtDataInString("dbStatus"))) {
+            return;
+        }
+
+        try {
+            r.setExtData(IRequest.RESULT, IRequest.RES_ERROR);
+            r.setExtData(IRequest.ERROR, e.getMessage());
+            setRequestStatus(r, RequestStatus.REJECTED);
+            updateRequest(r);
+
+        } catch (Exception ex) {
+            logger.warn("ARequestQueue: Unable to reject request " + r.getRequestId() + ": " + ex.getMessage(), ex);
+        }
+    }
+
     /**
      * Implements IRequestQueue.markRequestPending
      * <p>
@@ -516,6 +593,7 @@ public abstract class ARequestQueue
     public final void markAsServiced(IRequest r) {
         setRequestStatus(r, RequestStatus.COMPLETE);
         updateRequest(r);
+        flushRequest(r);
 
         if (mNotify != null)
             mNotify.notify(r);
@@ -571,12 +649,127 @@ public abstract class ARequestQueue
 
         // by default, write request to LDAP
         if (delayLDAPCommit == null || !delayLDAPCommit.equals("true")) {
+            if (r instanceof Request && ((Request) r).mCoalescing && logIntent((Request) r)) {
+                // written once the request reaches a terminal state
+                ((Request) r).mWritePending = true;
+                return;
+            }
+
             // TODO: use a state flag to determine whether to call
             // addRequest or modifyRequest (see newRequest as well)
             modifyRequest(r);
         } // else: delay the write to ldap
     }
 
+    /**
+     * Records the current state of a coalesced request in the intent log.
+     *
+     * @return false if the state could not be logged, in which case
+     *         the request must be written immediately
+     */
+    private boolean logIntent(Request r) {
+
+        if (r.mRequestStatus == r.mLoggedStatus) {
+            return true;
+        }
+
+        try {
+            mIntentLog.logState(r.getRequestId(), r.mRequestStatus);
+            r.mLoggedStatus = r.mRequestStatus;
+            return true;
+
+        } catch (IOException e) {
+            logger.warn("ARequestQueue: Unable to log state of request " + r.getRequestId() + ": " + e.getMessage(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Writes the buffered updates of a coalesced request to the database.
+     */
+    private void flushRequest(IRequest request) {
+
+        if (!(request instanceof Request)) {
+            return;
+        }
+
+        Request r = (Request) request;
+
+        if (r.mWritePending) {
+            boolean written;
+            stageIn(r, IRequestScheduler.STAGE_PERSIST);
+            try {
+                written = modifyRequest(r);
+            } finally {
+                stageOut(r, IRequestScheduler.STAGE_PERSIST);
+            }
+
+            if (!written) {
+                // keep the intent log entry so the request is
+                // replayed after a restart
+                logger.warn("ARequestQueue: Unable to write request " + r.getRequestId()
+                        + ", keeping " + r.mLoggedStatus + " in " + mIntentLog.getFile());
+                return;
+            }
+
+            r.mWritePending = false;
+        }
+
+        if (r.mLoggedStatus == null) {
+            return;
+        }
+
+        try {
+            mIntentLog.commit(r.getRequestId());
+        } catch (IOException e) {
+            logger.warn("ARequestQueue: Unable to commit request " + r.getRequestId() + ": " + e.getMessage(), e);
+        }
+
+        r.mLoggedStatus = null;
+    }
+
+    private void stageIn(IRequest r, String stage) {
+        IRequestScheduler scheduler = mRequestScheduler;
+        if (scheduler != null) {
+            scheduler.stageIn(r, stage);
+        }
+    }
+
+    private void stageOut(IRequest r, String stage) {
+        IRequestScheduler scheduler = mRequestScheduler;
+        if (scheduler != null) {
+            scheduler.stageOut(r, stage);
+        }
+    }
+
+    /**
+     * Updates the request within the persist stage.
+     */
+    private void persistRequest(IRequest r) {
+        stageIn(r, IRequestScheduler.STAGE_PERSIST);
+        try {
+            updateRequest(r);
+        } finally {
+            stageOut(r, IRequestScheduler.STAGE_PERSIST);
+        }
+    }
+
+    /**
+     * Invokes the notifier within the notify stage.
+     */
+    private void notifyRequest(INotify notify, IRequest r) {
+        if (notify == null) {
+            return;
+        }
+
+        stageIn(r, IRequestScheduler.STAGE_NOTIFY);
+        try {
+            notify.notify(r);
+        } finally {
+            stageOut(r, IRequestScheduler.STAGE_NOTIFY);
+        }
+    }
+
     // PRIVATE functions
 
     private final void stateEngine(IRequest r)
@@ -589,8 +782,14 @@ public abstract class ARequestQueue
             if (rs == RequestStatus.BEGIN) {
                 PolicyResult pr = PolicyResult.ACCEPTED;
 
-                if (mPolicy != null)
-                    pr = mPolicy.apply(r);
+                if (mPolicy != null) {
+                    stageIn(r, IRequestScheduler.STAGE_VALIDATE);
+                    try {
+                        pr = mPolicy.apply(r);
+                    } finally {
+                        stageOut(r, IRequestScheduler.STAGE_VALIDATE);
+                    }
+                }
 
                 if (pr == PolicyResult.ACCEPTED) {
                     setRequestStatus(r, RequestStatus.APPROVED);
@@ -605,17 +804,26 @@ public abstract class ARequestQueue
                 // the request processing, we do not want to
                 // have too many db operation.
                 if (pr != PolicyResult.ACCEPTED) {
-                    updateRequest(r);
+                    persistRequest(r);
+                } else if (r instanceof Request && ((Request) r).mCoalescing) {
+                    // log the approval so it can be replayed
+                    logIntent((Request) r);
                 }
             } else if (rs == RequestStatus.PENDING) {
-                if (mPendingNotify != null)
-                    mPendingNotify.notify(r);
+                flushRequest(r);
+
+                notifyRequest(mPendingNotify, r);
 
                 complete = true;
             } else if (rs == RequestStatus.APPROVED) {
                 boolean svcComplete;
 
-                svcComplete = mService.serviceRequest(r);
+                stageIn(r, IRequestScheduler.STAGE_SIGN);
+                try {
+                    svcComplete = mService.serviceRequest(r);
+                } finally {
+                    stageOut(r, IRequestScheduler.STAGE_SIGN);
+                }
 
                 // Completed requests call the notifier and are done. Others
                 // wait for the serviceComplete call.
@@ -625,22 +833,27 @@ public abstract class ARequestQueue
                     setRequestStatus(r, RequestStatus.SVC_PENDING);
                 }
 
-                updateRequest(r);
+                persistRequest(r);
             } else if (rs == RequestStatus.SVC_PENDING) {
+                flushRequest(r);
+
                 complete = true;
             } else if (rs == RequestStatus.CANCELED) {
-                if (mNotify != null)
-                    mNotify.notify(r);
+                flushRequest(r);
+
+                notifyRequest(mNotify, r);
 
                 complete = true;
             } else if (rs == RequestStatus.REJECTED) {
-                if (mNotify != null)
-                    mNotify.notify(r);
+                flushRequest(r);
+
+                notifyRequest(mNotify, r);
 
                 complete = true;
             } else if (rs == RequestStatus.COMPLETE) {
-                if (mNotify != null)
-                    mNotify.notify(r);
+                flushRequest(r);
+
+                notifyRequest(mNotify, r);
 
                 complete = true;
             }
@@ -692,6 +905,10 @@ public abstract class ARequestQueue
      * the APPROVED state.
      */
     public void recoverWillBlock() {
+        if (mRecoveredIntents != null) {
+            replayIntentLog();
+        }
+
         // Get a list of all requests that are APPROVED
         IRequestList list = listRequestsByStatus(RequestStatus.APPROVED);
 
@@ -716,6 +933,72 @@ public abstract class ARequestQueue
         }
     }
 
+    /**
+     * Brings the requests whose coalesced writes were interrupted
+     * back to a state that can be recovered. Requests that were
+     * approved but not serviced are written as APPROVED so they are
+     * serviced again, like other APPROVED requests. Requests that
+     * were serviced but not written cannot be reconstructed and
+     * are reported.
+     * <p>
+     * Only the requests left uncommitted by a previous process are
+     * replayed, since the queue may already be processing new ones.
+     * Each of them is committed once it has been recovered.
+     */
+    protected void replayIntentLog() {
+
+        Map<RequestId, RequestStatus> uncommitted = mRecoveredIntents;
+        mRecoveredIntents = null;
+
+        for (Map.Entry<RequestId, RequestStatus> entry : uncommitted.entrySet()) {
+
+            RequestId rid = entry.getKey();
+            RequestStatus status = entry.getValue();
+
+            try {
+                IRequest request = findRequest(rid);
+
+                if (request == null) {
+                    logger.warn("ARequestQueue: Unable to recover request " + rid + ": request not found");
+
+                } else if (request.getRequestStatus() == status) {
+                    // the write completed before the commit record
+                    releaseRequest(request);
+
+                } else if (status == RequestStatus.APPROVED) {
+                    logger.info("ARequestQueue: Recovering approved request " + rid);
+                    setRequestStatus(request, RequestStatus.APPROVED);
+                    if (request instanceof Request) {
+                        ((Request) request).mModificationTime = new Date();
+                    }
+                    boolean written = modifyRequest(request);
+                    releaseRequest(request);
+
+                    if (!written) {
+                        // keep the entry for the next restart
+                        logger.warn("ARequestQueue: Unable to write recovered request " + rid);
+                        continue;
+                    }
+
+                } else {
+                    logger.error("ARequestQueue: Request " + rid + " reached " + status +
+                            " but was not written, stored state is " + request.getRequestStatus());
+                    releaseRequest(request);
+                }
+
+            } catch (EBaseException e) {
+                logger.warn("ARequestQueue: Unable to recover request " + rid + ": " + e.getMessage(), e);
+                continue;
+            }
+
+            try {
+                mIntentLog.commit(rid);
+            } catch (IOException e) {
+                logger.warn("ARequestQueue: Unable to commit request " + rid + ": " + e.getMessage(), e);
+            }
+        }
+    }
+
     public INotify getPendingNotify() {
         return mPendingNotify;
     }
@@ -824,6 +1107,7 @@ class Request implements IRequest {
     // IRequest.setSourceId
     public void setSourceId(String id) {
         mSourceId = id;
+        mAttrsModified = true;
     }
 
     // IRequest.getRequestOwner
@@ -834,6 +1118,7 @@ class Request implements IRequest {
     // IRequest.setRequestOwner
     public void setRequestOwner(String id) {
         mOwner = id;
+        mAttrsModified = true;
     }
 
     // IRequest.getRequestType
@@ -844,6 +1129,7 @@ class Request implements IRequest {
     // IRequest.setRequestType
     public void setRequestType(String type) {
         mRequestType = type;
+        mAttrsModified = true;
         setExtData(IRequest.REQ_TYPE, type);
     }
 
@@ -933,6 +1219,7 @@ class Request implements IRequest {
         }
 
         mExtData.put(key, value);
+        mModifiedExtDataKeys.add(key.toLowerCase());
         return true;
     }
 
@@ -942,6 +1229,7 @@ class Request implements IRequest {
         }
 
         mExtData.put(key, new ExtDataHashtable<String>(value));
+        mModifiedExtDataKeys.add(key.toLowerCase());
         return true;
     }
 
@@ -978,6 +1266,7 @@ class Request implements IRequest {
 
     public void deleteExtData(String type) {
         mExtData.remove(type);
+        mModifiedExtDataKeys.remove(type.toLowerCase());
     }
 
     public boolean setExtData(String key, String subkey, String value) {
@@ -998,6 +1287,7 @@ class Request implements IRequest {
             mExtData.put(key, existingValue);
         }
         existingValue.put(subkey, value);
+        mModifiedExtDataKeys.add(key.toLowerCase());
         return true;
     }
 
@@ -1446,6 +1736,30 @@ class Request implements IRequest {
         return new RequestIAttrSetWrapper(this);
     }
 
+    /**
+     * Returns the (lower-cased) ext-data keys that have been set since
+     * the request was loaded from or last written to the database.
+     */
+    Set<String> getModifiedExtDataKeys() {
+        return mModifiedExtDataKeys;
+    }
+
+    /**
+     * Returns true if the source ID, owner or type of the request
+     * have been set since the request was loaded or last written.
+     */
+    boolean isAttrsModified() {
+        return mAttrsModified;
+    }
+
+    /**
+     * Marks the in-memory request as identical to its database copy.
+     */
+    void clearModified() {
+        mModifiedExtDataKeys.clear();
+        mAttrsModified = false;
+    }
+
     Request(RequestId id) {
         mRequestId = id;
         setRequestStatus(RequestStatus.BEGIN);
@@ -1462,6 +1776,15 @@ class Request implements IRequest {
     protected String realm;
     protected ExtDataHashtable<Object> mExtData = new ExtDataHashtable<Object>();
 
+    // changes not yet written to the database
+    protected Set<String> mModifiedExtDataKeys = new HashSet<String>();
+    protected boolean mAttrsModified = true;
+
+    // write coalescing state, see ARequestQueue.setIntentLog()
+    transient boolean mCoalescing;
+    transient boolean mWritePending;
+    transient RequestStatus mLoggedStatus;
+
     Date mCreationTime = new Date();
     Date mModificationTime = new Date();
 
@@ -1473,6 +1796,7 @@ class Request implements IRequest {
     @Override
     public void setRealm(String realm) {
         this.realm = realm;
+        mAttrsModified = true;
     }
 }
 
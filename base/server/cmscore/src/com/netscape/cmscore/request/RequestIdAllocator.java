@@ -0,0 +1,224 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2019 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package com.netscape.cmscore.request;
+
+import java.math.BigInteger;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.netscape.certsrv.base.EBaseException;
+
+/**
+ * The RequestIdAllocator class hands out request IDs from blocks
+ * of consecutive IDs reserved with {@link #reserve(int)}.
+ * <p>
+ * IDs are allocated without locking from the current block. When
+ * the number of IDs left in the block drops to the low water mark,
+ * the next block is reserved in the background, so allocating an
+ * ID does not wait for the database unless the blocks run out.
+ */
+abstract class RequestIdAllocator {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(RequestIdAllocator.class);
+
+    private int mBlockSize;
+    private int mLowWaterMark;
+
+    // block request IDs are currently allocated from
+    private volatile Block mBlock;
+
+    // block reserved in the background for when mBlock runs out
+    private volatile Block mNextBlock;
+
+    private Object mBlockMonitor = new Object();
+    private AtomicBoolean mReservePending = new AtomicBoolean();
+    private ExecutorService mReserveExecutor;
+    private boolean mShutdown;
+
+    public RequestIdAllocator(int blockSize, int lowWaterMark) {
+        mBlockSize = blockSize;
+        mLowWaterMark = lowWaterMark;
+    }
+
+    /**
+     * Reserves a block of consecutive request IDs.
+     *
+     * @param count maximum number of IDs to reserve
+     * @return the first and the last reserved ID
+     */
+    protected abstract BigInteger[] reserve(int count) throws EBaseException;
+
+    /**
+     * Returns the next request ID.
+     */
+    public BigInteger next() throws EBaseException {
+
+        while (true) {
+            Block block = mBlock;
+
+            if (block != null) {
+                int i = block.mNext.getAndIncrement();
+
+                if (i < block.mSize) {
+                    if (block.mSize - 1 - i <= mLowWaterMark && mNextBlock == null) {
+                        reserveNextBlock();
+                    }
+                    return block.mFirst.add(BigInteger.valueOf(i));
+                }
+            }
+
+            switchBlock(block);
+        }
+    }
+
+    /**
+     * Discards the reserved blocks. The IDs left in them are not
+     * handed out, and the next ID is taken from a new block.
+     */
+    public void reset() {
+        synchronized (mBlockMonitor) {
+            mBlock = null;
+            mNextBlock = null;
+        }
+    }
+
+    /**
+     * Stops the background reservations. IDs can still be allocated,
+     * but new blocks are then reserved by the allocating thread.
+     */
+    public void shutdown() {
+
+        ExecutorService executor;
+
+        synchronized (this) {
+            mShutdown = true;
+            executor = mReserveExecutor;
+            mReserveExecutor = null;
+        }
+
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Replaces the used up block with the block reserved in the
+     * background, or reserves a new block if there is none.
+     */
+    private void switchBlock(Block block) throws EBaseException {
+
+        synchronized (mBlockMonitor) {
+
+            if (mBlock != block) {
+                // another thread has already switched
+                return;
+            }
+
+            Block next = mNextBlock;
+
+            if (next != null) {
+                mNextBlock = null;
+            } else {
+                logger.debug("RequestIdAllocator: no request ID block reserved, reserving now");
+                next = reserveBlock();
+            }
+
+            mBlock = next;
+        }
+    }
+
+    private Block reserveBlock() throws EBaseException {
+        BigInteger[] range = reserve(mBlockSize);
+        int size = range[1].subtract(range[0]).intValue() + 1;
+        return new Block(range[0], size);
+    }
+
+    private void reserveNextBlock() {
+
+        if (!mReservePending.compareAndSet(false, true)) {
+            return;
+        }
+
+        ExecutorService executor = getReserveExecutor();
+
+        if (executor == null) {
+            mReservePending.set(false);
+            return;
+        }
+
+        try {
+            executor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        synchronized (mBlockMonitor) {
+                            if (mNextBlock == null) {
+                                mNextBlock = reserveBlock();
+                            }
+                        }
+                    } catch (Exception e) {
+                        logger.warn("RequestIdAllocator: Unable to reserve request IDs: " + e.getMessage(), e);
+                    } finally {
+                        mReservePending.set(false);
+                    }
+                }
+            });
+
+        } catch (RejectedExecutionException e) {
+            // shut down concurrently
+            mReservePending.set(false);
+        }
+    }
+
+    private synchronized ExecutorService getReserveExecutor() {
+
+        if (mShutdown) {
+            return null;
+        }
+
+        if (mReserveExecutor == null) {
+            mReserveExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "RequestIdReserveTask");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        return mReserveExecutor;
+    }
+
+    /**
+     * A block of consecutive request IDs.
+     */
+    static class Block {
+
+        BigInteger mFirst;
+        int mSize;
+        AtomicInteger mNext = new AtomicInteger();
+
+        Block(BigInteger first, int size) {
+            mFirst = first;
+            mSize = size;
+        }
+    }
+}
@@ -0,0 +1,255 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2019 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package com.netscape.cmscore.request;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.netscape.certsrv.request.RequestId;
+import com.netscape.certsrv.request.RequestStatus;
+
+/**
+ * The RequestIntentLog class is a local append-only log of request
+ * state changes that have not been written to the database yet.
+ * <p>
+ * When request write coalescing is enabled, ARequestQueue records each
+ * state a request reaches during processRequest() in this log instead of
+ * writing it to the database, and writes the request once when it reaches
+ * a terminal state. After the write a COMMIT record is appended. Requests
+ * without a COMMIT record are returned by {@link #getUncommitted()} so
+ * that ARequestQueue.recoverWillBlock() can replay them after a crash.
+ * The records left by a previous process are loaded when the log is
+ * opened and stay in flight until they are committed.
+ * <p>
+ * Each record is a single line: &lt;request ID&gt; &lt;state&gt;.
+ * <p>
+ * Once the log grows above the maximum size, it is truncated if no
+ * request is in flight, or otherwise compacted by rewriting only the
+ * last state of each request in flight.
+ */
+public class RequestIntentLog {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(RequestIntentLog.class);
+
+    public final static String COMMIT = "COMMIT";
+
+    /**
+     * Size above which the log is truncated or compacted.
+     */
+    public final static long DEFAULT_MAX_SIZE = 1024 * 1024;
+
+    private File mFile;
+    private FileChannel mChannel;
+    private boolean mSync;
+    private long mMaxSize;
+
+    // size of the log after the last compaction
+    private long mCompactedSize;
+
+    // last state of the requests with records but no
+    // COMMIT record in the current log, in logging order
+    private Map<String, String> mInFlight = new LinkedHashMap<String, String>();
+
+    public RequestIntentLog(File file, boolean sync, long maxSize) throws IOException {
+        mFile = file;
+        mSync = sync;
+        mMaxSize = maxSize;
+
+        File dir = file.getParentFile();
+        if (dir != null && !dir.exists()) {
+            dir.mkdirs();
+        }
+
+        if (file.exists()) {
+            load();
+        }
+
+        mChannel = new FileOutputStream(file, true).getChannel();
+
+        // terminate a record that was cut off by a crash
+        // so that it is not joined with the next one
+        long size = mChannel.size();
+        if (size > 0 && lastByte(size) != '\n') {
+            append("");
+        }
+    }
+
+    public File getFile() {
+        return mFile;
+    }
+
+    /**
+     * Records that a request reached the given state without
+     * being written to the database.
+     */
+    public synchronized void logState(RequestId id, RequestStatus status) throws IOException {
+        append(id + " " + status);
+        mInFlight.put(id.toString(), status.toString());
+    }
+
+    /**
+     * Records that the request has been written to the database.
+     */
+    public synchronized void commit(RequestId id) throws IOException {
+
+        if (mInFlight.remove(id.toString()) == null) {
+            return;
+        }
+
+        append(id + " " + COMMIT);
+
+        long size = mChannel.size();
+        if (size <= mMaxSize) {
+            return;
+        }
+
+        if (mInFlight.isEmpty()) {
+            logger.debug("RequestIntentLog: truncating " + mFile);
+            mChannel.truncate(0);
+            mCompactedSize = 0;
+            return;
+        }
+
+        // don't compact again until the log has grown
+        // well beyond the records still in flight
+        if (size > 2 * mCompactedSize) {
+            compact();
+        }
+    }
+
+    /**
+     * Replaces the log with the last state of each request in flight.
+     * The new log is written to a temporary file and then renamed, so
+     * a crash leaves either the old or the new log.
+     */
+    private void compact() throws IOException {
+
+        logger.debug("RequestIntentLog: compacting " + mFile + " with " + mInFlight.size() + " requests in flight");
+
+        File tmp = new File(mFile.getPath() + ".tmp");
+        FileChannel channel = new FileOutputStream(tmp).getChannel();
+
+        try {
+            StringBuilder sb = new StringBuilder();
+            for (Map.Entry<String, String> entry : mInFlight.entrySet()) {
+                sb.append(entry.getKey()).append(' ').append(entry.getValue()).append('\n');
+            }
+
+            write(channel, sb.toString());
+            channel.force(false);
+
+        } finally {
+            channel.close();
+        }
+
+        Files.move(tmp.toPath(), mFile.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        mChannel.close();
+        mChannel = new FileOutputStream(mFile, true).getChannel();
+        mCompactedSize = mChannel.size();
+    }
+
+    /**
+     * Returns the last logged state of every request that
+     * has no COMMIT record, in the order they were logged.
+     */
+    public synchronized Map<RequestId, RequestStatus> getUncommitted() {
+
+        Map<RequestId, RequestStatus> uncommitted = new LinkedHashMap<RequestId, RequestStatus>();
+
+        for (Map.Entry<String, String> entry : mInFlight.entrySet()) {
+            uncommitted.put(new RequestId(entry.getKey()), RequestStatus.fromString(entry.getValue()));
+        }
+
+        return uncommitted;
+    }
+
+    /**
+     * Reads the records of an existing log into the requests in flight.
+     */
+    private void load() throws IOException {
+
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                new FileInputStream(mFile), StandardCharsets.UTF_8))) {
+
+            String line;
+            while ((line = in.readLine()) != null) {
+
+                int i = line.indexOf(' ');
+                if (i <= 0) {
+                    // incomplete record written during a crash
+                    continue;
+                }
+
+                String id = line.substring(0, i);
+                String state = line.substring(i + 1).trim();
+
+                if (COMMIT.equals(state)) {
+                    mInFlight.remove(id);
+
+                } else if (RequestStatus.fromString(state) != null) {
+                    mInFlight.put(id, state);
+
+                } else {
+                    logger.warn("RequestIntentLog: invalid state for request " + id + ": " + state);
+                }
+            }
+        }
+    }
+
+    private byte lastByte(long size) throws IOException {
+        try (FileChannel channel = new FileInputStream(mFile).getChannel()) {
+            ByteBuffer buffer = ByteBuffer.allocate(1);
+            channel.read(buffer, size - 1);
+            return buffer.get(0);
+        }
+    }
+
+    public synchronized void close() throws IOException {
+        mChannel.close();
+    }
+
+    private void append(String record) throws IOException {
+
+        write(mChannel, record + "\n");
+
+        if (mSync) {
+            mChannel.force(false);
+        }
+    }
+
+    private static void write(FileChannel channel, String data) throws IOException {
+
+        ByteBuffer buffer = ByteBuffer.wrap(data.getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
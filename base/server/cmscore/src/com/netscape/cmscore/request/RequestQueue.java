@@ -128,6 +128,10 @@ public class RequestQueue
         try {
             dbs = mDB.createSession();
             dbs.add(name, record);
+
+            if (r instanceof Request) {
+                ((Request) r).clearModified();
+            }
         } catch (EBaseException e) {
             logger.error("RequestQueue: " + e.getMessage(), e);
             throw e;
@@ -141,25 +145,28 @@ public class RequestQueue
         }
     }
 
-    protected void modifyRequest(IRequest r) {
+    protected boolean modifyRequest(IRequest r) {
         String dbStatus = r.getExtDataInString("dbStatus");
 
         if (!dbStatus.equals("UPDATED")) {
             try {
                 r.setExtData("dbStatus", "UPDATED");
                 addRequest(r);
+                return true;
             } catch (EBaseException e) {
                 System.out.println(e.toString());
+                return false;
             }
-            return;
         }
 
         ModificationSet mods = new ModificationSet();
+        boolean written = true;
 
         try {
             RequestRecord.mod(mods, r);
         } catch (EBaseException e) {
             logger.warn("RequestQueue: " + e.getMessage(), e);
+            written = false;
         }
 
         /*
@@ -190,8 +197,16 @@ public class RequestQueue
         try {
             dbs = mDB.createSession();
             dbs.modify(name, mods);
+
+            if (r instanceof Request) {
+                Request request = (Request) r;
+                logger.debug("RequestQueue: modified " + request.getModifiedExtDataKeys().size() +
+                        " of " + request.mExtData.size() + " ext-data attributes in request " + r.getRequestId());
+                request.clearModified();
+            }
         } catch (EBaseException e) {
             logger.warn("RequestQueue: " + e.getMessage(), e);
+            written = false;
         } finally {
             // Close session - ignoring errors (UTIL)
             if (dbs != null)
@@ -200,6 +215,8 @@ public class RequestQueue
                 } catch (EBaseException e) {
                 }
         }
+
+        return written;
     }
 
     IRequest makeRequest(RequestRecord record) {
@@ -208,6 +225,9 @@ public class RequestQueue
         try {
             // convert (copy) fields
             record.read(this, r);
+
+            // the request now matches the database copy
+            ((Request) r).clearModified();
         } catch (EBaseException e) {
             logger.warn("RequestQueue: " + e.getMessage(), e);
         }
@@ -613,6 +633,10 @@ public class RequestQueue
         mRepository.setPublishingStatus(status);
     }
 
+    public void shutdown() {
+        mRepository.shutdown();
+    }
+
     protected String mBaseDN;
     protected IDBSubsystem mDB;
     protected RequestRepository mRepository;
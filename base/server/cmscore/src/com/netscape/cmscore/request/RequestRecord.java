@@ -25,6 +25,7 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.ObjectStreamException;
 import java.math.BigInteger;
+import java.util.Collections;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.Hashtable;
@@ -188,26 +189,44 @@ public class RequestRecord
         mods.add(IRequestRecord.ATTR_REQUEST_STATE,
                 Modification.MOD_REPLACE, r.getRequestStatus());
 
-        mods.add(IRequestRecord.ATTR_SOURCE_ID,
-                Modification.MOD_REPLACE, r.getSourceId());
-
-        mods.add(IRequestRecord.ATTR_REQUEST_OWNER,
-                Modification.MOD_REPLACE, r.getRequestOwner());
-
         mods.add(IRequestRecord.ATTR_MODIFY_TIME,
                 Modification.MOD_REPLACE, r.getModificationTime());
 
-        mods.add(IRequestRecord.ATTR_EXT_DATA,
-                Modification.MOD_REPLACE, loadExtDataFromRequest(r));
+        // Requests created by the queue track what has been changed since
+        // they were read or last written, other implementations are
+        // written out completely.
+        Request request = r instanceof Request ? (Request) r : null;
+
+        if (request == null || request.isAttrsModified()) {
+            mods.add(IRequestRecord.ATTR_SOURCE_ID,
+                    Modification.MOD_REPLACE, r.getSourceId());
 
-        // TODO(alee) - realm cannot be changed once set.  Can the code be refactored to eliminate
-        // the next few lines?
-        if (r.getRealm() != null) {
-            mods.add(IRequestRecord.ATTR_REALM, Modification.MOD_REPLACE, r.getRealm());
+            mods.add(IRequestRecord.ATTR_REQUEST_OWNER,
+                    Modification.MOD_REPLACE, r.getRequestOwner());
+
+            // TODO(alee) - realm cannot be changed once set.  Can the code be refactored to eliminate
+            // the next few lines?
+            if (r.getRealm() != null) {
+                mods.add(IRequestRecord.ATTR_REALM, Modification.MOD_REPLACE, r.getRealm());
+            }
+
+            for (int i = 0; i < mRequestA.length; i++) {
+                mRequestA[i].mod(mods, r);
+            }
         }
 
-        for (int i = 0; i < mRequestA.length; i++) {
-            mRequestA[i].mod(mods, r);
+        Hashtable<String, Object> extData;
+
+        if (request == null) {
+            extData = loadExtDataFromRequest(r);
+        } else {
+            extData = loadExtDataFromRequest(r,
+                    Collections.enumeration(request.getModifiedExtDataKeys()));
+        }
+
+        if (!extData.isEmpty()) {
+            mods.add(IRequestRecord.ATTR_EXT_DATA,
+                    Modification.MOD_REPLACE, extData);
         }
     }
 
@@ -244,6 +263,15 @@ public class RequestRecord
         { Schema.LDAP_OC_TOP, Schema.LDAP_OC_REQUEST, Schema.LDAP_OC_EXTENSIBLE };
 
     protected static Hashtable<String, Object> loadExtDataFromRequest(IRequest r) throws EBaseException {
+        return loadExtDataFromRequest(r, r.getExtDataKeys());
+    }
+
+    /**
+     * Collects the values of the given ext-data keys from the request.
+     * Keys that are no longer present in the request are skipped.
+     */
+    protected static Hashtable<String, Object> loadExtDataFromRequest(
+            IRequest r, Enumeration<String> e) throws EBaseException {
         Hashtable<String, Object> h = new Hashtable<String, Object>();
         String reqType = r.getExtDataInString("cert_request_type");
         if (reqType == null || reqType.equals("")) {
@@ -251,7 +279,6 @@ public class RequestRecord
             reqType = r.getExtDataInString("auth_token.cert_request_type");
         }
         CMSEngine engine = (CMSEngine) CMS.getCMSEngine();
-        Enumeration<String> e = r.getExtDataKeys();
         while (e.hasMoreElements()) {
             String key = e.nextElement();
             if (r.isSimpleExtDataValue(key)) {
@@ -284,7 +311,10 @@ public class RequestRecord
                 }
                 h.put(key, r.getExtDataInString(key));
             } else {
-                h.put(key, r.getExtDataInHashtable(key));
+                Hashtable<String, String> value = r.getExtDataInHashtable(key);
+                if (value != null) {
+                    h.put(key, value);
+                }
             }
         }
 
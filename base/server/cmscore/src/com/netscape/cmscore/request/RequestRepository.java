@@ -20,6 +20,7 @@ package com.netscape.cmscore.request;
 import java.math.BigInteger;
 
 import com.netscape.certsrv.base.EBaseException;
+import com.netscape.certsrv.base.IConfigStore;
 import com.netscape.certsrv.dbs.EDBException;
 import com.netscape.certsrv.dbs.IDBSSession;
 import com.netscape.certsrv.dbs.IDBSearchResults;
@@ -44,9 +45,20 @@ class RequestRepository
 
     public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(RequestRepository.class);
 
+    public final static String PROP_REQUEST_ID_BLOCK_SIZE = "requestIdBlockSize";
+    public final static String PROP_REQUEST_ID_LOW_WATER_MARK = "requestIdLowWaterMark";
+
+    public final static int DEFAULT_REQUEST_ID_BLOCK_SIZE = 100;
+
     IDBSubsystem mDB = null;
     IRequestQueue mRequestQueue = null;
 
+    private int mBlockSize = DEFAULT_REQUEST_ID_BLOCK_SIZE;
+    private int mLowWaterMark = DEFAULT_REQUEST_ID_BLOCK_SIZE / 4;
+
+    // null if request IDs are allocated one at a time
+    private RequestIdAllocator mIdAllocator;
+
     /**
      * Create a request repository that uses the LDAP database
      * <p>
@@ -68,6 +80,8 @@ class RequestRepository
         // database mapping and object mapping values
         RequestRecord.register(db);
         mDB = db;
+
+        initBlockSize();
     }
 
     public RequestRepository(String name, int increment, IDBSubsystem db, IRequestQueue requestQueue)
@@ -82,6 +96,36 @@ class RequestRepository
         // database mapping and object mapping values
         RequestRecord.register(db);
         mDB = db;
+
+        initBlockSize();
+    }
+
+    private void initBlockSize() throws EDBException {
+
+        IConfigStore config = mDB.getDBConfigStore();
+        if (config == null) {
+            return;
+        }
+
+        try {
+            mBlockSize = config.getInteger(PROP_REQUEST_ID_BLOCK_SIZE, DEFAULT_REQUEST_ID_BLOCK_SIZE);
+            mLowWaterMark = config.getInteger(PROP_REQUEST_ID_LOW_WATER_MARK, mBlockSize / 4);
+        } catch (EBaseException e) {
+            throw new EDBException("Unable to configure request ID blocks: " + e.getMessage(), e);
+        }
+
+        logger.debug("RequestRepository: request ID block size: " + mBlockSize
+                + ", low water mark: " + mLowWaterMark);
+
+        if (mBlockSize <= 1) {
+            return;
+        }
+
+        mIdAllocator = new RequestIdAllocator(mBlockSize, mLowWaterMark) {
+            protected BigInteger[] reserve(int count) throws EBaseException {
+                return reserveSerialNumbers(count);
+            }
+        };
     }
 
     /**
@@ -102,6 +146,44 @@ class RequestRepository
      */
     public void resetSerialNumber(BigInteger serial) throws EBaseException {
         setTheSerialNumber(serial);
+        if (mIdAllocator != null) {
+            mIdAllocator.reset();
+        }
+    }
+
+    /**
+     * Returns the next request ID. Request IDs are allocated
+     * from blocks of IDs reserved from the current range, see
+     * RequestIdAllocator. After a restart, allocation continues
+     * after the highest request ID in the database.
+     */
+    public BigInteger getNextSerialNumber() throws EBaseException {
+
+        if (mIdAllocator == null) {
+            return super.getNextSerialNumber();
+        }
+
+        return mIdAllocator.next();
+    }
+
+    /**
+     * Returns the first request ID that has not been reserved.
+     * The IDs left in the blocks reserved by this server are not
+     * included, so they are never transferred to another server.
+     * If blocks are used, the next request ID allocated on this
+     * server can be lower than the returned ID.
+     */
+    public synchronized BigInteger peekNextSerialNumber() throws EBaseException {
+        return super.peekNextSerialNumber();
+    }
+
+    /**
+     * Stops reserving request IDs in the background.
+     */
+    public void shutdown() {
+        if (mIdAllocator != null) {
+            mIdAllocator.shutdown();
+        }
     }
 
     /**
@@ -17,6 +17,9 @@
 // --- END COPYRIGHT BLOCK ---
 package com.netscape.cmscore.request;
 
+import java.io.File;
+import java.io.IOException;
+
 import com.netscape.certsrv.base.EBaseException;
 import com.netscape.certsrv.base.IConfigStore;
 import com.netscape.certsrv.base.ISubsystem;
@@ -26,6 +29,8 @@ import com.netscape.certsrv.request.INotify;
 import com.netscape.certsrv.request.IPolicy;
 import com.netscape.certsrv.request.IRequestQueue;
 import com.netscape.certsrv.request.IService;
+import com.netscape.cmscore.apps.CMS;
+import com.netscape.cmscore.apps.CMSEngine;
 import com.netscape.cmscore.dbs.DBSubsystem;
 
 /**
@@ -106,6 +111,28 @@ public class RequestSubsystem implements ISubsystem {
                     throws EBaseException {
         RequestQueue rq = new RequestQueue(name, increment, p, s, n, pendingNotifier);
 
+        // request.<name>.coalesceWrites=true buffers the request writes
+        // of processRequest() behind a local intent log
+        IConfigStore queueConfig = mConfig == null ? null : mConfig.getSubStore(name);
+
+        if (queueConfig != null && queueConfig.getBoolean("coalesceWrites", false)) {
+            CMSEngine engine = CMS.getCMSEngine();
+            String path = queueConfig.getString("intentLog.file",
+                    engine.getInstanceDir() + File.separator + "logs" + File.separator
+                            + name + "-request-intent.log");
+            boolean sync = queueConfig.getBoolean("intentLog.sync", true);
+            long maxSize = queueConfig.getInteger("intentLog.maxSize",
+                    (int) RequestIntentLog.DEFAULT_MAX_SIZE);
+
+            try {
+                rq.setIntentLog(new RequestIntentLog(new File(path), sync, maxSize));
+                logger.info("RequestSubsystem: Coalescing " + name + " request writes with " + path);
+
+            } catch (IOException e) {
+                throw new EBaseException("Unable to open request intent log " + path + ": " + e.getMessage(), e);
+            }
+        }
+
         // can't do this here because the service depends on getting rq
         // (to get request) and since this method hasn't returned it's rq is null.
         //rq.recover();
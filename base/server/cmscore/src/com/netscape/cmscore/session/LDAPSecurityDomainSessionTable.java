@@ -17,8 +17,12 @@
 // --- END COPYRIGHT BLOCK ---
 package com.netscape.cmscore.session;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Vector;
 
 import com.netscape.certsrv.base.EBaseException;
@@ -30,26 +34,48 @@ import com.netscape.certsrv.ldap.ILdapConnFactory;
 import com.netscape.cmscore.apps.CMS;
 import com.netscape.cmscore.apps.CMSEngine;
 import com.netscape.cmscore.ldapconn.LdapBoundConnFactory;
+import com.netscape.cmscore.session.SecurityDomainSessionCache.Session;
+import com.netscape.cmsutil.ldap.LDAPUtil;
 
 import netscape.ldap.LDAPAttribute;
 import netscape.ldap.LDAPAttributeSet;
 import netscape.ldap.LDAPConnection;
 import netscape.ldap.LDAPEntry;
 import netscape.ldap.LDAPException;
+import netscape.ldap.LDAPSearchConstraints;
 import netscape.ldap.LDAPSearchResults;
 import netscape.ldap.LDAPv2;
+import netscape.ldap.controls.LDAPEntryChangeControl;
+import netscape.ldap.controls.LDAPPersistSearchControl;
 
 /**
  * This object stores the values for IP, uid and group based on the cookie id in LDAP.
  * Entries are stored under ou=Security Domain, ou=sessions, $basedn
+ * <p>
+ * Each session entry is read with a single search for all of its
+ * attributes. If securitydomain.sessionCacheTTL is set, the entries
+ * are also kept in a local cache for that many seconds, and a
+ * persistent search on ou=sessions adds and removes the entries
+ * created or deleted by other servers.
  */
 public class LDAPSecurityDomainSessionTable
-        implements ISecurityDomainSessionTable {
+        implements ISecurityDomainSessionTable, Runnable {
 
     public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(LDAPSecurityDomainSessionTable.class);
 
+    public static final String PROP_SESSION_CACHE_TTL = "securitydomain.sessionCacheTTL";
+
+    private static final String[] SESSION_ATTRS = { "cn", "host", "uid", "cmsUserGroup", "dateOfCreate" };
+
     private long m_timeToLive;
     private ILdapConnFactory mLdapConnFactory = null;
+    private String mSessionsDN;
+
+    // null if the cache is disabled
+    private SecurityDomainSessionCache mCache;
+
+    private ILdapConnFactory mMonitorConnFactory;
+    private volatile boolean mStopped;
 
     public LDAPSecurityDomainSessionTable(long timeToLive) throws ELdapException, EBaseException {
         m_timeToLive = timeToLive;
@@ -58,57 +84,89 @@ public class LDAPSecurityDomainSessionTable
         IConfigStore internaldb = cs.getSubStore("internaldb");
         mLdapConnFactory = new LdapBoundConnFactory("LDAPSecurityDomainSessionTable");
         mLdapConnFactory.init(internaldb);
+
+        String basedn = cs.getString("internaldb.basedn");
+        mSessionsDN = "ou=sessions,ou=Security Domain," + basedn;
+
+        long cacheTTL = cs.getInteger(PROP_SESSION_CACHE_TTL, 0) * 1000L;
+
+        if (cacheTTL > 0) {
+            logger.info("LDAPSecurityDomainSessionTable: caching sessions for " + cacheTTL / 1000 + " seconds");
+
+            mCache = new SecurityDomainSessionCache(cacheTTL);
+
+            mMonitorConnFactory = new LdapBoundConnFactory("LDAPSecurityDomainSessionMonitor");
+            mMonitorConnFactory.init(internaldb);
+
+            Thread monitor = new Thread(this, "securityDomainSessionMonitor");
+            monitor.setDaemon(true);
+            monitor.start();
+        }
+    }
+
+    private String getSessionDN(String sessionId) {
+        return "cn=" + LDAPUtil.escapeRDNValue(sessionId) + "," + mSessionsDN;
+    }
+
+    private void ensureSessionsOU(LDAPConnection conn) throws LDAPException {
+
+        LDAPAttributeSet attrs = new LDAPAttributeSet();
+        attrs.add(new LDAPAttribute("objectclass", "top"));
+        attrs.add(new LDAPAttribute("objectclass", "organizationalUnit"));
+        attrs.add(new LDAPAttribute("ou", "sessions"));
+
+        LDAPEntry entry = new LDAPEntry(mSessionsDN, attrs);
+
+        try {
+            conn.add(entry);
+
+        } catch (LDAPException e) {
+            if (e.getLDAPResultCode() != LDAPException.ENTRY_ALREADY_EXISTS) {
+                throw e;
+            }
+        }
     }
 
     public int addEntry(String sessionId, String ip,
             String uid, String group) throws Exception {
 
-        CMSEngine engine = (CMSEngine) CMS.getCMSEngine();
-        IConfigStore cs = engine.getConfigStore();
         LDAPConnection conn = null;
         int status = FAILURE;
 
-        String basedn = cs.getString("internaldb.basedn");
-        String sessionsdn = "ou=sessions,ou=Security Domain," + basedn;
-
         try {
             // create session entry (if it does not exist)
             conn = mLdapConnFactory.getConn();
 
-            LDAPAttributeSet attrs = new LDAPAttributeSet();
-            attrs.add(new LDAPAttribute("objectclass", "top"));
-            attrs.add(new LDAPAttribute("objectclass", "organizationalUnit"));
-            attrs.add(new LDAPAttribute("ou", "sessions"));
-
-            LDAPEntry entry = new LDAPEntry(sessionsdn, attrs);
-
             try {
-                conn.add(entry);
+                ensureSessionsOU(conn);
 
             } catch (LDAPException e) {
-                if (e.getLDAPResultCode() == LDAPException.ENTRY_ALREADY_EXISTS) {
-                    // continue
-                } else {
-                    logger.error("SecurityDomainSessionTable: Unable to create ou=sessions: " + e.getMessage(), e);
-                    throw new PKIException("Unable to create ou=sessions", e);
-                }
+                logger.error("SecurityDomainSessionTable: Unable to create ou=sessions: " + e.getMessage(), e);
+                throw new PKIException("Unable to create ou=sessions", e);
             }
 
             // add new entry
-            String entrydn = "cn=" + sessionId + "," + sessionsdn;
-            attrs = new LDAPAttributeSet();
+            long beginTime = new Date().getTime();
+
+            LDAPAttributeSet attrs = new LDAPAttributeSet();
             attrs.add(new LDAPAttribute("objectclass", "top"));
             attrs.add(new LDAPAttribute("objectclass", "securityDomainSessionEntry"));
             attrs.add(new LDAPAttribute("cn", sessionId));
             attrs.add(new LDAPAttribute("host", ip));
             attrs.add(new LDAPAttribute("uid", uid));
             attrs.add(new LDAPAttribute("cmsUserGroup", group));
-            attrs.add(new LDAPAttribute("dateOfCreate", Long.toString((new Date()).getTime())));
+            attrs.add(new LDAPAttribute("dateOfCreate", Long.toString(beginTime)));
 
-            entry = new LDAPEntry(entrydn, attrs);
+            LDAPEntry entry = new LDAPEntry(getSessionDN(sessionId), attrs);
+
+            long generation = mCache == null ? 0 : mCache.getGeneration();
 
             conn.add(entry);
 
+            if (mCache != null) {
+                mCache.put(sessionId, mCache.createSession(ip, uid, group, beginTime), generation);
+            }
+
             logger.info("SecurityDomainSessionTable: added session entry " + sessionId);
             status = SUCCESS;
 
@@ -125,15 +183,16 @@ public class LDAPSecurityDomainSessionTable
 
     public int removeEntry(String sessionId) throws Exception {
 
-        CMSEngine engine = (CMSEngine) CMS.getCMSEngine();
-        IConfigStore cs = engine.getConfigStore();
         LDAPConnection conn = null;
         int status = FAILURE;
+
+        if (mCache != null) {
+            mCache.remove(sessionId);
+        }
+
         try {
-            String basedn = cs.getString("internaldb.basedn");
-            String dn = "cn=" + sessionId + ",ou=sessions,ou=Security Domain," + basedn;
             conn = mLdapConnFactory.getConn();
-            conn.delete(dn);
+            conn.delete(getSessionDN(sessionId));
             status = SUCCESS;
 
         } catch (LDAPException e) {
@@ -155,23 +214,53 @@ public class LDAPSecurityDomainSessionTable
         return status;
     }
 
-    public boolean sessionExists(String sessionId) throws Exception {
+    /**
+     * Returns the session from the cache, or reads all its
+     * attributes with a single search.
+     *
+     * @return the session, or null if it does not exist
+     */
+    private Session getSession(String sessionId) throws Exception {
+
+        if (sessionId == null) {
+            return null;
+        }
+
+        Session session = null;
+        long generation = 0;
+
+        if (mCache != null) {
+            session = mCache.get(sessionId);
+            if (session != null) {
+                return session;
+            }
+
+            // obtained before the read so that a concurrent
+            // removal prevents caching the session
+            generation = mCache.getGeneration();
+        }
 
-        CMSEngine engine = (CMSEngine) CMS.getCMSEngine();
-        IConfigStore cs = engine.getConfigStore();
         LDAPConnection conn = null;
-        boolean ret = false;
 
         try {
-            String basedn = cs.getString("internaldb.basedn");
-            String sessionsdn = "ou=sessions,ou=Security Domain," + basedn;
-            String filter = "(cn=" + sessionId + ")";
-            String[] attrs = { "cn" };
-
             conn = mLdapConnFactory.getConn();
-            LDAPSearchResults res = conn.search(sessionsdn, LDAPv2.SCOPE_SUB, filter, attrs, false);
-            if (res.getCount() > 0)
-                ret = true;
+            LDAPSearchResults res = conn.search(getSessionDN(sessionId), LDAPv2.SCOPE_BASE,
+                    "(objectclass=securityDomainSessionEntry)", SESSION_ATTRS, false);
+
+            if (!res.hasMoreElements()) {
+                return null;
+            }
+
+            session = createSession(res.next());
+
+        } catch (LDAPException e) {
+            switch (e.getLDAPResultCode()) {
+            case LDAPException.NO_SUCH_OBJECT:
+            case LDAPException.INVALID_DN_SYNTAX:
+                return null;
+            default:
+                throw e;
+            }
 
         } finally {
             try {
@@ -181,28 +270,64 @@ public class LDAPSecurityDomainSessionTable
             }
         }
 
-        return ret;
+        if (mCache != null) {
+            mCache.put(sessionId, session, generation);
+        }
+
+        return session;
+    }
+
+    private Session createSession(LDAPEntry entry) {
+
+        String ip = getAttributeValue(entry, "host");
+        String uid = getAttributeValue(entry, "uid");
+        String group = getAttributeValue(entry, "cmsUserGroup");
+        String beginStr = getAttributeValue(entry, "dateOfCreate");
+
+        long beginTime = -1;
+        if (beginStr != null) {
+            try {
+                beginTime = Long.parseLong(beginStr);
+            } catch (NumberFormatException e) {
+                logger.warn("LDAPSecurityDomainSessionTable: invalid dateOfCreate: " + beginStr);
+            }
+        }
+
+        if (mCache == null) {
+            return new Session(ip, uid, group, beginTime, 0);
+        }
+
+        return mCache.createSession(ip, uid, group, beginTime);
+    }
+
+    private String getAttributeValue(LDAPEntry entry, String attr) {
+        LDAPAttribute attribute = entry.getAttribute(attr);
+        if (attribute == null) {
+            logger.warn("LDAPSecurityDomainSessionTable: No Attribute " + attr + " in LDAPEntry " + entry.getDN());
+            return null;
+        }
+        return attribute.getStringValueArray()[0];
+    }
+
+    public boolean sessionExists(String sessionId) throws Exception {
+        return getSession(sessionId) != null;
     }
 
     public Enumeration<String> getSessionIDs() throws Exception {
 
         logger.debug("LDAPSecurityDomainSessionTable: getSessionIds() ");
 
-        CMSEngine engine = (CMSEngine) CMS.getCMSEngine();
-        IConfigStore cs = engine.getConfigStore();
         LDAPConnection conn = null;
         Vector<String> ret = new Vector<String>();
 
         try {
-            String basedn = cs.getString("internaldb.basedn");
-            String sessionsdn = "ou=sessions,ou=Security Domain," + basedn;
             String filter = "(objectclass=securityDomainSessionEntry)";
             String[] attrs = { "cn" };
 
-            logger.debug("LDAPSecurityDomainSessionTable: searching " + sessionsdn);
+            logger.debug("LDAPSecurityDomainSessionTable: searching " + mSessionsDN);
 
             conn = mLdapConnFactory.getConn();
-            LDAPSearchResults res = conn.search(sessionsdn, LDAPv2.SCOPE_SUB, filter, attrs, false);
+            LDAPSearchResults res = conn.search(mSessionsDN, LDAPv2.SCOPE_SUB, filter, attrs, false);
             while (res.hasMoreElements()) {
                 LDAPEntry entry = res.next();
                 LDAPAttribute sid = entry.getAttribute("cn");
@@ -234,27 +359,62 @@ public class LDAPSecurityDomainSessionTable
         return ret.elements();
     }
 
-    private String getStringValue(String sessionId, String attr) throws Exception {
+    /**
+     * Removes the expired sessions in a single pass: the ID and the
+     * creation time of all sessions are read with one search, and the
+     * expired entries are deleted on the same connection.
+     * <p>
+     * dateOfCreate has no ordering matching rule, so the
+     * expiration is checked locally instead of in the filter.
+     */
+    public List<String> removeExpiredEntries() throws Exception {
 
-        CMSEngine engine = (CMSEngine) CMS.getCMSEngine();
-        IConfigStore cs = engine.getConfigStore();
         LDAPConnection conn = null;
-        String ret = null;
+        List<String> removed = new ArrayList<String>();
+        long cutoff = new Date().getTime() - m_timeToLive;
+
         try {
-            String basedn = cs.getString("internaldb.basedn");
-            String sessionsdn = "ou=sessions,ou=Security Domain," + basedn;
-            String filter = "(cn=" + sessionId + ")";
-            String[] attrs = { attr };
+            String filter = "(&(objectclass=securityDomainSessionEntry)(dateOfCreate=*))";
+            String[] attrs = { "cn", "dateOfCreate" };
 
             conn = mLdapConnFactory.getConn();
-            LDAPSearchResults res = conn.search(sessionsdn, LDAPv2.SCOPE_SUB, filter, attrs, false);
-            if (res.getCount() > 0) {
+            LDAPSearchResults res = conn.search(mSessionsDN, LDAPv2.SCOPE_ONE, filter, attrs, false);
+
+            Map<String, String> createTimes = new LinkedHashMap<String, String>();
+            while (res.hasMoreElements()) {
                 LDAPEntry entry = res.next();
-                LDAPAttribute searchAttribute = entry.getAttribute(attr);
-                if (searchAttribute == null) {
-                    throw new Exception("No Attribute " + attr + " for this session in LDAPEntry "+entry.getDN());
+                String sessionId = getAttributeValue(entry, "cn");
+                if (sessionId != null) {
+                    createTimes.put(sessionId, getAttributeValue(entry, "dateOfCreate"));
                 }
-                ret = searchAttribute.getStringValueArray()[0];
+            }
+
+            for (String sessionId : SecurityDomainSessionCache.getExpiredSessions(createTimes, cutoff)) {
+
+                if (mCache != null) {
+                    mCache.remove(sessionId);
+                }
+
+                try {
+                    conn.delete(getSessionDN(sessionId));
+                    removed.add(sessionId);
+
+                } catch (LDAPException e) {
+                    if (e.getLDAPResultCode() != LDAPException.NO_SUCH_OBJECT) {
+                        throw e;
+                    }
+                    // removed by another server
+                }
+            }
+
+        } catch (LDAPException e) {
+            switch (e.getLDAPResultCode()) {
+            case LDAPException.NO_SUCH_OBJECT:
+                logger.debug("SecurityDomainSessionTable: No active sessions.");
+                break;
+            default:
+                logger.error("SecurityDomainSessionTable: RC: " + e.getLDAPResultCode());
+                throw e;
             }
 
         } finally {
@@ -265,27 +425,27 @@ public class LDAPSecurityDomainSessionTable
             }
         }
 
-        return ret;
+        return removed;
     }
 
     public String getIP(String sessionId) throws Exception {
-        return getStringValue(sessionId, "host");
+        Session session = getSession(sessionId);
+        return session == null ? null : session.getIP();
     }
 
     public String getUID(String sessionId) throws Exception {
-        return getStringValue(sessionId, "uid");
+        Session session = getSession(sessionId);
+        return session == null ? null : session.getUID();
     }
 
     public String getGroup(String sessionId) throws Exception {
-        return getStringValue(sessionId, "cmsUserGroup");
+        Session session = getSession(sessionId);
+        return session == null ? null : session.getGroup();
     }
 
     public long getBeginTime(String sessionId) throws Exception {
-        String beginStr = getStringValue(sessionId, "dateOfCreate");
-        if (beginStr != null) {
-            return Long.parseLong(beginStr);
-        }
-        return -1;
+        Session session = getSession(sessionId);
+        return session == null ? -1 : session.getBeginTime();
     }
 
     public long getTimeToLive() {
@@ -294,19 +454,15 @@ public class LDAPSecurityDomainSessionTable
 
     public int getSize() throws Exception {
 
-        CMSEngine engine = (CMSEngine) CMS.getCMSEngine();
-        IConfigStore cs = engine.getConfigStore();
         LDAPConnection conn = null;
         int ret = 0;
 
         try {
-            String basedn = cs.getString("internaldb.basedn");
-            String sessionsdn = "ou=sessions,ou=Security Domain," + basedn;
             String filter = "(objectclass=securityDomainSessionEntry)";
             String[] attrs = { "cn" };
 
             conn = mLdapConnFactory.getConn();
-            LDAPSearchResults res = conn.search(sessionsdn, LDAPv2.SCOPE_SUB, filter, attrs, false);
+            LDAPSearchResults res = conn.search(mSessionsDN, LDAPv2.SCOPE_SUB, filter, attrs, false);
             ret = res.getCount();
 
         } finally {
@@ -321,8 +477,111 @@ public class LDAPSecurityDomainSessionTable
         return ret;
     }
 
+    /**
+     * Applies the sessions added or removed by other
+     * servers to the local cache.
+     */
+    public void run() {
+
+        int op = LDAPPersistSearchControl.ADD
+            | LDAPPersistSearchControl.MODIFY
+            | LDAPPersistSearchControl.DELETE
+            | LDAPPersistSearchControl.MODDN;
+        LDAPPersistSearchControl persistCtrl =
+            new LDAPPersistSearchControl(op, true, true, true);
+
+        LDAPConnection conn = null;
+
+        logger.info("Security domain session monitor: starting.");
+
+        while (!mStopped) {
+            try {
+                conn = mMonitorConnFactory.getConn();
+                ensureSessionsOU(conn);
+                LDAPSearchConstraints cons = conn.getSearchConstraints();
+                cons.setServerControls(persistCtrl);
+                cons.setBatchSize(1);
+                cons.setServerTimeLimit(0 /* seconds */);
+                LDAPSearchResults results = conn.search(
+                    mSessionsDN, LDAPConnection.SCOPE_ONE,
+                    "(objectclass=securityDomainSessionEntry)",
+                    SESSION_ATTRS, false, cons);
+
+                // changes may have been missed while disconnected
+                mCache.clear();
+
+                while (!mStopped && results.hasMoreElements()) {
+                    LDAPEntry entry = results.next();
+
+                    LDAPEntryChangeControl changeControl = (LDAPEntryChangeControl)
+                        LDAPUtil.getControl(
+                            LDAPEntryChangeControl.class, results.getResponseControls());
+
+                    if (changeControl == null) {
+                        continue;
+                    }
+
+                    String sessionId = getAttributeValue(entry, "cn");
+                    if (sessionId == null) {
+                        continue;
+                    }
+
+                    switch (changeControl.getChangeType()) {
+                    case LDAPPersistSearchControl.ADD:
+                    case LDAPPersistSearchControl.MODIFY:
+                        logger.debug("Security domain session monitor: " + sessionId + " added");
+                        mCache.update(sessionId, createSession(entry));
+                        break;
+                    default:
+                        logger.debug("Security domain session monitor: " + sessionId + " removed");
+                        mCache.update(sessionId, null);
+                        break;
+                    }
+                }
+            } catch (ELdapException e) {
+                logger.warn("Security domain session monitor: failed to get LDAPConnection. Retrying in 1 second.");
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            } catch (LDAPException e) {
+                if (!mStopped) {
+                    logger.error("Security domain session monitor: Caught exception: " + e, e);
+                    mCache.clear();
+                    try {
+                        Thread.sleep(1000);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            } finally {
+                if (conn != null) {
+                    try {
+                        mMonitorConnFactory.returnConn(conn);
+                        conn = null;
+                    } catch (Exception e) {
+                        logger.error("Security domain session monitor: Error releasing the LDAPConnection" + e, e);
+                    }
+                }
+            }
+        }
+
+        logger.info("Security domain session monitor: stopping.");
+    }
+
     public void shutdown() {
+
+        mStopped = true;
+
+        if (mCache != null) {
+            mCache.clear();
+        }
+
         try {
+            if (mMonitorConnFactory != null) {
+                mMonitorConnFactory.reset();
+            }
             mLdapConnFactory.reset();
         } catch (ELdapException e) {
             logger.warn("Unable to reset connection factory");
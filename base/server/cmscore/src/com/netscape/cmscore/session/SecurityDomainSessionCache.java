@@ -0,0 +1,199 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2019 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package com.netscape.cmscore.session;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The SecurityDomainSessionCache class keeps the security domain
+ * sessions read by LDAPSecurityDomainSessionTable for a limited time.
+ * <p>
+ * Every removal increments a generation counter before the session
+ * is removed. A session read from the database is only added if the
+ * generation has not changed since the read started, so a session
+ * removed or expired while it was being read is not cached again.
+ */
+public class SecurityDomainSessionCache {
+
+    private long mTTL;
+
+    // cached sessions by session ID
+    private Map<String, Session> mSessions = new ConcurrentHashMap<String, Session>();
+
+    private AtomicLong mGeneration = new AtomicLong();
+
+    /**
+     * @param ttl time to live of each session in milliseconds
+     */
+    public SecurityDomainSessionCache(long ttl) {
+        mTTL = ttl;
+    }
+
+    /**
+     * Returns the cached session, or null if the session
+     * has to be read from the database.
+     */
+    public Session get(String sessionId) {
+
+        Session session = mSessions.get(sessionId);
+        if (session == null) {
+            return null;
+        }
+
+        if (session.cachedUntil > System.currentTimeMillis()) {
+            return session;
+        }
+
+        mSessions.remove(sessionId, session);
+        return null;
+    }
+
+    /**
+     * Returns the current generation. The value has to be obtained
+     * before reading or adding a session in the database and passed
+     * to {@link #put(String, Session, long)}.
+     */
+    public long getGeneration() {
+        return mGeneration.get();
+    }
+
+    /**
+     * Adds a session unless a session has been removed
+     * since the given generation.
+     */
+    public void put(String sessionId, Session session, long generation) {
+
+        if (generation != mGeneration.get()) {
+            return;
+        }
+
+        mSessions.put(sessionId, session);
+
+        // removals increment the generation before removing the
+        // session, so either the removal removed this session or
+        // the new generation is visible here
+        if (generation != mGeneration.get()) {
+            mSessions.remove(sessionId, session);
+        }
+    }
+
+    /**
+     * Applies a session added, modified or, if the session
+     * is null, removed on any server.
+     */
+    public void update(String sessionId, Session session) {
+
+        if (session == null) {
+            remove(sessionId);
+            return;
+        }
+
+        mSessions.put(sessionId, session);
+    }
+
+    public void remove(String sessionId) {
+        mGeneration.incrementAndGet();
+        mSessions.remove(sessionId);
+    }
+
+    public void clear() {
+        mGeneration.incrementAndGet();
+        mSessions.clear();
+    }
+
+    public int getSize() {
+        return mSessions.size();
+    }
+
+    /**
+     * Creates a session that stays in the cache for the time to live.
+     */
+    public Session createSession(String ip, String uid, String group, long beginTime) {
+        return new Session(ip, uid, group, beginTime, System.currentTimeMillis() + mTTL);
+    }
+
+    /**
+     * Returns the IDs of the sessions created before the cutoff
+     * time. Sessions without a valid creation time are skipped.
+     *
+     * @param createTimes creation times by session ID
+     * @param cutoff cutoff time in milliseconds
+     */
+    public static List<String> getExpiredSessions(Map<String, String> createTimes, long cutoff) {
+
+        List<String> expired = new ArrayList<String>();
+
+        for (Map.Entry<String, String> entry : createTimes.entrySet()) {
+
+            String beginStr = entry.getValue();
+            if (beginStr == null) {
+                continue;
+            }
+
+            long beginTime;
+            try {
+                beginTime = Long.parseLong(beginStr);
+            } catch (NumberFormatException e) {
+                continue;
+            }
+
+            if (beginTime < cutoff) {
+                expired.add(entry.getKey());
+            }
+        }
+
+        return expired;
+    }
+
+    public static class Session {
+
+        String ip;
+        String uid;
+        String group;
+        long beginTime;
+        long cachedUntil;
+
+        Session(String ip, String uid, String group, long beginTime, long cachedUntil) {
+            this.ip = ip;
+            this.uid = uid;
+            this.group = group;
+            this.beginTime = beginTime;
+            this.cachedUntil = cachedUntil;
+        }
+
+        public String getIP() {
+            return ip;
+        }
+
+        public String getUID() {
+            return uid;
+        }
+
+        public String getGroup() {
+            return group;
+        }
+
+        public long getBeginTime() {
+            return beginTime;
+        }
+    }
+}
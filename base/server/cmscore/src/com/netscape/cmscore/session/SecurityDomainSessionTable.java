@@ -17,9 +17,12 @@
 // --- END COPYRIGHT BLOCK ---
 package com.netscape.cmscore.session;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
 import java.util.Vector;
 
 import com.netscape.certsrv.base.ISecurityDomainSessionTable;
@@ -64,6 +67,27 @@ public class SecurityDomainSessionTable
         return m_sessions.keys();
     }
 
+    public List<String> removeExpiredEntries() {
+
+        List<String> removed = new ArrayList<String>();
+        long cutoff = new Date().getTime() - m_timeToLive;
+
+        synchronized (m_sessions) {
+            for (Map.Entry<String, Vector<Comparable<?>>> entry : m_sessions.entrySet()) {
+                Long beginTime = (Long) entry.getValue().elementAt(3);
+                if (beginTime.longValue() < cutoff) {
+                    removed.add(entry.getKey());
+                }
+            }
+
+            for (String sessionId : removed) {
+                m_sessions.remove(sessionId);
+            }
+        }
+
+        return removed;
+    }
+
     public String getIP(String sessionId) {
         Vector<Comparable<?>> v = m_sessions.get(sessionId);
         if (v != null)
@@ -17,8 +17,7 @@
 // --- END COPYRIGHT BLOCK ---
 package com.netscape.cmscore.session;
 
-import java.util.Date;
-import java.util.Enumeration;
+import java.util.List;
 import java.util.TimerTask;
 
 import com.netscape.certsrv.base.ISecurityDomainSessionTable;
@@ -51,28 +50,20 @@ public class SessionTimer extends TimerTask {
 
     public void runImpl() throws Exception {
 
-        Enumeration<String> keys = m_sessiontable.getSessionIDs();
-        while (keys.hasMoreElements()) {
-            String sessionId = keys.nextElement();
-            long beginTime = m_sessiontable.getBeginTime(sessionId);
-            Date nowDate = new Date();
-            long nowTime = nowDate.getTime();
-            long timeToLive = m_sessiontable.getTimeToLive();
-            if ((nowTime - beginTime) > timeToLive) {
-                m_sessiontable.removeEntry(sessionId);
-                logger.debug("SessionTimer run: successfully remove the session id entry from the table.");
+        List<String> removed = m_sessiontable.removeExpiredEntries();
 
-                // audit message
-                String auditParams = "operation;;expire_token+token;;" + sessionId;
-                String auditMessage = CMS.getLogMessage(
-                                         AuditEvent.SECURITY_DOMAIN_UPDATE,
-                                         "system",
-                                         ILogger.SUCCESS,
-                                         auditParams);
+        for (String sessionId : removed) {
+            logger.debug("SessionTimer run: successfully remove the session id entry from the table.");
 
-                signedAuditLogger.log(auditMessage);
+            // audit message
+            String auditParams = "operation;;expire_token+token;;" + sessionId;
+            String auditMessage = CMS.getLogMessage(
+                                     AuditEvent.SECURITY_DOMAIN_UPDATE,
+                                     "system",
+                                     ILogger.SUCCESS,
+                                     auditParams);
 
-            }
+            signedAuditLogger.log(auditMessage);
         }
     }
 }
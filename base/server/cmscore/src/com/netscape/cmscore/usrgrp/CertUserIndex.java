@@ -0,0 +1,192 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2019 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package com.netscape.cmscore.usrgrp;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The CertUserIndex class is an in-memory index of the certificates
+ * of the users in the user database. It maps the SHA-256 fingerprint
+ * of each certificate, and the certificate string stored in the
+ * description attribute of the user entry (version, serial number,
+ * issuer and subject), to the user ID.
+ * <p>
+ * The index is loaded by UGSubsystem at startup and kept current by
+ * the local certificate operations and by a persistent search on the
+ * users container. Lookups do not lock. Since a change made on
+ * another server may not have been received yet, the caller has to
+ * verify the user found in the index and fall back to a search if it
+ * does not match.
+ */
+public class CertUserIndex {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(CertUserIndex.class);
+
+    // user IDs by certificate fingerprint and by certificate string
+    private Map<String, String> mFingerprints = new ConcurrentHashMap<String, String>();
+    private Map<String, String> mCertStrings = new ConcurrentHashMap<String, String>();
+
+    // indexed keys by user ID
+    private Map<String, Keys> mUsers = new ConcurrentHashMap<String, Keys>();
+
+    private volatile boolean mLoaded;
+
+    private AtomicLong mHits = new AtomicLong();
+    private AtomicLong mMisses = new AtomicLong();
+
+    /**
+     * Returns the SHA-256 fingerprint of an encoded certificate.
+     */
+    public static String getFingerprint(byte[] encoded) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return Base64.getEncoder().encodeToString(digest.digest(encoded));
+
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns the ID of the user with the certificate of the given
+     * fingerprint, or null if not found.
+     */
+    public String findUserByFingerprint(String fingerprint) {
+        return count(mFingerprints.get(fingerprint));
+    }
+
+    /**
+     * Returns the ID of the user with the given certificate string,
+     * or null if not found.
+     */
+    public String findUserByCertString(String certString) {
+        return count(mCertStrings.get(certString.toLowerCase()));
+    }
+
+    private String count(String userID) {
+        if (userID == null) {
+            mMisses.incrementAndGet();
+        } else {
+            mHits.incrementAndGet();
+        }
+        return userID;
+    }
+
+    /**
+     * Replaces the certificates indexed for a user.
+     *
+     * @param userID user ID
+     * @param certStrings values of the description attribute
+     * @param certs values of the userCertificate attribute
+     */
+    public synchronized void setUser(String userID, Collection<String> certStrings, Collection<byte[]> certs) {
+
+        removeKeys(userID, mUsers.remove(userID));
+
+        Keys keys = new Keys();
+
+        for (String certString : certStrings) {
+            String key = certString.toLowerCase();
+            keys.certStrings.add(key);
+            mCertStrings.put(key, userID);
+        }
+
+        for (byte[] cert : certs) {
+            String key = getFingerprint(cert);
+            keys.fingerprints.add(key);
+            mFingerprints.put(key, userID);
+        }
+
+        if (!keys.certStrings.isEmpty() || !keys.fingerprints.isEmpty()) {
+            mUsers.put(userID, keys);
+        }
+    }
+
+    public synchronized void removeUser(String userID) {
+        removeKeys(userID, mUsers.remove(userID));
+    }
+
+    private void removeKeys(String userID, Keys keys) {
+
+        if (keys == null) {
+            return;
+        }
+
+        for (String key : keys.certStrings) {
+            mCertStrings.remove(key, userID);
+        }
+
+        for (String key : keys.fingerprints) {
+            mFingerprints.remove(key, userID);
+        }
+    }
+
+    public synchronized void clear() {
+        mLoaded = false;
+        mUsers.clear();
+        mCertStrings.clear();
+        mFingerprints.clear();
+    }
+
+    /**
+     * Indicates whether the index has been loaded completely.
+     */
+    public boolean isLoaded() {
+        return mLoaded;
+    }
+
+    public void setLoaded(boolean loaded) {
+        mLoaded = loaded;
+    }
+
+    public int getUsers() {
+        return mUsers.size();
+    }
+
+    public int getCertificates() {
+        return mFingerprints.size();
+    }
+
+    public long getHits() {
+        return mHits.get();
+    }
+
+    public long getMisses() {
+        return mMisses.get();
+    }
+
+    public String toString() {
+        return "CertUserIndex[users=" + getUsers()
+                + ", certificates=" + getCertificates()
+                + ", hits=" + getHits()
+                + ", misses=" + getMisses() + "]";
+    }
+
+    static class Keys {
+        List<String> certStrings = new ArrayList<String>();
+        List<String> fingerprints = new ArrayList<String>();
+    }
+}
@@ -0,0 +1,275 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2019 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package com.netscape.cmscore.usrgrp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import netscape.ldap.LDAPDN;
+
+/**
+ * The GroupMembershipCache class is a bounded cache of group
+ * membership lookups used by UGSubsystem.isMemberOf().
+ * <p>
+ * For each user DN the cache keeps the result of the membership
+ * lookup of each group, including negative results. Results expire
+ * after a fixed time to live.
+ * <p>
+ * Results are invalidated when a group or user is modified locally
+ * and, when the persistent search on the groups container is running,
+ * when a group is modified on another server. A result read from the
+ * database is only added if no invalidation happened while it was
+ * being read, so a concurrent modification cannot leave a stale
+ * result in the cache.
+ * <p>
+ * Lookups do not lock the cache. When the cache is full, a single
+ * thread removes the least recently used users, down to slightly
+ * below the maximum size so that the eviction cost is spread over
+ * several additions.
+ */
+public class GroupMembershipCache {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(GroupMembershipCache.class);
+
+    private int mMaxUsers;
+    private long mTTL;
+
+    // group memberships by user DN
+    private ConcurrentHashMap<String, UserEntry> mUsers = new ConcurrentHashMap<String, UserEntry>();
+    private ReentrantLock mEvictionLock = new ReentrantLock();
+
+    private AtomicLong mGeneration = new AtomicLong();
+
+    private AtomicLong mHits = new AtomicLong();
+    private AtomicLong mMisses = new AtomicLong();
+    private AtomicLong mSavedCalls = new AtomicLong();
+
+    /**
+     * @param maxUsers maximum number of users
+     * @param ttl time to live of each result in milliseconds
+     */
+    public GroupMembershipCache(int maxUsers, long ttl) {
+        mMaxUsers = maxUsers;
+        mTTL = ttl;
+    }
+
+    /**
+     * Returns the cached membership of the user in the group, or null
+     * if the membership has to be read from the database.
+     */
+    public Boolean get(String userDN, String group) {
+
+        UserEntry user = mUsers.get(normalizeDN(userDN));
+        String name = group.toLowerCase();
+        Entry entry = user == null ? null : user.groups.get(name);
+
+        if (entry == null || entry.expires <= System.currentTimeMillis()) {
+            if (entry != null) {
+                user.groups.remove(name, entry);
+            }
+            mMisses.incrementAndGet();
+            return null;
+        }
+
+        user.lastAccess = System.nanoTime();
+        mHits.incrementAndGet();
+        mSavedCalls.incrementAndGet();
+        return entry.member;
+    }
+
+    /**
+     * Returns the current generation. The value has to be obtained
+     * before reading the membership from the database and passed to
+     * {@link #put(String, String, boolean, long)}.
+     */
+    public long getGeneration() {
+        return mGeneration.get();
+    }
+
+    /**
+     * Adds a membership read from the database unless the cache
+     * has been invalidated since the given generation.
+     */
+    public void put(String userDN, String group, boolean member, long generation) {
+
+        if (generation != mGeneration.get()) {
+            return;
+        }
+
+        String key = normalizeDN(userDN);
+        UserEntry user = mUsers.get(key);
+
+        if (user == null) {
+            UserEntry newUser = new UserEntry();
+            user = mUsers.putIfAbsent(key, newUser);
+            if (user == null) {
+                user = newUser;
+            }
+        }
+
+        String name = group.toLowerCase();
+        Entry entry = new Entry(member, System.currentTimeMillis() + mTTL);
+        user.groups.put(name, entry);
+        user.lastAccess = System.nanoTime();
+
+        // invalidations increment the generation before removing
+        // results, so either the invalidation removed this result
+        // or the new generation is visible here
+        if (generation != mGeneration.get()) {
+            user.groups.remove(name, entry);
+            return;
+        }
+
+        if (mUsers.size() > mMaxUsers) {
+            evict();
+        }
+    }
+
+    /**
+     * Removes the least recently used users. Threads that find
+     * an eviction in progress do not wait for it.
+     */
+    void evict() {
+
+        if (!mEvictionLock.tryLock()) {
+            return;
+        }
+
+        try {
+            int target = mMaxUsers - mMaxUsers / 8;
+            if (mUsers.size() <= target) {
+                return;
+            }
+
+            List<Map.Entry<String, UserEntry>> users = new ArrayList<Map.Entry<String, UserEntry>>(mUsers.entrySet());
+            Collections.sort(users, new Comparator<Map.Entry<String, UserEntry>>() {
+                public int compare(Map.Entry<String, UserEntry> u1, Map.Entry<String, UserEntry> u2) {
+                    return Long.compare(u1.getValue().lastAccess, u2.getValue().lastAccess);
+                }
+            });
+
+            Iterator<Map.Entry<String, UserEntry>> i = users.iterator();
+            while (mUsers.size() > target && i.hasNext()) {
+                Map.Entry<String, UserEntry> user = i.next();
+                mUsers.remove(user.getKey(), user.getValue());
+            }
+
+        } finally {
+            mEvictionLock.unlock();
+        }
+    }
+
+    public void invalidateGroup(String group) {
+
+        mGeneration.incrementAndGet();
+
+        String name = group.toLowerCase();
+        for (UserEntry user : mUsers.values()) {
+            user.groups.remove(name);
+        }
+
+        logger.debug("GroupMembershipCache: invalidated group " + group);
+    }
+
+    public void invalidateUser(String userDN) {
+
+        mGeneration.incrementAndGet();
+
+        if (mUsers.remove(normalizeDN(userDN)) != null) {
+            logger.debug("GroupMembershipCache: invalidated user " + userDN);
+        }
+    }
+
+    public void invalidateAll() {
+        mGeneration.incrementAndGet();
+        mUsers.clear();
+    }
+
+    /**
+     * Records database calls avoided by a cache hit in addition
+     * to the membership lookup itself.
+     */
+    public void addSavedCalls(long calls) {
+        mSavedCalls.addAndGet(calls);
+    }
+
+    public int getSize() {
+        return mUsers.size();
+    }
+
+    public long getTTL() {
+        return mTTL;
+    }
+
+    public long getHits() {
+        return mHits.get();
+    }
+
+    public long getMisses() {
+        return mMisses.get();
+    }
+
+    /**
+     * Returns the number of LDAP calls avoided by the cache.
+     */
+    public long getSavedCalls() {
+        return mSavedCalls.get();
+    }
+
+    public double getHitRatio() {
+        long hits = mHits.get();
+        long total = hits + mMisses.get();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    public String toString() {
+        return "GroupMembershipCache[users=" + getSize()
+                + ", hits=" + getHits()
+                + ", misses=" + getMisses()
+                + ", savedCalls=" + getSavedCalls()
+                + ", hitRatio=" + getHitRatio() + "]";
+    }
+
+    static String normalizeDN(String dn) {
+        return LDAPDN.normalize(dn).toLowerCase();
+    }
+
+    static class UserEntry {
+
+        ConcurrentHashMap<String, Entry> groups = new ConcurrentHashMap<String, Entry>();
+        volatile long lastAccess = System.nanoTime();
+    }
+
+    static class Entry {
+
+        boolean member;
+        long expires;
+
+        Entry(boolean member, long expires) {
+            this.member = member;
+            this.expires = expires;
+        }
+    }
+}
@@ -24,6 +24,7 @@ import java.util.Collections;
 import java.util.Enumeration;
 import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.lang.StringUtils;
 import org.mozilla.jss.netscape.security.x509.X509CertImpl;
@@ -46,6 +47,7 @@ import com.netscape.certsrv.usrgrp.IUser;
 import com.netscape.certsrv.usrgrp.IUsrGrp;
 import com.netscape.cms.logging.Logger;
 import com.netscape.cmscore.apps.CMS;
+import com.netscape.cmscore.apps.CMSEngine;
 import com.netscape.cmscore.ldapconn.LdapBoundConnFactory;
 import com.netscape.cmsutil.ldap.LDAPUtil;
 
@@ -60,6 +62,8 @@ import netscape.ldap.LDAPModificationSet;
 import netscape.ldap.LDAPSearchConstraints;
 import netscape.ldap.LDAPSearchResults;
 import netscape.ldap.LDAPv2;
+import netscape.ldap.controls.LDAPEntryChangeControl;
+import netscape.ldap.controls.LDAPPersistSearchControl;
 
 /**
  * This class defines low-level LDAP usr/grp management
@@ -88,6 +92,15 @@ public final class UGSubsystem extends BaseSubsystem implements IUGSubsystem {
     protected static final String LDAP_ATTR_PROFILE_ID = "profileID";
 
     protected static final String PROP_BASEDN = "basedn";
+    protected static final String PROP_MEMBERSHIP_CACHE_SIZE = "membershipCache.size";
+    protected static final String PROP_MEMBERSHIP_CACHE_TTL = "membershipCache.ttl";
+    protected static final String PROP_CERT_INDEX_ENABLE = "certIndex.enable";
+
+    // size of the PKIRealm principal cache, which relies on the change counter
+    public static final String PROP_PRINCIPAL_CACHE_SIZE = "auth.principalCache.size";
+
+    private static final String[] CERT_INDEX_ATTRS = {
+            "uid", LDAP_ATTR_USER_CERT_STRING, LDAP_ATTR_USER_CERT };
 
     protected transient LdapBoundConnFactory mLdapConnFactory = null;
     protected String mBaseDN = null;
@@ -95,6 +108,14 @@ public final class UGSubsystem extends BaseSubsystem implements IUGSubsystem {
 
     private transient Logger mLogger = null;
 
+    private transient GroupMembershipCache mMembershipCache;
+    private transient CertUserIndex mCertUserIndex;
+    private transient LdapBoundConnFactory mMonitorConnFactory;
+    private transient volatile boolean mStopped;
+
+    // incremented whenever users, certificates or groups change
+    private transient AtomicLong mChangeCount = new AtomicLong();
+
     // singleton enforcement
 
     private static UGSubsystem mInstance = new UGSubsystem();
@@ -151,6 +172,43 @@ public final class UGSubsystem extends BaseSubsystem implements IUGSubsystem {
             mLdapConnFactory = new LdapBoundConnFactory("UGSubsystem");
             mLdapConnFactory.init(ldapConfig);
 
+            int cacheSize = config.getInteger(PROP_MEMBERSHIP_CACHE_SIZE, 0);
+            if (cacheSize > 0) {
+                long ttl = config.getInteger(PROP_MEMBERSHIP_CACHE_TTL, 60) * 1000L;
+                logger.info("UGSubsystem: caching group memberships of up to " + cacheSize
+                        + " users for " + ttl / 1000 + " seconds");
+                mMembershipCache = new GroupMembershipCache(cacheSize, ttl);
+
+            }
+
+            if (config.getBoolean(PROP_CERT_INDEX_ENABLE, false)) {
+                logger.info("UGSubsystem: indexing user certificates");
+                mCertUserIndex = new CertUserIndex();
+            }
+
+            // the change counter has to include changes made
+            // on other servers while principals are cached
+            CMSEngine engine = CMS.getCMSEngine();
+            IConfigStore cs = engine.getConfigStore();
+            boolean trackChanges = cs.getInteger(PROP_PRINCIPAL_CACHE_SIZE, 0) > 0;
+
+            // track changes made on other servers
+            mStopped = false;
+
+            if (mMembershipCache != null || mCertUserIndex != null || trackChanges) {
+                mMonitorConnFactory = new LdapBoundConnFactory("UGSubsystemMonitor");
+                mMonitorConnFactory.init(ldapConfig);
+            }
+
+            if (mMembershipCache != null || trackChanges) {
+                startMonitor(new GroupChangeMonitor());
+            }
+
+            if (mCertUserIndex != null || trackChanges) {
+                // the index is loaded once the persistent search is running
+                startMonitor(new UserChangeMonitor());
+            }
+
         } catch (EBaseException e) {
             logger.error("UGSubsystem: initialization failed: " + e.getMessage(), e);
             throw e;
@@ -171,7 +229,21 @@ public final class UGSubsystem extends BaseSubsystem implements IUGSubsystem {
      * Disconnects usr/grp manager from the LDAP
      */
     public void shutdown() {
+
+        mStopped = true;
+
+        if (mMembershipCache != null) {
+            logger.info("UGSubsystem: " + mMembershipCache);
+        }
+
+        if (mCertUserIndex != null) {
+            logger.info("UGSubsystem: " + mCertUserIndex);
+        }
+
         try {
+            if (mMonitorConnFactory != null) {
+                mMonitorConnFactory.reset();
+            }
             if (mLdapConnFactory != null) {
                 mLdapConnFactory.reset();
             }
@@ -180,6 +252,330 @@ public final class UGSubsystem extends BaseSubsystem implements IUGSubsystem {
         }
     }
 
+    /**
+     * Returns the group membership cache, or null
+     * if the cache is disabled.
+     */
+    public GroupMembershipCache getMembershipCache() {
+        return mMembershipCache;
+    }
+
+    public long getChangeCount() {
+        return mChangeCount.get();
+    }
+
+    private void userChanged() {
+        mChangeCount.incrementAndGet();
+    }
+
+    private void certsChanged(String userID) {
+
+        mChangeCount.incrementAndGet();
+
+        if (mCertUserIndex == null) {
+            return;
+        }
+
+        LDAPConnection ldapconn = null;
+
+        try {
+            ldapconn = getConn();
+            LDAPSearchResults res = ldapconn.search(getUserDN(userID),
+                    LDAPv2.SCOPE_BASE, "(objectclass=*)", CERT_INDEX_ATTRS, false);
+
+            if (res.hasMoreElements()) {
+                indexUser(res.next());
+            }
+
+        } catch (LDAPException e) {
+            logger.warn("UGSubsystem: unable to index certificates of " + userID + ": " + e.getMessage(), e);
+            mCertUserIndex.removeUser(userID);
+
+        } catch (ELdapException e) {
+            logger.warn("UGSubsystem: unable to index certificates of " + userID + ": " + e.getMessage(), e);
+            mCertUserIndex.removeUser(userID);
+
+        } finally {
+            if (ldapconn != null)
+                returnConn(ldapconn);
+        }
+    }
+
+    private void groupChanged(String name) {
+        mChangeCount.incrementAndGet();
+        if (mMembershipCache != null) {
+            mMembershipCache.invalidateGroup(name);
+        }
+    }
+
+    private void startMonitor(ChangeMonitor monitor) {
+        Thread thread = new Thread(monitor, monitor.name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Runs a persistent search on a container and reports the entries
+     * modified there, including by other servers. Since changes may be
+     * missed while the search is not running, reset() is called each
+     * time the search is (re)started.
+     */
+    private abstract class ChangeMonitor implements Runnable {
+
+        String name;
+        String baseDN;
+        String[] attrs;
+
+        ChangeMonitor(String name, String baseDN, String[] attrs) {
+            this.name = name;
+            this.baseDN = baseDN;
+            this.attrs = attrs;
+        }
+
+        abstract void reset();
+
+        abstract void entryChanged(int changeType, LDAPEntry entry);
+
+        public void run() {
+
+            int op = LDAPPersistSearchControl.ADD
+                | LDAPPersistSearchControl.MODIFY
+                | LDAPPersistSearchControl.DELETE
+                | LDAPPersistSearchControl.MODDN;
+            LDAPPersistSearchControl persistCtrl =
+                new LDAPPersistSearchControl(op, true, true, true);
+
+            LDAPConnection conn = null;
+
+            logger.info(name + ": starting.");
+
+            while (!mStopped) {
+                try {
+                    conn = mMonitorConnFactory.getConn();
+                    LDAPSearchConstraints cons = conn.getSearchConstraints();
+                    cons.setServerControls(persistCtrl);
+                    cons.setBatchSize(1);
+                    cons.setServerTimeLimit(0 /* seconds */);
+                    LDAPSearchResults results = conn.search(
+                        baseDN, LDAPConnection.SCOPE_ONE, "(objectclass=*)",
+                        attrs, false, cons);
+
+                    // changes may have been missed while disconnected
+                    reset();
+
+                    while (!mStopped && results.hasMoreElements()) {
+                        LDAPEntry entry = results.next();
+
+                        LDAPEntryChangeControl changeControl = (LDAPEntryChangeControl)
+                            LDAPUtil.getControl(
+                                LDAPEntryChangeControl.class, results.getResponseControls());
+
+                        int changeType = changeControl == null
+                                ? LDAPPersistSearchControl.MODIFY
+                                : changeControl.getChangeType();
+
+                        logger.debug(name + ": change " + changeType + ": " + entry.getDN());
+                        entryChanged(changeType, entry);
+                    }
+                } catch (ELdapException e) {
+                    logger.warn(name + ": failed to get LDAPConnection. Retrying in 1 second.");
+                    try {
+                        Thread.sleep(1000);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                } catch (LDAPException e) {
+                    if (!mStopped) {
+                        logger.error(name + ": Caught exception: " + e, e);
+                        try {
+                            Thread.sleep(1000);
+                        } catch (InterruptedException ex) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                } finally {
+                    if (conn != null) {
+                        try {
+                            mMonitorConnFactory.returnConn(conn);
+                            conn = null;
+                        } catch (Exception e) {
+                            logger.error(name + ": Error releasing the LDAPConnection" + e, e);
+                        }
+                    }
+                }
+            }
+
+            logger.info(name + ": stopping.");
+        }
+    }
+
+    /**
+     * Invalidates the cached memberships of modified groups
+     * and updates the change counter.
+     */
+    private class GroupChangeMonitor extends ChangeMonitor {
+
+        GroupChangeMonitor() {
+            super("groupChangeMonitor", getGroupBaseDN(), new String[] { "cn" });
+        }
+
+        void reset() {
+            if (mMembershipCache != null) {
+                mMembershipCache.invalidateAll();
+            }
+            mChangeCount.incrementAndGet();
+        }
+
+        void entryChanged(int changeType, LDAPEntry entry) {
+
+            if (changeType == LDAPPersistSearchControl.MODDN) {
+                reset();
+                return;
+            }
+
+            String[] rdn = LDAPDN.explodeDN(entry.getDN(), true);
+            groupChanged(rdn[0]);
+        }
+    }
+
+    /**
+     * Keeps the certificate index current and updates the change
+     * counter, including for user certificates removed on other
+     * servers.
+     */
+    private class UserChangeMonitor extends ChangeMonitor {
+
+        UserChangeMonitor() {
+            super("userChangeMonitor", getUserBaseDN(), CERT_INDEX_ATTRS);
+        }
+
+        void reset() {
+            if (mCertUserIndex != null) {
+                loadCertUserIndex();
+            }
+            mChangeCount.incrementAndGet();
+        }
+
+        void entryChanged(int changeType, LDAPEntry entry) {
+
+            if (changeType == LDAPPersistSearchControl.MODDN) {
+                reset();
+                return;
+            }
+
+            if (mCertUserIndex != null) {
+                if (changeType == LDAPPersistSearchControl.DELETE) {
+                    String[] rdn = LDAPDN.explodeDN(entry.getDN(), true);
+                    mCertUserIndex.removeUser(rdn[0]);
+
+                } else {
+                    indexUser(entry);
+                }
+            }
+
+            userChanged();
+        }
+    }
+
+    /**
+     * Loads the certificates of all users into the certificate index.
+     */
+    private void loadCertUserIndex() {
+
+        logger.info("UGSubsystem: loading certificate index");
+
+        mCertUserIndex.clear();
+        LDAPConnection ldapconn = null;
+
+        try {
+            ldapconn = getConn();
+            LDAPSearchResults res = ldapconn.search(getUserBaseDN(),
+                    LDAPv2.SCOPE_SUB, "(" + LDAP_ATTR_USER_CERT_STRING + "=*)",
+                    CERT_INDEX_ATTRS, false);
+
+            while (res.hasMoreElements()) {
+                indexUser(res.next());
+            }
+
+            mCertUserIndex.setLoaded(true);
+            logger.info("UGSubsystem: " + mCertUserIndex);
+
+        } catch (LDAPException e) {
+            logger.warn("UGSubsystem: unable to load certificate index: " + e.getMessage(), e);
+
+        } catch (ELdapException e) {
+            logger.warn("UGSubsystem: unable to load certificate index: " + e.getMessage(), e);
+
+        } finally {
+            if (ldapconn != null)
+                returnConn(ldapconn);
+        }
+    }
+
+    private void indexUser(LDAPEntry entry) {
+
+        LDAPAttribute uid = entry.getAttribute("uid");
+        if (uid == null) {
+            return;
+        }
+
+        String userID = uid.getStringValueArray()[0];
+
+        List<String> certStrings = new ArrayList<String>();
+        LDAPAttribute certStringAttr = entry.getAttribute(LDAP_ATTR_USER_CERT_STRING);
+        if (certStringAttr != null) {
+            Collections.addAll(certStrings, certStringAttr.getStringValueArray());
+        }
+
+        List<byte[]> certs = new ArrayList<byte[]>();
+        LDAPAttribute certAttr = entry.getAttribute(LDAP_ATTR_USER_CERT);
+        if (certAttr != null) {
+            Collections.addAll(certs, certAttr.getByteValueArray());
+        }
+
+        mCertUserIndex.setUser(userID, certStrings, certs);
+    }
+
+    /**
+     * Returns the user with the given certificate string from the
+     * certificate index, or null if the index cannot be used.
+     */
+    private IUser findUserInIndex(String userID, String certString) {
+
+        if (userID == null) {
+            return null;
+        }
+
+        // verify the user since a change made on
+        // another server may not have been received yet
+        IUser user = null;
+        try {
+            user = getUser(userID);
+        } catch (EUsrGrpException e) {
+            logger.warn("UGSubsystem: unable to get user " + userID + ": " + e.getMessage(), e);
+        }
+
+        if (user == null || user.getX509Certificates() == null) {
+            return null;
+        }
+
+        for (X509Certificate cert : user.getX509Certificates()) {
+            if (certString.equalsIgnoreCase(getCertificateString(cert))) {
+                return user;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns the certificate index, or null
+     * if the index is disabled.
+     */
+    public CertUserIndex getCertUserIndex() {
+        return mCertUserIndex;
+    }
+
     public IUser createUser(String id) {
         return new User(this, id);
     }
@@ -257,6 +653,19 @@ public final class UGSubsystem extends BaseSubsystem implements IUGSubsystem {
             return null;
         }
 
+        if (mCertUserIndex != null && mCertUserIndex.isLoaded()) {
+            try {
+                String userID = mCertUserIndex.findUserByFingerprint(
+                        CertUserIndex.getFingerprint(cert.getEncoded()));
+                User user = (User) findUserInIndex(userID, getCertificateString(cert));
+                if (user != null) {
+                    return user;
+                }
+            } catch (CertificateEncodingException e) {
+                logger.warn("UGSubsystem: unable to encode certificate: " + e.getMessage(), e);
+            }
+        }
+
         LDAPConnection ldapconn = null;
 
         try {
@@ -288,6 +697,17 @@ public final class UGSubsystem extends BaseSubsystem implements IUGSubsystem {
             return null;
         }
 
+        String prefix = LDAP_ATTR_USER_CERT_STRING + "=";
+        if (mCertUserIndex != null && mCertUserIndex.isLoaded()
+                && filter.regionMatches(true, 0, prefix, 0, prefix.length())) {
+
+            String certString = filter.substring(prefix.length());
+            IUser user = findUserInIndex(mCertUserIndex.findUserByCertString(certString), certString);
+            if (user != null) {
+                return user;
+            }
+        }
+
         // To handle \ in the issuer DN or subject DN
         // (see also RFC 2254, and bug #348303
         int hasSlash = filter.indexOf('\\');
@@ -351,7 +771,7 @@ public final class UGSubsystem extends BaseSubsystem implements IUGSubsystem {
         LDAPConnection ldapconn = null;
 
         try {
-            ldapconn = getConn();
+            ldapconn = getReadConn();
 
             // use one-level search to search users in flat tree
             LDAPSearchResults res = ldapconn.search(
@@ -397,7 +817,7 @@ public final class UGSubsystem extends BaseSubsystem implements IUGSubsystem {
             attrs[0] = "uid";
             attrs[1] = "cn";
 
-            ldapconn = getConn();
+            ldapconn = getReadConn();
             LDAPSearchConstraints cons = new LDAPSearchConstraints();
 
             cons.setMaxResults(0);
@@ -847,6 +1267,7 @@ public final class UGSubsystem extends BaseSubsystem implements IUGSubsystem {
             } finally {
                 if (ldapconn != null)
                     returnConn(ldapconn);
+                certsChanged(user.getUserID());
             }
         }
 
@@ -894,6 +1315,7 @@ public final class UGSubsystem extends BaseSubsystem implements IUGSubsystem {
                 throw new EUsrGrpException(CMS.getUserMessage("CMS_USRGRP_USR_CERT_ERROR"));
 
             } finally {
+                userChanged();
                 if (ldapconn != null)
                     returnConn(ldapconn);
             }
@@ -944,6 +1366,7 @@ public final class UGSubsystem extends BaseSubsystem implements IUGSubsystem {
                 throw new EUsrGrpException(CMS.getUserMessage("CMS_USRGRP_USR_CERT_ERROR"));
 
             } finally {
+                userChanged();
                 if (ldapconn != null)
                     returnConn(ldapconn);
             }
@@ -1061,6 +1484,7 @@ public final class UGSubsystem extends BaseSubsystem implements IUGSubsystem {
             } finally {
                 if (ldapconn != null)
                     returnConn(ldapconn);
+                certsChanged(user.getUserID());
             }
         }
 
@@ -1084,6 +1508,7 @@ public final class UGSubsystem extends BaseSubsystem implements IUGSubsystem {
                     LDAPModification.ADD, memberAttr);
 
             ldapconn.modify(groupDN, singleChange);
+            groupChanged(grp.getGroupID());
 
         } catch (LDAPException e) {
             logger.error("UGSubsystem: " + CMS.getLogMessage("CMSCORE_USRGRP_ADD_USER_TO_GROUP", e.toString()), e);
@@ -1113,6 +1538,7 @@ public final class UGSubsystem extends BaseSubsystem implements IUGSubsystem {
                     LDAPModification.DELETE, memberAttr);
 
             ldapconn.modify(groupDN, singleChange);
+            groupChanged(grp.getGroupID());
 
         } catch (LDAPException e) {
             logger.error("UGSubsystem: " + CMS.getLogMessage("CMSCORE_USRGRP_REMOVE_USER_FROM_GROUP", e.toString()), e);
@@ -1140,6 +1566,14 @@ public final class UGSubsystem extends BaseSubsystem implements IUGSubsystem {
         try {
             ldapconn = getConn();
             ldapconn.delete("uid=" + LDAPUtil.escapeRDNValue(userid) + "," + getUserBaseDN());
+
+            if (mMembershipCache != null) {
+                mMembershipCache.invalidateUser(getUserDN(userid));
+            }
+
+            if (mCertUserIndex != null) {
+                mCertUserIndex.removeUser(userid);
+            }
             // for audit log
             SessionContext sessionContext = SessionContext.getContext();
             String adminId = (String) sessionContext.get(SessionContext.USER_ID);
@@ -1158,6 +1592,7 @@ public final class UGSubsystem extends BaseSubsystem implements IUGSubsystem {
             logger.error("UGSubsystem: " + CMS.getLogMessage("CMSCORE_USRGRP_REMOVE_USER", e.toString()), e);
 
         } finally {
+            userChanged();
             if (ldapconn != null)
                 returnConn(ldapconn);
         }
@@ -1295,6 +1730,7 @@ public final class UGSubsystem extends BaseSubsystem implements IUGSubsystem {
             throw new EUsrGrpException(CMS.getUserMessage("CMS_USRGRP_MOD_USER_FAIL"));
 
         } finally {
+            userChanged();
             if (ldapconn != null)
                 returnConn(ldapconn);
         }
@@ -1323,7 +1759,7 @@ public final class UGSubsystem extends BaseSubsystem implements IUGSubsystem {
         LDAPConnection ldapconn = null;
 
         try {
-            ldapconn = getConn();
+            ldapconn = getReadConn();
             LDAPSearchResults res =
                     ldapconn.search(getGroupBaseDN(), LDAPv2.SCOPE_SUB,
                             "(&(objectclass=groupofuniquenames)(cn=" + filter + "))",
@@ -1373,7 +1809,7 @@ public final class UGSubsystem extends BaseSubsystem implements IUGSubsystem {
         LDAPConnection ldapconn = null;
 
         try {
-            ldapconn = getConn();
+            ldapconn = getReadConn();
             LDAPSearchResults res = ldapconn.search(
                     getGroupBaseDN(),
                     LDAPv2.SCOPE_ONE,
@@ -1602,6 +2038,16 @@ public final class UGSubsystem extends BaseSubsystem implements IUGSubsystem {
     }
 
     public boolean isMemberOf(String userid, String groupname) {
+
+        if (mMembershipCache != null && userid != null && groupname != null) {
+            Boolean member = mMembershipCache.get(getUserDN(userid), groupname);
+            if (member != null) {
+                // the user lookup is not needed either
+                mMembershipCache.addSavedCalls(1);
+                return member;
+            }
+        }
+
         try {
             IUser user = getUser(userid);
             if (user != null) {
@@ -1629,6 +2075,13 @@ public final class UGSubsystem extends BaseSubsystem implements IUGSubsystem {
             return false;
         }
 
+        if (mMembershipCache != null && id.getUserDN() != null) {
+            Boolean member = mMembershipCache.get(id.getUserDN(), name);
+            if (member != null) {
+                return member;
+            }
+        }
+
         logger.trace("UGSubsystem.isMemberOf() using new lookup code");
         return isMemberOfLdapGroup(id.getUserDN(), name);
     }
@@ -1641,6 +2094,11 @@ public final class UGSubsystem extends BaseSubsystem implements IUGSubsystem {
         String basedn = "cn=" + LDAPUtil.escapeRDNValue(groupname) + ",ou=groups," + mBaseDN;
         LDAPConnection ldapconn = null;
         boolean founduser = false;
+
+        // obtained before the search so that a concurrent
+        // invalidation prevents caching the result
+        long generation = mMembershipCache == null ? 0 : mMembershipCache.getGeneration();
+
         try {
             // the group could potentially have many thousands
             // of members, (many values of the uniquemember
@@ -1666,6 +2124,11 @@ public final class UGSubsystem extends BaseSubsystem implements IUGSubsystem {
                 founduser = true;
             }
             logger.trace("authorization result: " + founduser);
+
+            // errors below are not cached
+            if (mMembershipCache != null && userid != null) {
+                mMembershipCache.put(userid, groupname, founduser, generation);
+            }
         } catch (LDAPException e) {
             String errMsg =
                     "isMemberOfLdapGroup: could not find group " + groupname + ". Error " + e;
@@ -1735,6 +2198,7 @@ public final class UGSubsystem extends BaseSubsystem implements IUGSubsystem {
 
             ldapconn = getConn();
             ldapconn.add(entry);
+            groupChanged(grp.getGroupID());
 
         } catch (LDAPException e) {
             logger.error("UGSubsystem: " + CMS.getLogMessage("CMSCORE_USRGRP_ADD_GROUP", e.toString()), e);
@@ -1766,6 +2230,7 @@ public final class UGSubsystem extends BaseSubsystem implements IUGSubsystem {
         try {
             ldapconn = getConn();
             ldapconn.delete("cn=" + LDAPUtil.escapeRDNValue(name) + "," + getGroupBaseDN());
+            groupChanged(name);
 
         } catch (LDAPException e) {
             logger.error("UGSubsystem: " + CMS.getLogMessage("CMSCORE_USRGRP_REMOVE_GROUP", e.toString()), e);
@@ -1828,6 +2293,7 @@ public final class UGSubsystem extends BaseSubsystem implements IUGSubsystem {
 
             ldapconn = getConn();
             ldapconn.modify(dn, mod);
+            groupChanged(grp.getGroupID());
 
         } catch (LDAPException e) {
             logger.error("UGSubsystem: " + CMS.getLogMessage("CMSCORE_USRGRP_MODIFY_GROUP", e.toString()), e);
@@ -1974,6 +2440,28 @@ public final class UGSubsystem extends BaseSubsystem implements IUGSubsystem {
         throw new ELdapException("Ldap Connection Factory is Unavailable");
     }
 
+    /**
+     * Returns a connection for listing users and groups, which may
+     * come from a read replica of the internal database.
+     * <p>
+     * Lookups used for authentication and authorization (users,
+     * certificates, groups and memberships) use getConn() instead,
+     * so that a user removed from a group or a certificate removed
+     * from a user on the primary cannot be used on a lagging replica.
+     */
+    protected LDAPConnection getReadConn() throws ELdapException {
+        if (mLdapConnFactory != null) {
+            LDAPConnection conn = mLdapConnFactory.getReadConn();
+            if (conn == null) {
+                throw new ELdapException("No Ldap Connection Available");
+            } else {
+                return conn;
+            }
+        }
+
+        throw new ELdapException("Ldap Connection Factory is Unavailable");
+    }
+
     protected void returnConn(LDAPConnection conn) {
         if (mLdapConnFactory != null)
             mLdapConnFactory.returnConn(conn);
@@ -0,0 +1,94 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2019 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package com.netscape.cmscore.util;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The IdleReleaser class releases the lazily initialized objects
+ * of a map that have not been used within a timeout.
+ * <p>
+ * An object is released by replacing it in the map with the uninitialized
+ * copy returned by {@link #release(Object)}. The object itself is never
+ * modified, so threads that obtained it before it was released keep
+ * using a fully initialized object, which is garbage collected once they
+ * are done. The replacement is conditional: an object that has been
+ * replaced or removed in the meantime is not put back into the map.
+ */
+public abstract class IdleReleaser<K, V> {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(IdleReleaser.class);
+
+    /**
+     * Returns the time the object was last used, or -1 if the
+     * object is not initialized or must not be released.
+     */
+    protected abstract long getLastAccessTime(V value);
+
+    /**
+     * Returns an uninitialized copy of the object.
+     */
+    protected abstract V release(V value) throws Exception;
+
+    /**
+     * Releases the objects that have not been used within the timeout.
+     *
+     * @param map the objects, which may be a synchronized map
+     * @param idleTimeout the timeout in milliseconds
+     * @return the keys of the released objects
+     */
+    public List<K> releaseIdle(Map<K, V> map, long idleTimeout) {
+
+        Map<K, V> values;
+        synchronized (map) {
+            values = new LinkedHashMap<K, V>(map);
+        }
+
+        long now = System.currentTimeMillis();
+        List<K> released = new ArrayList<K>();
+
+        for (Map.Entry<K, V> entry : values.entrySet()) {
+
+            K key = entry.getKey();
+            V value = entry.getValue();
+
+            long lastAccessTime = getLastAccessTime(value);
+            if (lastAccessTime < 0 || now - lastAccessTime <= idleTimeout) {
+                continue;
+            }
+
+            V copy;
+            try {
+                copy = release(value);
+
+            } catch (Exception e) {
+                logger.warn("IdleReleaser: Unable to release " + key + ": " + e.getMessage(), e);
+                continue;
+            }
+
+            if (map.replace(key, value, copy)) {
+                released.add(key);
+            }
+        }
+
+        return released;
+    }
+}
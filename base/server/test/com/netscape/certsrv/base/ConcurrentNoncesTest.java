@@ -0,0 +1,91 @@
+package com.netscape.certsrv.base;
+
+import java.math.BigInteger;
+
+import javax.crypto.spec.SecretKeySpec;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import com.netscape.cmscore.test.CMSBaseTestCase;
+
+public class ConcurrentNoncesTest extends CMSBaseTestCase {
+
+    ConcurrentNonces nonces;
+
+    public ConcurrentNoncesTest(String name) {
+        super(name);
+    }
+
+    public void cmsTestSetUp() {
+        nonces = new ConcurrentNonces(3, 0, null);
+    }
+
+    public void cmsTestTearDown() {
+    }
+
+    public static Test suite() {
+        return new TestSuite(ConcurrentNoncesTest.class);
+    }
+
+    public void testVerify() {
+        BigInteger id = BigInteger.valueOf(1);
+        long n = nonces.createNonce(id);
+
+        assertEquals(INonceStore.Result.VALID, nonces.verifyNonce(id, n));
+
+        // nonces can only be used once
+        assertEquals(INonceStore.Result.MISSING, nonces.verifyNonce(id, n));
+    }
+
+    public void testInvalid() {
+        BigInteger id = BigInteger.valueOf(2);
+        long n = nonces.createNonce(id);
+
+        assertEquals(INonceStore.Result.INVALID, nonces.verifyNonce(id, n + 1));
+        assertEquals(INonceStore.Result.MISSING, nonces.verifyNonce(id, n));
+    }
+
+    public void testLimit() {
+        nonces.put("a", 1L);
+        nonces.put("b", 2L);
+        nonces.put("c", 3L);
+        nonces.put("d", 4L);
+
+        assertEquals(3, nonces.size());
+        assertEquals(INonceStore.Result.MISSING, nonces.verifyNonce("a", 1L));
+        assertEquals(INonceStore.Result.VALID, nonces.verifyNonce("d", 4L));
+    }
+
+    public void testReplace() {
+        nonces.put("a", 1L);
+        nonces.put("b", 2L);
+        nonces.put("a", 3L);
+
+        // evicting the first nonce for "a" keeps the newer one
+        nonces.put("c", 4L);
+
+        assertEquals(INonceStore.Result.VALID, nonces.verifyNonce("a", 3L));
+    }
+
+    public void testLifetime() throws Exception {
+        nonces = new ConcurrentNonces(3, 1, null);
+        nonces.put("a", 1L);
+
+        Thread.sleep(10);
+
+        assertEquals(INonceStore.Result.INVALID, nonces.verifyNonce("a", 1L));
+    }
+
+    public void testStateless() {
+        SecretKeySpec key = new SecretKeySpec(new byte[32], StatelessNonces.ALGORITHM);
+        StatelessNonces session1 = new StatelessNonces(key, "session1:cert-revoke", 60000);
+        StatelessNonces session2 = new StatelessNonces(key, "session2:cert-revoke", 60000);
+
+        long n = session1.createNonce("1");
+
+        assertEquals(INonceStore.Result.VALID, session1.verifyNonce("1", n));
+        assertEquals(INonceStore.Result.INVALID, session1.verifyNonce("2", n));
+        assertEquals(INonceStore.Result.INVALID, session2.verifyNonce("1", n));
+    }
+}
@@ -0,0 +1,263 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2019 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package com.netscape.certsrv.request;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import com.netscape.cmscore.test.CMSBaseTestCase;
+
+public class PublishingCheckpointTest extends CMSBaseTestCase {
+
+    static final long HOUR = 3600 * 1000L;
+
+    public PublishingCheckpointTest(String name) {
+        super(name);
+    }
+
+    public void cmsTestSetUp() {
+    }
+
+    public void cmsTestTearDown() {
+    }
+
+    public static Test suite() {
+        return new TestSuite(PublishingCheckpointTest.class);
+    }
+
+    public void testSavesBeforeFirstRequest() {
+        TestCheckpoint checkpoint = new TestCheckpoint(100, HOUR);
+
+        checkpoint.queued(id(5));
+        assertEquals("4", checkpoint.stored);
+        assertEquals(1, checkpoint.saves.size());
+    }
+
+    public void testRateLimitsIdleTransitions() {
+        TestCheckpoint checkpoint = new TestCheckpoint(100, HOUR);
+
+        checkpoint.queued(id(5));
+        checkpoint.published(id(5));
+
+        // the queue is empty, but the checkpoint has just been saved
+        assertTrue(checkpoint.isIdle());
+        assertEquals("4", checkpoint.stored);
+
+        // the saved checkpoint still covers the following requests
+        for (int i = 6; i <= 50; i++) {
+            checkpoint.queued(id(i));
+            checkpoint.published(id(i));
+        }
+
+        assertEquals(1, checkpoint.saves.size());
+        assertEquals("4", checkpoint.stored);
+    }
+
+    public void testSavesAfterInterval() {
+        TestCheckpoint checkpoint = new TestCheckpoint(100, 0);
+
+        checkpoint.queued(id(5));
+        checkpoint.published(id(5));
+
+        assertEquals("-1", checkpoint.stored);
+        assertEquals(2, checkpoint.saves.size());
+    }
+
+    public void testSavesForLowerRequest() {
+        TestCheckpoint checkpoint = new TestCheckpoint(100, HOUR);
+
+        checkpoint.queued(id(5));
+        checkpoint.published(id(5));
+
+        // a request below the saved checkpoint is not covered
+        checkpoint.queued(id(3));
+        assertEquals("2", checkpoint.stored);
+    }
+
+    public void testSavesEveryCount() {
+        TestCheckpoint checkpoint = new TestCheckpoint(2, HOUR);
+
+        for (int i = 1; i <= 5; i++) {
+            checkpoint.queued(id(i));
+        }
+        assertEquals("0", checkpoint.stored);
+
+        checkpoint.published(id(1));
+        assertEquals(1, checkpoint.saves.size());
+
+        checkpoint.published(id(2));
+        assertEquals("2", checkpoint.stored);
+
+        // published out of order
+        checkpoint.published(id(4));
+        checkpoint.published(id(5));
+        assertEquals("2", checkpoint.stored);
+
+        checkpoint.published(id(3));
+        checkpoint.flush();
+        assertEquals("-1", checkpoint.stored);
+    }
+
+    public void testDuplicateRequests() {
+        TestCheckpoint checkpoint = new TestCheckpoint(100, 0);
+
+        checkpoint.queued(id(5));
+        checkpoint.queued(id(5));
+
+        checkpoint.published(id(5));
+        assertFalse(checkpoint.isIdle());
+        assertEquals("4", checkpoint.stored);
+
+        checkpoint.published(id(5));
+        assertTrue(checkpoint.isIdle());
+        assertEquals("-1", checkpoint.stored);
+    }
+
+    public void testDisabled() {
+        TestCheckpoint checkpoint = new TestCheckpoint(0, 0);
+
+        checkpoint.queued(id(5));
+        checkpoint.published(id(5));
+        checkpoint.flush();
+
+        assertTrue(checkpoint.saves.isEmpty());
+    }
+
+    public void testFlush() {
+        TestCheckpoint checkpoint = new TestCheckpoint(100, HOUR);
+
+        checkpoint.queued(id(5));
+        checkpoint.queued(id(6));
+        checkpoint.published(id(5));
+        assertEquals("4", checkpoint.stored);
+
+        checkpoint.flush();
+        assertEquals("5", checkpoint.stored);
+    }
+
+    public void testRecovery() {
+        TestCheckpoint checkpoint = new TestCheckpoint(100, HOUR);
+
+        // the checkpoint saved before the restart
+        checkpoint.startRecovery("10");
+        assertEquals("10", checkpoint.getCheckpoint());
+
+        checkpoint.setRecoveryCursor(id(12));
+        checkpoint.queued(id(12));
+        checkpoint.published(id(12));
+
+        // still recovering
+        assertFalse(checkpoint.isIdle());
+        assertTrue(checkpoint.saves.isEmpty());
+
+        checkpoint.setRecoveryCursor(id(15));
+        checkpoint.queued(id(15));
+        checkpoint.endRecovery();
+        assertTrue(checkpoint.saves.isEmpty());
+
+        checkpoint.published(id(15));
+        checkpoint.flush();
+        assertEquals("-1", checkpoint.stored);
+    }
+
+    public void testStoreFailure() {
+        TestCheckpoint checkpoint = new TestCheckpoint(100, HOUR);
+
+        checkpoint.failure = true;
+        checkpoint.queued(id(5));
+        assertEquals("-1", checkpoint.getCheckpoint());
+
+        // retried with the next request
+        checkpoint.failure = false;
+        checkpoint.queued(id(6));
+        assertEquals("4", checkpoint.stored);
+    }
+
+    /**
+     * Checks that after any sequence of queued and published requests
+     * the saved checkpoint would recover every unpublished request.
+     */
+    public void testCheckpointRecoversPendingRequests() {
+        Random random = new Random(1);
+        TestCheckpoint checkpoint = new TestCheckpoint(7, HOUR);
+
+        TreeMap<Integer, Integer> pending = new TreeMap<Integer, Integer>();
+        int next = 1;
+
+        for (int step = 0; step < 10000; step++) {
+
+            if (pending.isEmpty() || random.nextInt(3) > 0) {
+                // mostly increasing IDs, sometimes an older request
+                int id = random.nextInt(10) == 0 ? Math.max(1, next - random.nextInt(20)) : next++;
+                Integer count = pending.get(id);
+                pending.put(id, count == null ? 1 : count + 1);
+                checkpoint.queued(id(id));
+
+            } else {
+                List<Integer> ids = new ArrayList<Integer>(pending.keySet());
+                int id = ids.get(random.nextInt(ids.size()));
+                Integer count = pending.get(id);
+                if (count > 1) {
+                    pending.put(id, count - 1);
+                } else {
+                    pending.remove(id);
+                }
+                checkpoint.published(id(id));
+            }
+
+            // a restart recovers the requests after the saved checkpoint
+            if (!pending.isEmpty()) {
+                assertFalse("-1".equals(checkpoint.stored));
+                assertTrue(new BigInteger(checkpoint.stored).compareTo(id(pending.firstKey())) < 0);
+            }
+        }
+
+        // at most one save per transition from idle and every 7 requests
+        assertTrue(checkpoint.saves.size() < 10000 / 7 + 100);
+    }
+
+    static BigInteger id(int id) {
+        return BigInteger.valueOf(id);
+    }
+
+    static class TestCheckpoint extends PublishingCheckpoint {
+
+        String stored = EMPTY;
+        List<String> saves = new ArrayList<String>();
+        boolean failure;
+
+        TestCheckpoint(int saveStatus, long interval) {
+            super(saveStatus, interval);
+        }
+
+        protected boolean store(String checkpoint) {
+            if (failure) {
+                return false;
+            }
+            stored = checkpoint;
+            saves.add(checkpoint);
+            return true;
+        }
+    }
+}
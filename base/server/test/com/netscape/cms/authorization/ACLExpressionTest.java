@@ -0,0 +1,113 @@
+package com.netscape.cms.authorization;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import com.netscape.certsrv.authentication.IAuthToken;
+import com.netscape.certsrv.evaluators.IAccessEvaluator;
+import com.netscape.cmscore.test.CMSBaseTestCase;
+
+public class ACLExpressionTest extends CMSBaseTestCase {
+
+    Map<String, IAccessEvaluator> evaluators;
+
+    public ACLExpressionTest(String name) {
+        super(name);
+    }
+
+    public void cmsTestSetUp() {
+        evaluators = new HashMap<String, IAccessEvaluator>();
+        evaluators.put("group", new GroupEvaluator("Administrators", "Auditors"));
+    }
+
+    public void cmsTestTearDown() {
+    }
+
+    public static Test suite() {
+        return new TestSuite(ACLExpressionTest.class);
+    }
+
+    public void testTerm() {
+        ACLExpression.Term term = new ACLExpression.Term("group = \"Administrators\"");
+
+        assertEquals("group", term.getType());
+        assertEquals("=", term.getOp());
+        assertEquals("\"Administrators\"", term.getValue());
+        assertTrue(term.evaluate(null, evaluators));
+
+        term = new ACLExpression.Term("group!=\"Administrators\"");
+        assertEquals("!=", term.getOp());
+        assertFalse(term.evaluate(null, evaluators));
+    }
+
+    public void testOr() {
+        assertTrue(evaluate("group=\"Operators\" || group=\"Auditors\""));
+        assertFalse(evaluate("group=\"Operators\" || group=\"Agents\""));
+    }
+
+    public void testAnd() {
+        assertTrue(evaluate("group=\"Administrators\" && group=\"Auditors\""));
+        assertFalse(evaluate("group=\"Administrators\" && group=\"Agents\""));
+    }
+
+    public void testLeftToRight() {
+        // evaluated as (true || false) && false
+        assertFalse(evaluate("group=\"Auditors\" || group=\"Agents\" && group=\"Operators\""));
+
+        // evaluated as (false && true) || true
+        assertTrue(evaluate("group=\"Agents\" && group=\"Auditors\" || group=\"Administrators\""));
+    }
+
+    public void testUnknownEvaluator() {
+        assertFalse(evaluate("user=\"admin\""));
+        assertTrue(evaluate("user=\"admin\" || group=\"Administrators\""));
+    }
+
+    public void testEmpty() {
+        assertSame(ACLExpression.FALSE, ACLExpression.parse(""));
+        assertSame(ACLExpression.FALSE, ACLExpression.parse(null));
+    }
+
+    boolean evaluate(String expression) {
+        return ACLExpression.parse(expression).evaluate(null, evaluators);
+    }
+
+    static class GroupEvaluator implements IAccessEvaluator {
+
+        Set<String> groups;
+
+        GroupEvaluator(String... groups) {
+            this.groups = new HashSet<String>(Arrays.asList(groups));
+        }
+
+        public void init() {
+        }
+
+        public String getType() {
+            return "group";
+        }
+
+        public String getDescription() {
+            return "group membership evaluator";
+        }
+
+        public boolean evaluate(String type, String op, String value) {
+            return evaluate(null, type, op, value);
+        }
+
+        public boolean evaluate(IAuthToken authToken, String type, String op, String value) {
+            boolean member = groups.contains(value.replace("\"", ""));
+            return op.equals("=") ? member : !member;
+        }
+
+        public String[] getSupportedOperators() {
+            return new String[] { "=", "!=" };
+        }
+    }
+}
@@ -0,0 +1,146 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2019 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package com.netscape.cms.realm;
+
+import java.security.Principal;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import com.netscape.cmscore.test.CMSBaseTestCase;
+
+public class PrincipalCacheTest extends CMSBaseTestCase {
+
+    public PrincipalCacheTest(String name) {
+        super(name);
+    }
+
+    public void cmsTestSetUp() {
+    }
+
+    public void cmsTestTearDown() {
+    }
+
+    public static Test suite() {
+        return new TestSuite(PrincipalCacheTest.class);
+    }
+
+    public void testHitsAndMisses() {
+        PrincipalCache cache = new PrincipalCache(10, 60000);
+        Principal admin = new TestPrincipal("admin");
+
+        assertNull(cache.get("admin", 0));
+        cache.put("admin", admin, 0);
+
+        assertSame(admin, cache.get("admin", 0));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(0.5, cache.getHitRatio(), 0.0001);
+    }
+
+    public void testExpiration() throws Exception {
+        PrincipalCache cache = new PrincipalCache(10, 10);
+
+        cache.put("admin", new TestPrincipal("admin"), 0);
+        Thread.sleep(50);
+
+        assertNull(cache.get("admin", 0));
+        assertEquals(0, cache.getSize());
+    }
+
+    public void testChangeCountMismatch() {
+        PrincipalCache cache = new PrincipalCache(10, 60000);
+
+        cache.put("admin", new TestPrincipal("admin"), 1);
+
+        // a user or group changed after the principal was resolved
+        assertNull(cache.get("admin", 2));
+        assertEquals(0, cache.getSize());
+
+        // a principal resolved before a change is not used afterwards
+        cache.put("agent", new TestPrincipal("agent"), 1);
+        assertNull(cache.get("agent", 2));
+    }
+
+    public void testEvictsLeastRecentlyUsed() throws Exception {
+        PrincipalCache cache = new PrincipalCache(2, 60000);
+
+        cache.put("user1", new TestPrincipal("user1"), 0);
+        Thread.sleep(1);
+        cache.put("user2", new TestPrincipal("user2"), 0);
+        Thread.sleep(1);
+        cache.get("user1", 0);
+        Thread.sleep(1);
+        cache.put("user3", new TestPrincipal("user3"), 0);
+
+        assertEquals(2, cache.getSize());
+        assertNotNull(cache.get("user1", 0));
+        assertNull(cache.get("user2", 0));
+        assertNotNull(cache.get("user3", 0));
+    }
+
+    public void testEvictsBelowMaximum() throws Exception {
+        PrincipalCache cache = new PrincipalCache(8, 60000);
+
+        for (int i = 0; i < 9; i++) {
+            cache.put("user" + i, new TestPrincipal("user" + i), 0);
+            Thread.sleep(1);
+        }
+
+        // the least recently used principals are evicted
+        // down to below the maximum size
+        assertEquals(7, cache.getSize());
+        assertNull(cache.get("user0", 0));
+        assertNull(cache.get("user1", 0));
+        assertNotNull(cache.get("user8", 0));
+    }
+
+    public void testEvictsExpiredFirst() throws Exception {
+        PrincipalCache cache = new PrincipalCache(2, 20);
+
+        cache.put("user1", new TestPrincipal("user1"), 0);
+        cache.put("user2", new TestPrincipal("user2"), 0);
+        Thread.sleep(50);
+        cache.put("user3", new TestPrincipal("user3"), 0);
+
+        assertEquals(1, cache.getSize());
+        assertNotNull(cache.get("user3", 0));
+    }
+
+    public void testInvalidateAll() {
+        PrincipalCache cache = new PrincipalCache(10, 60000);
+
+        cache.put("admin", new TestPrincipal("admin"), 0);
+        cache.invalidateAll();
+
+        assertNull(cache.get("admin", 0));
+    }
+
+    static class TestPrincipal implements Principal {
+
+        String name;
+
+        TestPrincipal(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+}
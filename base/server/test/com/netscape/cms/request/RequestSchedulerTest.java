@@ -0,0 +1,157 @@
+package com.netscape.cms.request;
+
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import com.netscape.cmscore.test.CMSBaseTestCase;
+
+public class RequestSchedulerTest extends CMSBaseTestCase {
+
+    public RequestSchedulerTest(String name) {
+        super(name);
+    }
+
+    public void cmsTestSetUp() {
+    }
+
+    public void cmsTestTearDown() {
+    }
+
+    public static Test suite() {
+        return new TestSuite(RequestSchedulerTest.class);
+    }
+
+    public void testUnlimited() {
+        RequestScheduler.Gate gate = new RequestScheduler.Gate("test", 0, 0, 0);
+
+        assertTrue(gate.enter());
+        assertEquals(1, gate.getActive());
+
+        gate.exit();
+        assertEquals(0, gate.getActive());
+        assertEquals(1, gate.getEntered());
+    }
+
+    public void testReentrant() {
+        RequestScheduler.Gate gate = new RequestScheduler.Gate("test", 1, 0, 0);
+
+        assertTrue(gate.enter());
+        assertTrue(gate.enter());
+        assertEquals(1, gate.getActive());
+
+        gate.exit();
+        assertEquals(1, gate.getActive());
+
+        gate.exit();
+        assertEquals(0, gate.getActive());
+    }
+
+    public void testRejectWhenQueueFull() throws Exception {
+        final RequestScheduler.Gate gate = new RequestScheduler.Gate("test", 1, 0, 0);
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        Thread holder = new Thread() {
+            public void run() {
+                gate.enter();
+                entered.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                }
+                gate.exit();
+            }
+        };
+        holder.start();
+        entered.await();
+
+        assertFalse(gate.enter());
+        assertEquals(1, gate.getRejected());
+
+        release.countDown();
+        holder.join();
+
+        assertTrue(gate.enter());
+        gate.exit();
+    }
+
+    public void testRejectAfterTimeout() throws Exception {
+        final RequestScheduler.Gate gate = new RequestScheduler.Gate("test", 1, 1, 50);
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        Thread holder = new Thread() {
+            public void run() {
+                gate.enter();
+                entered.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                }
+                gate.exit();
+            }
+        };
+        holder.start();
+        entered.await();
+
+        assertFalse(gate.enter());
+        assertEquals(0, gate.getWaiting());
+        assertEquals(1, gate.getPeakWaiting());
+
+        release.countDown();
+        holder.join();
+    }
+
+    public void testOverrunDoesNotReleaseSlot() throws Exception {
+        final RequestScheduler.Gate gate = new RequestScheduler.Gate("test", 1, -1, 50);
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        Thread holder = new Thread() {
+            public void run() {
+                gate.enter();
+                entered.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                }
+                gate.exit();
+            }
+        };
+        holder.start();
+        entered.await();
+
+        // a stage wait times out and the request enters anyway
+        assertFalse(gate.enter());
+        gate.overrun();
+        assertEquals(2, gate.getActive());
+        assertEquals(1, gate.getOverruns());
+
+        gate.exit();
+        assertEquals(1, gate.getActive());
+
+        release.countDown();
+        holder.join();
+        assertEquals(0, gate.getActive());
+
+        // only the slot released by the holder is available
+        assertTrue(gate.enter());
+
+        final boolean[] result = new boolean[1];
+        Thread other = new Thread() {
+            public void run() {
+                result[0] = gate.enter();
+                if (result[0]) {
+                    gate.exit();
+                }
+            }
+        };
+        other.start();
+        other.join();
+
+        assertFalse(result[0]);
+        gate.exit();
+    }
+}
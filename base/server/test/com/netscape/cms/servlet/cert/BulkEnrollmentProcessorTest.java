@@ -0,0 +1,115 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2019 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package com.netscape.cms.servlet.cert;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import com.netscape.certsrv.cert.CertEnrollmentRequest;
+import com.netscape.certsrv.profile.IProfileAuthenticator;
+import com.netscape.certsrv.profile.ProfileAttribute;
+import com.netscape.certsrv.profile.ProfileInput;
+import com.netscape.cmscore.test.CMSBaseTestCase;
+
+public class BulkEnrollmentProcessorTest extends CMSBaseTestCase {
+
+    public BulkEnrollmentProcessorTest(String name) {
+        super(name);
+    }
+
+    public void cmsTestSetUp() {
+    }
+
+    public void cmsTestTearDown() {
+    }
+
+    public static Test suite() {
+        return new TestSuite(BulkEnrollmentProcessorTest.class);
+    }
+
+    public void testNoAuthenticatorAllowed() {
+        assertTrue(BulkEnrollmentProcessor.isBulkEnrollmentAllowed(null));
+    }
+
+    public void testClientCertAuthenticatorAllowed() {
+        assertTrue(BulkEnrollmentProcessor.isBulkEnrollmentAllowed(createAuthenticator(true)));
+    }
+
+    public void testCredentialAuthenticatorRejected() {
+        // e.g. PIN or CMC authentication, whose credentials
+        // must not be reused for several requests
+        assertFalse(BulkEnrollmentProcessor.isBulkEnrollmentAllowed(createAuthenticator(false)));
+    }
+
+    public void testCreateRequest() {
+
+        CertEnrollmentRequest template = new CertEnrollmentRequest();
+        template.setProfileId("caServerCert");
+        template.setRemoteHost("client.example.com");
+        template.setRemoteAddr("192.0.2.1");
+
+        ProfileInput subject = template.createInput("Subject Name");
+        subject.addAttribute(new ProfileAttribute("sn_cn", "server.example.com", null));
+
+        CertEnrollmentRequest request = BulkEnrollmentProcessor.createRequest(template, "csr", null);
+
+        assertEquals("caServerCert", request.getProfileId());
+        assertEquals("client.example.com", request.getRemoteHost());
+        assertEquals("192.0.2.1", request.getRemoteAddr());
+
+        assertEquals(2, request.getInputs().size());
+        assertEquals("server.example.com",
+                request.getInput("Subject Name").getAttribute("sn_cn").getValue());
+
+        ProfileInput input = request.getInput(BulkEnrollmentProcessor.INPUT_NAME);
+        assertEquals("csr", input.getAttribute("cert_request").getValue());
+        assertEquals("pkcs10", input.getAttribute("cert_request_type").getValue());
+
+        // the template is shared by all CSRs and must not change
+        assertEquals(1, template.getInputs().size());
+    }
+
+    public void testCreateRequestType() {
+
+        CertEnrollmentRequest template = new CertEnrollmentRequest();
+        template.setProfileId("caServerCert");
+
+        CertEnrollmentRequest request = BulkEnrollmentProcessor.createRequest(template, "csr", "crmf");
+
+        ProfileInput input = request.getInput(BulkEnrollmentProcessor.INPUT_NAME);
+        assertEquals("crmf", input.getAttribute("cert_request_type").getValue());
+    }
+
+    private IProfileAuthenticator createAuthenticator(final boolean sslClientRequired) {
+        return (IProfileAuthenticator) Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class<?>[] { IProfileAuthenticator.class },
+                new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if (method.getName().equals("isSSLClientRequired")) {
+                            return sslClientRequired;
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+}
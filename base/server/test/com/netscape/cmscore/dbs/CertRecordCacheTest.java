@@ -0,0 +1,138 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2019 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package com.netscape.cmscore.dbs;
+
+import java.math.BigInteger;
+import java.util.Date;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import com.netscape.certsrv.base.MetaInfo;
+import com.netscape.cmscore.test.CMSBaseTestCase;
+
+public class CertRecordCacheTest extends CMSBaseTestCase {
+
+    public CertRecordCacheTest(String name) {
+        super(name);
+    }
+
+    public void cmsTestSetUp() {
+    }
+
+    public void cmsTestTearDown() {
+    }
+
+    public static Test suite() {
+        return new TestSuite(CertRecordCacheTest.class);
+    }
+
+    public void testHitsAndMisses() {
+        CertRecordCache cache = new CertRecordCache(10, 1024 * 1024);
+        CertRecord record = new CertRecord();
+
+        assertNull(cache.get(BigInteger.ONE));
+        cache.put(BigInteger.ONE, record, cache.getGeneration());
+
+        assertNotNull(cache.get(BigInteger.ONE));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(0.5, cache.getHitRatio(), 0.0001);
+    }
+
+    public void testEvictsLeastRecentlyUsed() {
+        CertRecordCache cache = new CertRecordCache(2, 1024 * 1024);
+
+        cache.put(BigInteger.valueOf(1), new CertRecord(), cache.getGeneration());
+        cache.put(BigInteger.valueOf(2), new CertRecord(), cache.getGeneration());
+        cache.get(BigInteger.valueOf(1));
+        cache.put(BigInteger.valueOf(3), new CertRecord(), cache.getGeneration());
+
+        assertEquals(2, cache.getSize());
+        assertNotNull(cache.get(BigInteger.valueOf(1)));
+        assertNull(cache.get(BigInteger.valueOf(2)));
+        assertNotNull(cache.get(BigInteger.valueOf(3)));
+    }
+
+    public void testEvictsBySize() {
+        CertRecordCache cache = new CertRecordCache(10, 2 * CertRecordCache.RECORD_OVERHEAD);
+
+        cache.put(BigInteger.valueOf(1), new CertRecord(), cache.getGeneration());
+        cache.put(BigInteger.valueOf(2), new CertRecord(), cache.getGeneration());
+        cache.put(BigInteger.valueOf(3), new CertRecord(), cache.getGeneration());
+
+        assertEquals(2, cache.getSize());
+        assertEquals(2 * CertRecordCache.RECORD_OVERHEAD, cache.getBytes());
+    }
+
+    public void testInvalidationDuringReadIsNotCached() {
+        CertRecordCache cache = new CertRecordCache(10, 1024 * 1024);
+
+        cache.put(BigInteger.ONE, new CertRecord(), cache.getGeneration());
+
+        // a record is modified while another thread reads it
+        long generation = cache.getGeneration();
+        cache.invalidate(BigInteger.ONE);
+        cache.put(BigInteger.ONE, new CertRecord(), generation);
+
+        assertNull(cache.get(BigInteger.ONE));
+        assertEquals(0, cache.getBytes());
+    }
+
+    public void testReturnsCopies() throws Exception {
+        CertRecordCache cache = new CertRecordCache(10, 1024 * 1024);
+
+        MetaInfo meta = new MetaInfo();
+        meta.set("requestId", "1");
+        CertRecord record = new CertRecord(BigInteger.ONE, null, meta);
+        cache.put(BigInteger.ONE, record, cache.getGeneration());
+
+        // modifying the stored record does not affect the cache
+        record.getMetaInfo().set("requestId", "2");
+
+        CertRecord copy = cache.get(BigInteger.ONE);
+        assertNotSame(record, copy);
+        assertEquals("1", copy.getMetaInfo().get("requestId"));
+
+        // modifying a returned record does not affect other readers
+        copy.getMetaInfo().set("requestId", "3");
+        copy.getMetaInfo().set("revRequestId", "4");
+        copy.getCreateTime().setTime(0);
+
+        CertRecord other = cache.get(BigInteger.ONE);
+        assertNotSame(copy, other);
+        assertNotSame(copy.getMetaInfo(), other.getMetaInfo());
+        assertEquals("1", other.getMetaInfo().get("requestId"));
+        assertNull(other.getMetaInfo().get("revRequestId"));
+        assertFalse(other.getCreateTime().equals(new Date(0)));
+    }
+
+    public void testCopiesRevocationInfo() throws Exception {
+        CertRecordCache cache = new CertRecordCache(10, 1024 * 1024);
+
+        CertRecord record = new CertRecord(BigInteger.ONE, null, new MetaInfo());
+        Date revocationDate = new Date();
+        record.set(CertRecord.ATTR_REVO_INFO, new RevocationInfo(revocationDate, null));
+        cache.put(BigInteger.ONE, record, cache.getGeneration());
+
+        CertRecord copy = cache.get(BigInteger.ONE);
+        copy.getRevocationInfo().getRevocationDate().setTime(0);
+
+        assertEquals(revocationDate, cache.get(BigInteger.ONE).getRevocationInfo().getRevocationDate());
+    }
+}
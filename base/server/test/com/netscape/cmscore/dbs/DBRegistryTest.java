@@ -110,6 +110,17 @@ public class DBRegistryTest extends CMSBaseTestCase {
         assertTrue(extAttrMapper.mapLDAPAttrsCalled);
     }
 
+    public void testCreateObjectIgnoresObjectClassCase() throws EBaseException {
+        LDAPAttributeSet attrs = new LDAPAttributeSet();
+        attrs.add(new LDAPAttribute("objectclass", "OCValue"));
+        attrs.add(new LDAPAttribute("extdata-foo"));
+
+        IDBObj obj = registry.createObject(attrs);
+
+        assertTrue(obj instanceof RequestRecordStub);
+        assertTrue(extAttrMapper.mapLDAPAttrsCalled);
+    }
+
     static class DBSubsystemStub extends DBSubsystemDefaultStub {
         DBRegistry registry;
 
@@ -1,11 +1,15 @@
 package com.netscape.cmscore.dbs;
 
+import java.util.Enumeration;
+
 import netscape.ldap.LDAPSearchResults;
 
 import com.netscape.certsrv.base.EBaseException;
 import com.netscape.certsrv.base.ISubsystem;
 import com.netscape.certsrv.dbs.EDBException;
 import com.netscape.certsrv.dbs.IDBObj;
+import com.netscape.certsrv.dbs.IDBPagedSearch;
+import com.netscape.certsrv.dbs.IDBProjection;
 import com.netscape.certsrv.dbs.IDBSSession;
 import com.netscape.certsrv.dbs.IDBSearchResults;
 import com.netscape.certsrv.dbs.IDBVirtualList;
@@ -56,6 +60,21 @@ public class DBSSessionDefaultStub implements IDBSSession {
         return null;
     }
 
+    public <T> Enumeration<T> search(String base, String filter, int maxSize, IDBProjection<T> projection)
+            throws EBaseException {
+        return null;
+    }
+
+    public <T> IDBPagedSearch<T> createPagedSearch(String base, String filter, String attrs[], int pageSize)
+            throws EBaseException {
+        return null;
+    }
+
+    public <T> IDBPagedSearch<T> createPagedSearch(String base, String filter, int pageSize,
+            IDBProjection<T> projection) throws EBaseException {
+        return null;
+    }
+
     public <T> IDBVirtualList<T> createVirtualList(String base, String filter, String attrs[]) throws EBaseException {
         return null;
     }
@@ -0,0 +1,116 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2019 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package com.netscape.cmscore.dbs;
+
+import java.util.List;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import com.netscape.cmscore.test.CMSBaseTestCase;
+
+public class DBStatisticsTest extends CMSBaseTestCase {
+
+    public DBStatisticsTest(String name) {
+        super(name);
+    }
+
+    public void cmsTestSetUp() {
+    }
+
+    public void cmsTestTearDown() {
+    }
+
+    public static Test suite() {
+        return new TestSuite(DBStatisticsTest.class);
+    }
+
+    public void testDisabled() {
+        DBStatistics stats = new DBStatistics();
+
+        long start = stats.start();
+        assertEquals(0, start);
+
+        stats.record(DBStatistics.OP_READ, "cn=1,ou=certificateRepository,ou=ca,o=pki", null, start);
+        assertTrue(stats.getHistograms().isEmpty());
+    }
+
+    public void testHistogram() {
+        DBStatistics stats = new DBStatistics();
+        stats.setEnabled(true);
+
+        stats.record(DBStatistics.OP_SEARCH, "ou=certificateRepository,ou=ca,o=pki",
+                "(certStatus=VALID)", stats.start());
+        stats.record(DBStatistics.OP_SEARCH, "ou=certificateRepository,ou=ca,o=pki",
+                "(certStatus=REVOKED)", stats.start());
+        stats.record(DBStatistics.OP_ADD, "cn=1,ou=ca,ou=requests,o=pki", null, stats.start());
+
+        List<DBStatistics.Histogram> histograms = stats.getHistograms();
+        assertEquals(2, histograms.size());
+
+        DBStatistics.Histogram add = histograms.get(0);
+        assertEquals("add:requests", add.getName());
+        assertEquals(1, add.getCount());
+
+        DBStatistics.Histogram search = histograms.get(1);
+        assertEquals("search:certs", search.getName());
+        assertEquals(2, search.getCount());
+
+        long total = 0;
+        for (long n : search.getBuckets()) {
+            total += n;
+        }
+        assertEquals(2, total);
+
+        stats.reset();
+        assertTrue(stats.getHistograms().isEmpty());
+    }
+
+    public void testSlowOperations() {
+        DBStatistics stats = new DBStatistics();
+        stats.setEnabled(true);
+        stats.setSlowThreshold(0);
+        stats.setSlowLogSize(2);
+
+        stats.record(DBStatistics.OP_SEARCH, "ou=keyRepository,ou=kra,o=pki", "(a=1)", stats.start());
+        stats.record(DBStatistics.OP_SEARCH, "ou=keyRepository,ou=kra,o=pki", "(a=2)", stats.start());
+        stats.record(DBStatistics.OP_SEARCH, "ou=keyRepository,ou=kra,o=pki", "(a=3)", stats.start());
+
+        // the ring buffer keeps the most recent operations
+        List<DBStatistics.SlowOperation> ops = stats.getSlowOperationList();
+        assertEquals(2, ops.size());
+
+        for (DBStatistics.SlowOperation op : ops) {
+            assertEquals(DBStatistics.CATEGORY_KEYS, op.getCategory());
+            assertFalse("(a=1)".equals(op.getFilter()));
+        }
+    }
+
+    public void testCategory() {
+        assertEquals(DBStatistics.CATEGORY_CERTS,
+                DBStatistics.getCategory("cn=10,ou=certificateRepository,ou=ca,o=pki"));
+        assertEquals(DBStatistics.CATEGORY_REQUESTS,
+                DBStatistics.getCategory("ou=ca,ou=requests,o=pki"));
+        assertEquals(DBStatistics.CATEGORY_CRLS,
+                DBStatistics.getCategory("cn=MasterCRL,ou=crlIssuingPoints,ou=ca,o=pki"));
+        assertEquals(DBStatistics.CATEGORY_OTHER,
+                DBStatistics.getCategory("ou=people,o=pki"));
+        assertEquals(DBStatistics.CATEGORY_OTHER,
+                DBStatistics.getCategory(null));
+    }
+}
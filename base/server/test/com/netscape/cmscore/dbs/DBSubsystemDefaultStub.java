@@ -28,6 +28,10 @@ public class DBSubsystemDefaultStub implements IDBSubsystem {
         return null;
     }
 
+    public IDBSSession createReadSession() {
+        return createSession();
+    }
+
     public boolean enableSerialNumberRecovery() {
         return false;
     }
@@ -0,0 +1,255 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2019 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package com.netscape.cmscore.request;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import com.netscape.certsrv.base.EBaseException;
+import com.netscape.cmscore.test.CMSBaseTestCase;
+
+public class RequestIdAllocatorTest extends CMSBaseTestCase {
+
+    public RequestIdAllocatorTest(String name) {
+        super(name);
+    }
+
+    public void cmsTestSetUp() {
+    }
+
+    public void cmsTestTearDown() {
+    }
+
+    public static Test suite() {
+        return new TestSuite(RequestIdAllocatorTest.class);
+    }
+
+    public void testSequentialAllocation() throws Exception {
+        TestAllocator allocator = new TestAllocator(10, 2);
+
+        try {
+            for (int i = 1; i <= 35; i++) {
+                assertEquals(BigInteger.valueOf(i), allocator.next());
+            }
+        } finally {
+            allocator.shutdown();
+        }
+    }
+
+    public void testConcurrentAllocation() throws Exception {
+        final TestAllocator allocator = new TestAllocator(50, 10);
+        final Set<BigInteger> ids = Collections.newSetFromMap(new ConcurrentHashMap<BigInteger, Boolean>());
+        final AtomicInteger duplicates = new AtomicInteger();
+        final AtomicInteger errors = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+
+        List<Thread> threads = new ArrayList<Thread>();
+
+        for (int t = 0; t < 8; t++) {
+            threads.add(new Thread() {
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < 1000; i++) {
+                            if (!ids.add(allocator.next())) {
+                                duplicates.incrementAndGet();
+                            }
+                        }
+                    } catch (Exception e) {
+                        errors.incrementAndGet();
+                    }
+                }
+            });
+        }
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+
+        start.countDown();
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        allocator.shutdown();
+
+        assertEquals(0, errors.get());
+        assertEquals(0, duplicates.get());
+        assertEquals(8000, ids.size());
+
+        // every ID has been reserved
+        BigInteger last = BigInteger.valueOf(allocator.reserved.get());
+        for (BigInteger id : ids) {
+            assertTrue(id.signum() > 0);
+            assertTrue(id.compareTo(last) <= 0);
+        }
+    }
+
+    public void testPrefetch() throws Exception {
+        TestAllocator allocator = new TestAllocator(10, 3);
+
+        try {
+            // IDs 1..6 leave 4 IDs in the first block
+            for (int i = 1; i <= 6; i++) {
+                allocator.next();
+            }
+            assertEquals(1, allocator.reservations.get());
+
+            // ID 7 leaves 3 IDs and reserves the next block in the background
+            allocator.next();
+            allocator.awaitReservations(2);
+            assertEquals(1, allocator.backgroundReservations.get());
+
+            // the allocating thread switches to the reserved block
+            for (int i = 8; i <= 11; i++) {
+                assertEquals(BigInteger.valueOf(i), allocator.next());
+            }
+            assertEquals(2, allocator.reservations.get());
+
+        } finally {
+            allocator.shutdown();
+        }
+    }
+
+    public void testShortBlock() throws Exception {
+        TestAllocator allocator = new TestAllocator(10, 0);
+
+        try {
+            // the range ends after 3 IDs
+            allocator.limit = 3;
+
+            assertEquals(BigInteger.valueOf(1), allocator.next());
+            assertEquals(BigInteger.valueOf(2), allocator.next());
+            assertEquals(BigInteger.valueOf(3), allocator.next());
+
+            allocator.limit = 0;
+
+            assertEquals(BigInteger.valueOf(4), allocator.next());
+
+        } finally {
+            allocator.shutdown();
+        }
+    }
+
+    public void testReset() throws Exception {
+        TestAllocator allocator = new TestAllocator(10, 0);
+
+        try {
+            assertEquals(BigInteger.valueOf(1), allocator.next());
+
+            allocator.reset();
+
+            // the IDs left in the first block are skipped
+            assertEquals(BigInteger.valueOf(11), allocator.next());
+
+        } finally {
+            allocator.shutdown();
+        }
+    }
+
+    public void testShutdown() throws Exception {
+        TestAllocator allocator = new TestAllocator(5, 2);
+
+        allocator.shutdown();
+
+        for (int i = 1; i <= 20; i++) {
+            assertEquals(BigInteger.valueOf(i), allocator.next());
+        }
+
+        // blocks are only reserved by the allocating thread
+        assertEquals(0, allocator.backgroundReservations.get());
+        assertEquals(4, allocator.reservations.get());
+    }
+
+    public void testReserveFailure() throws Exception {
+        TestAllocator allocator = new TestAllocator(10, 0);
+
+        try {
+            allocator.failure = true;
+
+            try {
+                allocator.next();
+                fail("Expected EBaseException");
+            } catch (EBaseException e) {
+                // expected
+            }
+
+            allocator.failure = false;
+
+            assertEquals(BigInteger.valueOf(1), allocator.next());
+
+        } finally {
+            allocator.shutdown();
+        }
+    }
+
+    static class TestAllocator extends RequestIdAllocator {
+
+        AtomicInteger reserved = new AtomicInteger();
+        AtomicInteger reservations = new AtomicInteger();
+        AtomicInteger backgroundReservations = new AtomicInteger();
+
+        volatile int limit;
+        volatile boolean failure;
+
+        TestAllocator(int blockSize, int lowWaterMark) {
+            super(blockSize, lowWaterMark);
+        }
+
+        protected synchronized BigInteger[] reserve(int count) throws EBaseException {
+
+            if (failure) {
+                throw new EBaseException("Unable to reserve request IDs");
+            }
+
+            if (limit > 0) {
+                count = Math.min(count, limit);
+            }
+
+            int first = reserved.get() + 1;
+            int last = reserved.addAndGet(count);
+
+            if (Thread.currentThread().getName().equals("RequestIdReserveTask")) {
+                backgroundReservations.incrementAndGet();
+            }
+
+            reservations.incrementAndGet();
+            notifyAll();
+
+            return new BigInteger[] { BigInteger.valueOf(first), BigInteger.valueOf(last) };
+        }
+
+        synchronized void awaitReservations(int count) throws InterruptedException {
+            long end = System.currentTimeMillis() + 10000;
+            while (reservations.get() < count && System.currentTimeMillis() < end) {
+                wait(100);
+            }
+            assertTrue(reservations.get() >= count);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.netscape.cmscore.request;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Map;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import com.netscape.certsrv.request.RequestId;
+import com.netscape.certsrv.request.RequestStatus;
+import com.netscape.cmscore.test.CMSBaseTestCase;
+
+public class RequestIntentLogTest extends CMSBaseTestCase {
+
+    File file;
+    RequestIntentLog log;
+
+    public RequestIntentLogTest(String name) {
+        super(name);
+    }
+
+    public void cmsTestSetUp() {
+        try {
+            file = File.createTempFile("request-intent", ".log");
+            log = new RequestIntentLog(file, false, RequestIntentLog.DEFAULT_MAX_SIZE);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public void cmsTestTearDown() {
+        try {
+            log.close();
+        } catch (IOException e) {
+        }
+        file.delete();
+    }
+
+    public static Test suite() {
+        return new TestSuite(RequestIntentLogTest.class);
+    }
+
+    public void testUncommitted() throws IOException {
+        log.logState(new RequestId("1"), RequestStatus.APPROVED);
+        log.logState(new RequestId("2"), RequestStatus.APPROVED);
+        log.logState(new RequestId("1"), RequestStatus.COMPLETE);
+        log.commit(new RequestId("1"));
+
+        Map<RequestId, RequestStatus> uncommitted = log.getUncommitted();
+
+        assertEquals(1, uncommitted.size());
+        assertEquals(RequestStatus.APPROVED, uncommitted.get(new RequestId("2")));
+    }
+
+    public void testLastState() throws IOException {
+        log.logState(new RequestId("3"), RequestStatus.APPROVED);
+        log.logState(new RequestId("3"), RequestStatus.COMPLETE);
+
+        assertEquals(RequestStatus.COMPLETE, log.getUncommitted().get(new RequestId("3")));
+    }
+
+    public void testCommitAfterRestart() throws IOException {
+        log.logState(new RequestId("4"), RequestStatus.APPROVED);
+        log.logState(new RequestId("5"), RequestStatus.APPROVED);
+        log.close();
+
+        log = new RequestIntentLog(file, false, RequestIntentLog.DEFAULT_MAX_SIZE);
+
+        // requests of the previous process can be committed one by one
+        log.logState(new RequestId("6"), RequestStatus.APPROVED);
+        log.commit(new RequestId("4"));
+
+        Map<RequestId, RequestStatus> uncommitted = log.getUncommitted();
+
+        assertEquals(2, uncommitted.size());
+        assertTrue(uncommitted.containsKey(new RequestId("5")));
+        assertTrue(uncommitted.containsKey(new RequestId("6")));
+    }
+
+    public void testCutOffRecord() throws IOException {
+        log.logState(new RequestId("7"), RequestStatus.APPROVED);
+        log.close();
+
+        // a crash in the middle of a record
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write("8 APPR".getBytes("UTF-8"));
+        }
+
+        log = new RequestIntentLog(file, false, RequestIntentLog.DEFAULT_MAX_SIZE);
+        log.logState(new RequestId("9"), RequestStatus.APPROVED);
+        log.close();
+
+        log = new RequestIntentLog(file, false, RequestIntentLog.DEFAULT_MAX_SIZE);
+
+        Map<RequestId, RequestStatus> uncommitted = log.getUncommitted();
+
+        assertEquals(2, uncommitted.size());
+        assertEquals(RequestStatus.APPROVED, uncommitted.get(new RequestId("7")));
+        assertEquals(RequestStatus.APPROVED, uncommitted.get(new RequestId("9")));
+    }
+
+    public void testTruncate() throws IOException {
+        log.close();
+        log = new RequestIntentLog(file, false, 100);
+
+        for (int i = 1; i <= 10; i++) {
+            log.logState(new RequestId(i), RequestStatus.COMPLETE);
+            log.commit(new RequestId(i));
+        }
+
+        assertTrue(file.length() <= 100);
+        assertTrue(log.getUncommitted().isEmpty());
+    }
+
+    public void testCompact() throws IOException {
+        log.close();
+        log = new RequestIntentLog(file, false, 100);
+
+        // requests that stay in flight
+        log.logState(new RequestId("1"), RequestStatus.APPROVED);
+        log.logState(new RequestId("2"), RequestStatus.APPROVED);
+        log.logState(new RequestId("1"), RequestStatus.COMPLETE);
+
+        for (int i = 10; i < 1000; i++) {
+            log.logState(new RequestId(i), RequestStatus.APPROVED);
+            log.logState(new RequestId(i), RequestStatus.COMPLETE);
+            log.commit(new RequestId(i));
+        }
+
+        // the log only grows up to about the maximum size
+        assertTrue(file.length() < 200);
+
+        Map<RequestId, RequestStatus> uncommitted = log.getUncommitted();
+
+        assertEquals(2, uncommitted.size());
+        assertEquals(RequestStatus.COMPLETE, uncommitted.get(new RequestId("1")));
+        assertEquals(RequestStatus.APPROVED, uncommitted.get(new RequestId("2")));
+
+        // logging order is preserved
+        assertEquals(new RequestId("1"), uncommitted.keySet().iterator().next());
+    }
+
+    public void testCompactedLogAfterRestart() throws IOException {
+        log.close();
+        log = new RequestIntentLog(file, false, 100);
+
+        log.logState(new RequestId("1"), RequestStatus.APPROVED);
+
+        for (int i = 10; i < 100; i++) {
+            log.logState(new RequestId(i), RequestStatus.COMPLETE);
+            log.commit(new RequestId(i));
+        }
+
+        log.logState(new RequestId("2"), RequestStatus.APPROVED);
+        log.close();
+
+        log = new RequestIntentLog(file, false, 100);
+
+        Map<RequestId, RequestStatus> uncommitted = log.getUncommitted();
+
+        assertEquals(2, uncommitted.size());
+        assertEquals(RequestStatus.APPROVED, uncommitted.get(new RequestId("1")));
+        assertEquals(RequestStatus.APPROVED, uncommitted.get(new RequestId("2")));
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+    }
+}
@@ -3,11 +3,24 @@ package com.netscape.cmscore.request;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.Map;
 
 import junit.framework.Test;
 import junit.framework.TestSuite;
 
 import com.netscape.certsrv.base.EBaseException;
+import com.netscape.certsrv.dbs.IDBRegistry;
+import com.netscape.certsrv.dbs.IDBSSession;
+import com.netscape.certsrv.dbs.Modification;
+import com.netscape.certsrv.dbs.ModificationSet;
+import com.netscape.certsrv.request.IRequestRecord;
+import com.netscape.certsrv.request.RequestId;
+import com.netscape.cmscore.dbs.DBRegistryDefaultStub;
+import com.netscape.cmscore.dbs.DBSSessionDefaultStub;
+import com.netscape.cmscore.dbs.DBSubsystem;
+import com.netscape.cmscore.dbs.DBSubsystemDefaultStub;
 import com.netscape.cmscore.test.CMSBaseTestCase;
 
 public class RequestQueueTest extends CMSBaseTestCase {
@@ -40,6 +53,135 @@ public class RequestQueueTest extends CMSBaseTestCase {
         assertTrue(request.getExtDataKeysCalled);
     }
 
+    public void testModifyRequestWritesModifiedAttributesOnly() throws EBaseException {
+        SessionStub session = new SessionStub();
+        RequestQueue queue = createQueue(session);
+
+        Request r = new Request(new RequestId("1"));
+        r.setExtData("dbStatus", "UPDATED");
+        r.setExtData("profileId", "caUserCert");
+        r.setExtData("cert_request", "MIIBIjANBgkqhkiG9w0BAQEFAAOCAQ8AMIIBCgKCAQEA");
+        r.setSourceId("source");
+        r.clearModified();
+
+        r.setExtData("profileId", "caServerCert");
+        assertTrue(queue.modifyRequest(r));
+
+        assertEquals("cn=1,ou=test,ou=requests,o=pki", session.name);
+
+        Map<String, Object> mods = session.getModifications();
+        assertTrue(mods.containsKey(IRequestRecord.ATTR_REQUEST_STATE));
+        assertTrue(mods.containsKey(IRequestRecord.ATTR_MODIFY_TIME));
+
+        // unmodified attributes are not written
+        assertFalse(mods.containsKey(IRequestRecord.ATTR_SOURCE_ID));
+        assertFalse(mods.containsKey(IRequestRecord.ATTR_REQUEST_OWNER));
+
+        Hashtable<?, ?> extData = (Hashtable<?, ?>) mods.get(IRequestRecord.ATTR_EXT_DATA);
+        assertEquals(1, extData.size());
+        assertEquals("caServerCert", extData.get("profileId"));
+
+        // the request is clean after the write
+        assertTrue(r.getModifiedExtDataKeys().isEmpty());
+        assertFalse(r.isAttrsModified());
+    }
+
+    public void testModifyUnmodifiedRequest() throws EBaseException {
+        SessionStub session = new SessionStub();
+        RequestQueue queue = createQueue(session);
+
+        Request r = new Request(new RequestId("2"));
+        r.setExtData("dbStatus", "UPDATED");
+        r.setExtData("profileId", "caUserCert");
+        r.clearModified();
+
+        queue.modifyRequest(r);
+
+        Map<String, Object> mods = session.getModifications();
+        assertEquals(2, mods.size());
+        assertTrue(mods.containsKey(IRequestRecord.ATTR_REQUEST_STATE));
+        assertTrue(mods.containsKey(IRequestRecord.ATTR_MODIFY_TIME));
+    }
+
+    public void testModifyRequestWritesChangedOwner() throws EBaseException {
+        SessionStub session = new SessionStub();
+        RequestQueue queue = createQueue(session);
+
+        Request r = new Request(new RequestId("3"));
+        r.setExtData("dbStatus", "UPDATED");
+        r.setExtData("profileId", "caUserCert");
+        r.clearModified();
+
+        r.setRequestOwner("agent");
+        queue.modifyRequest(r);
+
+        Map<String, Object> mods = session.getModifications();
+        assertEquals("agent", mods.get(IRequestRecord.ATTR_REQUEST_OWNER));
+        assertFalse(mods.containsKey(IRequestRecord.ATTR_EXT_DATA));
+    }
+
+    public void testModifyRequestReportsWriteFailure() throws EBaseException {
+        SessionStub session = new SessionStub() {
+            public void modify(String name, ModificationSet mods) throws EBaseException {
+                throw new EBaseException("server down");
+            }
+        };
+        RequestQueue queue = createQueue(session);
+
+        Request r = new Request(new RequestId("4"));
+        r.setExtData("dbStatus", "UPDATED");
+        r.clearModified();
+
+        r.setExtData("profileId", "caServerCert");
+        assertFalse(queue.modifyRequest(r));
+
+        // the changes are still pending for the next write
+        assertTrue(r.getModifiedExtDataKeys().contains("profileId"));
+    }
+
+    RequestQueue createQueue(final SessionStub session) throws EBaseException {
+
+        final IDBRegistry registry = new DBRegistryDefaultStub();
+
+        DBSubsystem.setInstance(new DBSubsystemDefaultStub() {
+            public String getBaseDN() {
+                return "o=pki";
+            }
+
+            public IDBRegistry getRegistry() {
+                return registry;
+            }
+
+            public IDBSSession createSession() {
+                return session;
+            }
+        });
+
+        return new RequestQueue("test", 1, null, null, null, null);
+    }
+
+    static class SessionStub extends DBSSessionDefaultStub {
+
+        String name;
+        ModificationSet mods;
+
+        public void modify(String name, ModificationSet mods) throws EBaseException {
+            this.name = name;
+            this.mods = mods;
+        }
+
+        Map<String, Object> getModifications() {
+            Map<String, Object> values = new HashMap<String, Object>();
+            Enumeration<Modification> e = mods.getModifications();
+            while (e.hasMoreElements()) {
+                Modification mod = e.nextElement();
+                assertEquals(Modification.MOD_REPLACE, mod.getOp());
+                values.put(mod.getName(), mod.getValue());
+            }
+            return values;
+        }
+    }
+
     static class RequestStub extends RequestDefaultStub {
         private static final long serialVersionUID = -9058189963961484835L;
 
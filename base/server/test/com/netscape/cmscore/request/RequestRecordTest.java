@@ -102,6 +102,32 @@ public class RequestRecordTest extends CMSBaseTestCase {
         assertEquals(mods.addExtDataObject, request.mExtData);
     }
 
+    public void testModModifiedExtDataOnly() throws EBaseException {
+        ModificationSetStub mods = new ModificationSetStub();
+        request.setExtData("foo", "bar");
+        request.setExtData("cert_request", "MIIBIjANBgkqhkiG9w0BAQEFAAOCAQ8AMIIBCgKCAQEA");
+        request.clearModified();
+
+        request.setExtData("foo", "baz");
+
+        RequestRecord.mod(mods, request);
+
+        assertTrue(mods.addCalledWithExtData);
+        Hashtable<?, ?> extData = (Hashtable<?, ?>) mods.addExtDataObject;
+        assertEquals(1, extData.size());
+        assertEquals("baz", extData.get("foo"));
+    }
+
+    public void testModUnmodifiedRequest() throws EBaseException {
+        ModificationSetStub mods = new ModificationSetStub();
+        request.setExtData("foo", "bar");
+        request.clearModified();
+
+        RequestRecord.mod(mods, request);
+
+        assertFalse(mods.addCalledWithExtData);
+    }
+
     public void testRegister() throws EDBException {
         DBSubsystemStub db = new DBSubsystemStub();
 
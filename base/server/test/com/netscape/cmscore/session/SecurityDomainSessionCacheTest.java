@@ -0,0 +1,154 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2019 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package com.netscape.cmscore.session;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import com.netscape.cmscore.session.SecurityDomainSessionCache.Session;
+import com.netscape.cmscore.test.CMSBaseTestCase;
+
+public class SecurityDomainSessionCacheTest extends CMSBaseTestCase {
+
+    public SecurityDomainSessionCacheTest(String name) {
+        super(name);
+    }
+
+    public void cmsTestSetUp() {
+    }
+
+    public void cmsTestTearDown() {
+    }
+
+    public static Test suite() {
+        return new TestSuite(SecurityDomainSessionCacheTest.class);
+    }
+
+    public void testHit() {
+        SecurityDomainSessionCache cache = new SecurityDomainSessionCache(60000);
+
+        assertNull(cache.get("1"));
+
+        Session session = cache.createSession("10.0.0.1", "admin", "Enterprise CA Administrators", 1000);
+        cache.put("1", session, cache.getGeneration());
+
+        Session cached = cache.get("1");
+        assertSame(session, cached);
+        assertEquals("10.0.0.1", cached.getIP());
+        assertEquals("admin", cached.getUID());
+        assertEquals("Enterprise CA Administrators", cached.getGroup());
+        assertEquals(1000, cached.getBeginTime());
+    }
+
+    public void testExpiry() throws Exception {
+        SecurityDomainSessionCache cache = new SecurityDomainSessionCache(1);
+
+        cache.put("1", cache.createSession("10.0.0.1", "admin", "Administrators", 1000), cache.getGeneration());
+        Thread.sleep(10);
+
+        assertNull(cache.get("1"));
+        assertEquals(0, cache.getSize());
+    }
+
+    public void testRemoveDuringRead() {
+        SecurityDomainSessionCache cache = new SecurityDomainSessionCache(60000);
+
+        // the session is read from the database ...
+        long generation = cache.getGeneration();
+        Session session = cache.createSession("10.0.0.1", "admin", "Administrators", 1000);
+
+        // ... while another thread removes it
+        cache.remove("1");
+
+        cache.put("1", session, generation);
+        assertNull(cache.get("1"));
+        assertEquals(0, cache.getSize());
+    }
+
+    public void testClearDuringRead() {
+        SecurityDomainSessionCache cache = new SecurityDomainSessionCache(60000);
+
+        long generation = cache.getGeneration();
+        Session session = cache.createSession("10.0.0.1", "admin", "Administrators", 1000);
+
+        cache.clear();
+
+        cache.put("1", session, generation);
+        assertNull(cache.get("1"));
+    }
+
+    public void testReadAfterRemove() {
+        SecurityDomainSessionCache cache = new SecurityDomainSessionCache(60000);
+
+        cache.remove("1");
+
+        long generation = cache.getGeneration();
+        Session session = cache.createSession("10.0.0.1", "admin", "Administrators", 1000);
+        cache.put("1", session, generation);
+
+        assertSame(session, cache.get("1"));
+    }
+
+    public void testUpdate() {
+        SecurityDomainSessionCache cache = new SecurityDomainSessionCache(60000);
+
+        // session added on another server
+        Session session = cache.createSession("10.0.0.2", "agent", "Certificate Manager Agents", 2000);
+        cache.update("2", session);
+        assertSame(session, cache.get("2"));
+
+        // session modified on another server
+        Session modified = cache.createSession("10.0.0.3", "agent", "Certificate Manager Agents", 2000);
+        cache.update("2", modified);
+        assertSame(modified, cache.get("2"));
+
+        // session removed on another server
+        long generation = cache.getGeneration();
+        cache.update("2", null);
+        assertNull(cache.get("2"));
+
+        // a read started before the removal is not cached
+        cache.put("2", modified, generation);
+        assertNull(cache.get("2"));
+    }
+
+    public void testGetExpiredSessions() {
+        Map<String, String> createTimes = new LinkedHashMap<String, String>();
+        createTimes.put("1", "1000");
+        createTimes.put("2", "5000");
+        createTimes.put("3", null);
+        createTimes.put("4", "invalid");
+        createTimes.put("5", "2999");
+        createTimes.put("6", "3000");
+
+        List<String> expired = SecurityDomainSessionCache.getExpiredSessions(createTimes, 3000);
+
+        assertEquals(2, expired.size());
+        assertEquals("1", expired.get(0));
+        assertEquals("5", expired.get(1));
+    }
+
+    public void testGetExpiredSessionsEmpty() {
+        Map<String, String> createTimes = new LinkedHashMap<String, String>();
+        assertTrue(SecurityDomainSessionCache.getExpiredSessions(createTimes, 3000).isEmpty());
+    }
+}
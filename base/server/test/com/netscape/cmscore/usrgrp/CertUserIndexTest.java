@@ -0,0 +1,113 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2019 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package com.netscape.cmscore.usrgrp;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import com.netscape.cmscore.test.CMSBaseTestCase;
+
+public class CertUserIndexTest extends CMSBaseTestCase {
+
+    static final String CERT1 = "2;1;CN=CA Signing Certificate,O=EXAMPLE;CN=admin";
+    static final String CERT2 = "2;2;CN=CA Signing Certificate,O=EXAMPLE;CN=admin";
+
+    static final byte[] DER1 = { 1, 2, 3 };
+    static final byte[] DER2 = { 4, 5, 6 };
+
+    public CertUserIndexTest(String name) {
+        super(name);
+    }
+
+    public void cmsTestSetUp() {
+    }
+
+    public void cmsTestTearDown() {
+    }
+
+    public static Test suite() {
+        return new TestSuite(CertUserIndexTest.class);
+    }
+
+    public void testFind() {
+        CertUserIndex index = new CertUserIndex();
+        index.setUser("admin", Arrays.asList(CERT1), Arrays.asList(DER1));
+
+        assertEquals("admin", index.findUserByCertString(CERT1));
+        assertEquals("admin", index.findUserByCertString(CERT1.toUpperCase()));
+        assertEquals("admin", index.findUserByFingerprint(CertUserIndex.getFingerprint(DER1)));
+
+        assertNull(index.findUserByCertString(CERT2));
+        assertNull(index.findUserByFingerprint(CertUserIndex.getFingerprint(DER2)));
+
+        assertEquals(3, index.getHits());
+        assertEquals(2, index.getMisses());
+    }
+
+    public void testReplaceUser() {
+        CertUserIndex index = new CertUserIndex();
+        index.setUser("admin", Arrays.asList(CERT1), Arrays.asList(DER1));
+        index.setUser("admin", Arrays.asList(CERT2), Arrays.asList(DER2));
+
+        assertNull(index.findUserByCertString(CERT1));
+        assertNull(index.findUserByFingerprint(CertUserIndex.getFingerprint(DER1)));
+        assertEquals("admin", index.findUserByCertString(CERT2));
+        assertEquals(1, index.getUsers());
+        assertEquals(1, index.getCertificates());
+    }
+
+    public void testRemoveUser() {
+        CertUserIndex index = new CertUserIndex();
+        index.setUser("admin", Arrays.asList(CERT1), Arrays.asList(DER1));
+        index.setUser("agent", Arrays.asList(CERT2), Arrays.asList(DER2));
+
+        index.removeUser("admin");
+
+        assertNull(index.findUserByCertString(CERT1));
+        assertEquals("agent", index.findUserByCertString(CERT2));
+        assertEquals(1, index.getUsers());
+    }
+
+    public void testMovedCertificate() {
+        CertUserIndex index = new CertUserIndex();
+        index.setUser("admin", Arrays.asList(CERT1), Arrays.asList(DER1));
+
+        // certificate assigned to another user before the first
+        // user's change is received
+        index.setUser("agent", Arrays.asList(CERT1), Arrays.asList(DER1));
+        index.setUser("admin", Collections.<String>emptyList(), Collections.<byte[]>emptyList());
+
+        assertEquals("agent", index.findUserByCertString(CERT1));
+        assertEquals(1, index.getUsers());
+    }
+
+    public void testClear() {
+        CertUserIndex index = new CertUserIndex();
+        index.setUser("admin", Arrays.asList(CERT1), Arrays.asList(DER1));
+        index.setLoaded(true);
+
+        index.clear();
+
+        assertFalse(index.isLoaded());
+        assertNull(index.findUserByCertString(CERT1));
+        assertEquals(0, index.getUsers());
+    }
+}
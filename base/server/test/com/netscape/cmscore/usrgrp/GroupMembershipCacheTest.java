@@ -0,0 +1,188 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2019 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package com.netscape.cmscore.usrgrp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import com.netscape.cmscore.test.CMSBaseTestCase;
+
+public class GroupMembershipCacheTest extends CMSBaseTestCase {
+
+    static final String ADMIN = "uid=admin,ou=People,o=pki";
+    static final String AGENT = "uid=agent,ou=People,o=pki";
+
+    public GroupMembershipCacheTest(String name) {
+        super(name);
+    }
+
+    public void cmsTestSetUp() {
+    }
+
+    public void cmsTestTearDown() {
+    }
+
+    public static Test suite() {
+        return new TestSuite(GroupMembershipCacheTest.class);
+    }
+
+    public void testHitsAndMisses() {
+        GroupMembershipCache cache = new GroupMembershipCache(10, 60000);
+
+        assertNull(cache.get(ADMIN, "Administrators"));
+        cache.put(ADMIN, "Administrators", true, cache.getGeneration());
+        cache.put(ADMIN, "Auditors", false, cache.getGeneration());
+
+        assertEquals(Boolean.TRUE, cache.get(ADMIN, "Administrators"));
+        assertEquals(Boolean.FALSE, cache.get(ADMIN, "Auditors"));
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(2, cache.getSavedCalls());
+
+        cache.addSavedCalls(1);
+        assertEquals(3, cache.getSavedCalls());
+    }
+
+    public void testNormalizedNames() {
+        GroupMembershipCache cache = new GroupMembershipCache(10, 60000);
+
+        cache.put("uid=admin, ou=people, o=pki", "administrators", true, cache.getGeneration());
+        assertEquals(Boolean.TRUE, cache.get(ADMIN, "Administrators"));
+    }
+
+    public void testExpiration() throws Exception {
+        GroupMembershipCache cache = new GroupMembershipCache(10, 10);
+
+        cache.put(ADMIN, "Administrators", true, cache.getGeneration());
+        Thread.sleep(50);
+
+        assertNull(cache.get(ADMIN, "Administrators"));
+    }
+
+    public void testInvalidateGroup() {
+        GroupMembershipCache cache = new GroupMembershipCache(10, 60000);
+
+        cache.put(ADMIN, "Administrators", true, cache.getGeneration());
+        cache.put(AGENT, "Administrators", false, cache.getGeneration());
+        cache.put(AGENT, "Agents", true, cache.getGeneration());
+
+        cache.invalidateGroup("administrators");
+
+        assertNull(cache.get(ADMIN, "Administrators"));
+        assertNull(cache.get(AGENT, "Administrators"));
+        assertEquals(Boolean.TRUE, cache.get(AGENT, "Agents"));
+    }
+
+    public void testInvalidateUser() {
+        GroupMembershipCache cache = new GroupMembershipCache(10, 60000);
+
+        cache.put(ADMIN, "Administrators", true, cache.getGeneration());
+        cache.put(AGENT, "Agents", true, cache.getGeneration());
+
+        cache.invalidateUser(ADMIN);
+
+        assertNull(cache.get(ADMIN, "Administrators"));
+        assertEquals(Boolean.TRUE, cache.get(AGENT, "Agents"));
+    }
+
+    public void testStaleGenerationIgnored() {
+        GroupMembershipCache cache = new GroupMembershipCache(10, 60000);
+
+        long generation = cache.getGeneration();
+        cache.invalidateGroup("Administrators");
+        cache.put(ADMIN, "Administrators", true, generation);
+
+        assertNull(cache.get(ADMIN, "Administrators"));
+    }
+
+    public void testEvictsLeastRecentlyUsed() throws Exception {
+        GroupMembershipCache cache = new GroupMembershipCache(2, 60000);
+
+        cache.put("uid=user1,o=pki", "Agents", true, cache.getGeneration());
+        Thread.sleep(1);
+        cache.put("uid=user2,o=pki", "Agents", true, cache.getGeneration());
+        Thread.sleep(1);
+        cache.get("uid=user1,o=pki", "Agents");
+        Thread.sleep(1);
+        cache.put("uid=user3,o=pki", "Agents", true, cache.getGeneration());
+
+        assertEquals(2, cache.getSize());
+        assertNotNull(cache.get("uid=user1,o=pki", "Agents"));
+        assertNull(cache.get("uid=user2,o=pki", "Agents"));
+    }
+
+    public void testEvictsBelowMaximum() throws Exception {
+        GroupMembershipCache cache = new GroupMembershipCache(8, 60000);
+
+        for (int i = 0; i < 9; i++) {
+            cache.put("uid=user" + i + ",o=pki", "Agents", true, cache.getGeneration());
+            Thread.sleep(1);
+        }
+
+        assertEquals(7, cache.getSize());
+        assertNull(cache.get("uid=user0,o=pki", "Agents"));
+        assertNull(cache.get("uid=user1,o=pki", "Agents"));
+        assertEquals(Boolean.TRUE, cache.get("uid=user8,o=pki", "Agents"));
+    }
+
+    public void testConcurrentAccess() throws Exception {
+        final GroupMembershipCache cache = new GroupMembershipCache(50, 60000);
+        final AtomicInteger errors = new AtomicInteger();
+
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 8; t++) {
+            final int seed = t;
+            Thread thread = new Thread() {
+                public void run() {
+                    for (int i = 0; i < 10000; i++) {
+                        int n = (i * 31 + seed) % 100;
+                        String user = "uid=user" + n + ",o=pki";
+                        boolean member = n % 2 == 0;
+
+                        if (i % 500 == 0) {
+                            cache.invalidateGroup("Agents");
+                        }
+
+                        Boolean cached = cache.get(user, "Agents");
+                        if (cached == null) {
+                            cache.put(user, "Agents", member, cache.getGeneration());
+
+                        } else if (cached.booleanValue() != member) {
+                            errors.incrementAndGet();
+                        }
+                    }
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(0, errors.get());
+        // additions made during an eviction may exceed the maximum
+        assertTrue(cache.getSize() <= 50 + threads.size());
+        assertTrue(cache.getHits() > 0);
+    }
+}
@@ -0,0 +1,217 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2019 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package com.netscape.cmscore.util;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import com.netscape.cmscore.test.CMSBaseTestCase;
+
+public class IdleReleaserTest extends CMSBaseTestCase {
+
+    static final long IDLE_TIMEOUT = 60000;
+
+    Map<String, Authority> authorities;
+    IdleReleaser<String, Authority> releaser;
+
+    public IdleReleaserTest(String name) {
+        super(name);
+    }
+
+    public void cmsTestSetUp() {
+        authorities = Collections.synchronizedSortedMap(new TreeMap<String, Authority>());
+        releaser = new AuthorityReleaser();
+    }
+
+    public void cmsTestTearDown() {
+    }
+
+    public static Test suite() {
+        return new TestSuite(IdleReleaserTest.class);
+    }
+
+    public void testReleaseIdle() throws Exception {
+
+        Authority idle = new Authority("idle");
+        idle.getSigningUnit();
+        idle.lastAccessTime -= 2 * IDLE_TIMEOUT;
+        authorities.put(idle.id, idle);
+
+        Authority used = new Authority("used");
+        used.getSigningUnit();
+        authorities.put(used.id, used);
+
+        Authority uninitialized = new Authority("uninitialized");
+        uninitialized.lastAccessTime -= 2 * IDLE_TIMEOUT;
+        authorities.put(uninitialized.id, uninitialized);
+
+        List<String> released = releaser.releaseIdle(authorities, IDLE_TIMEOUT);
+
+        assertEquals(Collections.singletonList("idle"), released);
+
+        Authority copy = authorities.get("idle");
+        assertNotSame(idle, copy);
+        assertFalse(copy.isInitialized());
+
+        // the released authority is not modified
+        assertTrue(idle.isInitialized());
+
+        assertSame(used, authorities.get("used"));
+        assertSame(uninitialized, authorities.get("uninitialized"));
+    }
+
+    public void testReleaseDuringSign() throws Exception {
+
+        Authority authority = new Authority("ca");
+        authorities.put(authority.id, authority);
+
+        final CountDownLatch signing = new CountDownLatch(1);
+        final CountDownLatch released = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> signature = executor.submit(new Callable<String>() {
+                public String call() throws Exception {
+                    Authority ca = authorities.get("ca");
+                    SigningUnit signingUnit = ca.getSigningUnit();
+
+                    signing.countDown();
+                    released.await(10, TimeUnit.SECONDS);
+
+                    // the authority has been released in the meantime
+                    return ca.getSigningUnit().sign(signingUnit.sign("data"));
+                }
+            });
+
+            assertTrue(signing.await(10, TimeUnit.SECONDS));
+
+            authority.lastAccessTime -= 2 * IDLE_TIMEOUT;
+            assertEquals(1, releaser.releaseIdle(authorities, IDLE_TIMEOUT).size());
+            released.countDown();
+
+            assertEquals("ca:ca:data", signature.get(10, TimeUnit.SECONDS));
+
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // the next use initializes a new signing unit
+        Authority copy = authorities.get("ca");
+        assertNotSame(authority, copy);
+        assertEquals("ca:data", copy.getSigningUnit().sign("data"));
+        assertNotSame(authority.getSigningUnit(), copy.getSigningUnit());
+    }
+
+    public void testReplacedAuthorityNotRestored() throws Exception {
+
+        Authority authority = new Authority("ca");
+        authority.getSigningUnit();
+        authority.lastAccessTime -= 2 * IDLE_TIMEOUT;
+        authorities.put(authority.id, authority);
+
+        final Authority modified = new Authority("ca");
+
+        // the authority is modified while it is being released
+        IdleReleaser<String, Authority> releaser = new AuthorityReleaser() {
+            protected Authority release(Authority value) {
+                authorities.put(modified.id, modified);
+                return super.release(value);
+            }
+        };
+
+        assertEquals(0, releaser.releaseIdle(authorities, IDLE_TIMEOUT).size());
+        assertSame(modified, authorities.get("ca"));
+    }
+
+    public void testRemovedAuthorityNotRestored() throws Exception {
+
+        Authority authority = new Authority("ca");
+        authority.getSigningUnit();
+        authority.lastAccessTime -= 2 * IDLE_TIMEOUT;
+        authorities.put(authority.id, authority);
+
+        // the authority is deleted while it is being released
+        IdleReleaser<String, Authority> releaser = new AuthorityReleaser() {
+            protected Authority release(Authority value) {
+                authorities.remove(value.id);
+                return super.release(value);
+            }
+        };
+
+        assertEquals(0, releaser.releaseIdle(authorities, IDLE_TIMEOUT).size());
+        assertNull(authorities.get("ca"));
+    }
+
+    static class AuthorityReleaser extends IdleReleaser<String, Authority> {
+
+        protected long getLastAccessTime(Authority authority) {
+            return authority.isInitialized() ? authority.lastAccessTime : -1;
+        }
+
+        protected Authority release(Authority authority) {
+            return new Authority(authority.id);
+        }
+    }
+
+    static class Authority {
+
+        String id;
+        volatile long lastAccessTime = System.currentTimeMillis();
+        private volatile SigningUnit signingUnit;
+
+        Authority(String id) {
+            this.id = id;
+        }
+
+        boolean isInitialized() {
+            return signingUnit != null;
+        }
+
+        synchronized SigningUnit getSigningUnit() {
+            lastAccessTime = System.currentTimeMillis();
+            if (signingUnit == null) {
+                signingUnit = new SigningUnit(id);
+            }
+            return signingUnit;
+        }
+    }
+
+    static class SigningUnit {
+
+        String name;
+
+        SigningUnit(String name) {
+            this.name = name;
+        }
+
+        String sign(String data) {
+            return name + ":" + data;
+        }
+    }
+}
@@ -25,6 +25,7 @@ import javax.ws.rs.core.Application;
 import org.dogtagpki.server.rest.ACLInterceptor;
 import org.dogtagpki.server.rest.AuditService;
 import org.dogtagpki.server.rest.AuthMethodInterceptor;
+import org.dogtagpki.server.rest.DBStatisticsService;
 import org.dogtagpki.server.rest.GroupService;
 import org.dogtagpki.server.rest.MessageFormatInterceptor;
 import org.dogtagpki.server.rest.PKIExceptionMapper;
@@ -51,6 +52,9 @@ public class TPSApplication extends Application {
         // audit
         classes.add(AuditService.class);
 
+        // database statistics
+        classes.add(DBStatisticsService.class);
+
         // installer
         classes.add(TPSInstallerService.class);
 